@@ -0,0 +1,148 @@
+package bdn.cryptax.bench;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Random;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import bdn.cryptax.controller.Log;
+import bdn.cryptax.model.Transaction;
+
+// Benchmark state holding a synthetic CSV ledger of the parameterized size. The ledger is the same for the same parameters,
+// so results of different releases can be compared. Holdings are tracked per account, so no row disposes of more coins
+// than were acquired. The phases log to the console as they go; only errors are logged while benchmarking.
+@State(Scope.Benchmark)
+public abstract class BenchmarkLedger {
+
+	private static final long SEED = 20190105L;
+	private static final LocalDateTime START_DTTM = LocalDateTime.of(2018, 1, 1, 0, 0);
+	private static final DateTimeFormatter DTF = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+	// coin amounts are generated in millionths of a coin
+	private static final int SCALE = 6;
+	private static final String[] BROKERS = { "Coinbase", "Kraken", "Ledger" };
+
+	@Param({ "10000", "100000" })
+	public int transactions;
+
+	@Param({ "4", "32" })
+	public int accounts;
+
+	@Param({ "0", "16" })
+	public int miningContracts;
+
+	protected String csv;
+	private Log.Level logLevel;
+
+
+	@Setup(Level.Trial)
+	public void generateLedger() {
+		csv = generate(transactions, accounts, miningContracts);
+		logLevel = Log.getLevel();
+		Log.setLevel(Log.Level.ERROR);
+	}
+
+
+	@TearDown(Level.Trial)
+	public void restoreLogLevel() {
+		Log.setLevel(logLevel);
+	}
+
+
+	public static String generate(int transactions, int accounts, int miningContracts) {
+		Random random = new Random(SEED);
+		long[] holdings = new long[accounts];
+		double[] usdPerCoin = new double[accounts];
+		boolean[] mining = new boolean[accounts];
+		for (int i = 0; i < accounts; i++) {
+			usdPerCoin[i] = 100 + random.nextInt(50000);
+		}
+		// mining contracts are spread evenly over the ledger
+		int contractSpacing = (miningContracts > 0) ? Math.max(1, transactions / miningContracts) : Integer.MAX_VALUE;
+		int contractsLeft = miningContracts;
+
+		StringBuilder sb = new StringBuilder(transactions * 64);
+		sb.append(String.join(",", Transaction.COL_TXN_ACCT, Transaction.COL_TXN_DTTM, Transaction.COL_TXN_TYPE, Transaction.COL_TXN_SRC,
+				Transaction.COL_TXN_DEST, Transaction.COL_TXN_COIN_AMNT, Transaction.COL_TXN_USD_AMNT, Transaction.COL_TXN_USD_PER_UNIT,
+				Transaction.COL_TXN_FEE_COIN, Transaction.COL_TXN_BRKR_FEE_USD, Transaction.COL_TERM_MOS, Transaction.COL_TXN_HASHRATE));
+		sb.append('\n');
+
+		// spread the rows over about four years
+		long minutesPerRow = Math.max(1, 4L * 365 * 24 * 60 / Math.max(1, transactions));
+		LocalDateTime dttm = START_DTTM;
+		for (int row = 0; row < transactions; row++) {
+			dttm = dttm.plusMinutes(1 + random.nextInt((int) Math.min(Integer.MAX_VALUE, 2 * minutesPerRow)));
+			int a = random.nextInt(accounts);
+			usdPerCoin[a] = Math.max(1, usdPerCoin[a] * (0.98 + random.nextDouble() * 0.04));
+			String acct = "A" + a;
+			String date = dttm.format(DTF);
+			String broker = BROKERS[random.nextInt(BROKERS.length)];
+			String price = usd(usdPerCoin[a]);
+			double choice = random.nextDouble();
+
+			if (contractsLeft > 0 && row % contractSpacing == contractSpacing - 1 && holdings[a] > 1) {
+				// a purchase disposes of its coin amount like a sale
+				long amount = 1 + (long) (random.nextDouble() * (holdings[a] / 4));
+				holdings[a] -= amount;
+				mining[a] = true;
+				contractsLeft--;
+				appendRow(sb, acct, date, "mpur", broker, "", coins(amount), "", price, "", "", "12", "1000");
+			}
+			else if (mining[a] && choice < 0.2) {
+				long amount = 1 + random.nextInt(1000);
+				holdings[a] += amount;
+				appendRow(sb, acct, date, "minc", "", broker, coins(amount), "", price, "", "", "", "1000");
+			}
+			else if (holdings[a] == 0 || choice < 0.5) {
+				long amount = 1 + (long) (random.nextDouble() * 10_000_000);
+				holdings[a] += amount;
+				String usdAmnt = usd(usdPerCoin[a] * amount / 1_000_000);
+				appendRow(sb, acct, date, "acq", "", broker, coins(amount), usdAmnt, "", "", "1.5", "", "");
+			}
+			else if (choice < 0.8) {
+				long amount = 1 + (long) (random.nextDouble() * (holdings[a] / 2));
+				holdings[a] -= amount;
+				String usdAmnt = usd(usdPerCoin[a] * amount / 1_000_000);
+				appendRow(sb, acct, date, "disp", broker, "", coins(amount), usdAmnt, "", "", "", "", "");
+			}
+			else if (choice < 0.9) {
+				// only the fee of a transfer is disposed of
+				long amount = 1 + (long) (random.nextDouble() * (holdings[a] / 2));
+				long fee = Math.min(holdings[a], 1 + random.nextInt(100));
+				holdings[a] -= fee;
+				appendRow(sb, acct, date, "tran", broker, BROKERS[random.nextInt(BROKERS.length)], coins(amount), "", price, coins(fee), "", "",
+						"");
+			}
+			else {
+				long amount = 1 + random.nextInt(100_000);
+				holdings[a] += amount;
+				appendRow(sb, acct, date, "inc", "", broker, coins(amount), "", price, "", "", "", "");
+			}
+		}
+		return sb.toString();
+	}
+
+
+	private static void appendRow(StringBuilder sb, String... values) {
+		sb.append(String.join(",", values));
+		sb.append('\n');
+	}
+
+
+	private static String coins(long millionths) {
+		return BigDecimal.valueOf(millionths, SCALE).toPlainString();
+	}
+
+
+	private static String usd(double value) {
+		return BigDecimal.valueOf(value).setScale(2, RoundingMode.HALF_UP).toPlainString();
+	}
+
+}
@@ -0,0 +1,55 @@
+package bdn.cryptax.bench;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+// Runs the benchmarks with the usual JMH command line options (e.g., -p transactions=1000000 or a benchmark name regex),
+// but writes the results as JSON by default so runs of different releases can be compared
+public class BenchmarkMain {
+
+	public static void main(String[] args) {
+		try {
+			CommandLineOptions cmdOptions = new CommandLineOptions(args);
+			Runner runner = new Runner(cmdOptions);
+			if (cmdOptions.shouldHelp()) {
+				cmdOptions.showHelp();
+				return;
+			}
+			if (cmdOptions.shouldList()) {
+				runner.list();
+				return;
+			}
+
+			ChainedOptionsBuilder builder = new OptionsBuilder().parent(cmdOptions);
+			if (!cmdOptions.getResultFormat().hasValue()) {
+				builder.resultFormat(ResultFormatType.JSON);
+			}
+			if (!cmdOptions.getResult().hasValue()) {
+				String now = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMddHHmmss"));
+				builder.result("cryptax-bench_" + now + ".json");
+			}
+			new Runner(builder.build()).run();
+		}
+		catch (CommandLineOptionException exc) {
+			System.err.println("ERROR: " + exc.getMessage());
+			System.exit(1);
+		}
+		catch (RunnerException exc) {
+			System.err.println("ERROR: Benchmarks failed: " + exc.getMessage());
+			System.exit(1);
+		}
+		catch (Exception exc) {
+			System.err.println("ERROR: " + exc.getMessage());
+			System.exit(1);
+		}
+	}
+
+}
@@ -0,0 +1,66 @@
+package bdn.cryptax.bench;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import bdn.cryptax.model.Transaction;
+import bdn.cryptax.model.TransactionException;
+import bdn.cryptax.model.TransactionRow;
+import bdn.cryptax.model.TransactionValidator;
+
+// Construction of transactions from already parsed CSV records, once per ledger
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TransactionBenchmark extends BenchmarkLedger {
+
+	private List<CSVRecord> records;
+
+
+	@Setup(Level.Trial)
+	public void parseRecords() throws IOException {
+		try (CSVParser parser = new CSVParser(new StringReader(csv), CSVFormat.EXCEL.withHeader().withSkipHeaderRecord(true))) {
+			records = parser.getRecords();
+		}
+	}
+
+
+	@Benchmark
+	public void newTransaction(Blackhole bh) throws TransactionException {
+		for (CSVRecord r : records) {
+			bh.consume(new Transaction(r));
+		}
+	}
+
+
+	@Benchmark
+	public void validateRow(Blackhole bh) {
+		TransactionValidator validator = new TransactionValidator();
+		TransactionRow row = new TransactionRow();
+		for (CSVRecord r : records) {
+			bh.consume(validator.validate(r, row));
+		}
+	}
+
+}
@@ -0,0 +1,110 @@
+package bdn.cryptax.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import bdn.cryptax.controller.ControllerException;
+import bdn.cryptax.controller.CsvResultWriter;
+import bdn.cryptax.controller.ProcessOptions;
+import bdn.cryptax.controller.TaxEngine;
+import bdn.cryptax.controller.TaxResult;
+import bdn.cryptax.model.GainEntry;
+import bdn.cryptax.model.MiningEntry;
+import bdn.cryptax.model.Transaction;
+import bdn.cryptax.model.TransactionException;
+
+// Each CSV output written from a precomputed result into a temp folder, which is emptied (unmeasured) after every
+// invocation since the writer never overwrites a file
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WriterBenchmark extends BenchmarkLedger {
+
+	private File folder;
+	private TaxResult result;
+	private CsvResultWriter writer;
+
+
+	@Setup(Level.Trial)
+	public void computeResult() throws ControllerException, IOException {
+		folder = Files.createTempDirectory("cryptax-bench").toFile();
+		List<Transaction> tList = new ArrayList<>();
+		try (CSVParser parser = new CSVParser(new StringReader(csv), CSVFormat.EXCEL.withHeader().withSkipHeaderRecord(true))) {
+			for (CSVRecord r : parser) {
+				tList.add(new Transaction(r));
+			}
+		}
+		catch (TransactionException exc) {
+			throw new ControllerException(exc.getMessage());
+		}
+		result = new TaxEngine().compute(tList);
+		writer = new CsvResultWriter(folder, "bench", "00000000000000", false, ProcessOptions.DEFAULT_USD_STABLECOINS);
+	}
+
+
+	@TearDown(Level.Invocation)
+	public void cleanFolder() throws IOException {
+		FileUtils.cleanDirectory(folder);
+	}
+
+
+	@TearDown(Level.Trial)
+	public void deleteFolder() throws IOException {
+		FileUtils.deleteDirectory(folder);
+	}
+
+
+	@Benchmark
+	public void writeGainEntries() throws ControllerException {
+		for (Map.Entry<String, List<GainEntry>> e : result.getGainEntries().entrySet()) {
+			writer.acceptGainEntries(e.getKey(), e.getValue());
+		}
+	}
+
+
+	@Benchmark
+	public void writeUnrealizedCostBasis() throws ControllerException {
+		writer.acceptUnrealizedCostBasis(result.getUnrealizedCostBasis());
+	}
+
+
+	@Benchmark
+	public void writeIncomeEntries() throws ControllerException {
+		writer.acceptIncomeEntries(result.getIncomeEntries());
+	}
+
+
+	@Benchmark
+	public void writeMiningEntries() throws ControllerException {
+		for (Map.Entry<String, List<MiningEntry>> e : result.getMiningEntries().entrySet()) {
+			writer.acceptMiningEntries(e.getKey(), e.getValue());
+		}
+	}
+
+}
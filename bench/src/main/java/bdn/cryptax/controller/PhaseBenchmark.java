@@ -0,0 +1,130 @@
+package bdn.cryptax.controller;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import bdn.cryptax.bench.BenchmarkLedger;
+import bdn.cryptax.controller.Controller.CostBasisType;
+import bdn.cryptax.model.GainEntry;
+import bdn.cryptax.model.IncomeEntry;
+import bdn.cryptax.model.MiningEntry;
+import bdn.cryptax.model.Transaction;
+import bdn.cryptax.model.Transaction.TransactionType;
+import bdn.cryptax.model.TransactionException;
+import bdn.cryptax.model.TransactionSource;
+import bdn.cryptax.model.TransactionStore;
+import bdn.cryptax.model.TransactionTable;
+import bdn.cryptax.model.TransactionView;
+import bdn.cryptax.model.UnrealizedCostBasisEntry;
+
+// Each TaxEngine phase on its own, fed with the results of the phases before it, plus the whole computation. Lives in the
+// controller package to reach the package-private phases.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PhaseBenchmark extends BenchmarkLedger {
+
+	private TaxEngine engine;
+	private TransactionStore tStore;
+	private TransactionSource tSource;
+	private String[] accts;
+	private Map<String, List<GainEntry>> geListMap;
+	private List<TransactionView> miningPurchases;
+
+
+	@Setup(Level.Trial)
+	public void computeInputs() throws ControllerException {
+		engine = new TaxEngine();
+		tStore = new TransactionTable();
+		tSource = Controller.readTransactions(new StringReader(csv), "benchmark ledger", tStore, new RejectionReport(0));
+		accts = tSource.getAccounts();
+		geListMap = engine.computeGains(CostBasisType.FIFO, tSource, null, null, null);
+
+		miningPurchases = new ArrayList<>();
+		for (TransactionView t : tSource.getAllTransactions()) {
+			if (t.getTxnType() == TransactionType.MNG_PURCHASE) {
+				miningPurchases.add(new Transaction(t));
+			}
+		}
+	}
+
+
+	@Benchmark
+	public String[] readTransactions() throws ControllerException, IOException {
+		try (TransactionStore table = new TransactionTable()) {
+			// sorting into accounts is part of reading a ledger
+			return Controller.readTransactions(new StringReader(csv), "benchmark ledger", table, new RejectionReport(0)).getAccounts();
+		}
+	}
+
+
+	@Benchmark
+	public Map<String, List<GainEntry>> computeGains() throws ControllerException {
+		return engine.computeGains(CostBasisType.FIFO, tSource, null, null, null);
+	}
+
+
+	@Benchmark
+	public UnrealizedCostBasisEntry computeUnrealizedCostBasis() throws ControllerException {
+		return TaxEngine.computeUnrealizedCostBasis(geListMap);
+	}
+
+
+	@Benchmark
+	public List<IncomeEntry> computeIncomeAndExpenses() throws ControllerException {
+		return TaxEngine.computeIncomeAndExpenses(tSource, accts, geListMap, null);
+	}
+
+
+	@Benchmark
+	public Map<Integer, Map<String, BigDecimal>> amortizeExpenses() throws TransactionException {
+		Map<Integer, Map<String, BigDecimal>> result = new HashMap<>();
+		for (TransactionView t : miningPurchases) {
+			LocalDate startDate = t.getTxnDttm().toLocalDate();
+			TaxEngine.amortizeExpenses(result, t.getTxnAcct(), startDate, t.getTermMos(), t.getCalculatedTxnUsdAmnt());
+		}
+		return result;
+	}
+
+
+	@Benchmark
+	public Map<String, List<MiningEntry>> computeMining() throws ControllerException {
+		return engine.computeMining(tSource, null);
+	}
+
+
+	@Benchmark
+	public TaxResult compute() throws ControllerException {
+		return engine.compute(tSource);
+	}
+
+
+	@TearDown(Level.Trial)
+	public void closeLedger() throws IOException {
+		tStore.close();
+	}
+
+}
@@ -1,28 +1,428 @@
 package bdn.cryptax;
 
+import java.io.File;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import bdn.cryptax.controller.BatchProcessor;
+import bdn.cryptax.controller.BatchProcessor.BatchResult;
 import bdn.cryptax.controller.Controller;
+import bdn.cryptax.controller.Controller.CostBasisType;
+import bdn.cryptax.controller.LedgerServer;
+import bdn.cryptax.controller.LedgerWatcher;
 import bdn.cryptax.controller.ControllerException;
+import bdn.cryptax.controller.GeneratorOptions;
+import bdn.cryptax.controller.LedgerGenerator;
+import bdn.cryptax.controller.LineageTrace;
+import bdn.cryptax.controller.Log;
+import bdn.cryptax.controller.ProcessOptions;
+import bdn.cryptax.controller.ProcessOptions.LedgerStorage;
+import bdn.cryptax.controller.RejectionReport.ReportFormat;
+import bdn.cryptax.controller.RunMetrics;
+import bdn.cryptax.model.ReportingPeriods.PeriodType;
 
 public class Main {
 
+	private static final String OPT_GZIP_OUTPUT = "--gzip-output";
+	private static final String OPT_COLUMNAR = "--columnar";
+	private static final String OPT_OFF_HEAP = "--off-heap";
+	private static final String OPT_HEAP_BUDGET_MB = "--heap-budget-mb";
+	private static final String OPT_TEMP_DIR = "--temp-dir";
+	private static final String OPT_REJECTION_FORMAT = "--rejection-format";
+	private static final String OPT_BATCH = "--batch";
+	private static final String OPT_WORKERS = "--workers";
+	private static final String OPT_SERVE = "--serve";
+	private static final String OPT_WATCH = "--watch";
+	private static final String OPT_METRICS = "--metrics";
+	private static final String OPT_JMX = "--jmx";
+	private static final String OPT_LINEAGE = "--lineage";
+	private static final String OPT_TRACE = "--trace";
+	private static final String OPT_TRANSFER_WINDOW_MINUTES = "--transfer-window-minutes";
+	private static final String OPT_TRANSFER_TOLERANCE = "--transfer-tolerance";
+	private static final String OPT_WHAT_IF = "--what-if";
+	private static final String OPT_SHORT_TERM_RATE = "--short-term-rate";
+	private static final String OPT_LONG_TERM_RATE = "--long-term-rate";
+	private static final String OPT_LONG_TERM_HORIZON_DAYS = "--long-term-horizon-days";
+	private static final String OPT_PERIODS = "--periods";
+	private static final String OPT_FISCAL_YEAR_START_MONTH = "--fiscal-year-start-month";
+	private static final String OPT_ROLLOVER = "--rollover";
+	private static final String OPT_ROLLOVER_DAYS = "--rollover-days";
+	private static final String OPT_LOG_LEVEL = "--log-level";
+	private static final String OPT_COST_BASIS = "--cost-basis";
+	private static final String OPT_LOT_DESIGNATIONS = "--lot-designations";
+	private static final String OPT_STABLECOINS = "--stablecoins";
+	private static final String OPT_STABLECOIN_CASH = "--stablecoin-cash";
+	private static final String OPT_DEPEG_TOLERANCE = "--depeg-tolerance";
+	private static final String OPT_GENERATE = "--generate";
+	private static final String OPT_ROWS = "--rows";
+	private static final String OPT_ACCOUNTS = "--accounts";
+	private static final String OPT_MINING_ACCOUNTS = "--mining-accounts";
+	private static final String OPT_TRADES_PER_DAY = "--trades-per-day";
+	private static final String OPT_TRANSFER_FRACTION = "--transfer-fraction";
+	private static final String OPT_FEE_FRACTION = "--fee-fraction";
+	private static final String OPT_CONTRACTS_PER_YEAR = "--contracts-per-year";
+	private static final String OPT_REINVEST_FRACTION = "--reinvest-fraction";
+	private static final String OPT_SEED = "--seed";
+
+
 	public static void main(String[] args) {
-		System.out.println("INFO: Cryptax STARTED");
+		Log.info("Cryptax STARTED");
+
+		String inFileName = null;
+		ProcessOptions options = new ProcessOptions();
+		boolean batch = false;
+		Integer servePort = null;
+		boolean watch = false;
+		boolean jmx = false;
+		Long traceRow = null;
+		String generateFileName = null;
+		GeneratorOptions generatorOptions = new GeneratorOptions();
+		int workers = Runtime.getRuntime().availableProcessors();
+		boolean validArgs = true;
+		for (int i = 0; i < args.length; i++) {
+			String arg = args[i];
+			if (arg.equals(OPT_GZIP_OUTPUT)) {
+				options.setCompressOutput(true);
+			}
+			else if (arg.equals(OPT_COLUMNAR)) {
+				options.setLedgerStorage(LedgerStorage.COLUMNAR);
+			}
+			else if (arg.equals(OPT_OFF_HEAP)) {
+				options.setLedgerStorage(LedgerStorage.OFF_HEAP);
+			}
+			else if (arg.equals(OPT_HEAP_BUDGET_MB) && i + 1 < args.length) {
+				try {
+					options.setHeapBudgetBytes(Long.parseLong(args[++i]) * 1024 * 1024);
+					options.setLedgerStorage(LedgerStorage.EXTERNAL_SORT);
+				}
+				catch (NumberFormatException exc) {
+					validArgs = false;
+				}
+			}
+			else if (arg.equals(OPT_TEMP_DIR) && i + 1 < args.length) {
+				options.setTempFolder(new File(args[++i]));
+			}
+			else if (arg.equals(OPT_REJECTION_FORMAT) && i + 1 < args.length) {
+				try {
+					options.setRejectionReportFormat(ReportFormat.valueOf(args[++i].toUpperCase()));
+				}
+				catch (IllegalArgumentException exc) {
+					validArgs = false;
+				}
+			}
+			else if (arg.equals(OPT_METRICS)) {
+				options.setMetricsReport(true);
+			}
+			else if (arg.equals(OPT_JMX)) {
+				jmx = true;
+			}
+			else if (arg.equals(OPT_LINEAGE)) {
+				options.setLineageReport(true);
+			}
+			else if (arg.equals(OPT_TRANSFER_WINDOW_MINUTES) && i + 1 < args.length) {
+				try {
+					options.setTransferWindowMinutes(Long.parseLong(args[++i]));
+				}
+				catch (NumberFormatException exc) {
+					validArgs = false;
+				}
+			}
+			else if (arg.equals(OPT_TRANSFER_TOLERANCE) && i + 1 < args.length) {
+				try {
+					options.setTransferTolerance(new BigDecimal(args[++i]));
+				}
+				catch (NumberFormatException exc) {
+					validArgs = false;
+				}
+			}
+			else if (arg.equals(OPT_WHAT_IF) && i + 1 < args.length) {
+				options.setWhatIfFile(new File(args[++i]));
+			}
+			else if (arg.equals(OPT_SHORT_TERM_RATE) && i + 1 < args.length) {
+				try {
+					options.setShortTermTaxRate(new BigDecimal(args[++i]));
+				}
+				catch (NumberFormatException exc) {
+					validArgs = false;
+				}
+			}
+			else if (arg.equals(OPT_LONG_TERM_RATE) && i + 1 < args.length) {
+				try {
+					options.setLongTermTaxRate(new BigDecimal(args[++i]));
+				}
+				catch (NumberFormatException exc) {
+					validArgs = false;
+				}
+			}
+			else if (arg.equals(OPT_LONG_TERM_HORIZON_DAYS) && i + 1 < args.length) {
+				try {
+					options.setLongTermHorizonDays(Integer.parseInt(args[++i]));
+				}
+				catch (NumberFormatException exc) {
+					validArgs = false;
+				}
+			}
+			else if (arg.equals(OPT_PERIODS) && i + 1 < args.length) {
+				try {
+					options.setReportingPeriod(PeriodType.valueOf(args[++i].toUpperCase()));
+				}
+				catch (IllegalArgumentException exc) {
+					validArgs = false;
+				}
+			}
+			else if (arg.equals(OPT_FISCAL_YEAR_START_MONTH) && i + 1 < args.length) {
+				try {
+					int month = Integer.parseInt(args[++i]);
+					if (month < 1 || month > 12) {
+						validArgs = false;
+					}
+					options.setFiscalYearStartMonth(month);
+				}
+				catch (NumberFormatException exc) {
+					validArgs = false;
+				}
+			}
+			else if (arg.equals(OPT_ROLLOVER)) {
+				options.setRolloverReport(true);
+			}
+			else if (arg.equals(OPT_ROLLOVER_DAYS) && i + 1 < args.length) {
+				try {
+					options.setRolloverDays(Integer.parseInt(args[++i]));
+				}
+				catch (NumberFormatException exc) {
+					validArgs = false;
+				}
+			}
+			else if (arg.equals(OPT_TRACE) && i + 1 < args.length) {
+				try {
+					traceRow = Long.parseLong(args[++i]);
+				}
+				catch (NumberFormatException exc) {
+					validArgs = false;
+				}
+			}
+			else if (arg.equals(OPT_COST_BASIS) && i + 1 < args.length) {
+				try {
+					options.setCostBasisType(CostBasisType.valueOf(args[++i].toUpperCase()));
+				}
+				catch (IllegalArgumentException exc) {
+					validArgs = false;
+				}
+			}
+			else if (arg.equals(OPT_LOT_DESIGNATIONS) && i + 1 < args.length) {
+				options.setLotDesignationFile(new File(args[++i]));
+			}
+			else if (arg.equals(OPT_STABLECOINS) && i + 1 < args.length) {
+				// comma-separated account names, e.g. USDC,USDT,DAI
+				options.setUsdStablecoins(new HashSet<>(Arrays.asList(args[++i].split("\\s*,\\s*"))));
+			}
+			else if (arg.equals(OPT_STABLECOIN_CASH)) {
+				options.setStablecoinCash(true);
+			}
+			else if (arg.equals(OPT_DEPEG_TOLERANCE) && i + 1 < args.length) {
+				try {
+					options.setStablecoinDepegTolerance(new BigDecimal(args[++i]));
+				}
+				catch (NumberFormatException exc) {
+					validArgs = false;
+				}
+			}
+			else if (arg.equals(OPT_LOG_LEVEL) && i + 1 < args.length) {
+				try {
+					Log.setLevel(Log.Level.valueOf(args[++i].toUpperCase()));
+				}
+				catch (IllegalArgumentException exc) {
+					validArgs = false;
+				}
+			}
+			else if (arg.equals(OPT_GENERATE) && i + 1 < args.length) {
+				generateFileName = args[++i];
+			}
+			else if (arg.equals(OPT_ROWS) && i + 1 < args.length) {
+				try {
+					generatorOptions.setRows(Long.parseLong(args[++i]));
+				}
+				catch (NumberFormatException exc) {
+					validArgs = false;
+				}
+			}
+			else if (arg.equals(OPT_ACCOUNTS) && i + 1 < args.length) {
+				try {
+					generatorOptions.setAccounts(Integer.parseInt(args[++i]));
+				}
+				catch (NumberFormatException exc) {
+					validArgs = false;
+				}
+			}
+			else if (arg.equals(OPT_MINING_ACCOUNTS) && i + 1 < args.length) {
+				try {
+					generatorOptions.setMiningAccounts(Integer.parseInt(args[++i]));
+				}
+				catch (NumberFormatException exc) {
+					validArgs = false;
+				}
+			}
+			else if (arg.equals(OPT_TRADES_PER_DAY) && i + 1 < args.length) {
+				try {
+					generatorOptions.setTradesPerDay(Double.parseDouble(args[++i]));
+				}
+				catch (NumberFormatException exc) {
+					validArgs = false;
+				}
+			}
+			else if (arg.equals(OPT_TRANSFER_FRACTION) && i + 1 < args.length) {
+				try {
+					generatorOptions.setTransferFraction(Double.parseDouble(args[++i]));
+				}
+				catch (NumberFormatException exc) {
+					validArgs = false;
+				}
+			}
+			else if (arg.equals(OPT_FEE_FRACTION) && i + 1 < args.length) {
+				try {
+					generatorOptions.setFeeFraction(Double.parseDouble(args[++i]));
+				}
+				catch (NumberFormatException exc) {
+					validArgs = false;
+				}
+			}
+			else if (arg.equals(OPT_CONTRACTS_PER_YEAR) && i + 1 < args.length) {
+				try {
+					generatorOptions.setContractsPerYear(Double.parseDouble(args[++i]));
+				}
+				catch (NumberFormatException exc) {
+					validArgs = false;
+				}
+			}
+			else if (arg.equals(OPT_REINVEST_FRACTION) && i + 1 < args.length) {
+				try {
+					generatorOptions.setReinvestFraction(Double.parseDouble(args[++i]));
+				}
+				catch (NumberFormatException exc) {
+					validArgs = false;
+				}
+			}
+			else if (arg.equals(OPT_SEED) && i + 1 < args.length) {
+				try {
+					generatorOptions.setSeed(Long.parseLong(args[++i]));
+				}
+				catch (NumberFormatException exc) {
+					validArgs = false;
+				}
+			}
+			else if (arg.equals(OPT_WATCH)) {
+				watch = true;
+			}
+			else if (arg.equals(OPT_BATCH)) {
+				batch = true;
+			}
+			else if (arg.equals(OPT_SERVE) && i + 1 < args.length) {
+				try {
+					servePort = Integer.parseInt(args[++i]);
+				}
+				catch (NumberFormatException exc) {
+					validArgs = false;
+				}
+			}
+			else if (arg.equals(OPT_WORKERS) && i + 1 < args.length) {
+				try {
+					workers = Integer.parseInt(args[++i]);
+				}
+				catch (NumberFormatException exc) {
+					validArgs = false;
+				}
+			}
+			else if (inFileName == null && !arg.startsWith("--")) {
+				inFileName = arg;
+			}
+			else {
+				validArgs = false;
+			}
+		}
+
+		if (validArgs && jmx) {
+			try {
+				RunMetrics.registerMBeans();
+			}
+			catch (ControllerException exc) {
+				Log.error("" + exc.getMessage());
+			}
+		}
 
-		if (args.length == 1) {
-			String inFileName = args[0];
-			
+		if (validArgs && generateFileName != null && servePort == null && inFileName == null) {
 			try {
-				Controller.process(inFileName);
+				new LedgerGenerator(generatorOptions).generate(new File(generateFileName));
 			}
 			catch (ControllerException exc) {
-				System.err.println("ERROR: " + exc.getMessage());
+				Log.error("" + exc.getMessage());
+			}
+		}
+		else if (validArgs && generateFileName == null && servePort != null && inFileName == null) {
+			try {
+				// workers is the number of request threads
+				LedgerServer server = new LedgerServer(options, LedgerServer.DEFAULT_MAX_LEDGERS, LedgerServer.DEFAULT_MAX_ACCOUNTS);
+				server.start(servePort, workers);
+				server.awaitStop();
+			}
+			catch (ControllerException exc) {
+				Log.error("" + exc.getMessage());
+			}
+			catch (InterruptedException exc) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		else if (validArgs && traceRow != null && generateFileName == null && servePort == null && inFileName != null) {
+			try {
+				// the input file is a lineage file written with --lineage
+				LineageTrace.trace(new File(inFileName), traceRow);
+			}
+			catch (ControllerException exc) {
+				Log.error("" + exc.getMessage());
+			}
+		}
+		else if (validArgs && generateFileName == null && servePort == null && inFileName != null) {
+			try {
+				if (watch) {
+					// the input file is a ledger or a folder of ledgers, recomputed whenever they change
+					new LedgerWatcher(options, new File(inFileName)).run();
+				}
+				else if (batch) {
+					// the input file is a manifest listing one ledger per line
+					long startMillis = System.currentTimeMillis();
+					File manifestFile = new File(inFileName);
+					List<BatchResult> results = new BatchProcessor(options, workers).process(BatchProcessor.readManifest(manifestFile));
+					BatchProcessor.writeSummary(results, manifestFile, System.currentTimeMillis() - startMillis);
+				}
+				else {
+					Controller.process(inFileName, options);
+				}
+			}
+			catch (ControllerException exc) {
+				Log.error("" + exc.getMessage());
 			}
 		}
 		else {
-			System.err.println("ERROR: Usage: {java-main} src-file");
+			Log.error("Usage: {java-main} [" + OPT_GZIP_OUTPUT + "] [" + OPT_COLUMNAR + "|" + OPT_OFF_HEAP + "|" + OPT_HEAP_BUDGET_MB + " mb] [" +
+					OPT_TEMP_DIR + " dir] [" + OPT_REJECTION_FORMAT + " json|csv] [" + OPT_COST_BASIS + " fifo|average_cost|share_matching|specific_id [" +
+					OPT_LOT_DESIGNATIONS + " file]] [" + OPT_STABLECOINS + " list] [" +
+					OPT_STABLECOIN_CASH + " [" + OPT_DEPEG_TOLERANCE + " x]] [" + OPT_METRICS + "] [" + OPT_LINEAGE + "] [" +
+					OPT_TRANSFER_WINDOW_MINUTES + " n] [" + OPT_TRANSFER_TOLERANCE + " x] [" + OPT_WHAT_IF + " scenario-file [" + OPT_SHORT_TERM_RATE + " x] [" +
+					OPT_LONG_TERM_RATE + " x] [" + OPT_LONG_TERM_HORIZON_DAYS + " n]] [" + OPT_PERIODS + " year|quarter|month [" +
+					OPT_FISCAL_YEAR_START_MONTH + " n]] [" + OPT_ROLLOVER + " [" + OPT_ROLLOVER_DAYS + " n]] [" + OPT_JMX + "] [" + OPT_LOG_LEVEL + " debug|info|error] [" +
+					OPT_WORKERS + " n] [" + OPT_BATCH + "|" + OPT_WATCH + "] src-file[.gz]|manifest-file|src-folder" +
+					System.lineSeparator() + "       {java-main} " + OPT_TRACE + " row lineage-file[.gz]" +
+					System.lineSeparator() + "       {java-main} " + OPT_SERVE + " port [" + OPT_WORKERS + " n] [options]" +
+					System.lineSeparator() + "       {java-main} " + OPT_GENERATE + " out-file[.gz] [" + OPT_ROWS + " n] [" + OPT_ACCOUNTS + " n] [" +
+					OPT_MINING_ACCOUNTS + " n] [" + OPT_TRADES_PER_DAY + " x] [" + OPT_TRANSFER_FRACTION + " x] [" + OPT_FEE_FRACTION + " x] [" +
+					OPT_CONTRACTS_PER_YEAR + " x] [" + OPT_REINVEST_FRACTION + " x] [" + OPT_SEED + " n]" +
+					System.lineSeparator() + "  " + OPT_STABLECOIN_CASH + ": stablecoin accounts priced within the depeg tolerance of 1 USD get no " +
+					"lots, so their gains and losses inside the tolerance are left out of the income report and the unrealized cost basis");
 		}
-		
-		System.out.println("INFO: Cryptax EXITED");
+
+		Log.info("Cryptax EXITED");
+		Log.close();
 	}
 
 }
@@ -0,0 +1,48 @@
+package bdn.cryptax.controller;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+// Flight recorder event spanning one account within the gains or mining phase
+@Name("bdn.cryptax.AccountPhase")
+@Label("Tax Phase Account")
+@Category("Cryptax")
+@Description("One account within a phase of a ledger computation")
+public class AccountPhaseEvent extends Event {
+
+	@Label("Phase")
+	String phase;
+
+	@Label("Account")
+	String account;
+
+	@Label("Cached")
+	@Description("The account's results were reused from the result cache")
+	boolean cached;
+
+	@Label("Rows")
+	@Description("Ledger rows matched against lots; gains phase only")
+	long rows;
+
+	@Label("Entries")
+	long entries;
+
+	@Label("Disposals")
+	@Description("Disposals, transfers and mining purchases matched against lots; gains phase only")
+	long disposals;
+
+	@Label("Lots Consumed")
+	long lotsConsumed;
+
+	@Label("Longest Match Chain")
+	@Description("Most lots consumed by one disposal")
+	long maxChainLots;
+
+	@Label("Long Match Chains")
+	@Description("Disposals that consumed at least " + FifoChainEvent.LONG_CHAIN_LOTS + " lots")
+	long longChains;
+
+}
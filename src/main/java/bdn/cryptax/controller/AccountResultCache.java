@@ -0,0 +1,104 @@
+package bdn.cryptax.controller;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import bdn.cryptax.model.CapitalGainEntry;
+import bdn.cryptax.model.GainEntry;
+import bdn.cryptax.model.GainLineage;
+import bdn.cryptax.model.MiningEntry;
+
+// Per-account gain and mining results keyed by the TransactionFingerprint of the account's transactions, so a
+// recomputation only redoes the accounts whose transactions changed. The cached lists are shared between computations,
+// so they must be unmodifiable. A cache must only be used by engines of the same configuration.
+// Fingerprints leave out ledger row ids, so an account's rows may have moved (e.g., after a row was inserted above them)
+// since its gains were cached; the gains are kept with the row ids they were computed from and re-stamped on a hit.
+public class AccountResultCache {
+
+	private final LruCache<String, CachedGains> gainsCache;
+	private final LruCache<String, List<MiningEntry>> miningCache;
+
+
+	public AccountResultCache(int maxAccounts) {
+		gainsCache = new LruCache<>(maxAccounts);
+		miningCache = new LruCache<>(maxAccounts);
+	}
+
+
+	// rowIds: the row ids of the account's transactions in processing order, as they are now
+	public List<GainEntry> getGains(String fingerprint, long[] rowIds) {
+		CachedGains cached = gainsCache.get(fingerprint);
+		if (cached == null || cached.rowIds.length != rowIds.length) {
+			return null;
+		}
+		if (Arrays.equals(cached.rowIds, rowIds)) {
+			return cached.geList;
+		}
+
+		// the same transactions in the same order, so row ids map by position
+		Map<Long, Long> oldToNewRowId = new HashMap<>();
+		for (int i = 0; i < rowIds.length; i++) {
+			oldToNewRowId.put(cached.rowIds[i], rowIds[i]);
+		}
+		List<GainEntry> result = new ArrayList<>(cached.geList.size());
+		for (GainEntry ge : cached.geList) {
+			if (ge instanceof CapitalGainEntry) {
+				CapitalGainEntry cge = (CapitalGainEntry) ge;
+				ge = cge.withRowIds(getNewRowId(oldToNewRowId, cge.getDispRowId()), getNewRowId(oldToNewRowId, cge.getAcqRowId()));
+			}
+			result.add(ge);
+		}
+		result = Collections.unmodifiableList(result);
+		gainsCache.put(fingerprint, new CachedGains(result, rowIds));
+		return result;
+	}
+
+
+	private static long getNewRowId(Map<Long, Long> oldToNewRowId, long rowId) {
+		Long result = (rowId != GainLineage.POOLED_ROW_ID) ? oldToNewRowId.get(rowId) : null;
+		return (result != null) ? result : rowId;
+	}
+
+
+	// rowIds: the row ids of the account's transactions in processing order, which the gains refer to
+	public void putGains(String fingerprint, List<GainEntry> geList, long[] rowIds) {
+		gainsCache.put(fingerprint, new CachedGains(geList, rowIds));
+	}
+
+
+	public List<MiningEntry> getMining(String fingerprint) {
+		return miningCache.get(fingerprint);
+	}
+
+
+	public void putMining(String fingerprint, List<MiningEntry> meList) {
+		miningCache.put(fingerprint, meList);
+	}
+
+
+	public LruCache<String, ?> getGainsCache() {
+		return gainsCache;
+	}
+
+
+	public LruCache<String, List<MiningEntry>> getMiningCache() {
+		return miningCache;
+	}
+
+
+	private static class CachedGains {
+
+		private final List<GainEntry> geList;
+		private final long[] rowIds;
+
+		CachedGains(List<GainEntry> geList, long[] rowIds) {
+			this.geList = geList;
+			this.rowIds = rowIds;
+		}
+	}
+
+}
@@ -0,0 +1,203 @@
+package bdn.cryptax.controller;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+
+import bdn.cryptax.model.Transaction.TransactionType;
+import bdn.cryptax.model.TransactionSource;
+import bdn.cryptax.model.TransactionView;
+
+// Running balances of every account, and of every broker within an account (by Src and Dest), over the ledger in time
+// order. Every row that takes a balance below zero is recorded as a shortfall with its deficit, and the balance is then
+// continued from zero, as if the missing coins had been acquired just before; so a single linear pass finds every gap,
+// and the deficits add up to the coins missing from the ledger. Account shortfalls are the ones gains computation
+// fails on; broker shortfalls only point at missing transfers.
+public class BalanceReconciliation {
+
+	private static final BigDecimal THRESHOLD_DECIMAL_EQUALING_ZERO = new BigDecimal("0.000000000000000000000001");
+	private static final String COL_ACCT = "Acct";
+	private static final String COL_BROKER = "Broker";
+	private static final String COL_ROW = "Record #";
+	private static final String COL_DTTM = "UTC Dttm";
+	private static final String COL_TYPE = "Txn Type";
+	private static final String COL_DEFICIT = "Deficit COIN";
+
+	private final Map<String, Balance> acctToBalance = new HashMap<>();
+	private final Map<String, Map<String, Balance>> acctToBrokerToBalance = new HashMap<>();
+	private final List<Shortfall> shortfalls = new ArrayList<>();
+	private long accountShortfallCount = 0;
+
+
+	private BalanceReconciliation() {
+	}
+
+
+	public static BalanceReconciliation run(TransactionSource tSource) {
+		BalanceReconciliation result = new BalanceReconciliation();
+		for (TransactionView t : tSource.getAllTransactions()) {
+			result.apply(t);
+		}
+		return result;
+	}
+
+
+	private void apply(TransactionView t) {
+		TransactionType tType = t.getTxnType();
+		String acct = t.getTxnAcct();
+		BigDecimal coinAmnt = (t.getTxnCoinAmnt() != null) ? t.getTxnCoinAmnt() : BigDecimal.ZERO;
+		BigDecimal feeCoin = (t.getTxnFeeCoin() != null) ? t.getTxnFeeCoin() : BigDecimal.ZERO;
+
+		if (tType == TransactionType.ACQUIRE || tType == TransactionType.INCOME || tType == TransactionType.MNG_INCOME) {
+			credit(getAccountBalance(acct), coinAmnt);
+			credit(getBrokerBalance(acct, t.getTxnDest()), coinAmnt);
+		}
+		else if (tType == TransactionType.TRANSFER) {
+			// the account only loses the fee; the source broker also loses the coins moved to the destination
+			debit(getAccountBalance(acct), feeCoin, t, acct, null);
+			debit(getBrokerBalance(acct, t.getTxnSrc()), coinAmnt.add(feeCoin), t, acct, getBroker(t.getTxnSrc()));
+			credit(getBrokerBalance(acct, t.getTxnDest()), coinAmnt);
+		}
+		else if (tType == TransactionType.DISPOSE || tType == TransactionType.MNG_PURCHASE || tType == TransactionType.MNG_REINVEST) {
+			BigDecimal spentCoinAmnt = coinAmnt.add(feeCoin);
+			debit(getAccountBalance(acct), spentCoinAmnt, t, acct, null);
+			debit(getBrokerBalance(acct, t.getTxnSrc()), spentCoinAmnt, t, acct, getBroker(t.getTxnSrc()));
+		}
+	}
+
+
+	private static void credit(Balance balance, BigDecimal coinAmnt) {
+		balance.amount = balance.amount.add(coinAmnt);
+	}
+
+
+	// broker: null when balance is the account's own
+	private void debit(Balance balance, BigDecimal coinAmnt, TransactionView t, String acct, String broker) {
+		if (coinAmnt.signum() == 0) {
+			return;
+		}
+		balance.amount = balance.amount.subtract(coinAmnt);
+		if (balance.amount.compareTo(THRESHOLD_DECIMAL_EQUALING_ZERO.negate()) < 0) {
+			shortfalls.add(new Shortfall(acct, broker, t.getTxnRowId(), t.getTxnDttm(), t.getTxnType(), balance.amount.negate()));
+			if (broker == null) {
+				accountShortfallCount++;
+			}
+			balance.amount = BigDecimal.ZERO;
+		}
+	}
+
+
+	private Balance getAccountBalance(String acct) {
+		return acctToBalance.computeIfAbsent(acct, k -> new Balance());
+	}
+
+
+	private Balance getBrokerBalance(String acct, String broker) {
+		return acctToBrokerToBalance.computeIfAbsent(acct, k -> new HashMap<>()).computeIfAbsent(getBroker(broker), k -> new Balance());
+	}
+
+
+	// rows without a broker share the "" broker
+	private static String getBroker(String broker) {
+		return (broker == null) ? "" : broker.trim();
+	}
+
+
+	// Shortfalls in ledger time order
+	public List<Shortfall> getShortfalls() {
+		return shortfalls;
+	}
+
+
+	public long getAccountShortfallCount() {
+		return accountShortfallCount;
+	}
+
+
+	public long getBrokerShortfallCount() {
+		return shortfalls.size() - accountShortfallCount;
+	}
+
+
+	public void write(File outputFile) throws ControllerException {
+		try (Writer writer = LedgerStreams.openWriter(outputFile)) {
+			CSVPrinter printer = new CSVPrinter(writer, CSVFormat.EXCEL);
+			printer.printRecord(COL_ACCT, COL_BROKER, COL_ROW, COL_DTTM, COL_TYPE, COL_DEFICIT);
+			for (Shortfall s : shortfalls) {
+				printer.printRecord(s.getAcct(), (s.getBroker() != null) ? s.getBroker() : "", s.getRowId(), s.getDttm(),
+						s.getTxnType(), s.getDeficit().toPlainString());
+			}
+			printer.flush();
+		}
+		catch (IOException exc) {
+			throw new ControllerException("Could not write shortfall report " + outputFile.getAbsolutePath() + ": " + exc.getMessage());
+		}
+	}
+
+
+	private static class Balance {
+		private BigDecimal amount = BigDecimal.ZERO;
+	}
+
+
+	public static class Shortfall {
+
+		private final String acct;
+		private final String broker;
+		private final long rowId;
+		private final LocalDateTime dttm;
+		private final TransactionType txnType;
+		private final BigDecimal deficit;
+
+		public Shortfall(String acct, String broker, long rowId, LocalDateTime dttm, TransactionType txnType, BigDecimal deficit) {
+			this.acct = acct;
+			this.broker = broker;
+			this.rowId = rowId;
+			this.dttm = dttm;
+			this.txnType = txnType;
+			this.deficit = deficit;
+		}
+
+		public String getAcct() {
+			return acct;
+		}
+
+		// null for a shortfall of the account's own balance
+		public String getBroker() {
+			return broker;
+		}
+
+		public long getRowId() {
+			return rowId;
+		}
+
+		public LocalDateTime getDttm() {
+			return dttm;
+		}
+
+		public TransactionType getTxnType() {
+			return txnType;
+		}
+
+		// the coins missing for the row's balance to stay at zero
+		public BigDecimal getDeficit() {
+			return deficit;
+		}
+
+		@Override
+		public String toString() {
+			return "account " + acct + ((broker != null) ? " at broker " + broker : "") + " short by " + deficit.toPlainString() +
+					" coins at Transaction dttm " + dttm + " (record #" + rowId + ")";
+		}
+	}
+
+}
@@ -0,0 +1,219 @@
+package bdn.cryptax.controller;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+
+// Processes the ledgers listed in a manifest concurrently in one JVM. Each ledger is processed exactly as by
+// Controller.process, and a failing ledger is recorded in the summary without affecting the others.
+public class BatchProcessor {
+
+	public static enum BatchStatus {
+		SUCCEEDED, FAILED
+	}
+
+	public static final String OUTPUT_BATCH = "batch";
+	private static final String COL_LEDGER = "Ledger";
+	private static final String COL_STATUS = "Status";
+	private static final String COL_MILLIS = "Millis";
+	private static final String COL_ERROR = "Error";
+
+	private final ProcessOptions options;
+	private final int workers;
+
+
+	// workers: maximum number of ledgers processed at the same time
+	public BatchProcessor(ProcessOptions options, int workers) {
+		this.options = options;
+		this.workers = Math.max(1, workers);
+	}
+
+
+	// One ledger path per line; blank lines and lines starting with # are ignored, relative paths are resolved against
+	// the manifest's folder
+	public static List<String> readManifest(File manifestFile) throws ControllerException {
+		File folder = manifestFile.getAbsoluteFile().getParentFile();
+		List<String> result = new ArrayList<>();
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(Files.newInputStream(manifestFile.toPath()),
+				StandardCharsets.UTF_8))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				line = line.trim();
+				if (line.isEmpty() || line.startsWith("#")) {
+					continue;
+				}
+				File ledgerFile = new File(line);
+				if (!ledgerFile.isAbsolute()) {
+					ledgerFile = new File(folder, line);
+				}
+				result.add(ledgerFile.getPath());
+			}
+		}
+		catch (IOException exc) {
+			throw new ControllerException("Could not read manifest " + manifestFile.getAbsolutePath() + ": " + exc.getMessage());
+		}
+		return result;
+	}
+
+
+	public List<BatchResult> process(List<String> ledgerFileNames) throws ControllerException {
+		if (ledgerFileNames == null) {
+			throw new ControllerException("Ledger list is null");
+		}
+
+		ExecutorService executor = createExecutor();
+		// bounds the concurrency of virtual threads (a fixed pool is bounded by itself)
+		Semaphore permits = new Semaphore(workers);
+		List<Future<BatchResult>> futures = new ArrayList<>();
+		try {
+			for (String ledgerFileName : ledgerFileNames) {
+				futures.add(executor.submit(() -> {
+					permits.acquire();
+					try {
+						return processLedger(ledgerFileName);
+					}
+					finally {
+						permits.release();
+					}
+				}));
+			}
+
+			List<BatchResult> result = new ArrayList<>();
+			for (int i = 0; i < futures.size(); i++) {
+				try {
+					result.add(futures.get(i).get());
+				}
+				catch (ExecutionException exc) {
+					// processLedger records failures itself; this only happens on interruption of a worker
+					result.add(new BatchResult(ledgerFileNames.get(i), BatchStatus.FAILED, 0, String.valueOf(exc.getCause())));
+				}
+			}
+			return result;
+		}
+		catch (InterruptedException exc) {
+			Thread.currentThread().interrupt();
+			throw new ControllerException("Batch processing was interrupted");
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+
+
+	private BatchResult processLedger(String ledgerFileName) {
+		long startNanos = System.nanoTime();
+		BatchStatus status = BatchStatus.SUCCEEDED;
+		String error = null;
+		try {
+			Controller.process(ledgerFileName, options);
+		}
+		catch (ControllerException exc) {
+			status = BatchStatus.FAILED;
+			error = exc.getMessage();
+		}
+		catch (RuntimeException exc) {
+			status = BatchStatus.FAILED;
+			error = exc.toString();
+		}
+		long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+		if (status == BatchStatus.FAILED) {
+			Log.error("Batch ledger " + ledgerFileName + " failed: " + error);
+		}
+		return new BatchResult(ledgerFileName, status, millis, error);
+	}
+
+
+	// virtual threads on runtimes that have them (looked up reflectively, as the build targets an older release)
+	private ExecutorService createExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		}
+		catch (ReflectiveOperationException exc) {
+			return Executors.newFixedThreadPool(workers);
+		}
+	}
+
+
+	// Writes the summary next to the manifest and returns its file
+	public static File writeSummary(List<BatchResult> results, File manifestFile, long totalMillis) throws ControllerException {
+		File folder = manifestFile.getAbsoluteFile().getParentFile();
+		String fileBaseName = manifestFile.getName();
+		if (fileBaseName.lastIndexOf('.') > 0) {
+			fileBaseName = fileBaseName.substring(0, fileBaseName.lastIndexOf('.'));
+		}
+		String now = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMddHHmmss"));
+		File outputFile = new File(folder, fileBaseName + "_" + OUTPUT_BATCH + "_" + now + ".csv");
+		if (outputFile.exists()) {
+			throw new ControllerException("Could not write to output file "+outputFile.getAbsolutePath()+" as it already exists");
+		}
+
+		int failed = 0;
+		try {
+			CSVPrinter printer = new CSVPrinter(LedgerStreams.openWriter(outputFile), CSVFormat.EXCEL);
+			printer.printRecord(COL_LEDGER, COL_STATUS, COL_MILLIS, COL_ERROR);
+			for (BatchResult r : results) {
+				printer.printRecord(r.getLedgerFileName(), r.getStatus(), r.getMillis(), r.getError() == null ? "" : r.getError());
+				if (r.getStatus() == BatchStatus.FAILED) {
+					failed++;
+				}
+			}
+			printer.close(true);
+		}
+		catch (IOException ioExc) {
+			throw new ControllerException(ioExc.getMessage());
+		}
+
+		Log.info("Batch processed " + results.size() + " ledgers (" + failed + " failed) in " + totalMillis + " ms; summary " +
+				outputFile.getAbsolutePath());
+		return outputFile;
+	}
+
+
+	public static class BatchResult {
+
+		private final String ledgerFileName;
+		private final BatchStatus status;
+		private final long millis;
+		private final String error;
+
+		public BatchResult(String ledgerFileName, BatchStatus status, long millis, String error) {
+			this.ledgerFileName = ledgerFileName;
+			this.status = status;
+			this.millis = millis;
+			this.error = error;
+		}
+
+		public String getLedgerFileName() {
+			return ledgerFileName;
+		}
+
+		public BatchStatus getStatus() {
+			return status;
+		}
+
+		public long getMillis() {
+			return millis;
+		}
+
+		public String getError() {
+			return error;
+		}
+	}
+
+}
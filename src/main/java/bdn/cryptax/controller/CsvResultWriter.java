@@ -0,0 +1,491 @@
+package bdn.cryptax.controller;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+
+import bdn.cryptax.model.GainEntry;
+import bdn.cryptax.model.GainLineage;
+import bdn.cryptax.model.IncomeEntry;
+import bdn.cryptax.model.MiningEntry;
+import bdn.cryptax.model.PeriodIncome;
+import bdn.cryptax.model.PeriodIncome.Category;
+import bdn.cryptax.model.ReportingPeriods;
+import bdn.cryptax.model.UnrealizedCostBasisEntry;
+
+// Writes each result to its own CSV file (optionally gzip-compressed) in the output folder, named after the ledger
+public class CsvResultWriter implements TaxResultSink {
+	
+	public static final String OUTPUT_COST_BASIS = "cb";
+	public static final String OUTPUT_UNREALIZED_COST_BASIS = "ucb";
+	public static final String OUTPUT_INCOME = "inc";
+	public static final String OUTPUT_PERIOD_INCOME = "est";
+	public static final String OUTPUT_MINING = "min";
+	public static final String OUTPUT_LINEAGE = "lin";
+	private static final CSVFormat CSV_FORMAT = CSVFormat.EXCEL;
+	
+	private final File folder;
+	private final String fileBaseName;
+	private final String timestamp;
+	private final String outFileExt;
+	private final Set<String> usdStablecoins;
+	// also writes each account's gain lineage (see GainLineage) next to its gains
+	private boolean writeLineage = false;
+	// files written so far, keyed by output kind (and account, e.g., "cb:BTC")
+	private final Map<String, File> outputFiles = new LinkedHashMap<>();
+	
+	
+	public CsvResultWriter(File folder, String fileBaseName, String timestamp, boolean compressOutput, Set<String> usdStablecoins) {
+		this.folder = folder;
+		this.fileBaseName = fileBaseName;
+		this.timestamp = timestamp;
+		this.outFileExt = compressOutput ? ".csv." + LedgerStreams.EXT_GZIP : ".csv";
+		this.usdStablecoins = usdStablecoins;
+	}
+	
+	
+	public Map<String, File> getOutputFiles() {
+		return outputFiles;
+	}
+	
+	
+	public void setWriteLineage(boolean writeLineage) {
+		this.writeLineage = writeLineage;
+	}
+	
+	
+	@Override
+	public void acceptGainEntries(String acct, List<GainEntry> geList) throws ControllerException {
+		if (usdStablecoins.contains(acct)) {
+			Log.info("Skipping writing gains for account "+acct+" because acct considered USD-STABLECOIN");
+			return;
+		}
+		if (geList == null || geList.isEmpty()) {
+			Log.error("Skipping writing gains for account "+acct+" because ge list was null/empty");
+			return;
+		}
+		
+		String outFileNameCostBasis = fileBaseName + "_" + OUTPUT_COST_BASIS + "_" + (acct.equals("") ? "" : acct + "_") + timestamp + outFileExt;
+		File outputFileCostBasis = new File(folder, outFileNameCostBasis);
+		writeGainEntries(geList, outputFileCostBasis);
+		outputFiles.put(OUTPUT_COST_BASIS + ":" + acct, outputFileCostBasis);
+		Log.info("Wrote "+geList.size()+" gains entries to "+outputFileCostBasis.getAbsolutePath());
+		
+		if (writeLineage) {
+			String outFileNameLineage = fileBaseName + "_" + OUTPUT_LINEAGE + "_" + (acct.equals("") ? "" : acct + "_") + timestamp + outFileExt;
+			File outputFileLineage = new File(folder, outFileNameLineage);
+			GainLineage lineage = GainLineage.of(geList);
+			writeLineage(lineage, outputFileLineage);
+			outputFiles.put(OUTPUT_LINEAGE + ":" + acct, outputFileLineage);
+			Log.info("Wrote "+lineage.size()+" lineage edges to "+outputFileLineage.getAbsolutePath());
+		}
+	}
+	
+	
+	@Override
+	public void acceptUnrealizedCostBasis(UnrealizedCostBasisEntry ucbe) throws ControllerException {
+		String outFileNameUnrealizedCostBasis = fileBaseName + "_" + OUTPUT_UNREALIZED_COST_BASIS + "_" + timestamp + outFileExt;
+		File outFileUnrealizedCostBasis = new File(folder, outFileNameUnrealizedCostBasis);
+		writeUnrealizedCostBasis(ucbe, outFileUnrealizedCostBasis);
+		if (outFileUnrealizedCostBasis.exists()) {
+			outputFiles.put(OUTPUT_UNREALIZED_COST_BASIS, outFileUnrealizedCostBasis);
+		}
+		Log.info("Wrote unrealized cost basis to "+outFileUnrealizedCostBasis.getAbsolutePath());
+	}
+	
+	
+	@Override
+	public void acceptIncomeEntries(List<IncomeEntry> ieList) throws ControllerException {
+		String outFileNameIncome = fileBaseName + "_" + OUTPUT_INCOME + "_" + timestamp + outFileExt;
+		File outputFileIncome = new File(folder, outFileNameIncome);
+		writeIncomeEntries(ieList, outputFileIncome);
+		outputFiles.put(OUTPUT_INCOME, outputFileIncome);
+		Log.info("Wrote "+ieList.size()+" income entries to "+outputFileIncome.getAbsolutePath());
+	}
+	
+	
+	@Override
+	public void acceptPeriodIncome(PeriodIncome periodIncome) throws ControllerException {
+		String outFileNamePeriodIncome = fileBaseName + "_" + OUTPUT_PERIOD_INCOME + "_" + timestamp + outFileExt;
+		File outputFilePeriodIncome = new File(folder, outFileNamePeriodIncome);
+		writePeriodIncome(periodIncome, outputFilePeriodIncome);
+		outputFiles.put(OUTPUT_PERIOD_INCOME, outputFilePeriodIncome);
+		Log.info("Wrote "+periodIncome.getPeriods().length+" periods of income to "+outputFilePeriodIncome.getAbsolutePath());
+	}
+	
+	
+	@Override
+	public void acceptMiningEntries(String acct, List<MiningEntry> meList) throws ControllerException {
+		if (meList == null || meList.isEmpty()) {
+			Log.error("Skipping writing mining for account "+acct+" because me list was null/empty");
+			return;
+		}
+		
+		String outFileNameMining = fileBaseName + "_" + OUTPUT_MINING + "_" + (acct.equals("") ? "" : acct + "_") + timestamp + outFileExt;
+		File outputFileMining = new File(folder, outFileNameMining);
+		writeMiningEntries(meList, outputFileMining);
+		outputFiles.put(OUTPUT_MINING + ":" + acct, outputFileMining);
+		Log.info("Wrote "+meList.size()+" mining entries to "+outputFileMining.getAbsolutePath());
+	}
+	
+	
+	private static void writeGainEntries(List<GainEntry> geList, File outputFile) throws ControllerException {
+		if (geList == null || outputFile == null) {
+			throw new ControllerException("Gain entries or output file is null");
+		}
+		if (outputFile.exists()) {
+			throw new ControllerException("Could not write to output file "+outputFile.getAbsolutePath()+" as it already exists");
+		}
+		
+		try {
+			CSVPrinter printer = new CSVPrinter(LedgerStreams.openWriter(outputFile), CSV_FORMAT);
+			
+			printer.printRecord(
+					GainEntry.COL_TAX_YEAR,
+					GainEntry.COL_TERM,
+					GainEntry.COL_DATE_ACQ,
+					GainEntry.COL_DATE_DISP,
+					GainEntry.COL_BRKR_ACQ,
+					GainEntry.COL_BRKR_DISP,
+					GainEntry.COL_ASSET_AMNT,
+					GainEntry.COL_PROCEEDS,
+					GainEntry.COL_COST_BASIS,
+					GainEntry.COL_GAIN);
+			
+			for (GainEntry ge : geList) {
+				printer.printRecord(
+						ge.getTaxYearStr(),
+						ge.getTermStr(),
+						ge.getDateAcquiredStr(),
+						ge.getDateDisposedStr(),
+						ge.getBrokerAcquiredStr(),
+						ge.getBrokerDisposedStr(),
+						ge.getAssetAmntStr(),
+						ge.getProceedsStr(),
+						ge.getCostBasisStr(),
+						ge.getGainStr());
+			}
+			
+			printer.close(true);
+		}
+		catch (IOException ioExc) {
+			throw new ControllerException(ioExc.getMessage());
+		}
+	}
+	
+	
+	private static void writeLineage(GainLineage lineage, File outputFile) throws ControllerException {
+		if (outputFile.exists()) {
+			throw new ControllerException("Could not write to output file "+outputFile.getAbsolutePath()+" as it already exists");
+		}
+		
+		try {
+			CSVPrinter printer = new CSVPrinter(LedgerStreams.openWriter(outputFile), CSV_FORMAT);
+			printer.printRecord(GainLineage.COL_DISP_ROW, GainLineage.COL_ACQ_ROW, GainLineage.COL_COIN_AMNT);
+			for (int edge = 0; edge < lineage.size(); edge++) {
+				long acqRowId = lineage.getAcqRowId(edge);
+				printer.printRecord(
+						lineage.getDispRowId(edge),
+						(acqRowId == GainLineage.POOLED_ROW_ID) ? "" : acqRowId,
+						lineage.getCoinAmnt(edge).toPlainString());
+			}
+			printer.close(true);
+		}
+		catch (IOException ioExc) {
+			throw new ControllerException(ioExc.getMessage());
+		}
+	}
+	
+	
+	private void writeUnrealizedCostBasis(UnrealizedCostBasisEntry ucbe, File outputFile) throws ControllerException {
+		if (ucbe == null || outputFile == null) {
+			throw new ControllerException("Unrealized cost basis entries or output file is null");
+		}
+		if (outputFile.exists()) {
+			throw new ControllerException("Could not write to output file "+outputFile.getAbsolutePath()+" as it already exists");
+		}
+		if (ucbe.getAccts() == null || ucbe.getAccts().length < 1) {
+			Log.info("writeUnrealizedCostBasis skipped writing file because ucbe was empty.");
+			return;
+		}
+		
+		try {
+			CSVPrinter printer = new CSVPrinter(LedgerStreams.openWriter(outputFile), CSV_FORMAT);
+			
+			// header row
+			List<String> sortedAccts = new ArrayList<>();
+			String[] acctArr = ucbe.getAccts();
+			for (String a : acctArr) {
+				// add accounts that are not USD stablecoins
+				if (! usdStablecoins.contains(a)) {
+					sortedAccts.add(a);
+				}
+			}
+			Collections.sort(sortedAccts);
+			
+			List<String> rowValues = new ArrayList<>();
+			for (String a : sortedAccts) {
+				rowValues.add("["+a+"] " + UnrealizedCostBasisEntry.COL_COSTBASIS_SHORTTERM);
+				rowValues.add("["+a+"] " + UnrealizedCostBasisEntry.COL_COSTBASIS_LONGTERM);
+				rowValues.add("["+a+"] " + UnrealizedCostBasisEntry.COL_COSTBASIS_AVG);
+			}
+			printer.printRecord((Object[]) rowValues.toArray(new String[rowValues.size()]));
+			
+			// data row
+			rowValues.clear();
+			for (String a : sortedAccts) {
+				rowValues.add(ucbe.getShortTermCostBasisStr(a));
+				rowValues.add(ucbe.getLongTermCostBasisStr(a));
+				rowValues.add(ucbe.getAvgCostBasisStr(a));
+			}
+			printer.printRecord((Object[]) rowValues.toArray(new String[rowValues.size()]));
+			
+			printer.close(true);
+		}
+		catch (IOException ioExc) {
+			throw new ControllerException(ioExc.getMessage());
+		}
+	}
+	
+	
+	private static void writeIncomeEntries(List<IncomeEntry> ieList, File outputFile) throws ControllerException {
+		if (ieList == null || outputFile == null) {
+			throw new ControllerException("Income entries or output file is null");
+		}
+		if (outputFile.exists()) {
+			throw new ControllerException("Could not write to output file "+outputFile.getAbsolutePath()+" as it already exists");
+		}
+		
+		// calculate which columns to display
+		Set<String> acctSet = new HashSet<>();
+		Map<String, Set<String>> colToAcctSet = new HashMap<>();
+		colToAcctSet.put(IncomeEntry.COL_ORD_INC_USD, new HashSet<>());
+		colToAcctSet.put(IncomeEntry.COL_CAPGAIN_SHORTTERM, new HashSet<>());
+		colToAcctSet.put(IncomeEntry.COL_CAPGAIN_LONGTERM, new HashSet<>());
+		colToAcctSet.put(IncomeEntry.COL_MNG_INC_USD, new HashSet<>());
+		colToAcctSet.put(IncomeEntry.COL_MNG_EXP_USD, new HashSet<>());
+		colToAcctSet.put(IncomeEntry.COL_MNG_AMORT_EXP_USD, new HashSet<>());
+		for (IncomeEntry ie : ieList) {
+			String[] acctArr = ie.getAccts();
+			for (String a : acctArr) {
+				acctSet.add(a);
+				BigDecimal ordIncome = ie.getOrdIncome(a);
+				if (ordIncome != null) {
+					colToAcctSet.get(IncomeEntry.COL_ORD_INC_USD).add(a);
+				}
+				BigDecimal cgShortTerm = ie.getShortTermCapGains(a);
+				if (cgShortTerm != null) {
+					colToAcctSet.get(IncomeEntry.COL_CAPGAIN_SHORTTERM).add(a);
+				}
+				BigDecimal cgLongTerm = ie.getLongTermCapGains(a);
+				if (cgLongTerm != null) {
+					colToAcctSet.get(IncomeEntry.COL_CAPGAIN_LONGTERM).add(a);
+				}
+				BigDecimal mngIncome = ie.getMngIncome(a);
+				if (mngIncome != null) {
+					colToAcctSet.get(IncomeEntry.COL_MNG_INC_USD).add(a);
+				}
+				BigDecimal mngExpense = ie.getMngExpense(a);
+				if (mngExpense != null) {
+					colToAcctSet.get(IncomeEntry.COL_MNG_EXP_USD).add(a);
+				}
+				BigDecimal mngAmortExpense = ie.getMngAmortExpense(a);
+				if (mngAmortExpense != null) {
+					colToAcctSet.get(IncomeEntry.COL_MNG_AMORT_EXP_USD).add(a);
+				}
+			}
+		}
+		
+		List<String> acctList = new ArrayList<>(acctSet);
+		acctList.sort(Comparator.naturalOrder());
+		
+		
+		try {
+			CSVPrinter printer = new CSVPrinter(LedgerStreams.openWriter(outputFile), CSV_FORMAT);
+			
+			// Header
+			List<String> rowValues = new ArrayList<>();
+			rowValues.add(IncomeEntry.COL_TAX_YEAR);
+			for (String a : acctList) {
+				if (colToAcctSet.get(IncomeEntry.COL_ORD_INC_USD).contains(a)) {
+					rowValues.add((a.equals("") ? "" : "["+a+"] ") + IncomeEntry.COL_ORD_INC_USD);
+				}
+				if (colToAcctSet.get(IncomeEntry.COL_CAPGAIN_SHORTTERM).contains(a) ||
+						colToAcctSet.get(IncomeEntry.COL_CAPGAIN_LONGTERM).contains(a)) {
+					rowValues.add((a.equals("") ? "" : "["+a+"] ") + IncomeEntry.COL_CAPGAIN_SHORTTERM);
+					rowValues.add((a.equals("") ? "" : "["+a+"] ") + IncomeEntry.COL_CAPGAIN_LONGTERM);
+				}
+				if (colToAcctSet.get(IncomeEntry.COL_MNG_INC_USD).contains(a) ||
+						colToAcctSet.get(IncomeEntry.COL_MNG_EXP_USD).contains(a) ||
+						colToAcctSet.get(IncomeEntry.COL_MNG_AMORT_EXP_USD).contains(a)) {
+					rowValues.add((a.equals("") ? "" : "["+a+"] ") + IncomeEntry.COL_MNG_INC_USD);
+					rowValues.add((a.equals("") ? "" : "["+a+"] ") + IncomeEntry.COL_MNG_EXP_USD);
+					rowValues.add((a.equals("") ? "" : "["+a+"] ") + IncomeEntry.COL_MNG_AMORT_EXP_USD);
+				}
+			}
+			
+			printer.printRecord((Object[]) rowValues.toArray(new String[rowValues.size()]));
+			
+			
+			// Data rows
+			for (IncomeEntry ie : ieList) {
+				
+				rowValues.clear();
+				rowValues.add(ie.getTaxYear());
+				for (String a : acctList) {
+					if (colToAcctSet.get(IncomeEntry.COL_ORD_INC_USD).contains(a)) {
+						rowValues.add(ie.getOrdIncomeStr(a));
+					}
+					if (colToAcctSet.get(IncomeEntry.COL_CAPGAIN_SHORTTERM).contains(a) ||
+							colToAcctSet.get(IncomeEntry.COL_CAPGAIN_LONGTERM).contains(a)) {
+						rowValues.add(ie.getShortTermCapGainsStr(a));
+						rowValues.add(ie.getLongTermCapGainsStr(a));
+					}
+					if (colToAcctSet.get(IncomeEntry.COL_MNG_INC_USD).contains(a) ||
+							colToAcctSet.get(IncomeEntry.COL_MNG_EXP_USD).contains(a) ||
+							colToAcctSet.get(IncomeEntry.COL_MNG_AMORT_EXP_USD).contains(a)) {
+						rowValues.add(ie.getMngIncomeStr(a));
+						rowValues.add(ie.getMngExpenseStr(a));
+						rowValues.add(ie.getMngAmortExpenseStr(a));
+					}
+				}
+				
+				printer.printRecord((Object[]) rowValues.toArray(new String[rowValues.size()]));
+			}
+			
+			printer.close(true);
+		}
+		catch (IOException ioExc) {
+			throw new ControllerException(ioExc.getMessage());
+		}
+	}
+	
+	
+	// One row per period and account, for the accounts with any income or gains so far in the period's fiscal year
+	private static void writePeriodIncome(PeriodIncome periodIncome, File outputFile) throws ControllerException {
+		if (periodIncome == null || outputFile == null) {
+			throw new ControllerException("Period income or output file is null");
+		}
+		if (outputFile.exists()) {
+			throw new ControllerException("Could not write to output file "+outputFile.getAbsolutePath()+" as it already exists");
+		}
+		
+		List<String> acctList = new ArrayList<>(Arrays.asList(periodIncome.getAccts()));
+		acctList.sort(Comparator.naturalOrder());
+		ReportingPeriods periods = periodIncome.getReportingPeriods();
+		Category[] categories = Category.values();
+		
+		try {
+			CSVPrinter printer = new CSVPrinter(LedgerStreams.openWriter(outputFile), CSV_FORMAT);
+			
+			List<String> rowValues = new ArrayList<>();
+			rowValues.add(PeriodIncome.COL_PERIOD);
+			rowValues.add(PeriodIncome.COL_PERIOD_START);
+			rowValues.add(PeriodIncome.COL_PERIOD_END);
+			rowValues.add(PeriodIncome.COL_ACCT);
+			for (Category category : categories) {
+				rowValues.add(PeriodIncome.getColumn(category));
+			}
+			for (Category category : categories) {
+				rowValues.add(PeriodIncome.COL_YTD + PeriodIncome.getColumn(category));
+			}
+			printer.printRecord(rowValues);
+			
+			for (int period : periodIncome.getPeriods()) {
+				for (String a : acctList) {
+					rowValues.clear();
+					boolean anyYtd = false;
+					for (Category category : categories) {
+						BigDecimal amnt = periodIncome.get(period, category, a);
+						rowValues.add((amnt != null) ? amnt.toPlainString() : "");
+					}
+					for (Category category : categories) {
+						BigDecimal ytd = periodIncome.getFiscalYearToDate(period, category, a);
+						anyYtd |= (ytd != null);
+						rowValues.add((ytd != null) ? ytd.toPlainString() : "");
+					}
+					if (anyYtd) {
+						printer.print(periods.getLabel(period));
+						printer.print(periods.getStartDate(period));
+						printer.print(periods.getEndDate(period));
+						printer.print(a);
+						printer.printRecord(rowValues);
+					}
+				}
+			}
+			
+			printer.close(true);
+		}
+		catch (IOException ioExc) {
+			throw new ControllerException(ioExc.getMessage());
+		}
+	}
+	
+	
+	private static void writeMiningEntries(List<MiningEntry> meList, File outputFile) throws ControllerException {
+		if (meList == null || outputFile == null) {
+			throw new ControllerException("Mining entries or output file is null");
+		}
+		if (outputFile.exists()) {
+			throw new ControllerException("Could not write to output file "+outputFile.getAbsolutePath()+" as it already exists");
+		}
+		
+		try {
+			CSVPrinter printer = new CSVPrinter(LedgerStreams.openWriter(outputFile), CSV_FORMAT);
+			
+			printer.printRecord(
+					MiningEntry.COL_YEAR,
+					MiningEntry.COL_DATE,
+					MiningEntry.COL_PURCHASE_USD,
+					MiningEntry.COL_REINVEST_USD,
+					MiningEntry.COL_DAY_BASIS_P_USD,
+					MiningEntry.COL_DAY_BASIS_PR_USD,
+					MiningEntry.COL_DAY_INCOME_USD,
+					MiningEntry.COL_DAY_HASH_RATE,
+					MiningEntry.COL_USD_PER_COIN,
+					MiningEntry.COL_DAY_MINING_YIELD,
+					MiningEntry.COL_DAY_RATE_PR,
+					MiningEntry.COL_AVG_DAY_RATE_PR,
+					MiningEntry.COL_DAY_RATE_P
+			);
+			
+			for (MiningEntry me : meList) {
+				printer.printRecord(
+						me.getYearStr(),
+						me.getDateStr(),
+						me.getPurchaseStr(),
+						me.getReinvestmentStr(),
+						me.getDayBasisPurchaseStr(),
+						me.getDayBasisPurchaseAndReinvestStr(),
+						me.getDayIncomeStr(),
+						me.getHashrateStr(),
+						me.getUsdPerCoinStr(),
+						me.getYieldStr(),
+						me.getDayRatePurchaseAndReinvestStr(),
+						me.getAvgDayRatePurchaseAndReinvestStr(),
+						me.getDayRatePurchaseStr()
+				);
+			}
+			
+			printer.close(true);
+		}
+		catch (IOException ioExc) {
+			throw new ControllerException(ioExc.getMessage());
+		}
+	}
+	
+	
+}
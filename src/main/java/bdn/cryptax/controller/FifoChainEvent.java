@@ -0,0 +1,47 @@
+package bdn.cryptax.controller;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+// Flight recorder event for a disposal that consumed unusually many FIFO lots. Per account, the first
+// MAX_UNSAMPLED_CHAINS long chains are recorded and then every SAMPLE_INTERVAL-th one; AccountPhaseEvent counts them all.
+@Name("bdn.cryptax.FifoChain")
+@Label("Long FIFO Match Chain")
+@Category("Cryptax")
+@Description("A disposal matched against many acquisition lots")
+public class FifoChainEvent extends Event {
+
+	static final int LONG_CHAIN_LOTS = 16;
+	static final int MAX_UNSAMPLED_CHAINS = 100;
+	static final int SAMPLE_INTERVAL = 100;
+
+	@Label("Account")
+	String account;
+
+	@Label("Disposal Time")
+	String disposalTime;
+
+	@Label("Coin Amount")
+	String coinAmount;
+
+	@Label("Lots Consumed")
+	long lotsConsumed;
+
+	@Label("Match Duration")
+	@Timespan(Timespan.NANOSECONDS)
+	long matchNanos;
+
+	@Label("Open Lots")
+	@Description("Lots left in the queue after the disposal")
+	long openLots;
+
+
+	static boolean isSampled(long longChainCount) {
+		return longChainCount <= MAX_UNSAMPLED_CHAINS || longChainCount % SAMPLE_INTERVAL == 0;
+	}
+
+}
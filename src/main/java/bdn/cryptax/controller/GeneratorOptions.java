@@ -0,0 +1,146 @@
+package bdn.cryptax.controller;
+
+import java.time.LocalDate;
+
+public class GeneratorOptions {
+
+	// the same seed and options always generate the same ledger
+	private long seed = 1;
+	private long rows = 1_000_000;
+	private int accounts = 4;
+	// the first accounts receive mining contracts and their daily payouts
+	private int miningAccounts = 1;
+	// trades (acquisitions, disposals, transfers and income) per account per day
+	private double tradesPerDay = 4;
+	// shares of the trades that are transfers and income; the rest are acquisitions and disposals
+	private double transferFraction = 0.1;
+	private double incomeFraction = 0.05;
+	// share of acquisitions, disposals and transfers that pay a fee
+	private double feeFraction = 0.3;
+	// mpur/mre contracts per mining account per year, and the share of them that reinvest
+	private double contractsPerYear = 4;
+	private double reinvestFraction = 0.5;
+	private int contractTermMonths = 12;
+	private LocalDate startDate = LocalDate.of(2018, 1, 1);
+
+
+	public long getSeed() {
+		return seed;
+	}
+
+
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+
+	public long getRows() {
+		return rows;
+	}
+
+
+	public void setRows(long rows) {
+		this.rows = rows;
+	}
+
+
+	public int getAccounts() {
+		return accounts;
+	}
+
+
+	public void setAccounts(int accounts) {
+		this.accounts = accounts;
+	}
+
+
+	public int getMiningAccounts() {
+		return miningAccounts;
+	}
+
+
+	public void setMiningAccounts(int miningAccounts) {
+		this.miningAccounts = miningAccounts;
+	}
+
+
+	public double getTradesPerDay() {
+		return tradesPerDay;
+	}
+
+
+	public void setTradesPerDay(double tradesPerDay) {
+		this.tradesPerDay = tradesPerDay;
+	}
+
+
+	public double getTransferFraction() {
+		return transferFraction;
+	}
+
+
+	public void setTransferFraction(double transferFraction) {
+		this.transferFraction = transferFraction;
+	}
+
+
+	public double getIncomeFraction() {
+		return incomeFraction;
+	}
+
+
+	public void setIncomeFraction(double incomeFraction) {
+		this.incomeFraction = incomeFraction;
+	}
+
+
+	public double getFeeFraction() {
+		return feeFraction;
+	}
+
+
+	public void setFeeFraction(double feeFraction) {
+		this.feeFraction = feeFraction;
+	}
+
+
+	public double getContractsPerYear() {
+		return contractsPerYear;
+	}
+
+
+	public void setContractsPerYear(double contractsPerYear) {
+		this.contractsPerYear = contractsPerYear;
+	}
+
+
+	public double getReinvestFraction() {
+		return reinvestFraction;
+	}
+
+
+	public void setReinvestFraction(double reinvestFraction) {
+		this.reinvestFraction = reinvestFraction;
+	}
+
+
+	public int getContractTermMonths() {
+		return contractTermMonths;
+	}
+
+
+	public void setContractTermMonths(int contractTermMonths) {
+		this.contractTermMonths = contractTermMonths;
+	}
+
+
+	public LocalDate getStartDate() {
+		return startDate;
+	}
+
+
+	public void setStartDate(LocalDate startDate) {
+		this.startDate = startDate;
+	}
+
+}
@@ -0,0 +1,224 @@
+package bdn.cryptax.controller;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Set;
+
+import bdn.cryptax.model.GainEntry;
+import bdn.cryptax.model.IncomeEntry;
+import bdn.cryptax.model.MiningEntry;
+import bdn.cryptax.model.PeriodIncome;
+import bdn.cryptax.model.PeriodIncome.Category;
+import bdn.cryptax.model.ReportingPeriods;
+import bdn.cryptax.model.UnrealizedCostBasisEntry;
+
+// Writes results as members of an already opened JSON object: "gains" and "mining" map accounts to their entries,
+// "unrealizedCostBasis" maps accounts to their cost basis, "income" lists the tax years and "periodIncome" the reporting
+// periods, if any. Entries use the same column names and value formatting as the CSV outputs. Call finish() after the
+// last result.
+public class JsonResultWriter implements TaxResultSink {
+
+	private static final String SECTION_GAINS = "gains";
+	private static final String SECTION_UNREALIZED_COST_BASIS = "unrealizedCostBasis";
+	private static final String SECTION_INCOME = "income";
+	private static final String SECTION_PERIOD_INCOME = "periodIncome";
+	private static final String SECTION_MINING = "mining";
+
+	private final JsonWriter json;
+	private final Set<String> usdStablecoins;
+	// the per-account section currently open, if any
+	private String openSection = null;
+
+
+	public JsonResultWriter(JsonWriter json, Set<String> usdStablecoins) {
+		this.json = json;
+		this.usdStablecoins = usdStablecoins;
+	}
+
+
+	@Override
+	public void acceptGainEntries(String acct, List<GainEntry> geList) throws ControllerException {
+		// like the CSV output, gains of USD stablecoin accounts are not reported
+		if (geList == null || usdStablecoins.contains(acct)) {
+			return;
+		}
+
+		try {
+			openSection(SECTION_GAINS);
+			json.name(acct).beginArray();
+			for (GainEntry ge : geList) {
+				json.beginObject();
+				json.name(GainEntry.COL_TAX_YEAR).value(ge.getTaxYearStr());
+				json.name(GainEntry.COL_TERM).value(ge.getTermStr());
+				json.name(GainEntry.COL_DATE_ACQ).value(ge.getDateAcquiredStr());
+				json.name(GainEntry.COL_DATE_DISP).value(ge.getDateDisposedStr());
+				json.name(GainEntry.COL_BRKR_ACQ).value(ge.getBrokerAcquiredStr());
+				json.name(GainEntry.COL_BRKR_DISP).value(ge.getBrokerDisposedStr());
+				json.name(GainEntry.COL_ASSET_AMNT).value(ge.getAssetAmntStr());
+				json.name(GainEntry.COL_PROCEEDS).value(ge.getProceedsStr());
+				json.name(GainEntry.COL_COST_BASIS).value(ge.getCostBasisStr());
+				json.name(GainEntry.COL_GAIN).value(ge.getGainStr());
+				json.endObject();
+			}
+			json.endArray();
+		}
+		catch (IOException exc) {
+			throw new ControllerException(exc.getMessage());
+		}
+	}
+
+
+	@Override
+	public void acceptUnrealizedCostBasis(UnrealizedCostBasisEntry ucbe) throws ControllerException {
+		try {
+			closeSection();
+			json.name(SECTION_UNREALIZED_COST_BASIS).beginObject();
+			if (ucbe != null && ucbe.getAccts() != null) {
+				for (String a : ucbe.getAccts()) {
+					if (usdStablecoins.contains(a)) {
+						continue;
+					}
+					json.name(a).beginObject();
+					json.name(UnrealizedCostBasisEntry.COL_COSTBASIS_SHORTTERM).value(ucbe.getShortTermCostBasisStr(a));
+					json.name(UnrealizedCostBasisEntry.COL_COSTBASIS_LONGTERM).value(ucbe.getLongTermCostBasisStr(a));
+					json.name(UnrealizedCostBasisEntry.COL_COSTBASIS_AVG).value(ucbe.getAvgCostBasisStr(a));
+					json.endObject();
+				}
+			}
+			json.endObject();
+		}
+		catch (IOException exc) {
+			throw new ControllerException(exc.getMessage());
+		}
+	}
+
+
+	@Override
+	public void acceptIncomeEntries(List<IncomeEntry> ieList) throws ControllerException {
+		try {
+			closeSection();
+			json.name(SECTION_INCOME).beginArray();
+			for (IncomeEntry ie : ieList) {
+				json.beginObject();
+				json.name(IncomeEntry.COL_TAX_YEAR).value(ie.getTaxYear());
+				for (String a : ie.getAccts()) {
+					json.name(a).beginObject();
+					writeIfSet(IncomeEntry.COL_ORD_INC_USD, ie.getOrdIncome(a), ie.getOrdIncomeStr(a));
+					writeIfSet(IncomeEntry.COL_CAPGAIN_SHORTTERM, ie.getShortTermCapGains(a), ie.getShortTermCapGainsStr(a));
+					writeIfSet(IncomeEntry.COL_CAPGAIN_LONGTERM, ie.getLongTermCapGains(a), ie.getLongTermCapGainsStr(a));
+					writeIfSet(IncomeEntry.COL_MNG_INC_USD, ie.getMngIncome(a), ie.getMngIncomeStr(a));
+					writeIfSet(IncomeEntry.COL_MNG_EXP_USD, ie.getMngExpense(a), ie.getMngExpenseStr(a));
+					writeIfSet(IncomeEntry.COL_MNG_AMORT_EXP_USD, ie.getMngAmortExpense(a), ie.getMngAmortExpenseStr(a));
+					json.endObject();
+				}
+				json.endObject();
+			}
+			json.endArray();
+		}
+		catch (IOException exc) {
+			throw new ControllerException(exc.getMessage());
+		}
+	}
+
+
+	@Override
+	public void acceptPeriodIncome(PeriodIncome periodIncome) throws ControllerException {
+		try {
+			closeSection();
+			json.name(SECTION_PERIOD_INCOME).beginArray();
+			ReportingPeriods periods = periodIncome.getReportingPeriods();
+			for (int period : periodIncome.getPeriods()) {
+				json.beginObject();
+				json.name(PeriodIncome.COL_PERIOD).value(periods.getLabel(period));
+				json.name(PeriodIncome.COL_PERIOD_START).value(periods.getStartDate(period).toString());
+				json.name(PeriodIncome.COL_PERIOD_END).value(periods.getEndDate(period).toString());
+				for (String a : periodIncome.getAccts()) {
+					json.name(a).beginObject();
+					for (Category category : Category.values()) {
+						BigDecimal amnt = periodIncome.get(period, category, a);
+						writeIfSet(PeriodIncome.getColumn(category), amnt, (amnt != null) ? amnt.toPlainString() : "");
+					}
+					for (Category category : Category.values()) {
+						BigDecimal ytd = periodIncome.getFiscalYearToDate(period, category, a);
+						writeIfSet(PeriodIncome.COL_YTD + PeriodIncome.getColumn(category), ytd, (ytd != null) ? ytd.toPlainString() : "");
+					}
+					json.endObject();
+				}
+				json.endObject();
+			}
+			json.endArray();
+		}
+		catch (IOException exc) {
+			throw new ControllerException(exc.getMessage());
+		}
+	}
+
+
+	private void writeIfSet(String name, BigDecimal value, String valueStr) throws IOException {
+		if (value != null) {
+			json.name(name).value(valueStr);
+		}
+	}
+
+
+	@Override
+	public void acceptMiningEntries(String acct, List<MiningEntry> meList) throws ControllerException {
+		if (meList == null || meList.isEmpty()) {
+			return;
+		}
+
+		try {
+			openSection(SECTION_MINING);
+			json.name(acct).beginArray();
+			for (MiningEntry me : meList) {
+				json.beginObject();
+				json.name(MiningEntry.COL_DATE).value(me.getDateStr());
+				json.name(MiningEntry.COL_PURCHASE_USD).value(me.getPurchaseStr());
+				json.name(MiningEntry.COL_REINVEST_USD).value(me.getReinvestmentStr());
+				json.name(MiningEntry.COL_DAY_BASIS_P_USD).value(me.getDayBasisPurchaseStr());
+				json.name(MiningEntry.COL_DAY_BASIS_PR_USD).value(me.getDayBasisPurchaseAndReinvestStr());
+				json.name(MiningEntry.COL_DAY_INCOME_USD).value(me.getDayIncomeStr());
+				json.name(MiningEntry.COL_DAY_HASH_RATE).value(me.getHashrateStr());
+				json.name(MiningEntry.COL_USD_PER_COIN).value(me.getUsdPerCoinStr());
+				json.name(MiningEntry.COL_DAY_MINING_YIELD).value(me.getYieldStr());
+				json.name(MiningEntry.COL_DAY_RATE_PR).value(me.getDayRatePurchaseAndReinvestStr());
+				json.name(MiningEntry.COL_AVG_DAY_RATE_PR).value(me.getAvgDayRatePurchaseAndReinvestStr());
+				json.name(MiningEntry.COL_DAY_RATE_P).value(me.getDayRatePurchaseStr());
+				json.endObject();
+			}
+			json.endArray();
+		}
+		catch (IOException exc) {
+			throw new ControllerException(exc.getMessage());
+		}
+	}
+
+
+	public void finish() throws ControllerException {
+		try {
+			closeSection();
+		}
+		catch (IOException exc) {
+			throw new ControllerException(exc.getMessage());
+		}
+	}
+
+
+	private void openSection(String section) throws IOException {
+		if (!section.equals(openSection)) {
+			closeSection();
+			json.name(section).beginObject();
+			openSection = section;
+		}
+	}
+
+
+	private void closeSection() throws IOException {
+		if (openSection != null) {
+			json.endObject();
+			openSection = null;
+		}
+	}
+
+}
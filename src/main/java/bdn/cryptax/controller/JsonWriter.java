@@ -0,0 +1,183 @@
+package bdn.cryptax.controller;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+
+// Minimal streaming JSON writer for reports (objects, arrays, strings, numbers and booleans), pretty-printed with tabs
+public class JsonWriter implements Closeable {
+
+	private final Writer out;
+	private int depth = 0;
+	// whether the current object/array already has a member (so the next one needs a comma)
+	private boolean hasMember = false;
+	// a name was just written, so the next value goes on the same line
+	private boolean afterName = false;
+
+
+	public JsonWriter(Writer out) {
+		this.out = out;
+	}
+
+
+	public JsonWriter beginObject() throws IOException {
+		return open('{');
+	}
+
+
+	public JsonWriter endObject() throws IOException {
+		return close('}');
+	}
+
+
+	public JsonWriter beginArray() throws IOException {
+		return open('[');
+	}
+
+
+	public JsonWriter endArray() throws IOException {
+		return close(']');
+	}
+
+
+	public JsonWriter name(String name) throws IOException {
+		separate();
+		writeString(name);
+		out.write(": ");
+		afterName = true;
+		return this;
+	}
+
+
+	public JsonWriter value(String value) throws IOException {
+		separate();
+		if (value == null) {
+			out.write("null");
+		}
+		else {
+			writeString(value);
+		}
+		return this;
+	}
+
+
+	public JsonWriter value(long value) throws IOException {
+		separate();
+		out.write(Long.toString(value));
+		return this;
+	}
+
+
+	public JsonWriter value(double value) throws IOException {
+		separate();
+		// JSON has no representation for NaN or infinities
+		out.write((Double.isNaN(value) || Double.isInfinite(value)) ? "null" : Double.toString(value));
+		return this;
+	}
+
+
+	public JsonWriter value(boolean value) throws IOException {
+		separate();
+		out.write(value ? "true" : "false");
+		return this;
+	}
+
+
+	// writes a pre-formatted number (e.g., a BigDecimal's plain string) without quotes
+	public JsonWriter rawNumber(String value) throws IOException {
+		separate();
+		out.write(value == null ? "null" : value);
+		return this;
+	}
+
+
+	private JsonWriter open(char c) throws IOException {
+		separate();
+		out.write(c);
+		depth++;
+		hasMember = false;
+		return this;
+	}
+
+
+	private JsonWriter close(char c) throws IOException {
+		depth--;
+		if (hasMember) {
+			newLine();
+		}
+		out.write(c);
+		hasMember = true;
+		if (depth == 0) {
+			out.write(System.lineSeparator());
+		}
+		return this;
+	}
+
+
+	private void separate() throws IOException {
+		if (afterName) {
+			afterName = false;
+			return;
+		}
+		if (hasMember) {
+			out.write(',');
+		}
+		if (depth > 0) {
+			newLine();
+		}
+		hasMember = true;
+	}
+
+
+	private void newLine() throws IOException {
+		out.write(System.lineSeparator());
+		for (int i = 0; i < depth; i++) {
+			out.write('\t');
+		}
+	}
+
+
+	private void writeString(String s) throws IOException {
+		out.write('"');
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			switch (c) {
+			case '"':
+				out.write("\\\"");
+				break;
+			case '\\':
+				out.write("\\\\");
+				break;
+			case '\n':
+				out.write("\\n");
+				break;
+			case '\r':
+				out.write("\\r");
+				break;
+			case '\t':
+				out.write("\\t");
+				break;
+			default:
+				if (c < 0x20) {
+					out.write(String.format("\\u%04x", (int) c));
+				}
+				else {
+					out.write(c);
+				}
+			}
+		}
+		out.write('"');
+	}
+
+
+	public void flush() throws IOException {
+		out.flush();
+	}
+
+
+	@Override
+	public void close() throws IOException {
+		out.close();
+	}
+
+}
@@ -0,0 +1,429 @@
+package bdn.cryptax.controller;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import bdn.cryptax.model.Transaction;
+
+// Writes a synthetic ledger in the Transaction column schema; the same options and seed always give the same ledger.
+// Time advances day by day: each mining account first receives its minc payout for the hashrate of its active contracts,
+// then the day's trades, transfers, income and mpur/mre contracts follow in time order. Holdings are tracked per account
+// and broker in 1e-8 coin units; sales and transfers leave from a broker that holds coins, and every disposal (including
+// coin fees and contract purchases) is bounded by that broker's holdings, so neither an account nor any of its brokers
+// ever disposes of more than it holds. Mining payouts and contracts go through the first broker. No two rows of an
+// account share a timestamp, so sorting cannot reorder them.
+// Rows are formatted as ASCII straight into a reused byte buffer, so large ledgers are written at about disk speed.
+public class LedgerGenerator {
+
+	private static final long UNITS_PER_COIN = 100_000_000L;
+	private static final int COIN_SCALE = 8;
+	private static final long CENTS_PER_USD = 100;
+	private static final int USD_SCALE = 2;
+	private static final int MINUTES_PER_DAY = 24 * 60;
+	private static final String[] COIN_NAMES = { "BTC", "ETH", "SOL", "ADA", "DOT", "LTC", "XRP", "AVAX" };
+	private static final String[] BROKERS = { "Coinbase", "Kraken", "Binance", "Gemini", "Ledger" };
+	// daily mining payout per GH/s of active contracts, in coin units
+	private static final long PAYOUT_UNITS_PER_GH = 5;
+	// contracted GH/s per coin spent on a contract
+	private static final long GH_PER_COIN = 1000;
+	// flags contract events among the day's events; the low bits hold the account
+	private static final long CONTRACT_FLAG = 1L << 31;
+	private static final long LOG_INTERVAL_ROWS = 10_000_000;
+	private static final int BUFFER_SIZE = 256 * 1024;
+	// longer than any row
+	private static final int MAX_ROW_LENGTH = 512;
+	private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+
+	private final GeneratorOptions options;
+	private final SplittableRandom random;
+	private final String[] accts;
+	private final long[] holdings;
+	// holdings of each account by broker (index into BROKERS)
+	private final long[][] brokerHoldings;
+	// log USD prices drift around each account's base price
+	private final double[] logBasePrice;
+	private final double[] logPrice;
+	// epoch minute of each account's last row
+	private final long[] lastMinute;
+	// active and future contracts of each mining account as {first payout epoch day, end epoch day, GH/s}
+	private final List<List<long[]>> contracts = new ArrayList<>();
+	private final byte[] buffer = new byte[BUFFER_SIZE];
+	private final byte[] digits = new byte[20];
+	private int position = 0;
+	private OutputStream out;
+	private long[] events = new long[64];
+	private String dayPrefix;
+	private long rows = 0;
+
+
+	public LedgerGenerator(GeneratorOptions options) throws ControllerException {
+		if (options.getRows() < 0 || options.getAccounts() < 1 || options.getMiningAccounts() < 0 ||
+				options.getMiningAccounts() > options.getAccounts() || options.getTradesPerDay() <= 0 || options.getContractsPerYear() < 0 ||
+				options.getContractTermMonths() < 1 || options.getStartDate() == null) {
+			throw new ControllerException("Invalid generator options");
+		}
+		if (!isFraction(options.getTransferFraction()) || !isFraction(options.getIncomeFraction()) || !isFraction(options.getFeeFraction()) ||
+				!isFraction(options.getReinvestFraction()) || options.getTransferFraction() + options.getIncomeFraction() > 1) {
+			throw new ControllerException("Generator fractions must be between 0 and 1, and transfers and income must not exceed 1 together");
+		}
+
+		this.options = options;
+		this.random = new SplittableRandom(options.getSeed());
+		int accounts = options.getAccounts();
+		accts = new String[accounts];
+		holdings = new long[accounts];
+		brokerHoldings = new long[accounts][BROKERS.length];
+		logBasePrice = new double[accounts];
+		logPrice = new double[accounts];
+		lastMinute = new long[accounts];
+		for (int a = 0; a < accounts; a++) {
+			accts[a] = (a < COIN_NAMES.length) ? COIN_NAMES[a] : "COIN" + a;
+			logBasePrice[a] = Math.log(1 + random.nextInt(50_000));
+			logPrice[a] = logBasePrice[a];
+			lastMinute[a] = Long.MIN_VALUE;
+		}
+		for (int a = 0; a < options.getMiningAccounts(); a++) {
+			contracts.add(new ArrayList<>());
+		}
+	}
+
+
+	private static boolean isFraction(double value) {
+		return value >= 0 && value <= 1;
+	}
+
+
+	// Returns the number of rows written
+	public long generate(File outputFile) throws ControllerException {
+		if (outputFile.exists()) {
+			throw new ControllerException("Could not write to output file " + outputFile.getAbsolutePath() + " as it already exists");
+		}
+
+		long startMillis = System.currentTimeMillis();
+		try (OutputStream stream = LedgerStreams.openOutputStream(outputFile)) {
+			out = stream;
+			put(String.join(",", Transaction.COL_TXN_ACCT, Transaction.COL_TXN_DTTM, Transaction.COL_TXN_TYPE, Transaction.COL_TXN_SRC,
+					Transaction.COL_TXN_DEST, Transaction.COL_TXN_COIN_AMNT, Transaction.COL_TXN_USD_AMNT, Transaction.COL_TXN_USD_PER_UNIT,
+					Transaction.COL_TXN_FEE_COIN, Transaction.COL_TXN_BRKR_FEE_USD, Transaction.COL_TERM_MOS, Transaction.COL_TXN_HASHRATE));
+			put(LINE_SEPARATOR);
+
+			LocalDate date = options.getStartDate();
+			while (rows < options.getRows()) {
+				generateDay(date);
+				date = date.plusDays(1);
+			}
+			flush();
+		}
+		catch (IOException exc) {
+			throw new ControllerException("Could not write to output file " + outputFile.getAbsolutePath() + ": " + exc.getMessage());
+		}
+
+		long millis = Math.max(1, System.currentTimeMillis() - startMillis);
+		Log.info("Generated " + rows + " rows to " + outputFile.getAbsolutePath() + " in " + millis + " ms (" +
+				(rows * 1000 / millis) + " rows/s)");
+		return rows;
+	}
+
+
+	private void generateDay(LocalDate date) throws IOException {
+		dayPrefix = date.toString() + " ";
+		long epochDay = date.toEpochDay();
+
+		// payouts come first, at midnight, for the contracts active this day
+		for (int a = 0; a < contracts.size() && rows < options.getRows(); a++) {
+			long hashrate = 0;
+			for (Iterator<long[]> it = contracts.get(a).iterator(); it.hasNext();) {
+				long[] contract = it.next();
+				if (contract[1] < epochDay) {
+					it.remove();
+				}
+				else if (contract[0] <= epochDay) {
+					hashrate += contract[2];
+				}
+			}
+			if (hashrate > 0) {
+				lastMinute[a] = epochDay * MINUTES_PER_DAY;
+				writeMiningIncome(a, hashrate);
+			}
+		}
+
+		// the day's trades and contracts at random minutes after midnight, in time order
+		double expected = options.getAccounts() * options.getTradesPerDay();
+		int count = (int) expected + ((random.nextDouble() < expected - (int) expected) ? 1 : 0);
+		double contractChance = options.getContractsPerYear() / 365;
+		if (events.length < count + contracts.size()) {
+			events = new long[count + contracts.size()];
+		}
+		for (int i = 0; i < count; i++) {
+			events[i] = ((long) (1 + random.nextInt(MINUTES_PER_DAY - 1)) << 32) | random.nextInt(options.getAccounts());
+		}
+		for (int a = 0; a < contracts.size(); a++) {
+			if (random.nextDouble() < contractChance) {
+				events[count++] = ((long) (1 + random.nextInt(MINUTES_PER_DAY - 1)) << 32) | CONTRACT_FLAG | a;
+			}
+		}
+		Arrays.sort(events, 0, count);
+
+		for (int i = 0; i < count && rows < options.getRows(); i++) {
+			int minute = (int) (events[i] >>> 32);
+			int a = (int) (events[i] & (CONTRACT_FLAG - 1));
+			long epochMinute = epochDay * MINUTES_PER_DAY + minute;
+			// an account has at most one row per timestamp
+			if (epochMinute <= lastMinute[a]) {
+				continue;
+			}
+			lastMinute[a] = epochMinute;
+			// prices move by up to 1% per row of the account and slowly revert to the base price, so they stay realistic
+			// however long the ledger
+			logPrice[a] += (logBasePrice[a] - logPrice[a]) * 0.0001 + (random.nextDouble() - 0.5) * 0.02;
+
+			if ((events[i] & CONTRACT_FLAG) != 0) {
+				writeContract(a, minute, epochDay);
+			}
+			else {
+				writeTrade(a, minute);
+			}
+		}
+	}
+
+
+	private void writeTrade(int a, int minute) throws IOException {
+		double choice = random.nextDouble();
+		double usdPerCoin = Math.exp(logPrice[a]);
+		long price = getPriceCents(a);
+
+		if (choice < options.getIncomeFraction()) {
+			int b = random.nextInt(BROKERS.length);
+			long amount = toUnits(1 + random.nextDouble() * 100, usdPerCoin);
+			credit(a, b, amount);
+			beginRow(a, minute, "inc", "", BROKERS[b]);
+			appendRow(amount, -1, price, -1, -1, -1, -1);
+		}
+		else if (choice < options.getIncomeFraction() + options.getTransferFraction() && holdings[a] > 0) {
+			// up to all the source broker's coins move to another broker; only the fee is disposed of
+			int b = getHoldingBroker(a);
+			long brokerAmount = brokerHoldings[a][b];
+			long amount = 1 + (long) (random.nextDouble() * brokerAmount);
+			long fee = (random.nextDouble() < options.getFeeFraction() && brokerAmount > amount) ?
+					Math.min(brokerAmount - amount, 1 + random.nextInt(10_000)) : -1;
+			int dest = (b + 1 + random.nextInt(BROKERS.length - 1)) % BROKERS.length;
+			debit(a, b, amount + Math.max(0, fee));
+			credit(a, dest, amount);
+			beginRow(a, minute, "tran", BROKERS[b], BROKERS[dest]);
+			appendRow(amount, -1, price, fee, -1, -1, -1);
+		}
+		else if (holdings[a] < 2 || random.nextBoolean()) {
+			// purchases of $10 to $10,000
+			int b = random.nextInt(BROKERS.length);
+			long amount = toUnits(10 * Math.pow(1000, random.nextDouble()), usdPerCoin);
+			credit(a, b, amount);
+			long usd = toCents(amount, price);
+			long brkrFee = (random.nextDouble() < options.getFeeFraction()) ? Math.max(1, usd / 200) : -1;
+			beginRow(a, minute, "acq", "", BROKERS[b]);
+			appendRow(amount, (usd > 0) ? usd : -1, (usd > 0) ? -1 : price, -1, brkrFee, -1, -1);
+		}
+		else {
+			// sales of up to half the broker's holdings, plus the coin fee
+			int b = getHoldingBroker(a);
+			long brokerAmount = brokerHoldings[a][b];
+			long amount = 1 + (long) (random.nextDouble() * (brokerAmount / 2));
+			long fee = (random.nextDouble() < options.getFeeFraction() && brokerAmount > amount) ?
+					Math.min(brokerAmount - amount, 1 + random.nextInt(10_000)) : -1;
+			debit(a, b, amount + Math.max(0, fee));
+			long usd = toCents(amount, price);
+			beginRow(a, minute, "disp", BROKERS[b], "");
+			appendRow(amount, (usd > 0) ? usd : -1, (usd > 0) ? -1 : price, fee, -1, -1, -1);
+		}
+		endRow();
+	}
+
+
+	// A random broker among those holding coins of the account, which must hold some
+	private int getHoldingBroker(int a) {
+		int start = random.nextInt(BROKERS.length);
+		for (int i = 0; i < BROKERS.length; i++) {
+			int b = (start + i) % BROKERS.length;
+			if (brokerHoldings[a][b] > 0) {
+				return b;
+			}
+		}
+		throw new IllegalStateException("Account " + accts[a] + " holds no coins at any broker");
+	}
+
+
+	private void credit(int a, int b, long amount) {
+		holdings[a] += amount;
+		brokerHoldings[a][b] += amount;
+	}
+
+
+	private void debit(int a, int b, long amount) {
+		holdings[a] -= amount;
+		brokerHoldings[a][b] -= amount;
+	}
+
+
+	private void writeContract(int a, int minute, long epochDay) throws IOException {
+		if (brokerHoldings[a][0] < 2) {
+			return;
+		}
+
+		// contracts spend up to a quarter of the mining broker's holdings; reinvestments need contracts that already pay out
+		long amount = 1 + (long) (random.nextDouble() * (brokerHoldings[a][0] / 4));
+		debit(a, 0, amount);
+		long hashrate = Math.max(1, amount * GH_PER_COIN / UNITS_PER_COIN);
+		long endDay = LocalDate.ofEpochDay(epochDay).plusMonths(options.getContractTermMonths()).toEpochDay();
+		boolean reinvest = !contracts.get(a).isEmpty() && random.nextDouble() < options.getReinvestFraction();
+		contracts.get(a).add(new long[] { epochDay + 1, endDay, hashrate });
+
+		long price = getPriceCents(a);
+		beginRow(a, minute, reinvest ? "mre" : "mpur", BROKERS[0], "");
+		appendRow(amount, -1, price, -1, -1, options.getContractTermMonths(), hashrate);
+		endRow();
+	}
+
+
+	private void writeMiningIncome(int a, long hashrate) throws IOException {
+		long amount = hashrate * PAYOUT_UNITS_PER_GH;
+		credit(a, 0, amount);
+		long price = getPriceCents(a);
+		beginRow(a, 0, "minc", "", BROKERS[0]);
+		appendRow(amount, -1, price, -1, -1, -1, hashrate);
+		endRow();
+	}
+
+
+	private long getPriceCents(int a) {
+		return Math.max(1, Math.round(Math.exp(logPrice[a]) * CENTS_PER_USD));
+	}
+
+
+	private static long toUnits(double usd, double usdPerCoin) {
+		return Math.max(1, (long) (usd / usdPerCoin * UNITS_PER_COIN));
+	}
+
+
+	// in double, since large holdings times the price would overflow a long
+	private static long toCents(long units, long priceCents) {
+		return (long) ((double) units * priceCents / UNITS_PER_COIN);
+	}
+
+
+	private void beginRow(int a, int minute, String type, String src, String dest) throws IOException {
+		if (position + MAX_ROW_LENGTH > buffer.length) {
+			flush();
+		}
+		put(accts[a]);
+		put(',');
+		put(dayPrefix);
+		putTwoDigits(minute / 60);
+		put(':');
+		putTwoDigits(minute % 60);
+		put(',');
+		put(type);
+		put(',');
+		put(src);
+		put(',');
+		put(dest);
+	}
+
+
+	// coin amounts are in 1e-8 units and USD in cents; negative values leave a column empty
+	private void appendRow(long coin, long usd, long usdPerCoin, long feeCoin, long brkrFeeUsd, long termMos, long hashrate) {
+		put(',');
+		putDecimal(coin, UNITS_PER_COIN, COIN_SCALE);
+		put(',');
+		putDecimal(usd, CENTS_PER_USD, USD_SCALE);
+		put(',');
+		putDecimal(usdPerCoin, CENTS_PER_USD, USD_SCALE);
+		put(',');
+		putDecimal(feeCoin, UNITS_PER_COIN, COIN_SCALE);
+		put(',');
+		putDecimal(brkrFeeUsd, CENTS_PER_USD, USD_SCALE);
+		put(',');
+		if (termMos >= 0) {
+			putLong(termMos);
+		}
+		put(',');
+		if (hashrate >= 0) {
+			putLong(hashrate);
+		}
+	}
+
+
+	// factor is 10^scale; the fraction is written with all its digits
+	private void putDecimal(long value, long factor, int scale) {
+		if (value < 0) {
+			return;
+		}
+		putLong(value / factor);
+		put('.');
+		long fraction = value % factor;
+		for (int i = position + scale - 1; i >= position; i--) {
+			buffer[i] = (byte) ('0' + fraction % 10);
+			fraction /= 10;
+		}
+		position += scale;
+	}
+
+
+	private void putLong(long value) {
+		int count = 0;
+		do {
+			digits[count++] = (byte) ('0' + value % 10);
+			value /= 10;
+		} while (value > 0);
+		while (count > 0) {
+			buffer[position++] = digits[--count];
+		}
+	}
+
+
+	private void putTwoDigits(int value) {
+		buffer[position++] = (byte) ('0' + value / 10);
+		buffer[position++] = (byte) ('0' + value % 10);
+	}
+
+
+	// ASCII only; the header, account and broker names are
+	private void put(String value) {
+		for (int i = 0; i < value.length(); i++) {
+			buffer[position++] = (byte) value.charAt(i);
+		}
+	}
+
+
+	private void put(byte[] value) {
+		System.arraycopy(value, 0, buffer, position, value.length);
+		position += value.length;
+	}
+
+
+	private void put(char value) {
+		buffer[position++] = (byte) value;
+	}
+
+
+	private void endRow() {
+		put(LINE_SEPARATOR);
+		rows++;
+		if (rows % LOG_INTERVAL_ROWS == 0) {
+			Log.info("Generated " + rows + " rows");
+		}
+	}
+
+
+	private void flush() throws IOException {
+		out.write(buffer, 0, position);
+		position = 0;
+	}
+
+}
@@ -0,0 +1,318 @@
+package bdn.cryptax.controller;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import bdn.cryptax.controller.Controller.CostBasisType;
+import bdn.cryptax.model.TransactionSource;
+import bdn.cryptax.model.TransactionTable;
+
+// Long-running local server that keeps parsed ledgers and per-account results in memory, so recomputing a ledger after
+// an edit only re-parses that ledger and redoes the accounts whose transactions changed. It only binds to the loopback
+// interface. Endpoints:
+//   POST /compute?ledger=path  computes the ledger file at path (re-parsed only when its size or modification time changed)
+//   POST /compute              computes the CSV ledger in the request body (cached by content)
+//   GET  /stats                cache statistics
+//   POST /shutdown             stops the server
+// Results are returned as JSON (see JsonResultWriter); errors as {"error": message} with status 400, or 500 for
+// unexpected failures. Under specific identification, the designation file is re-read on every request, and accounts
+// with designated lots bypass the per-account cache (see TaxEngine).
+public class LedgerServer {
+
+	private static final String CONTEXT_COMPUTE = "/compute";
+	private static final String CONTEXT_STATS = "/stats";
+	private static final String CONTEXT_SHUTDOWN = "/shutdown";
+	private static final String PARAM_LEDGER = "ledger";
+	private static final String CONTENT_TYPE_JSON = "application/json; charset=utf-8";
+	public static final int DEFAULT_MAX_LEDGERS = 64;
+	public static final int DEFAULT_MAX_ACCOUNTS = 4096;
+
+	private final ProcessOptions options;
+	private final TaxEngine engine;
+	private final AccountResultCache resultCache;
+	private final LruCache<String, CachedLedger> ledgerCache;
+	private HttpServer server = null;
+	private ExecutorService executor = null;
+
+
+	public LedgerServer(ProcessOptions options, int maxLedgers, int maxAccounts) {
+		this.options = options;
+		this.resultCache = new AccountResultCache(maxAccounts);
+		this.engine = new TaxEngine(options, resultCache);
+		this.ledgerCache = new LruCache<>(maxLedgers);
+	}
+
+
+	// port 0 picks a free port; returns the bound port
+	public synchronized int start(int port, int threads) throws ControllerException {
+		if (server != null) {
+			throw new ControllerException("Server is already running");
+		}
+
+		try {
+			server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		}
+		catch (IOException exc) {
+			throw new ControllerException("Could not listen on port " + port + ": " + exc.getMessage());
+		}
+		executor = Executors.newFixedThreadPool(Math.max(1, threads));
+		server.setExecutor(executor);
+		server.createContext(CONTEXT_COMPUTE, this::handleCompute);
+		server.createContext(CONTEXT_STATS, this::handleStats);
+		server.createContext(CONTEXT_SHUTDOWN, this::handleShutdown);
+		server.start();
+
+		int boundPort = server.getAddress().getPort();
+		Log.info("Listening on http://" + server.getAddress().getHostString() + ":" + boundPort);
+		return boundPort;
+	}
+
+
+	public synchronized void stop() {
+		if (server != null) {
+			server.stop(0);
+			executor.shutdown();
+			server = null;
+			Log.info("Server stopped");
+			notifyAll();
+		}
+	}
+
+
+	public synchronized void awaitStop() throws InterruptedException {
+		while (server != null) {
+			wait();
+		}
+	}
+
+
+	private void handleCompute(HttpExchange exchange) throws IOException {
+		if (!"POST".equals(exchange.getRequestMethod())) {
+			sendError(exchange, 405, "Use POST");
+			return;
+		}
+
+		long startNanos = System.nanoTime();
+		try {
+			String ledgerPath = getQueryParams(exchange).get(PARAM_LEDGER);
+			CachedLedger ledger;
+			boolean ledgerCached;
+			if (ledgerPath != null) {
+				File ledgerFile = new File(ledgerPath).getCanonicalFile();
+				if (!ledgerFile.isFile()) {
+					throw new ControllerException("Ledger " + ledgerPath + " does not exist");
+				}
+				String key = "file:" + ledgerFile.getPath();
+				ledger = ledgerCache.get(key);
+				ledgerCached = (ledger != null && ledger.lastModified == ledgerFile.lastModified() && ledger.length == ledgerFile.length());
+				if (!ledgerCached) {
+					long lastModified = ledgerFile.lastModified();
+					long length = ledgerFile.length();
+					ledger = parse(LedgerStreams.openReader(ledgerFile), ledgerFile.getPath(), lastModified, length);
+					ledgerCache.put(key, ledger);
+				}
+			}
+			else {
+				byte[] body = readAll(exchange.getRequestBody());
+				String key = "body:" + sha256(body);
+				ledger = ledgerCache.get(key);
+				ledgerCached = (ledger != null);
+				if (!ledgerCached) {
+					Reader reader = new InputStreamReader(new ByteArrayInputStream(body), StandardCharsets.UTF_8);
+					ledger = parse(reader, "request body", 0, body.length);
+					ledgerCache.put(key, ledger);
+				}
+			}
+
+			if (ledger.tSource.size() == 0) {
+				throw new ControllerException("Ledger contained no transactions");
+			}
+			// the ledger's Lot column designations follow those of the designation file
+			LotDesignations designations = Controller.readLotDesignations(options);
+			if (designations != null) {
+				designations.addAll(ledger.designations);
+			}
+			RunMetrics metrics = new RunMetrics(ledgerPath != null ? ledgerPath : "request body");
+			TaxResult result = engine.compute(ledger.tSource, metrics, designations);
+			metrics.publish();
+
+			StringWriter sw = new StringWriter();
+			JsonWriter json = new JsonWriter(sw);
+			json.beginObject();
+			json.name("ledgerCached").value(ledgerCached);
+			json.name("transactions").value(ledger.tSource.size());
+			json.name("invalidRows").value(ledger.invalidRows);
+			json.name("emptyRows").value(ledger.emptyRows);
+			JsonResultWriter resultWriter = new JsonResultWriter(json, engine.getUsdStablecoins());
+			result.writeTo(resultWriter);
+			resultWriter.finish();
+			json.name("millis").value((System.nanoTime() - startNanos) / 1000000);
+			json.endObject();
+			send(exchange, 200, sw.toString());
+		}
+		catch (ControllerException exc) {
+			sendError(exchange, 400, exc.getMessage());
+		}
+		catch (IOException | UncheckedIOException | IllegalArgumentException exc) {
+			sendError(exchange, 400, exc.getMessage());
+		}
+		catch (RuntimeException exc) {
+			// an unexpected failure must still answer the request, and leaves the server running
+			Log.error("Could not compute " + exchange.getRequestURI() + ": " + exc);
+			sendError(exchange, 500, "Internal error: " + exc);
+		}
+	}
+
+
+	private CachedLedger parse(Reader reader, String sourceName, long lastModified, long length) throws ControllerException {
+		// cached ledgers live in compact in-heap tables: they need no release on eviction and can be read concurrently
+		TransactionTable table = new TransactionTable();
+		RejectionReport rejections = new RejectionReport(options.getMaxRejectionExamples());
+		LotDesignations designations = (options.getCostBasisType() == CostBasisType.SPECIFIC_ID) ? new LotDesignations() : null;
+		TransactionSource tSource = Controller.readTransactions(reader, sourceName, table, rejections, designations);
+		// sort now, before the table is shared between requests
+		tSource.getAccounts();
+		return new CachedLedger(tSource, designations, lastModified, length, rejections.getInvalidCount(), rejections.getEmptyCount());
+	}
+
+
+	private void handleStats(HttpExchange exchange) throws IOException {
+		StringWriter sw = new StringWriter();
+		JsonWriter json = new JsonWriter(sw);
+		json.beginObject();
+		writeCacheStats(json, "ledgers", ledgerCache);
+		writeCacheStats(json, "accountGains", resultCache.getGainsCache());
+		writeCacheStats(json, "accountMining", resultCache.getMiningCache());
+		json.endObject();
+		send(exchange, 200, sw.toString());
+	}
+
+
+	private static void writeCacheStats(JsonWriter json, String name, LruCache<?, ?> cache) throws IOException {
+		json.name(name).beginObject();
+		json.name("entries").value(cache.size());
+		json.name("maxEntries").value(cache.getMaxEntries());
+		json.name("hits").value(cache.getHits());
+		json.name("misses").value(cache.getMisses());
+		json.name("evictions").value(cache.getEvictions());
+		json.endObject();
+	}
+
+
+	private void handleShutdown(HttpExchange exchange) throws IOException {
+		if (!"POST".equals(exchange.getRequestMethod())) {
+			sendError(exchange, 405, "Use POST");
+			return;
+		}
+		send(exchange, 200, "{}" + System.lineSeparator());
+		// stopping waits for exchanges to finish, so it cannot run on this exchange's thread
+		new Thread(this::stop).start();
+	}
+
+
+	private static Map<String, String> getQueryParams(HttpExchange exchange) {
+		Map<String, String> result = new HashMap<>();
+		String query = exchange.getRequestURI().getRawQuery();
+		if (query == null) {
+			return result;
+		}
+		for (String param : query.split("&")) {
+			int eq = param.indexOf('=');
+			if (eq > 0) {
+				result.put(URLDecoder.decode(param.substring(0, eq), StandardCharsets.UTF_8),
+						URLDecoder.decode(param.substring(eq + 1), StandardCharsets.UTF_8));
+			}
+		}
+		return result;
+	}
+
+
+	private static byte[] readAll(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buf = new byte[64 * 1024];
+		int n;
+		while ((n = in.read(buf)) > 0) {
+			out.write(buf, 0, n);
+		}
+		return out.toByteArray();
+	}
+
+
+	private static String sha256(byte[] data) {
+		try {
+			StringBuilder sb = new StringBuilder();
+			for (byte b : MessageDigest.getInstance("SHA-256").digest(data)) {
+				sb.append(String.format("%02x", b));
+			}
+			return sb.toString();
+		}
+		catch (NoSuchAlgorithmException exc) {
+			// every Java platform is required to support SHA-256
+			throw new IllegalStateException(exc);
+		}
+	}
+
+
+	private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+		StringWriter sw = new StringWriter();
+		JsonWriter json = new JsonWriter(sw);
+		json.beginObject();
+		json.name("error").value(message);
+		json.endObject();
+		send(exchange, status, sw.toString());
+	}
+
+
+	private static void send(HttpExchange exchange, int status, String body) throws IOException {
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE_JSON);
+		exchange.sendResponseHeaders(status, bytes.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(bytes);
+		}
+	}
+
+
+	private static class CachedLedger {
+
+		final TransactionSource tSource;
+		// those of the ledger's Lot column; null unless under specific identification
+		final LotDesignations designations;
+		final long lastModified;
+		final long length;
+		final long invalidRows;
+		final long emptyRows;
+
+		CachedLedger(TransactionSource tSource, LotDesignations designations, long lastModified, long length, long invalidRows,
+				long emptyRows) {
+			this.tSource = tSource;
+			this.designations = designations;
+			this.lastModified = lastModified;
+			this.length = length;
+			this.invalidRows = invalidRows;
+			this.emptyRows = emptyRows;
+		}
+	}
+
+}
@@ -0,0 +1,207 @@
+package bdn.cryptax.controller;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.io.FilenameUtils;
+
+public class LedgerStreams {
+
+	public static final String EXT_GZIP = "gz";
+
+	private static final String CHARSET_UTF8 = "UTF-8";
+	private static final int GZIP_MAGIC_0 = 0x1f;
+	private static final int GZIP_MAGIC_1 = 0x8b;
+	private static final int CHUNK_SIZE = 64 * 1024;
+	// number of decompressed chunks that may be buffered ahead of the parser
+	private static final int CHUNK_QUEUE_CAPACITY = 16;
+
+
+	public static boolean isGzip(File file) throws IOException {
+		if (file == null) {
+			return false;
+		}
+		try (InputStream in = new FileInputStream(file)) {
+			int b0 = in.read();
+			int b1 = in.read();
+			return (b0 == GZIP_MAGIC_0 && b1 == GZIP_MAGIC_1);
+		}
+	}
+
+
+	// Opens the ledger for reading, detecting gzip compression from the file's magic bytes rather than its extension.
+	// Compressed ledgers are inflated on a separate thread that feeds the caller through a bounded chunk queue.
+	public static Reader openReader(File file) throws IOException {
+		if (file == null) {
+			throw new IOException("Input file is null");
+		}
+
+		InputStream in = null;
+		if (isGzip(file)) {
+			in = new AsyncInflaterInputStream(file);
+		}
+		else {
+			in = new BufferedInputStream(new FileInputStream(file), CHUNK_SIZE);
+		}
+		return new InputStreamReader(in, Charset.forName(CHARSET_UTF8));
+	}
+
+
+	// Opens an output file for writing, compressing it if its name ends with the gzip extension
+	public static Writer openWriter(File file) throws IOException {
+		return new BufferedWriter(new OutputStreamWriter(openOutputStream(file), Charset.forName(CHARSET_UTF8)), CHUNK_SIZE);
+	}
+
+
+	// Like openWriter, but unbuffered for callers that encode and buffer bytes themselves
+	public static OutputStream openOutputStream(File file) throws IOException {
+		if (file == null) {
+			throw new IOException("Output file is null");
+		}
+
+		FileOutputStream out = new FileOutputStream(file);
+		if (EXT_GZIP.equalsIgnoreCase(FilenameUtils.getExtension(file.getName()))) {
+			return new GZIPOutputStream(out, CHUNK_SIZE);
+		}
+		return out;
+	}
+
+
+	// Base name of a ledger file, with both the compression and the data extension removed (e.g., "ledger.csv.gz" -> "ledger")
+	public static String getLedgerBaseName(String fileName) {
+		String result = FilenameUtils.getName(fileName);
+		if (EXT_GZIP.equalsIgnoreCase(FilenameUtils.getExtension(result))) {
+			result = FilenameUtils.removeExtension(result);
+		}
+		return FilenameUtils.removeExtension(result);
+	}
+
+
+	private static class AsyncInflaterInputStream extends InputStream {
+
+		// zero-length chunk marks the end of the decompressed stream
+		private static final byte[] EOF_CHUNK = new byte[0];
+
+		private final BlockingQueue<byte[]> chunkQueue = new ArrayBlockingQueue<>(CHUNK_QUEUE_CAPACITY);
+		private final Thread inflaterThread;
+		private volatile IOException inflaterExc = null;
+		private volatile boolean closed = false;
+		private byte[] chunk = null;
+		private int chunkPos = 0;
+
+
+		AsyncInflaterInputStream(File file) throws IOException {
+			// open eagerly so that a missing or corrupt file is reported by the caller's thread
+			InputStream gzIn = new GZIPInputStream(new FileInputStream(file), CHUNK_SIZE);
+
+			inflaterThread = new Thread(() -> inflate(gzIn), "cryptax-inflater-" + file.getName());
+			inflaterThread.setDaemon(true);
+			inflaterThread.start();
+		}
+
+
+		private void inflate(InputStream gzIn) {
+			try (InputStream in = gzIn) {
+				byte[] buf = new byte[CHUNK_SIZE];
+				int len = 0;
+				while (!closed && (len = in.readNBytes(buf, 0, buf.length)) > 0) {
+					chunkQueue.put(Arrays.copyOf(buf, len));
+				}
+			}
+			catch (IOException exc) {
+				inflaterExc = exc;
+			}
+			catch (InterruptedException exc) {
+				inflaterExc = new IOException("Decompression of ledger was interrupted");
+				Thread.currentThread().interrupt();
+			}
+			finally {
+				// if the reader has already closed the stream nobody is waiting for the end marker
+				if (!closed) {
+					try {
+						chunkQueue.put(EOF_CHUNK);
+					}
+					catch (InterruptedException exc) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			}
+		}
+
+
+		private boolean nextChunk() throws IOException {
+			if (chunk == EOF_CHUNK) {
+				return false;
+			}
+			if (chunk != null && chunkPos < chunk.length) {
+				return true;
+			}
+
+			try {
+				chunk = chunkQueue.take();
+				chunkPos = 0;
+			}
+			catch (InterruptedException exc) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Reading of decompressed ledger was interrupted");
+			}
+
+			if (chunk == EOF_CHUNK) {
+				if (inflaterExc != null) {
+					throw inflaterExc;
+				}
+				return false;
+			}
+			return true;
+		}
+
+
+		@Override
+		public int read() throws IOException {
+			if (!nextChunk()) {
+				return -1;
+			}
+			return chunk[chunkPos++] & 0xff;
+		}
+
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+			if (!nextChunk()) {
+				return -1;
+			}
+			int n = Math.min(len, chunk.length - chunkPos);
+			System.arraycopy(chunk, chunkPos, b, off, n);
+			chunkPos += n;
+			return n;
+		}
+
+
+		@Override
+		public void close() throws IOException {
+			closed = true;
+			chunkQueue.clear();
+			inflaterThread.interrupt();
+		}
+	}
+
+}
@@ -0,0 +1,361 @@
+package bdn.cryptax.controller;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import bdn.cryptax.controller.Controller.CostBasisType;
+import bdn.cryptax.model.GainEntry;
+import bdn.cryptax.model.IncomeEntry;
+import bdn.cryptax.model.MiningEntry;
+import bdn.cryptax.model.PeriodIncome;
+import bdn.cryptax.model.TransactionFingerprint;
+import bdn.cryptax.model.TransactionSource;
+import bdn.cryptax.model.TransactionStore;
+import bdn.cryptax.model.TransactionView;
+import bdn.cryptax.model.UnrealizedCostBasisEntry;
+
+// Watches a ledger file, or every ledger in a folder, and recomputes a ledger once its changes have settled. Accounts
+// whose transactions did not change reuse their previous results, and only the outputs they affect are rewritten: the
+// _cb_ and _min_ files of changed accounts plus the cross-account _ucb_ and _inc_ files. A rewritten output replaces
+// the file it supersedes. Under specific identification, accounts with designated lots are recomputed on every change,
+// as their fingerprints do not cover the designations, and a change to the designation file recomputes every ledger.
+// The rejection, transfer and shortfall reports are replaced on every parse; as in a single run, a ledger with account
+// balance shortfalls is not recomputed.
+public class LedgerWatcher {
+
+	private static final long DEBOUNCE_MILLIS = 500;
+	private static final DateTimeFormatter DTF_TIMESTAMP = DateTimeFormatter.ofPattern("yyyyMMddHHmmss");
+	// our own outputs (e.g., ledger_cb_BTC_20240101120000.csv.gz), which must not be taken for ledgers
+	private static final Pattern OUTPUT_FILE_NAME = Pattern.compile(".*_(" + String.join("|", CsvResultWriter.OUTPUT_COST_BASIS,
+			CsvResultWriter.OUTPUT_UNREALIZED_COST_BASIS, CsvResultWriter.OUTPUT_INCOME, CsvResultWriter.OUTPUT_PERIOD_INCOME,
+			CsvResultWriter.OUTPUT_MINING, CsvResultWriter.OUTPUT_LINEAGE, Controller.OUTPUT_SHORTFALL, Controller.OUTPUT_TRANSFER,
+			Controller.OUTPUT_WHAT_IF, Controller.OUTPUT_ROLLOVER, Controller.OUTPUT_REJECTION, Controller.OUTPUT_METRICS,
+			BatchProcessor.OUTPUT_BATCH) +
+			")_(.*_)?\\d{14}\\.(csv|json)(\\.gz)?");
+
+	private final ProcessOptions options;
+	private final TaxEngine engine;
+	private final File folder;
+	// null to watch every ledger in the folder
+	private final String ledgerName;
+	private final Map<String, LedgerState> nameToState = new HashMap<>();
+	// the current rejection, transfer and shortfall reports of each ledger, replaced on every parse
+	private final Map<String, File> rejectionFiles = new HashMap<>();
+	private final Map<String, File> transferFiles = new HashMap<>();
+	private final Map<String, File> shortfallFiles = new HashMap<>();
+
+
+	public LedgerWatcher(ProcessOptions options, File target) throws ControllerException {
+		if (!target.exists()) {
+			throw new ControllerException("Watch target " + target.getAbsolutePath() + " does not exist");
+		}
+		this.options = options;
+		this.engine = new TaxEngine(options, new AccountResultCache(LedgerServer.DEFAULT_MAX_ACCOUNTS));
+		if (target.isDirectory()) {
+			this.folder = target.getAbsoluteFile();
+			this.ledgerName = null;
+		}
+		else {
+			this.folder = target.getAbsoluteFile().getParentFile();
+			this.ledgerName = target.getName();
+		}
+	}
+
+
+	// Blocks until the thread is interrupted
+	public void run() throws ControllerException {
+		try (WatchService watchService = FileSystems.getDefault().newWatchService()) {
+			folder.toPath().register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+					StandardWatchEventKinds.ENTRY_DELETE);
+			Log.info("Watching " + (ledgerName == null ? "ledgers in " + folder : new File(folder, ledgerName).getPath()));
+
+			for (String name : listLedgers()) {
+				recompute(name);
+			}
+
+			Set<String> pendingNames = new TreeSet<>();
+			while (true) {
+				// after a change, wait until no further events arrive for the debounce period
+				WatchKey key = pendingNames.isEmpty() ? watchService.take() : watchService.poll(DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS);
+				if (key == null) {
+					for (String name : pendingNames) {
+						recompute(name);
+					}
+					pendingNames.clear();
+					continue;
+				}
+
+				for (WatchEvent<?> event : key.pollEvents()) {
+					if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+						pendingNames.addAll(listLedgers());
+					}
+					else {
+						String name = ((Path) event.context()).getFileName().toString();
+						if (isLotDesignationFile(name)) {
+							pendingNames.addAll(listLedgers());
+						}
+						else if (isLedger(name)) {
+							pendingNames.add(name);
+						}
+					}
+				}
+				key.reset();
+			}
+		}
+		catch (InterruptedException | ClosedWatchServiceException exc) {
+			Thread.currentThread().interrupt();
+			Log.info("Stopped watching " + folder);
+		}
+		catch (IOException exc) {
+			throw new ControllerException("Could not watch " + folder + ": " + exc.getMessage());
+		}
+	}
+
+
+	private boolean isLedger(String name) {
+		if (ledgerName != null) {
+			return name.equals(ledgerName);
+		}
+		String lowerName = name.toLowerCase();
+		return (lowerName.endsWith(".csv") || lowerName.endsWith(".csv." + LedgerStreams.EXT_GZIP)) &&
+				!OUTPUT_FILE_NAME.matcher(name).matches() && !isLotDesignationFile(name);
+	}
+
+
+	private boolean isLotDesignationFile(String name) {
+		File lotDesignationFile = options.getLotDesignationFile();
+		return options.getCostBasisType() == CostBasisType.SPECIFIC_ID && lotDesignationFile != null &&
+				lotDesignationFile.getAbsoluteFile().equals(new File(folder, name));
+	}
+
+
+	private Set<String> listLedgers() {
+		Set<String> result = new TreeSet<>();
+		String[] names = folder.list();
+		if (names != null) {
+			for (String name : names) {
+				if (isLedger(name) && new File(folder, name).isFile()) {
+					result.add(name);
+				}
+			}
+		}
+		return result;
+	}
+
+
+	// Tells whether an account's transactions moved to other ledger rows
+	private static long getRowIdHash(Iterable<? extends TransactionView> tList) {
+		long result = 1;
+		for (TransactionView t : tList) {
+			result = 31 * result + t.getTxnRowId();
+		}
+		return result;
+	}
+
+
+	private void recompute(String name) {
+		File inputFile = new File(folder, name);
+		if (!inputFile.isFile()) {
+			// deleted; its outputs are left in place
+			nameToState.remove(name);
+			return;
+		}
+
+		long startMillis = System.currentTimeMillis();
+		LedgerState prevState = nameToState.get(name);
+		try (TransactionStore tStore = engine.createTransactionStore()) {
+			RejectionReport rejections = new RejectionReport(options.getMaxRejectionExamples());
+			LotDesignations designations = Controller.readLotDesignations(options);
+			TransactionSource tSource = Controller.readTransactions(LedgerStreams.openReader(inputFile), inputFile.getAbsolutePath(), tStore,
+					rejections, designations);
+			replaceReport(rejectionFiles, name, Controller.writeRejectionReport(rejections, inputFile, folder, options));
+			if (tSource.size() == 0) {
+				throw new ControllerException("Input file contained no transactions");
+			}
+
+			BalanceReconciliation reconciliation = BalanceReconciliation.run(tSource);
+			TransferMatcher transfers = TransferMatcher.run(tSource, options.getTransferWindowMinutes() * 60, options.getTransferTolerance());
+			replaceReport(transferFiles, name, Controller.writeTransferReport(transfers, inputFile, folder));
+			File shortfallFile = Controller.writeShortfallReport(reconciliation, inputFile, folder);
+			replaceReport(shortfallFiles, name, shortfallFile);
+			if (reconciliation.getAccountShortfallCount() > 0) {
+				throw new ControllerException("Encountered less acquired coins than disposed coins at " + reconciliation.getAccountShortfallCount() +
+						" transactions; see " + shortfallFile.getAbsolutePath());
+			}
+
+			Map<String, String> acctToFingerprint = new HashMap<>();
+			Map<String, Long> acctToRowIdHash = new HashMap<>();
+			Set<String> designatedAccts = new HashSet<>();
+			for (String acct : tSource.getAccounts()) {
+				acctToFingerprint.put(acct, TransactionFingerprint.of(acct, tSource.getTransactions(acct)));
+				acctToRowIdHash.put(acct, getRowIdHash(tSource.getTransactions(acct)));
+				if (designations != null && designations.hasAccount(acct)) {
+					designatedAccts.add(acct);
+				}
+			}
+			Set<String> changedAccts = new TreeSet<>();
+			for (String acct : acctToFingerprint.keySet()) {
+				if (prevState == null || !acctToFingerprint.get(acct).equals(prevState.acctToFingerprint.get(acct))) {
+					changedAccts.add(acct);
+				}
+				// designations are not fingerprinted, so whether they changed is unknown
+				else if (designatedAccts.contains(acct) || prevState.designatedAccts.contains(acct)) {
+					changedAccts.add(acct);
+				}
+				// fingerprints leave out row ids, but the lineage output of an account whose rows moved must be rewritten;
+				// its gains come from the engine's cache
+				else if (options.isLineageReport() && !acctToRowIdHash.get(acct).equals(prevState.acctToRowIdHash.get(acct))) {
+					changedAccts.add(acct);
+				}
+			}
+			if (prevState != null) {
+				for (String acct : prevState.acctToFingerprint.keySet()) {
+					if (!acctToFingerprint.containsKey(acct)) {
+						changedAccts.add(acct);
+					}
+				}
+			}
+			if (changedAccts.isEmpty()) {
+				Log.info("No account of " + name + " changed; outputs are up to date");
+				return;
+			}
+
+			RunMetrics metrics = new RunMetrics(inputFile.getAbsolutePath());
+			TaxResult result = engine.compute(tSource, metrics, designations);
+			metrics.publish();
+
+			// a new timestamp for the rewritten files, strictly after the previous one so no name is reused
+			LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS);
+			if (prevState != null && !now.isAfter(prevState.timestamp)) {
+				now = prevState.timestamp.plusSeconds(1);
+			}
+			CsvResultWriter writer = new CsvResultWriter(folder, LedgerStreams.getLedgerBaseName(name), now.format(DTF_TIMESTAMP),
+					options.isCompressOutput(), engine.getUsdStablecoins());
+			writer.setWriteLineage(options.isLineageReport());
+			result.writeTo(new AffectedOutputFilter(writer, changedAccts));
+
+			// replace the affected outputs; those no longer produced (e.g., of a removed account) are deleted
+			Map<String, File> outputFiles = (prevState != null) ? prevState.outputFiles : new HashMap<>();
+			for (String key : new ArrayList<>(outputFiles.keySet())) {
+				int sep = key.indexOf(':');
+				boolean affected = (sep < 0 || changedAccts.contains(key.substring(sep + 1)));
+				if (affected && !writer.getOutputFiles().containsKey(key)) {
+					outputFiles.remove(key).delete();
+				}
+			}
+			for (Map.Entry<String, File> e : writer.getOutputFiles().entrySet()) {
+				File superseded = outputFiles.put(e.getKey(), e.getValue());
+				if (superseded != null && !superseded.equals(e.getValue())) {
+					superseded.delete();
+				}
+			}
+			nameToState.put(name, new LedgerState(acctToFingerprint, acctToRowIdHash, designatedAccts, outputFiles, now));
+			Log.info("Recomputed " + name + " (" + changedAccts.size() + " changed accounts: " + String.join(", ", changedAccts) +
+					") in " + (System.currentTimeMillis() - startMillis) + " ms");
+		}
+		catch (ControllerException exc) {
+			// keep watching; the previous outputs stay until the ledger is fixed
+			Log.error("Could not recompute " + name + ": " + exc.getMessage());
+		}
+		catch (IOException | UncheckedIOException exc) {
+			Log.error("Could not recompute " + name + ": " + exc.getMessage());
+		}
+		catch (RuntimeException exc) {
+			// an unexpected failure on one ledger must not end the watch
+			Log.error("Could not recompute " + name + ": " + exc);
+		}
+	}
+
+
+	// Makes report (null if none was written) the current one of the ledger, deleting the one it supersedes
+	private static void replaceReport(Map<String, File> reports, String name, File report) {
+		File prevReport = (report != null) ? reports.put(name, report) : reports.remove(name);
+		if (prevReport != null && !prevReport.equals(report)) {
+			prevReport.delete();
+		}
+	}
+
+
+	// Passes on the per-account outputs of changed accounts only; the cross-account outputs depend on every account
+	private static class AffectedOutputFilter implements TaxResultSink {
+
+		private final TaxResultSink sink;
+		private final Set<String> changedAccts;
+
+		AffectedOutputFilter(TaxResultSink sink, Set<String> changedAccts) {
+			this.sink = sink;
+			this.changedAccts = changedAccts;
+		}
+
+		@Override
+		public void acceptGainEntries(String acct, List<GainEntry> geList) throws ControllerException {
+			if (changedAccts.contains(acct)) {
+				sink.acceptGainEntries(acct, geList);
+			}
+		}
+
+		@Override
+		public void acceptUnrealizedCostBasis(UnrealizedCostBasisEntry ucbe) throws ControllerException {
+			sink.acceptUnrealizedCostBasis(ucbe);
+		}
+
+		@Override
+		public void acceptIncomeEntries(List<IncomeEntry> ieList) throws ControllerException {
+			sink.acceptIncomeEntries(ieList);
+		}
+
+		@Override
+		public void acceptPeriodIncome(PeriodIncome periodIncome) throws ControllerException {
+			sink.acceptPeriodIncome(periodIncome);
+		}
+
+		@Override
+		public void acceptMiningEntries(String acct, List<MiningEntry> meList) throws ControllerException {
+			if (changedAccts.contains(acct)) {
+				sink.acceptMiningEntries(acct, meList);
+			}
+		}
+	}
+
+
+	private static class LedgerState {
+
+		final Map<String, String> acctToFingerprint;
+		final Map<String, Long> acctToRowIdHash;
+		// the accounts computed with designated lots
+		final Set<String> designatedAccts;
+		// the current output file of each output kind (see CsvResultWriter.getOutputFiles)
+		final Map<String, File> outputFiles;
+		final LocalDateTime timestamp;
+
+		LedgerState(Map<String, String> acctToFingerprint, Map<String, Long> acctToRowIdHash, Set<String> designatedAccts,
+				Map<String, File> outputFiles, LocalDateTime timestamp) {
+			this.acctToFingerprint = acctToFingerprint;
+			this.acctToRowIdHash = acctToRowIdHash;
+			this.designatedAccts = designatedAccts;
+			this.outputFiles = outputFiles;
+			this.timestamp = timestamp;
+		}
+	}
+
+}
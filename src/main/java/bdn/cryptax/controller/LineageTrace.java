@@ -0,0 +1,61 @@
+package bdn.cryptax.controller;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+
+import bdn.cryptax.model.GainLineage;
+
+// Answers which ledger rows a gain came from from an exported lineage file (see CsvResultWriter), without recomputing
+// the ledger: the edges of a disposal row lead to the acquisition rows it consumed, and those of an acquisition row
+// to the disposals that consumed it.
+public class LineageTrace {
+
+	private static final CSVFormat CSV_FORMAT = CSVFormat.EXCEL;
+
+
+	public static GainLineage read(File inputFile) throws ControllerException {
+		GainLineage result = new GainLineage();
+		try (CSVParser parser = new CSVParser(LedgerStreams.openReader(inputFile), CSV_FORMAT.withHeader().withSkipHeaderRecord(true))) {
+			for (CSVRecord r : parser) {
+				String acqRow = r.get(GainLineage.COL_ACQ_ROW).trim();
+				result.add(Long.parseLong(r.get(GainLineage.COL_DISP_ROW).trim()),
+						acqRow.isEmpty() ? GainLineage.POOLED_ROW_ID : Long.parseLong(acqRow),
+						new BigDecimal(r.get(GainLineage.COL_COIN_AMNT).trim()));
+			}
+		}
+		catch (IllegalArgumentException | IllegalStateException exc) {
+			throw new ControllerException("Could not read lineage file " + inputFile.getAbsolutePath() + ": " + exc.getMessage());
+		}
+		catch (IOException exc) {
+			throw new ControllerException("Could not read lineage file " + inputFile.getAbsolutePath() + ": " + exc.getMessage());
+		}
+		return result;
+	}
+
+
+	// Logs the edges of rowId, both as a disposal and as an acquisition
+	public static void trace(File inputFile, long rowId) throws ControllerException {
+		GainLineage lineage = read(inputFile);
+
+		int[] edges = lineage.findByDisposal(rowId);
+		for (int edge : edges) {
+			long acqRowId = lineage.getAcqRowId(edge);
+			Log.info("Disposal row " + rowId + " disposed of " + lineage.getCoinAmnt(edge).toPlainString() + " coins from " +
+					((acqRowId == GainLineage.POOLED_ROW_ID) ? "the pool" : "acquisition row " + acqRowId));
+		}
+		int[] acqEdges = (rowId == GainLineage.POOLED_ROW_ID) ? new int[0] : lineage.findByAcquisition(rowId);
+		for (int edge : acqEdges) {
+			Log.info("Acquisition row " + rowId + " supplied " + lineage.getCoinAmnt(edge).toPlainString() + " coins to disposal row " +
+					lineage.getDispRowId(edge));
+		}
+		if (edges.length == 0 && acqEdges.length == 0) {
+			Log.info("Row " + rowId + " has no gain lineage in " + inputFile.getAbsolutePath());
+		}
+	}
+
+}
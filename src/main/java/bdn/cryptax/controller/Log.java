@@ -0,0 +1,253 @@
+package bdn.cryptax.controller;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Console logging off the calling thread. Messages go through a bounded queue to a single daemon writer, which prints
+// them in order (errors to stderr, the rest to stdout). When the queue is full, errors wait for room and other messages
+// are dropped and counted. A Channel rate-limits one kind of repeated message and counts the ones it suppresses.
+public class Log {
+
+	public static enum Level {
+		DEBUG, INFO, ERROR
+	}
+
+
+	private static final int QUEUE_CAPACITY = 16384;
+	private static final int WRITE_BATCH_SIZE = 1024;
+	private static final long FLUSH_TIMEOUT_MILLIS = 5000;
+	public static final int DEFAULT_MESSAGES_PER_SECOND = 10;
+
+	private static volatile Level threshold = Level.INFO;
+	private static final BlockingQueue<Message> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+	private static final AtomicLong droppedCount = new AtomicLong();
+	private static final List<Channel> channels = new CopyOnWriteArrayList<>();
+
+	static {
+		Thread writer = new Thread(Log::writeMessages, "cryptax-log");
+		writer.setDaemon(true);
+		writer.start();
+		// print whatever is still queued when the JVM exits without close()
+		Runtime.getRuntime().addShutdownHook(new Thread(Log::flush, "cryptax-log-flush"));
+	}
+
+
+	private Log() {
+	}
+
+
+	public static Level getLevel() {
+		return threshold;
+	}
+
+
+	public static void setLevel(Level level) {
+		threshold = level;
+	}
+
+
+	public static boolean isEnabled(Level level) {
+		return level.compareTo(threshold) >= 0;
+	}
+
+
+	public static void debug(String text) {
+		log(Level.DEBUG, text);
+	}
+
+
+	public static void info(String text) {
+		log(Level.INFO, text);
+	}
+
+
+	public static void error(String text) {
+		log(Level.ERROR, text);
+	}
+
+
+	public static void log(Level level, String text) {
+		if (!isEnabled(level)) {
+			return;
+		}
+		Message m = new Message(level, text, null);
+		if (level != Level.ERROR) {
+			if (!queue.offer(m)) {
+				droppedCount.incrementAndGet();
+			}
+			return;
+		}
+		try {
+			queue.put(m);
+		}
+		catch (InterruptedException exc) {
+			Thread.currentThread().interrupt();
+			System.err.println(format(m));
+		}
+	}
+
+
+	// messagesPerSecond: the most messages the channel prints per second; the rest are only counted
+	public static Channel channel(String name, Level level, int messagesPerSecond) {
+		Channel channel = new Channel(name, level, messagesPerSecond);
+		channels.add(channel);
+		return channel;
+	}
+
+
+	// Waits (bounded) until every message queued so far is printed
+	public static void flush() {
+		CountDownLatch latch = new CountDownLatch(1);
+		try {
+			if (queue.offer(new Message(null, null, latch), FLUSH_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+				latch.await(FLUSH_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+			}
+		}
+		catch (InterruptedException exc) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+
+	// Logs the suppressed and dropped message counts and prints everything still queued
+	public static void close() {
+		for (Channel channel : channels) {
+			long suppressed = channel.getSuppressedCount();
+			if (suppressed > 0) {
+				info("Suppressed " + suppressed + " of " + channel.getCount() + " '" + channel.getName() + "' messages");
+			}
+		}
+		long dropped = droppedCount.get();
+		if (dropped > 0) {
+			error("Dropped " + dropped + " log messages because the log queue was full");
+		}
+		flush();
+	}
+
+
+	public static long getDroppedCount() {
+		return droppedCount.get();
+	}
+
+
+	private static void writeMessages() {
+		List<Message> batch = new ArrayList<>(WRITE_BATCH_SIZE);
+		StringBuilder sb = new StringBuilder();
+		while (true) {
+			try {
+				batch.add(queue.take());
+			}
+			catch (InterruptedException exc) {
+				return;
+			}
+			queue.drainTo(batch, WRITE_BATCH_SIZE - 1);
+
+			// consecutive messages to the same stream are printed at once
+			PrintStream stream = null;
+			for (Message m : batch) {
+				PrintStream mStream = (m.level == Level.ERROR) ? System.err : System.out;
+				if (sb.length() > 0 && (m.flushed != null || mStream != stream)) {
+					stream.print(sb);
+					stream.flush();
+					sb.setLength(0);
+				}
+				if (m.flushed != null) {
+					m.flushed.countDown();
+					continue;
+				}
+				stream = mStream;
+				sb.append(format(m)).append(System.lineSeparator());
+			}
+			if (sb.length() > 0) {
+				stream.print(sb);
+				stream.flush();
+				sb.setLength(0);
+			}
+			batch.clear();
+		}
+	}
+
+
+	private static String format(Message m) {
+		return m.level.name() + ": " + m.text;
+	}
+
+
+	private static class Message {
+		private final Level level;
+		private final String text;
+		// non-null for the marker flush() waits on
+		private final CountDownLatch flushed;
+
+		Message(Level level, String text, CountDownLatch flushed) {
+			this.level = level;
+			this.text = text;
+			this.flushed = flushed;
+		}
+	}
+
+
+	public static class Channel {
+
+		private static final long WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+		private final String name;
+		private final Level level;
+		private final int messagesPerSecond;
+		private long count = 0;
+		private long suppressedCount = 0;
+		private long windowStartNanos = 0;
+		private int windowCount = 0;
+
+		Channel(String name, Level level, int messagesPerSecond) {
+			this.name = name;
+			this.level = level;
+			this.messagesPerSecond = messagesPerSecond;
+		}
+
+		// The message is text followed by arg, concatenated only when the message is printed
+		public void log(String text, Object arg) {
+			if (acquire()) {
+				Log.log(level, text + arg);
+			}
+		}
+
+		private synchronized boolean acquire() {
+			count++;
+			if (!isEnabled(level)) {
+				return false;
+			}
+			long now = System.nanoTime();
+			if (windowCount == 0 || now - windowStartNanos >= WINDOW_NANOS) {
+				windowStartNanos = now;
+				windowCount = 0;
+			}
+			if (windowCount < messagesPerSecond) {
+				windowCount++;
+				return true;
+			}
+			suppressedCount++;
+			return false;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public synchronized long getCount() {
+			return count;
+		}
+
+		public synchronized long getSuppressedCount() {
+			return suppressedCount;
+		}
+	}
+
+}
@@ -0,0 +1,180 @@
+package bdn.cryptax.controller;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+
+import bdn.cryptax.model.TransactionValidator;
+
+// The lots that disposals consume under specific identification, by account and disposal time. They come from a side
+// file (one lot per row) or from the ledger's optional Lot column, whose value lists lots as "dttm@broker=coin" separated
+// by semicolons; the broker and the coin amount may be left out. Without an amount, a designated lot is consumed as far
+// as the disposal needs.
+public class LotDesignations {
+
+	public static final String COL_LOT = "Lot";
+	public static final String COL_ACCT = "Acct";
+	public static final String COL_DISP_DTTM = "Disposal Dttm";
+	public static final String COL_LOT_DTTM = "Lot Dttm";
+	public static final String COL_LOT_BROKER = "Lot Broker";
+	public static final String COL_LOT_COIN_AMNT = "Lot COIN";
+
+	private static final CSVFormat CSV_FORMAT = CSVFormat.EXCEL;
+
+	private final Map<String, Map<LocalDateTime, List<Designation>>> acctToDttmToDesignations = new HashMap<>();
+	private long count = 0;
+
+
+	public static LotDesignations read(File inputFile) throws ControllerException {
+		LotDesignations result = new LotDesignations();
+		try (CSVParser parser = new CSVParser(LedgerStreams.openReader(inputFile), CSV_FORMAT.withHeader().withSkipHeaderRecord(true))) {
+			for (CSVRecord r : parser) {
+				String acct = r.isMapped(COL_ACCT) ? r.get(COL_ACCT).trim() : "";
+				LocalDateTime dispDttm = parseDttm(r.get(COL_DISP_DTTM), r.getRecordNumber());
+				LocalDateTime lotDttm = parseDttm(r.get(COL_LOT_DTTM), r.getRecordNumber());
+				String broker = r.isMapped(COL_LOT_BROKER) ? r.get(COL_LOT_BROKER) : null;
+				String coinAmnt = r.isMapped(COL_LOT_COIN_AMNT) ? r.get(COL_LOT_COIN_AMNT) : null;
+				result.add(acct, dispDttm, new Designation(lotDttm, broker, parseCoinAmnt(coinAmnt, r.getRecordNumber())));
+			}
+		}
+		catch (IllegalArgumentException | IllegalStateException exc) {
+			throw new ControllerException("Could not read lot designation file " + inputFile.getAbsolutePath() + ": " + exc.getMessage());
+		}
+		catch (IOException exc) {
+			throw new ControllerException("Could not read lot designation file " + inputFile.getAbsolutePath() + ": " + exc.getMessage());
+		}
+		Log.info("Read " + result.size() + " lot designations from " + inputFile.getAbsolutePath());
+		return result;
+	}
+
+
+	// Adds the lots of a ledger row's Lot column value
+	public void addAll(String acct, LocalDateTime dispDttm, String lotSpecs, long recordNumber) throws ControllerException {
+		for (String spec : lotSpecs.split(";")) {
+			spec = spec.trim();
+			if (spec.isEmpty()) {
+				continue;
+			}
+			String coinAmnt = null;
+			int i = spec.lastIndexOf('=');
+			if (i >= 0) {
+				coinAmnt = spec.substring(i + 1);
+				spec = spec.substring(0, i);
+			}
+			String broker = null;
+			i = spec.indexOf('@');
+			if (i >= 0) {
+				broker = spec.substring(i + 1);
+				spec = spec.substring(0, i);
+			}
+			add(acct, dispDttm, new Designation(parseDttm(spec, recordNumber), broker, parseCoinAmnt(coinAmnt, recordNumber)));
+		}
+	}
+
+
+	public void add(String acct, LocalDateTime dispDttm, Designation designation) {
+		acctToDttmToDesignations.computeIfAbsent(acct, k -> new HashMap<>())
+				.computeIfAbsent(dispDttm, k -> new ArrayList<>()).add(designation);
+		count++;
+	}
+
+
+	// Adds every designation of other, after those already added for the same disposals
+	public void addAll(LotDesignations other) {
+		for (Map.Entry<String, Map<LocalDateTime, List<Designation>>> acctEntry : other.acctToDttmToDesignations.entrySet()) {
+			for (Map.Entry<LocalDateTime, List<Designation>> e : acctEntry.getValue().entrySet()) {
+				for (Designation d : e.getValue()) {
+					add(acctEntry.getKey(), e.getKey(), d);
+				}
+			}
+		}
+	}
+
+
+	// The lots designated for the account's disposal at dispDttm, in the order given; empty if there are none
+	public List<Designation> get(String acct, LocalDateTime dispDttm) {
+		Map<LocalDateTime, List<Designation>> dttmToDesignations = acctToDttmToDesignations.get(acct);
+		List<Designation> result = (dttmToDesignations != null) ? dttmToDesignations.get(dispDttm) : null;
+		return (result != null) ? result : Collections.emptyList();
+	}
+
+
+	public boolean hasAccount(String acct) {
+		return acctToDttmToDesignations.containsKey(acct);
+	}
+
+
+	public long size() {
+		return count;
+	}
+
+
+	private static LocalDateTime parseDttm(String str, long recordNumber) throws ControllerException {
+		LocalDateTime result = (str != null) ? TransactionValidator.parseDttm(str.trim()) : null;
+		if (result == null) {
+			throw new ControllerException("Invalid lot designation dttm '" + str + "' in record #" + recordNumber);
+		}
+		return result;
+	}
+
+
+	private static BigDecimal parseCoinAmnt(String str, long recordNumber) throws ControllerException {
+		if (str == null || str.trim().isEmpty()) {
+			return null;
+		}
+		try {
+			BigDecimal result = new BigDecimal(str.trim());
+			if (result.signum() <= 0) {
+				throw new ControllerException("Invalid lot designation coin amount '" + str + "' in record #" + recordNumber);
+			}
+			return result;
+		}
+		catch (NumberFormatException exc) {
+			throw new ControllerException("Invalid lot designation coin amount '" + str + "' in record #" + recordNumber);
+		}
+	}
+
+
+	public static class Designation {
+
+		private final LocalDateTime lotDttm;
+		private final String broker;
+		private final BigDecimal coinAmnt;
+
+		public Designation(LocalDateTime lotDttm, String broker, BigDecimal coinAmnt) {
+			this.lotDttm = lotDttm;
+			this.broker = (broker == null || broker.trim().isEmpty()) ? null : broker.trim();
+			this.coinAmnt = coinAmnt;
+		}
+
+		public LocalDateTime getLotDttm() {
+			return lotDttm;
+		}
+
+		// null matches a lot held at any broker
+		public String getBroker() {
+			return broker;
+		}
+
+		// null to consume the lot as far as the disposal needs
+		public BigDecimal getCoinAmnt() {
+			return coinAmnt;
+		}
+
+		@Override
+		public String toString() {
+			return lotDttm + ((broker != null) ? "@" + broker : "") + ((coinAmnt != null) ? "=" + coinAmnt.toPlainString() : "");
+		}
+	}
+
+}
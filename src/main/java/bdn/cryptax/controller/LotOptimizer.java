@@ -0,0 +1,542 @@
+package bdn.cryptax.controller;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import bdn.cryptax.model.GainEntry;
+import bdn.cryptax.model.GainEntry.GainTerm;
+import bdn.cryptax.model.UnrealizedGainEntry;
+
+// Chooses which of an account's open lots a sale should consume to realize the least tax. Gains are taxed at the short
+// or long-term rate by their term on the sale date (GainEntry.getTerm), netted as in the US: a net loss of one term
+// offsets the net gain of the other, and a net loss left over is deducted at the short-term rate. Short-term lots with
+// a gain that turn long-term within the horizon are held back, and only sold once every other lot is.
+//
+// That tax never decreases with either term's net gain, so whatever the split of the sale between the terms, each term
+// is best served lowest gain per coin (highest cost) first; the lots are sorted that way once per account, with prefix
+// sums of their coins and cost basis, so once the split is chosen the sale is realized by binary search over them. The
+// greedy pick chooses the split lot by lot, taking coins from whichever term's next lot has the lower marginal tax per
+// coin. The exact pick walks the lot boundaries of both terms once: the tax is piecewise linear in the split, with
+// kinks only at lot boundaries and where a net gain crosses zero, so its minimum is at one of those points. Both picks
+// compare taxes in doubles; the split they choose, the amounts and the tax are then computed in BigDecimal.
+public class LotOptimizer {
+
+	private static final BigDecimal THRESHOLD_DECIMAL_EQUALING_ZERO = new BigDecimal("0.000000000000000000000001");
+	private static final MathContext PRECISION = new MathContext(34, RoundingMode.HALF_UP);
+	private static final byte SHORT_TERM = 0;
+	private static final byte SOON_LONG_TERM = 1;
+	private static final byte LONG_TERM = 2;
+	private static final int NO_BOUNDARY = Integer.MIN_VALUE;
+
+	private final BigDecimal stRate;
+	private final BigDecimal ltRate;
+	// the rates as doubles, for choosing the split only
+	private final double approxStRate;
+	private final double approxLtRate;
+	private final UnrealizedGainEntry[] lots;
+	private final double[] unitCosts;
+	private final double[] coinAmnts;
+	// lots by term, highest cost per coin first; soon: short-term lots turning long-term within the horizon
+	private final PrefixSums stLots;
+	private final PrefixSums soonLots;
+	private final PrefixSums ltLots;
+	private final SellingOrder ltOrder;
+	// the short-term selling order depends on the price only by how many soon long-term lots sell at a loss, so the last
+	// one is kept for the next sale
+	private SellingOrder lastStOrder = null;
+
+
+	public LotOptimizer(List<UnrealizedGainEntry> lots, LocalDate saleDate, int horizonDays, BigDecimal stRate, BigDecimal ltRate) {
+		this.stRate = stRate;
+		this.ltRate = ltRate;
+		approxStRate = stRate.doubleValue();
+		approxLtRate = ltRate.doubleValue();
+		this.lots = lots.toArray(new UnrealizedGainEntry[0]);
+		int n = this.lots.length;
+		unitCosts = new double[n];
+		coinAmnts = new double[n];
+		byte[] terms = new byte[n];
+		for (int i = 0; i < n; i++) {
+			UnrealizedGainEntry lot = this.lots[i];
+			coinAmnts[i] = lot.getAssetAmnt().doubleValue();
+			unitCosts[i] = lot.getCostBasis().doubleValue() / coinAmnts[i];
+			if (GainEntry.getTerm(lot.getDateAcquired(), saleDate) == GainTerm.LONGTERM) {
+				terms[i] = LONG_TERM;
+			}
+			else if (GainEntry.getTerm(lot.getDateAcquired(), saleDate.plusDays(horizonDays)) == GainTerm.LONGTERM) {
+				terms[i] = SOON_LONG_TERM;
+			}
+			else {
+				terms[i] = SHORT_TERM;
+			}
+		}
+		stLots = new PrefixSums(sortByUnitCost(terms, SHORT_TERM));
+		soonLots = new PrefixSums(sortByUnitCost(terms, SOON_LONG_TERM));
+		ltLots = new PrefixSums(sortByUnitCost(terms, LONG_TERM));
+		ltOrder = new SellingOrder(ltLots.order, null, ltLots, null);
+	}
+
+
+	private int[] sortByUnitCost(byte[] terms, byte term) {
+		// ties keep the lots' queue order
+		return IntStream.range(0, lots.length).filter(i -> terms[i] == term).boxed()
+				.sorted((a, b) -> Double.compare(unitCosts[b], unitCosts[a])).mapToInt(Integer::intValue).toArray();
+	}
+
+
+	public int size() {
+		return lots.length;
+	}
+
+
+	// The lots to sell coinAmnt coins from at usdPerCoin; exact searches the best split between the terms as well
+	public Selection optimize(BigDecimal coinAmnt, BigDecimal usdPerCoin, boolean exact) {
+		SellingOrder stOrder = getShortTermOrder(usdPerCoin.doubleValue());
+
+		// the greedy pick sells each term in the same order, so it is one of the splits the exact pick searches
+		Selection result = exact ? pickExact(stOrder, coinAmnt, usdPerCoin) : null;
+		return (result != null) ? result : pickGreedy(stOrder, coinAmnt, usdPerCoin);
+	}
+
+
+	// Short-term lots in selling order: those not turning long-term soon merged with those that do at a loss, by cost
+	// per coin, and then those that turn long-term soon at a gain (held back)
+	private SellingOrder getShortTermOrder(double price) {
+		int[] st = stLots.order;
+		int[] soon = soonLots.order;
+		int lossCount = countAbove(soon, price);
+		if (lastStOrder != null && lastStOrder.heldBackStart == st.length + lossCount) {
+			return lastStOrder;
+		}
+		int[] order = new int[st.length + soon.length];
+		int[] stCounts = new int[order.length + 1];
+		int i = 0;
+		int j = 0;
+		int k = 0;
+		while (i < st.length || j < soon.length) {
+			if (j >= soon.length || (i < st.length && (j >= lossCount || unitCosts[st[i]] >= unitCosts[soon[j]]))) {
+				order[k++] = st[i++];
+			}
+			else {
+				order[k++] = soon[j++];
+			}
+			stCounts[k] = i;
+		}
+		SellingOrder result = new SellingOrder(order, stCounts, stLots, soonLots);
+		result.heldBackStart = st.length + lossCount;
+		lastStOrder = result;
+		return result;
+	}
+
+
+	// The number of lots, highest cost first, whose cost per coin is above price (sold at a loss)
+	private int countAbove(int[] order, double price) {
+		int lo = 0;
+		int hi = order.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (unitCosts[order[mid]] > price) {
+				lo = mid + 1;
+			}
+			else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+
+	private Selection pickGreedy(SellingOrder stOrder, BigDecimal coinAmnt, BigDecimal usdPerCoin) {
+		double price = usdPerCoin.doubleValue();
+		int[] st = stOrder.order;
+		int[] lt = ltOrder.order;
+		// the lots of each term sold whole, and the term of the last lot, which may be sold in part
+		double restCoins = coinAmnt.doubleValue();
+		int i = 0;
+		int j = 0;
+		boolean lastLongTerm = false;
+		while (restCoins > 0 && (i < st.length || j < lt.length)) {
+			double stTax = (i < stOrder.heldBackStart) ? approxStRate * (price - unitCosts[st[i]]) : Double.POSITIVE_INFINITY;
+			double ltTax = (j < lt.length) ? approxLtRate * (price - unitCosts[lt[j]]) : Double.POSITIVE_INFINITY;
+			lastLongTerm = (i >= st.length) || (j < lt.length && ltTax < stTax);
+			restCoins -= lastLongTerm ? coinAmnts[lt[j++]] : coinAmnts[st[i++]];
+		}
+		BigDecimal stCoinAmnt = stOrder.getCoinAmnt(lastLongTerm ? i : Math.max(i - 1, 0));
+		if (!lastLongTerm) {
+			// the last short-term lot sells what the long-term lots sold whole leave
+			stCoinAmnt = coinAmnt.subtract(ltOrder.getCoinAmnt(j)).max(stCoinAmnt);
+		}
+		stCoinAmnt = stCoinAmnt.min(coinAmnt);
+		return select(stOrder, stCoinAmnt, coinAmnt.subtract(stCoinAmnt), usdPerCoin);
+	}
+
+
+	// Searches the coins sold short-term; null when the lots do not cover coinAmnt
+	private Selection pickExact(SellingOrder stOrder, BigDecimal coinAmnt, BigDecimal usdPerCoin) {
+		double price = usdPerCoin.doubleValue();
+		double q = coinAmnt.doubleValue();
+		int stLength = stOrder.order.length;
+		int ltLength = ltOrder.order.length;
+		double lo = Math.max(0, q - ltOrder.getCoins(ltLength));
+		double hi = Math.min(q, stOrder.getCoins(stLength));
+		if (lo > hi) {
+			return null;
+		}
+
+		// the lot boundaries of both terms, as coins sold short-term, ascending: those of the short-term lots ascend with
+		// their count, those of the long-term lots descend; a boundary is kept as the count of its term's lots, negated
+		// minus one for the long-term ones, so the split can be computed exactly from the prefix sums
+		int best = 0;
+		int bestFrom = NO_BOUNDARY;
+		int bestRoot = -1;
+		double bestTax = Double.POSITIVE_INFINITY;
+		int prev = NO_BOUNDARY;
+		int i = 0;
+		int j = ltLength;
+		double a = Double.NaN;
+		double stA = 0;
+		double ltA = 0;
+		while (i <= stLength || j >= 0) {
+			boolean stBoundary = (j < 0 || (i <= stLength && stOrder.getCoins(i) <= q - ltOrder.getCoins(j)));
+			double b = stBoundary ? stOrder.getCoins(i) : q - ltOrder.getCoins(j);
+			int boundary = stBoundary ? i++ : -(j--) - 1;
+			if (b < lo || b > hi) {
+				continue;
+			}
+			double stB = gainAt(stOrder, b, price);
+			double ltB = gainAt(ltOrder, q - b, price);
+			if (!Double.isNaN(a) && b > a) {
+				// both net gains are linear from the last boundary; the tax may also kink where either or their sum is zero
+				double stSlope = (stB - stA) / (b - a);
+				double ltSlope = (ltB - ltA) / (b - a);
+				double[] roots = { -stA / stSlope, -ltA / ltSlope, -(stA + ltA) / (stSlope + ltSlope) };
+				for (int r = 0; r < roots.length; r++) {
+					double t = roots[r];
+					if (t > 0 && a + t < b) {
+						double taxT = tax(stA + stSlope * t, ltA + ltSlope * t);
+						if (taxT < bestTax) {
+							bestTax = taxT;
+							best = boundary;
+							bestFrom = prev;
+							bestRoot = r;
+						}
+					}
+				}
+			}
+			double taxB = tax(stB, ltB);
+			if (taxB < bestTax) {
+				bestTax = taxB;
+				best = boundary;
+				bestFrom = NO_BOUNDARY;
+				bestRoot = -1;
+			}
+			prev = boundary;
+			a = b;
+			stA = stB;
+			ltA = ltB;
+		}
+
+		BigDecimal stCoinAmnt = getShortTermCoinAmnt(stOrder, best, coinAmnt);
+		if (bestFrom != NO_BOUNDARY) {
+			// a kink between two boundaries: the net gains are linear between them, so the zero crossing is interpolated
+			BigDecimal x = getShortTermCoinAmnt(stOrder, bestFrom, coinAmnt);
+			BigDecimal fromValue = getRootValue(stOrder, x, coinAmnt, usdPerCoin, bestRoot);
+			BigDecimal toValue = getRootValue(stOrder, stCoinAmnt, coinAmnt, usdPerCoin, bestRoot);
+			if (fromValue.compareTo(toValue) != 0) {
+				BigDecimal t = stCoinAmnt.subtract(x).multiply(fromValue).divide(fromValue.subtract(toValue), PRECISION);
+				stCoinAmnt = x.add(t).max(x).min(stCoinAmnt);
+			}
+			else {
+				stCoinAmnt = x;
+			}
+		}
+		return select(stOrder, stCoinAmnt, coinAmnt.subtract(stCoinAmnt), usdPerCoin);
+	}
+
+
+	// The coins sold short-term at a boundary: its term's lots are sold whole and the other term sells the rest
+	private BigDecimal getShortTermCoinAmnt(SellingOrder stOrder, int boundary, BigDecimal coinAmnt) {
+		if (boundary >= 0) {
+			return stOrder.getCoinAmnt(boundary).min(coinAmnt);
+		}
+		return coinAmnt.subtract(ltOrder.getCoinAmnt(-boundary - 1).min(coinAmnt));
+	}
+
+
+	// The short-term (root 0), long-term (1) or total (2) net gain of selling stCoinAmnt of coinAmnt coins short-term
+	private BigDecimal getRootValue(SellingOrder stOrder, BigDecimal stCoinAmnt, BigDecimal coinAmnt, BigDecimal usdPerCoin,
+			int root) {
+		BigDecimal stGain = (root == 1) ? BigDecimal.ZERO : getGain(stOrder, stCoinAmnt, usdPerCoin);
+		BigDecimal ltGain = (root == 0) ? BigDecimal.ZERO : getGain(ltOrder, coinAmnt.subtract(stCoinAmnt), usdPerCoin);
+		return stGain.add(ltGain);
+	}
+
+
+	private Selection select(SellingOrder stOrder, BigDecimal stCoinAmnt, BigDecimal ltCoinAmnt, BigDecimal usdPerCoin) {
+		Selection result = new Selection(lots, usdPerCoin);
+		result.sell(stOrder, stCoinAmnt, false);
+		result.sell(ltOrder, ltCoinAmnt, true);
+		result.tax = estimateTax(result.getShortTermGain(), result.getLongTermGain());
+		return result;
+	}
+
+
+	// The net gain of selling the first coins of a selling order
+	private BigDecimal getGain(SellingOrder order, BigDecimal coinAmnt, BigDecimal usdPerCoin) {
+		int m = order.getWholeLotCount(coinAmnt);
+		BigDecimal costBasis = order.getCostBasis(m);
+		BigDecimal restCoinAmnt = coinAmnt.subtract(order.getCoinAmnt(m));
+		if (m < order.order.length && restCoinAmnt.signum() > 0) {
+			UnrealizedGainEntry lot = lots[order.order[m]];
+			costBasis = costBasis.add(restCoinAmnt.multiply(lot.getCostBasis()).divide(lot.getAssetAmnt(), PRECISION));
+		}
+		return coinAmnt.min(order.getCoinAmnt(order.order.length)).multiply(usdPerCoin).subtract(costBasis);
+	}
+
+
+	// The net gain of selling the first coins of a selling order, approximately
+	private double gainAt(SellingOrder order, double coins, double price) {
+		int n = order.order.length;
+		int lo = 0;
+		int hi = n;
+		while (lo < hi) {
+			int mid = (lo + hi + 1) >>> 1;
+			if (order.getCoins(mid) <= coins) {
+				lo = mid;
+			}
+			else {
+				hi = mid - 1;
+			}
+		}
+		if (lo == n) {
+			return price * order.getCoins(n) - order.getCost(n);
+		}
+		return price * coins - order.getCost(lo) - (coins - order.getCoins(lo)) * unitCosts[order.order[lo]];
+	}
+
+
+	private double tax(double stGain, double ltGain) {
+		if (stGain >= 0 && ltGain >= 0) {
+			return approxStRate * stGain + approxLtRate * ltGain;
+		}
+		double net = stGain + ltGain;
+		// a short-term loss offsets a long-term gain at the long-term rate; any other net loss is deducted at the short-term rate
+		return (stGain < 0 && net >= 0) ? approxLtRate * net : approxStRate * net;
+	}
+
+
+	// The tax on a sale's net short and long-term gains; negative when its losses save tax
+	public BigDecimal estimateTax(BigDecimal stGain, BigDecimal ltGain) {
+		if (stGain.signum() >= 0 && ltGain.signum() >= 0) {
+			return stRate.multiply(stGain).add(ltRate.multiply(ltGain)).round(PRECISION);
+		}
+		BigDecimal net = stGain.add(ltGain);
+		return ((stGain.signum() < 0 && net.signum() >= 0) ? ltRate : stRate).multiply(net).round(PRECISION);
+	}
+
+
+	// Lots in a fixed order with the running sums of their coins and cost basis: entry m sums the first m lots; the
+	// doubles approximate them for choosing the split
+	private class PrefixSums {
+
+		private final int[] order;
+		private final BigDecimal[] cumCoinAmnts;
+		private final BigDecimal[] cumCostBases;
+		private final double[] cumCoins;
+		private final double[] cumCosts;
+
+		PrefixSums(int[] order) {
+			this.order = order;
+			cumCoinAmnts = new BigDecimal[order.length + 1];
+			cumCostBases = new BigDecimal[order.length + 1];
+			cumCoins = new double[order.length + 1];
+			cumCosts = new double[order.length + 1];
+			cumCoinAmnts[0] = BigDecimal.ZERO;
+			cumCostBases[0] = BigDecimal.ZERO;
+			for (int k = 0; k < order.length; k++) {
+				cumCoinAmnts[k + 1] = cumCoinAmnts[k].add(lots[order[k]].getAssetAmnt());
+				cumCostBases[k + 1] = cumCostBases[k].add(lots[order[k]].getCostBasis());
+				cumCoins[k + 1] = cumCoinAmnts[k + 1].doubleValue();
+				cumCosts[k + 1] = cumCostBases[k + 1].doubleValue();
+			}
+		}
+	}
+
+
+	// One term's lots in selling order, interleaving the lots of up to two PrefixSums in their own orders, so the sums
+	// over any first lots of it are two prefix sums
+	private static class SellingOrder {
+
+		private final int[] order;
+		// firstCounts[m]: how many of the first m lots come from first; null when all do
+		private final int[] firstCounts;
+		private final PrefixSums first;
+		private final PrefixSums second;
+		// lots from here on are only sold by the greedy pick once the other term has none left
+		private int heldBackStart;
+
+		SellingOrder(int[] order, int[] firstCounts, PrefixSums first, PrefixSums second) {
+			this.order = order;
+			this.firstCounts = firstCounts;
+			this.first = first;
+			this.second = second;
+			this.heldBackStart = order.length;
+		}
+
+		// The coins of the first m lots
+		BigDecimal getCoinAmnt(int m) {
+			if (firstCounts == null) {
+				return first.cumCoinAmnts[m];
+			}
+			return first.cumCoinAmnts[firstCounts[m]].add(second.cumCoinAmnts[m - firstCounts[m]]);
+		}
+
+		BigDecimal getCostBasis(int m) {
+			if (firstCounts == null) {
+				return first.cumCostBases[m];
+			}
+			return first.cumCostBases[firstCounts[m]].add(second.cumCostBases[m - firstCounts[m]]);
+		}
+
+		double getCoins(int m) {
+			if (firstCounts == null) {
+				return first.cumCoins[m];
+			}
+			return first.cumCoins[firstCounts[m]] + second.cumCoins[m - firstCounts[m]];
+		}
+
+		double getCost(int m) {
+			if (firstCounts == null) {
+				return first.cumCosts[m];
+			}
+			return first.cumCosts[firstCounts[m]] + second.cumCosts[m - firstCounts[m]];
+		}
+
+		// The number of lots sold whole when selling coinAmnt coins
+		int getWholeLotCount(BigDecimal coinAmnt) {
+			int lo = 0;
+			int hi = order.length;
+			while (lo < hi) {
+				int mid = (lo + hi + 1) >>> 1;
+				if (getCoinAmnt(mid).compareTo(coinAmnt) <= 0) {
+					lo = mid;
+				}
+				else {
+					hi = mid - 1;
+				}
+			}
+			return lo;
+		}
+	}
+
+
+	// The lots a sale takes coins from: the first lots of each term's selling order, of which only the last may be sold
+	// in part; and what they realize by term
+	public static class Selection {
+
+		private final UnrealizedGainEntry[] lots;
+		private final BigDecimal usdPerCoin;
+		private int[] stLots = new int[0];
+		private int[] ltLots = new int[0];
+		// coins taken from the last lot of each term
+		private BigDecimal stLastCoinAmnt = null;
+		private BigDecimal ltLastCoinAmnt = null;
+		private BigDecimal stCoinAmnt = BigDecimal.ZERO;
+		private BigDecimal stCostBasis = BigDecimal.ZERO;
+		private BigDecimal ltCoinAmnt = BigDecimal.ZERO;
+		private BigDecimal ltCostBasis = BigDecimal.ZERO;
+		private BigDecimal tax = null;
+
+		Selection(UnrealizedGainEntry[] lots, BigDecimal usdPerCoin) {
+			this.lots = lots;
+			this.usdPerCoin = usdPerCoin;
+		}
+
+		// Sells coinAmnt coins of a term from the first lots of its selling order
+		private void sell(SellingOrder order, BigDecimal coinAmnt, boolean longTerm) {
+			int m = order.getWholeLotCount(coinAmnt);
+			BigDecimal soldCoinAmnt = order.getCoinAmnt(m);
+			BigDecimal costBasis = order.getCostBasis(m);
+			BigDecimal lastCoinAmnt = (m > 0) ? lots[order.order[m - 1]].getAssetAmnt() : null;
+			BigDecimal restCoinAmnt = coinAmnt.subtract(soldCoinAmnt);
+			int count = m;
+			if (m < order.order.length && restCoinAmnt.compareTo(THRESHOLD_DECIMAL_EQUALING_ZERO) > 0) {
+				UnrealizedGainEntry lot = lots[order.order[m]];
+				costBasis = costBasis.add(restCoinAmnt.multiply(lot.getCostBasis()).divide(lot.getAssetAmnt(), PRECISION));
+				soldCoinAmnt = coinAmnt;
+				lastCoinAmnt = restCoinAmnt;
+				count++;
+			}
+			if (longTerm) {
+				ltLots = Arrays.copyOf(order.order, count);
+				ltLastCoinAmnt = lastCoinAmnt;
+				ltCoinAmnt = soldCoinAmnt;
+				ltCostBasis = costBasis;
+			}
+			else {
+				stLots = Arrays.copyOf(order.order, count);
+				stLastCoinAmnt = lastCoinAmnt;
+				stCoinAmnt = soldCoinAmnt;
+				stCostBasis = costBasis;
+			}
+		}
+
+		public int size() {
+			return stLots.length + ltLots.length;
+		}
+
+		// Lots are numbered short-term first
+		public UnrealizedGainEntry getLot(int i) {
+			return lots[(i < stLots.length) ? stLots[i] : ltLots[i - stLots.length]];
+		}
+
+		public BigDecimal getCoinAmnt(int i) {
+			if (i == stLots.length - 1) {
+				return stLastCoinAmnt;
+			}
+			return (i == size() - 1) ? ltLastCoinAmnt : getLot(i).getAssetAmnt();
+		}
+
+		public BigDecimal getCostBasis(int i) {
+			UnrealizedGainEntry lot = getLot(i);
+			BigDecimal coinAmnt = getCoinAmnt(i);
+			return (coinAmnt.compareTo(lot.getAssetAmnt()) == 0) ? lot.getCostBasis()
+					: coinAmnt.multiply(lot.getCostBasis()).divide(lot.getAssetAmnt(), PRECISION);
+		}
+
+		public BigDecimal getShortTermCoinAmnt() {
+			return stCoinAmnt;
+		}
+
+		public BigDecimal getShortTermCostBasis() {
+			return stCostBasis;
+		}
+
+		public BigDecimal getShortTermGain() {
+			return stCoinAmnt.multiply(usdPerCoin).subtract(stCostBasis);
+		}
+
+		public BigDecimal getLongTermCoinAmnt() {
+			return ltCoinAmnt;
+		}
+
+		public BigDecimal getLongTermCostBasis() {
+			return ltCostBasis;
+		}
+
+		public BigDecimal getLongTermGain() {
+			return ltCoinAmnt.multiply(usdPerCoin).subtract(ltCostBasis);
+		}
+
+		// the estimated tax of the sale; negative when its losses save tax
+		public BigDecimal getTax() {
+			return tax;
+		}
+	}
+
+}
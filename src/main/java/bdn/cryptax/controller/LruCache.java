@@ -0,0 +1,79 @@
+package bdn.cryptax.controller;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Thread-safe map holding at most maxEntries entries, evicting the least recently used one
+public class LruCache<K, V> {
+
+	private final int maxEntries;
+	private final LinkedHashMap<K, V> map;
+	private long hits = 0;
+	private long misses = 0;
+	private long evictions = 0;
+
+
+	public LruCache(int maxEntries) {
+		this.maxEntries = Math.max(1, maxEntries);
+		this.map = new LinkedHashMap<K, V>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+				if (size() > LruCache.this.maxEntries) {
+					evictions++;
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+
+	public synchronized V get(K key) {
+		V value = map.get(key);
+		if (value != null) {
+			hits++;
+		}
+		else {
+			misses++;
+		}
+		return value;
+	}
+
+
+	public synchronized void put(K key, V value) {
+		map.put(key, value);
+	}
+
+
+	public synchronized void clear() {
+		map.clear();
+	}
+
+
+	public synchronized int size() {
+		return map.size();
+	}
+
+
+	public synchronized int getMaxEntries() {
+		return maxEntries;
+	}
+
+
+	public synchronized long getHits() {
+		return hits;
+	}
+
+
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+}
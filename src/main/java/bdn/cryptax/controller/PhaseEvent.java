@@ -0,0 +1,26 @@
+package bdn.cryptax.controller;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+// Flight recorder event spanning one phase of a run (see RunMetrics)
+@Name("bdn.cryptax.Phase")
+@Label("Tax Phase")
+@Category("Cryptax")
+@Description("One phase of a ledger computation")
+public class PhaseEvent extends Event {
+
+	@Label("Ledger")
+	String ledger;
+
+	@Label("Phase")
+	String phase;
+
+	@Label("Rows")
+	@Description("Ledger rows processed, or entries for the unrealized and write phases")
+	long rows;
+
+}
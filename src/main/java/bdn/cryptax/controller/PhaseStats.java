@@ -0,0 +1,85 @@
+package bdn.cryptax.controller;
+
+import bdn.cryptax.controller.RunMetrics.PhaseMetrics;
+
+// Runs of concurrent ledgers may be added at the same time
+public class PhaseStats implements PhaseStatsMBean {
+
+	private long runs = 0;
+	private PhaseMetrics last = null;
+	private long lastPeakLotQueueDepth = 0;
+	private long maxWallMillis = 0;
+	private long totalWallMillis = 0;
+	private long totalRows = 0;
+
+
+	synchronized void add(PhaseMetrics pm, long peakLotQueueDepth) {
+		runs++;
+		last = pm;
+		lastPeakLotQueueDepth = peakLotQueueDepth;
+		maxWallMillis = Math.max(maxWallMillis, pm.getWallMillis());
+		totalWallMillis += pm.getWallMillis();
+		totalRows += pm.getRows();
+	}
+
+
+	@Override
+	public synchronized long getRuns() {
+		return runs;
+	}
+
+
+	@Override
+	public synchronized long getLastWallMillis() {
+		return (last != null) ? last.getWallMillis() : 0;
+	}
+
+
+	@Override
+	public synchronized long getLastCpuMillis() {
+		return (last != null) ? last.getCpuMillis() : 0;
+	}
+
+
+	@Override
+	public synchronized long getLastAllocatedBytes() {
+		return (last != null) ? last.getAllocatedBytes() : 0;
+	}
+
+
+	@Override
+	public synchronized long getLastRows() {
+		return (last != null) ? last.getRows() : 0;
+	}
+
+
+	@Override
+	public synchronized long getLastRowsPerSecond() {
+		return (last != null) ? last.getRowsPerSecond() : 0;
+	}
+
+
+	@Override
+	public synchronized long getMaxWallMillis() {
+		return maxWallMillis;
+	}
+
+
+	@Override
+	public synchronized long getTotalWallMillis() {
+		return totalWallMillis;
+	}
+
+
+	@Override
+	public synchronized long getTotalRows() {
+		return totalRows;
+	}
+
+
+	@Override
+	public synchronized long getLastPeakLotQueueDepth() {
+		return lastPeakLotQueueDepth;
+	}
+
+}
@@ -0,0 +1,26 @@
+package bdn.cryptax.controller;
+
+// Cumulative statistics of one phase over the runs of this JVM (see RunMetrics.registerMBeans)
+public interface PhaseStatsMBean {
+
+	long getRuns();
+
+	long getLastWallMillis();
+
+	long getLastCpuMillis();
+
+	long getLastAllocatedBytes();
+
+	long getLastRows();
+
+	long getLastRowsPerSecond();
+
+	long getMaxWallMillis();
+
+	long getTotalWallMillis();
+
+	long getTotalRows();
+
+	long getLastPeakLotQueueDepth();
+
+}
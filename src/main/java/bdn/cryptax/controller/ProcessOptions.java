@@ -0,0 +1,309 @@
+package bdn.cryptax.controller;
+
+import java.io.File;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import bdn.cryptax.controller.Controller.CostBasisType;
+import bdn.cryptax.controller.RejectionReport.ReportFormat;
+import bdn.cryptax.model.ReportingPeriods.PeriodType;
+
+public class ProcessOptions {
+
+	public static enum LedgerStorage {
+		// one Transaction object per row
+		OBJECTS,
+		// struct-of-arrays TransactionTable
+		COLUMNAR,
+		// transaction columns and FIFO lots outside the Java heap
+		OFF_HEAP,
+		// sorted runs spilled to temp files once the heap budget is reached, then merged per account
+		EXTERNAL_SORT
+	}
+
+
+	public static final Set<String> DEFAULT_USD_STABLECOINS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+			"USDC", "USDT", "BUSD", "DAI", "UST", "PAX", "HUSD", "TUSD", "GUSD")));
+
+
+	private CostBasisType costBasisType = CostBasisType.FIFO;
+	// side file of the lots that disposals consume under SPECIFIC_ID cost basis (see LotDesignations); may be null
+	private File lotDesignationFile = null;
+	// accounts whose gains are not reported and which are left out of the unrealized cost basis
+	private Set<String> usdStablecoins = DEFAULT_USD_STABLECOINS;
+	// treats the stablecoin accounts as cash: only their balance and USD price are checked instead of matching lots, so
+	// their gains and losses within the depeg tolerance are not reported
+	private boolean stablecoinCash = false;
+	// a stablecoin row priced further than this from 1 USD is a depeg; its account is then matched like any other
+	private BigDecimal stablecoinDepegTolerance = new BigDecimal("0.02");
+	private boolean compressOutput = false;
+	private LedgerStorage ledgerStorage = LedgerStorage.OBJECTS;
+	// folder for memory-mapped off-heap files and spilled runs; null keeps off-heap data in direct buffers instead
+	private File tempFolder = new File(System.getProperty("java.io.tmpdir"));
+	// heap available for buffering ledger rows in EXTERNAL_SORT storage
+	private long heapBudgetBytes = 256L * 1024 * 1024;
+	// format of the report written when ledger rows are rejected as invalid
+	private ReportFormat rejectionReportFormat = ReportFormat.JSON;
+	// rejected rows kept as examples (per category) in the report; the rest are only counted
+	private int maxRejectionExamples = 100;
+	// writes a JSON report of each phase's time, CPU, allocations and throughput next to the outputs
+	private boolean metricsReport = false;
+	// writes each account's gain lineage (disposal row to acquisition rows) next to its gains
+	private boolean lineageReport = false;
+	// a deposit leg is paired with a withdrawal leg at most this long before it (see TransferMatcher)
+	private long transferWindowMinutes = 24 * 60;
+	// largest relative difference between a withdrawal leg's amount (gross or net of its fee) and its deposit leg's
+	private BigDecimal transferTolerance = new BigDecimal("0.005");
+	// hypothetical sales (see WhatIfSimulator) evaluated against the open lots once gains are computed; may be null
+	private File whatIfFile = null;
+	// tax rates of short and long-term gains, for estimating the tax of hypothetical sales
+	private BigDecimal shortTermTaxRate = new BigDecimal("0.37");
+	private BigDecimal longTermTaxRate = new BigDecimal("0.20");
+	// tax-optimal sales hold back short-term lots with a gain that turn long-term within this many days
+	private int longTermHorizonDays = 30;
+	// also sums income and gains by these periods of the fiscal year, for estimated tax payments; null for none
+	private PeriodType reportingPeriod = null;
+	// first month (1 to 12) of the fiscal year that reporting periods divide
+	private int fiscalYearStartMonth = 1;
+	// writes when the open lots turn long-term (see RolloverCalendar) next to the outputs
+	private boolean rolloverReport = false;
+	// the rollover report also logs, per account, how much turns long-term within this many days
+	private int rolloverDays = 30;
+
+
+	public CostBasisType getCostBasisType() {
+		return costBasisType;
+	}
+
+
+	public void setCostBasisType(CostBasisType costBasisType) {
+		this.costBasisType = costBasisType;
+	}
+
+
+	public File getLotDesignationFile() {
+		return lotDesignationFile;
+	}
+
+
+	public void setLotDesignationFile(File lotDesignationFile) {
+		this.lotDesignationFile = lotDesignationFile;
+	}
+
+
+	public Set<String> getUsdStablecoins() {
+		return usdStablecoins;
+	}
+
+
+	public void setUsdStablecoins(Set<String> usdStablecoins) {
+		this.usdStablecoins = Collections.unmodifiableSet(new HashSet<>(usdStablecoins));
+	}
+
+
+	public boolean isStablecoinCash() {
+		return stablecoinCash;
+	}
+
+
+	public void setStablecoinCash(boolean stablecoinCash) {
+		this.stablecoinCash = stablecoinCash;
+	}
+
+
+	public BigDecimal getStablecoinDepegTolerance() {
+		return stablecoinDepegTolerance;
+	}
+
+
+	public void setStablecoinDepegTolerance(BigDecimal stablecoinDepegTolerance) {
+		this.stablecoinDepegTolerance = stablecoinDepegTolerance;
+	}
+
+
+	public boolean isCompressOutput() {
+		return compressOutput;
+	}
+
+
+	public void setCompressOutput(boolean compressOutput) {
+		this.compressOutput = compressOutput;
+	}
+
+
+	public LedgerStorage getLedgerStorage() {
+		return ledgerStorage;
+	}
+
+
+	public void setLedgerStorage(LedgerStorage ledgerStorage) {
+		this.ledgerStorage = ledgerStorage;
+	}
+
+
+	public File getTempFolder() {
+		return tempFolder;
+	}
+
+
+	public void setTempFolder(File tempFolder) {
+		this.tempFolder = tempFolder;
+	}
+
+
+	public long getHeapBudgetBytes() {
+		return heapBudgetBytes;
+	}
+
+
+	public void setHeapBudgetBytes(long heapBudgetBytes) {
+		this.heapBudgetBytes = heapBudgetBytes;
+	}
+
+
+	public ReportFormat getRejectionReportFormat() {
+		return rejectionReportFormat;
+	}
+
+
+	public void setRejectionReportFormat(ReportFormat rejectionReportFormat) {
+		this.rejectionReportFormat = rejectionReportFormat;
+	}
+
+
+	public int getMaxRejectionExamples() {
+		return maxRejectionExamples;
+	}
+
+
+	public void setMaxRejectionExamples(int maxRejectionExamples) {
+		this.maxRejectionExamples = maxRejectionExamples;
+	}
+
+
+	public boolean isMetricsReport() {
+		return metricsReport;
+	}
+
+
+	public void setMetricsReport(boolean metricsReport) {
+		this.metricsReport = metricsReport;
+	}
+
+
+	public boolean isLineageReport() {
+		return lineageReport;
+	}
+
+
+	public void setLineageReport(boolean lineageReport) {
+		this.lineageReport = lineageReport;
+	}
+
+
+
+	public long getTransferWindowMinutes() {
+		return transferWindowMinutes;
+	}
+
+
+	public void setTransferWindowMinutes(long transferWindowMinutes) {
+		this.transferWindowMinutes = transferWindowMinutes;
+	}
+
+
+	public BigDecimal getTransferTolerance() {
+		return transferTolerance;
+	}
+
+
+	public void setTransferTolerance(BigDecimal transferTolerance) {
+		this.transferTolerance = transferTolerance;
+	}
+
+
+
+	public File getWhatIfFile() {
+		return whatIfFile;
+	}
+
+
+	public void setWhatIfFile(File whatIfFile) {
+		this.whatIfFile = whatIfFile;
+	}
+
+
+
+	public BigDecimal getShortTermTaxRate() {
+		return shortTermTaxRate;
+	}
+
+
+	public void setShortTermTaxRate(BigDecimal shortTermTaxRate) {
+		this.shortTermTaxRate = shortTermTaxRate;
+	}
+
+
+	public BigDecimal getLongTermTaxRate() {
+		return longTermTaxRate;
+	}
+
+
+	public void setLongTermTaxRate(BigDecimal longTermTaxRate) {
+		this.longTermTaxRate = longTermTaxRate;
+	}
+
+
+	public int getLongTermHorizonDays() {
+		return longTermHorizonDays;
+	}
+
+
+	public void setLongTermHorizonDays(int longTermHorizonDays) {
+		this.longTermHorizonDays = longTermHorizonDays;
+	}
+
+
+	public PeriodType getReportingPeriod() {
+		return reportingPeriod;
+	}
+
+
+	public void setReportingPeriod(PeriodType reportingPeriod) {
+		this.reportingPeriod = reportingPeriod;
+	}
+
+
+	public int getFiscalYearStartMonth() {
+		return fiscalYearStartMonth;
+	}
+
+
+	public void setFiscalYearStartMonth(int fiscalYearStartMonth) {
+		this.fiscalYearStartMonth = fiscalYearStartMonth;
+	}
+
+
+	public boolean isRolloverReport() {
+		return rolloverReport;
+	}
+
+
+	public void setRolloverReport(boolean rolloverReport) {
+		this.rolloverReport = rolloverReport;
+	}
+
+
+	public int getRolloverDays() {
+		return rolloverDays;
+	}
+
+
+	public void setRolloverDays(int rolloverDays) {
+		this.rolloverDays = rolloverDays;
+	}
+
+}
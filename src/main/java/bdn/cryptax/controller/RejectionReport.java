@@ -0,0 +1,213 @@
+package bdn.cryptax.controller;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+
+import bdn.cryptax.model.TransactionException.TransactionExceptionType;
+import bdn.cryptax.model.TransactionValidator;
+import bdn.cryptax.model.TransactionValidator.ValidationCode;
+
+// Rejected ledger rows, bounded in size: a count per validation code plus the first few examples of each category
+public class RejectionReport {
+
+	public static enum ReportFormat {
+		JSON, CSV
+	}
+
+	private static final String CSV_HEADER_KIND = "Kind";
+	private static final String CSV_HEADER_CATEGORY = "Category";
+	private static final String CSV_HEADER_RECORD = "Record #";
+	private static final String CSV_HEADER_MESSAGE = "Message";
+
+	private final int maxExamples;
+	private final long[] codeCounts = new long[ValidationCode.values().length];
+	private long invalidCount = 0;
+	private long emptyCount = 0;
+	private List<Example> invalidExamples = new ArrayList<>();
+	private List<Example> emptyExamples = new ArrayList<>();
+
+
+	public RejectionReport(int maxExamples) {
+		this.maxExamples = Math.max(0, maxExamples);
+	}
+
+
+	// Counts a rejection; the (comparatively costly) message is only built for the retained examples
+	public void add(ValidationCode code, long recordNumber, TransactionValidator validator) {
+		codeCounts[code.ordinal()]++;
+		boolean invalid = (code.getType() == TransactionExceptionType.INVALID_DATA);
+		if (invalid) {
+			invalidCount++;
+		}
+		else {
+			emptyCount++;
+		}
+
+		List<Example> examples = invalid ? invalidExamples : emptyExamples;
+		if (examples.size() < maxExamples) {
+			examples.add(new Example(code, recordNumber, validator.getMessage(code, recordNumber)));
+		}
+	}
+
+
+	public long getInvalidCount() {
+		return invalidCount;
+	}
+
+
+	public long getEmptyCount() {
+		return emptyCount;
+	}
+
+
+	public long getCount(ValidationCode code) {
+		return codeCounts[code.ordinal()];
+	}
+
+
+	public List<Example> getInvalidExamples() {
+		return invalidExamples;
+	}
+
+
+	public List<Example> getEmptyExamples() {
+		return emptyExamples;
+	}
+
+
+	public boolean isEmpty() {
+		return invalidCount == 0 && emptyCount == 0;
+	}
+
+
+	public void logSummary() {
+		for (Example e : invalidExamples) {
+			Log.error("Encountered CSV record with invalid data - " + e.getMessage());
+		}
+		if (invalidCount > 0) {
+			Log.error("Skipped " + invalidCount + " CSV record with invalid data (" + getCountsStr(TransactionExceptionType.INVALID_DATA) +
+					") #s:" + getRecordNumbersStr(invalidExamples, invalidCount));
+		}
+		if (emptyCount > 0) {
+			Log.info("Skipped " + emptyCount + " CSV record with empty data #s:" + getRecordNumbersStr(emptyExamples, emptyCount));
+		}
+	}
+
+
+	private String getCountsStr(TransactionExceptionType type) {
+		StringBuilder sb = new StringBuilder();
+		for (ValidationCode code : ValidationCode.values()) {
+			if (code.getType() == type && codeCounts[code.ordinal()] > 0) {
+				sb.append(sb.length() == 0 ? "" : ", ").append(code).append('=').append(codeCounts[code.ordinal()]);
+			}
+		}
+		return sb.toString();
+	}
+
+
+	private static String getRecordNumbersStr(List<Example> examples, long count) {
+		StringBuilder sb = new StringBuilder();
+		for (Example e : examples) {
+			sb.append(' ').append(e.getRecordNumber());
+		}
+		if (count > examples.size()) {
+			sb.append(" ... (").append(count - examples.size()).append(" more)");
+		}
+		return sb.toString();
+	}
+
+
+	public void write(File outputFile, ReportFormat format) throws ControllerException {
+		try (Writer writer = LedgerStreams.openWriter(outputFile)) {
+			if (format == ReportFormat.CSV) {
+				writeCsv(writer);
+			}
+			else {
+				writeJson(writer);
+			}
+		}
+		catch (IOException exc) {
+			throw new ControllerException("Could not write rejection report " + outputFile.getAbsolutePath() + ": " + exc.getMessage());
+		}
+	}
+
+
+	private void writeJson(Writer writer) throws IOException {
+		JsonWriter json = new JsonWriter(writer);
+		json.beginObject();
+		json.name("invalidCount").value(invalidCount);
+		json.name("emptyCount").value(emptyCount);
+		json.name("counts").beginObject();
+		for (ValidationCode code : ValidationCode.values()) {
+			if (codeCounts[code.ordinal()] > 0) {
+				json.name(code.toString()).value(codeCounts[code.ordinal()]);
+			}
+		}
+		json.endObject();
+		json.name("examples").beginArray();
+		List<Example> examples = new ArrayList<>(invalidExamples);
+		examples.addAll(emptyExamples);
+		for (Example e : examples) {
+			json.beginObject();
+			json.name("kind").value(e.getCode().toString());
+			json.name("category").value(e.getCode().getType().toString());
+			json.name("record").value(e.getRecordNumber());
+			json.name("message").value(e.getMessage());
+			json.endObject();
+		}
+		json.endArray();
+		json.endObject();
+		json.flush();
+	}
+
+
+	// one row per retained example, followed by one count row (without a record #) per kind
+	private void writeCsv(Writer writer) throws IOException {
+		CSVPrinter printer = new CSVPrinter(writer, CSVFormat.EXCEL);
+		printer.printRecord(CSV_HEADER_KIND, CSV_HEADER_CATEGORY, CSV_HEADER_RECORD, CSV_HEADER_MESSAGE);
+		List<Example> examples = new ArrayList<>(invalidExamples);
+		examples.addAll(emptyExamples);
+		for (Example e : examples) {
+			printer.printRecord(e.getCode(), e.getCode().getType(), e.getRecordNumber(), e.getMessage());
+		}
+		for (ValidationCode code : ValidationCode.values()) {
+			if (codeCounts[code.ordinal()] > 0) {
+				printer.printRecord(code, code.getType(), "", "Count: " + codeCounts[code.ordinal()]);
+			}
+		}
+		printer.flush();
+	}
+
+
+	public static class Example {
+
+		private final ValidationCode code;
+		private final long recordNumber;
+		private final String message;
+
+		public Example(ValidationCode code, long recordNumber, String message) {
+			this.code = code;
+			this.recordNumber = recordNumber;
+			this.message = message;
+		}
+
+		public ValidationCode getCode() {
+			return code;
+		}
+
+		public long getRecordNumber() {
+			return recordNumber;
+		}
+
+		public String getMessage() {
+			return message;
+		}
+	}
+
+}
@@ -0,0 +1,217 @@
+package bdn.cryptax.controller;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+
+import bdn.cryptax.model.GainEntry;
+import bdn.cryptax.model.GainEntry.GainTerm;
+import bdn.cryptax.model.UnrealizedGainEntry;
+
+// When the open lots of each account turn long-term. The lots of a computed TaxResult are indexed once by the first
+// day they would sell long-term (see GainEntry.getTerm), with prefix sums of their coins and cost basis in that order;
+// how much turns long-term between two days is then two binary searches and two prefix differences, and the report
+// groups the lots still short-term by day and by week in a single pass over the index.
+public class RolloverCalendar {
+
+	public static enum Period {
+		DAY, WEEK
+	}
+
+
+	private static final String COL_ACCT = "Acct";
+	private static final String COL_PERIOD = "Period";
+	private static final String COL_PERIOD_START = "Period Start";
+	private static final String COL_LOTS = "Lots";
+	private static final String COL_COIN_AMNT = "COIN";
+	private static final String COL_COST_BASIS = "Cost Basis";
+	private static final BigDecimal THRESHOLD_DECIMAL_EQUALING_ZERO = new BigDecimal("0.000000000000000000000001");
+
+	private final Map<String, Rollovers> acctToRollovers = new TreeMap<>();
+
+
+	private RolloverCalendar() {
+	}
+
+
+	public static RolloverCalendar of(TaxResult result) {
+		RolloverCalendar calendar = new RolloverCalendar();
+		for (Map.Entry<String, List<GainEntry>> e : result.getGainEntries().entrySet()) {
+			List<UnrealizedGainEntry> lots = new ArrayList<>();
+			for (GainEntry ge : e.getValue()) {
+				if (ge instanceof UnrealizedGainEntry && ge.getDateAcquired() != null &&
+						ge.getAssetAmnt().compareTo(THRESHOLD_DECIMAL_EQUALING_ZERO) > 0) {
+					lots.add((UnrealizedGainEntry) ge);
+				}
+			}
+			calendar.acctToRollovers.put(e.getKey(), new Rollovers(lots));
+		}
+		return calendar;
+	}
+
+
+	// The first day on which a lot acquired on dateAcquired sells long-term
+	public static LocalDate getLongTermDate(LocalDate dateAcquired) {
+		LocalDate result = dateAcquired.plusYears(1);
+		// a year after Feb 29 (or to Feb 29) is not always the day before the first long-term day
+		while (GainEntry.getTerm(dateAcquired, result) != GainTerm.LONGTERM) {
+			result = result.plusDays(1);
+		}
+		return result;
+	}
+
+
+	public List<String> getAccounts() {
+		return new ArrayList<>(acctToRollovers.keySet());
+	}
+
+
+	// The open lots of acct that are short-term on asOf and long-term at most days later
+	public Rollover getRollover(String acct, LocalDate asOf, int days) {
+		return getRollover(acct, asOf, asOf.plusDays(days));
+	}
+
+
+	// The open lots of acct that are short-term on fromDate and long-term on toDate
+	public Rollover getRollover(String acct, LocalDate fromDate, LocalDate toDate) {
+		Rollovers rollovers = acctToRollovers.get(acct);
+		if (rollovers == null) {
+			return new Rollover(0, BigDecimal.ZERO, BigDecimal.ZERO);
+		}
+		int from = rollovers.countThrough(fromDate.toEpochDay());
+		int to = Math.max(from, rollovers.countThrough(toDate.toEpochDay()));
+		return rollovers.getRollover(from, to);
+	}
+
+
+	// The open lots of every account still short-term on asOf, grouped by the day, then the week (from Monday), they
+	// turn long-term
+	public void write(File outputFile, LocalDate asOf) throws ControllerException {
+		try (Writer writer = LedgerStreams.openWriter(outputFile)) {
+			CSVPrinter printer = new CSVPrinter(writer, CSVFormat.EXCEL);
+			printer.printRecord(COL_ACCT, COL_PERIOD, COL_PERIOD_START, COL_LOTS, COL_COIN_AMNT, COL_COST_BASIS);
+			for (Map.Entry<String, Rollovers> e : acctToRollovers.entrySet()) {
+				for (Period period : Period.values()) {
+					write(printer, e.getKey(), e.getValue(), period, asOf);
+				}
+			}
+			printer.flush();
+		}
+		catch (IOException exc) {
+			throw new ControllerException("Could not write rollover report " + outputFile.getAbsolutePath() + ": " + exc.getMessage());
+		}
+	}
+
+
+	private static void write(CSVPrinter printer, String acct, Rollovers rollovers, Period period, LocalDate asOf) throws IOException {
+		int n = rollovers.size();
+		int from = rollovers.countThrough(asOf.toEpochDay());
+		while (from < n) {
+			LocalDate periodStart = LocalDate.ofEpochDay(rollovers.epochDays[from]);
+			LocalDate nextPeriodStart = periodStart.plusDays(1);
+			if (period == Period.WEEK) {
+				periodStart = periodStart.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+				nextPeriodStart = periodStart.plusWeeks(1);
+			}
+			int to = rollovers.countThrough(nextPeriodStart.toEpochDay() - 1);
+			Rollover r = rollovers.getRollover(from, to);
+			printer.printRecord(acct, period, periodStart, r.getLotCount(), r.getCoinAmnt().toPlainString(),
+					r.getCostBasis().toPlainString());
+			from = to;
+		}
+	}
+
+
+	// One account's open lots in the order they turn long-term
+	private static class Rollovers {
+
+		private final long[] epochDays;
+		private final BigDecimal[] cumCoinAmnts;
+		private final BigDecimal[] cumCostBases;
+
+		Rollovers(List<UnrealizedGainEntry> lots) {
+			int n = lots.size();
+			// sorts the lot indexes by their long-term day, packed below it into one primitive key
+			long[] keys = new long[n];
+			for (int i = 0; i < n; i++) {
+				keys[i] = (getLongTermDate(lots.get(i).getDateAcquired()).toEpochDay() << 32) | i;
+			}
+			Arrays.sort(keys);
+
+			epochDays = new long[n];
+			cumCoinAmnts = new BigDecimal[n + 1];
+			cumCostBases = new BigDecimal[n + 1];
+			cumCoinAmnts[0] = BigDecimal.ZERO;
+			cumCostBases[0] = BigDecimal.ZERO;
+			for (int k = 0; k < n; k++) {
+				UnrealizedGainEntry lot = lots.get((int) (keys[k] & 0xFFFFFFFFL));
+				epochDays[k] = keys[k] >> 32;
+				cumCoinAmnts[k + 1] = cumCoinAmnts[k].add(lot.getAssetAmnt());
+				cumCostBases[k + 1] = cumCostBases[k].add((lot.getCostBasis() != null) ? lot.getCostBasis() : BigDecimal.ZERO);
+			}
+		}
+
+		int size() {
+			return epochDays.length;
+		}
+
+		// the number of lots long-term on epochDay
+		int countThrough(long epochDay) {
+			int lo = 0;
+			int hi = epochDays.length;
+			while (lo < hi) {
+				int mid = (lo + hi) >>> 1;
+				if (epochDays[mid] <= epochDay) {
+					lo = mid + 1;
+				}
+				else {
+					hi = mid;
+				}
+			}
+			return lo;
+		}
+
+		Rollover getRollover(int from, int to) {
+			return new Rollover(to - from, cumCoinAmnts[to].subtract(cumCoinAmnts[from]), cumCostBases[to].subtract(cumCostBases[from]));
+		}
+	}
+
+
+	public static class Rollover {
+
+		private final int lotCount;
+		private final BigDecimal coinAmnt;
+		private final BigDecimal costBasis;
+
+		public Rollover(int lotCount, BigDecimal coinAmnt, BigDecimal costBasis) {
+			this.lotCount = lotCount;
+			this.coinAmnt = coinAmnt;
+			this.costBasis = costBasis;
+		}
+
+		public int getLotCount() {
+			return lotCount;
+		}
+
+		public BigDecimal getCoinAmnt() {
+			return coinAmnt;
+		}
+
+		public BigDecimal getCostBasis() {
+			return costBasis;
+		}
+	}
+
+}
@@ -0,0 +1,225 @@
+package bdn.cryptax.controller;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.time.LocalDateTime;
+import java.util.EnumMap;
+import java.util.Map;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+// Wall time, CPU time, allocated bytes and rows per second of each phase of one run, plus the peak FIFO lot queue depth
+// of the gains phase. A phase is measured on the thread that runs it; CPU time and allocated bytes are -1 where the JVM
+// cannot measure them. Finished runs are published to the phase MBeans once registerMBeans() was called, and every
+// phase is also emitted as a PhaseEvent when a flight recording is running.
+public class RunMetrics {
+
+	public static enum Phase {
+		INGEST, RECONCILE, GAINS, UNREALIZED, INCOME, MINING, WRITE
+	}
+
+
+	private static final ThreadMXBean THREAD_BEAN = ManagementFactory.getThreadMXBean();
+	private static final String MBEAN_NAME_PREFIX = "bdn.cryptax:type=Phase,name=";
+	// null until registerMBeans() is called
+	private static volatile Map<Phase, PhaseStats> phaseToStats = null;
+
+	private final String ledgerName;
+	private final LocalDateTime startedAt = LocalDateTime.now();
+	private final Map<Phase, PhaseMetrics> phaseToMetrics = new EnumMap<>(Phase.class);
+	private long peakLotQueueDepth = 0;
+	private Phase currentPhase = null;
+	private long startNanos;
+	private long startCpuNanos;
+	private long startAllocatedBytes;
+	private PhaseEvent phaseEvent = null;
+
+
+	public RunMetrics(String ledgerName) {
+		this.ledgerName = ledgerName;
+	}
+
+
+	public static synchronized void registerMBeans() throws ControllerException {
+		if (phaseToStats != null) {
+			return;
+		}
+
+		Map<Phase, PhaseStats> result = new EnumMap<>(Phase.class);
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			for (Phase phase : Phase.values()) {
+				PhaseStats stats = new PhaseStats();
+				server.registerMBean(stats, new ObjectName(MBEAN_NAME_PREFIX + phase.name().toLowerCase()));
+				result.put(phase, stats);
+			}
+		}
+		catch (JMException exc) {
+			throw new ControllerException("Could not register the phase MBeans: " + exc.getMessage());
+		}
+		phaseToStats = result;
+	}
+
+
+	public void begin(Phase phase) {
+		currentPhase = phase;
+		phaseEvent = new PhaseEvent();
+		phaseEvent.begin();
+		startAllocatedBytes = getAllocatedBytes();
+		startCpuNanos = getCpuNanos();
+		startNanos = System.nanoTime();
+	}
+
+
+	// rows: the rows the phase processed (ledger rows, or entries for the unrealized and write phases)
+	public void end(Phase phase, long rows) {
+		long wallNanos = System.nanoTime() - startNanos;
+		long cpuNanos = getCpuNanos();
+		long allocatedBytes = getAllocatedBytes();
+		if (phase != currentPhase) {
+			Log.error("Phase " + phase + " ended while measuring phase " + currentPhase);
+			return;
+		}
+		cpuNanos = (cpuNanos < 0 || startCpuNanos < 0) ? -1 : cpuNanos - startCpuNanos;
+		allocatedBytes = (allocatedBytes < 0 || startAllocatedBytes < 0) ? -1 : allocatedBytes - startAllocatedBytes;
+		phaseToMetrics.put(phase, new PhaseMetrics(wallNanos, cpuNanos, allocatedBytes, rows));
+		phaseEvent.end();
+		if (phaseEvent.shouldCommit()) {
+			phaseEvent.ledger = ledgerName;
+			phaseEvent.phase = phase.name();
+			phaseEvent.rows = rows;
+			phaseEvent.commit();
+		}
+		phaseEvent = null;
+		currentPhase = null;
+	}
+
+
+	// lot queues of different accounts may be drained concurrently
+	public synchronized void recordLotQueueDepth(long depth) {
+		if (depth > peakLotQueueDepth) {
+			peakLotQueueDepth = depth;
+		}
+	}
+
+
+	public synchronized long getPeakLotQueueDepth() {
+		return peakLotQueueDepth;
+	}
+
+
+	public PhaseMetrics getPhaseMetrics(Phase phase) {
+		return phaseToMetrics.get(phase);
+	}
+
+
+	public void logSummary() {
+		for (Map.Entry<Phase, PhaseMetrics> e : phaseToMetrics.entrySet()) {
+			PhaseMetrics pm = e.getValue();
+			Log.info("Phase " + e.getKey() + " took " + pm.getWallMillis() + " ms (CPU " + pm.getCpuMillis() + " ms, " +
+					(pm.getAllocatedBytes() / (1024 * 1024)) + " MB allocated, " + pm.getRowsPerSecond() + " rows/s)");
+		}
+		Log.info("Peak lot queue depth " + getPeakLotQueueDepth());
+	}
+
+
+	public void publish() {
+		Map<Phase, PhaseStats> stats = phaseToStats;
+		if (stats == null) {
+			return;
+		}
+		for (Map.Entry<Phase, PhaseMetrics> e : phaseToMetrics.entrySet()) {
+			stats.get(e.getKey()).add(e.getValue(), (e.getKey() == Phase.GAINS) ? getPeakLotQueueDepth() : 0);
+		}
+	}
+
+
+	public void write(File outputFile) throws ControllerException {
+		try (Writer writer = LedgerStreams.openWriter(outputFile)) {
+			JsonWriter json = new JsonWriter(writer);
+			json.beginObject();
+			json.name("ledger").value(ledgerName);
+			json.name("startedAt").value(startedAt.toString());
+			long totalWallMillis = 0;
+			json.name("phases").beginObject();
+			for (Map.Entry<Phase, PhaseMetrics> e : phaseToMetrics.entrySet()) {
+				PhaseMetrics pm = e.getValue();
+				totalWallMillis += pm.getWallMillis();
+				json.name(e.getKey().name().toLowerCase()).beginObject();
+				json.name("wallMillis").value(pm.getWallMillis());
+				json.name("cpuMillis").value(pm.getCpuMillis());
+				json.name("allocatedBytes").value(pm.getAllocatedBytes());
+				json.name("rows").value(pm.getRows());
+				json.name("rowsPerSecond").value(pm.getRowsPerSecond());
+				json.endObject();
+			}
+			json.endObject();
+			json.name("totalWallMillis").value(totalWallMillis);
+			json.name("peakLotQueueDepth").value(getPeakLotQueueDepth());
+			json.endObject();
+			json.flush();
+		}
+		catch (IOException exc) {
+			throw new ControllerException("Could not write metrics report " + outputFile.getAbsolutePath() + ": " + exc.getMessage());
+		}
+	}
+
+
+	private static long getCpuNanos() {
+		return THREAD_BEAN.isCurrentThreadCpuTimeSupported() ? THREAD_BEAN.getCurrentThreadCpuTime() : -1;
+	}
+
+
+	private static long getAllocatedBytes() {
+		// allocation counters are a HotSpot extension of the thread bean
+		if (THREAD_BEAN instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) THREAD_BEAN;
+			if (bean.isThreadAllocatedMemorySupported() && bean.isThreadAllocatedMemoryEnabled()) {
+				return bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+			}
+		}
+		return -1;
+	}
+
+
+	public static class PhaseMetrics {
+
+		private final long wallNanos;
+		private final long cpuNanos;
+		private final long allocatedBytes;
+		private final long rows;
+
+		PhaseMetrics(long wallNanos, long cpuNanos, long allocatedBytes, long rows) {
+			this.wallNanos = wallNanos;
+			this.cpuNanos = cpuNanos;
+			this.allocatedBytes = allocatedBytes;
+			this.rows = rows;
+		}
+
+		public long getWallMillis() {
+			return wallNanos / 1_000_000;
+		}
+
+		public long getCpuMillis() {
+			return (cpuNanos < 0) ? -1 : cpuNanos / 1_000_000;
+		}
+
+		public long getAllocatedBytes() {
+			return allocatedBytes;
+		}
+
+		public long getRows() {
+			return rows;
+		}
+
+		public long getRowsPerSecond() {
+			return (wallNanos > 0) ? rows * 1_000_000_000L / wallNanos : 0;
+		}
+	}
+
+}
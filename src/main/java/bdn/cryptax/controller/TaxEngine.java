@@ -0,0 +1,1415 @@
+package bdn.cryptax.controller;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import bdn.cryptax.controller.Controller.CostBasisType;
+import bdn.cryptax.controller.LotDesignations.Designation;
+import bdn.cryptax.controller.ProcessOptions.LedgerStorage;
+import bdn.cryptax.controller.RunMetrics.Phase;
+import bdn.cryptax.model.AcquisitionWindow;
+import bdn.cryptax.model.ArrayLotQueue;
+import bdn.cryptax.model.CapitalGainEntry;
+import bdn.cryptax.model.CostPool;
+import bdn.cryptax.model.GainEntry;
+import bdn.cryptax.model.GainLineage;
+import bdn.cryptax.model.GainEntry.GainTerm;
+import bdn.cryptax.model.IncomeEntry;
+import bdn.cryptax.model.LotBook;
+import bdn.cryptax.model.LotQueue;
+import bdn.cryptax.model.MiningContract;
+import bdn.cryptax.model.MiningContract.MiningContractType;
+import bdn.cryptax.model.MiningEntry;
+import bdn.cryptax.model.OffHeapLotQueue;
+import bdn.cryptax.model.OffHeapTransactionTable;
+import bdn.cryptax.model.PeriodIncome;
+import bdn.cryptax.model.ReportingPeriods;
+import bdn.cryptax.model.ReportingPeriods.PeriodType;
+import bdn.cryptax.model.SpillingTransactionStore;
+import bdn.cryptax.model.Transaction;
+import bdn.cryptax.model.Transaction.TransactionType;
+import bdn.cryptax.model.TransactionException;
+import bdn.cryptax.model.TransactionFingerprint;
+import bdn.cryptax.model.TransactionListStore;
+import bdn.cryptax.model.TransactionMemento;
+import bdn.cryptax.model.TransactionSource;
+import bdn.cryptax.model.TransactionStore;
+import bdn.cryptax.model.TransactionTable;
+import bdn.cryptax.model.TransactionView;
+import bdn.cryptax.model.UnrealizedCostBasisEntry;
+import bdn.cryptax.model.UnrealizedGainEntry;
+
+// Computes gains, unrealized cost basis, income and mining results for in-memory transactions, without touching the
+// filesystem (other than temp files of the off-heap/external-sort storages). The configuration is copied from the
+// ProcessOptions at construction and never changes, and computations share no mutable state, so one engine can serve
+// concurrent computations.
+public class TaxEngine {
+	
+	private static final BigDecimal THRESHOLD_DECIMAL_EQUALING_ZERO = new BigDecimal("0.000000000000000000000001");
+	private static final MathContext PRECISION = new MathContext(34, RoundingMode.HALF_UP);
+	// a disposal is matched with the acquisitions of this many days after it under share matching
+	private static final int MATCHING_WINDOW_DAYS = 30;
+	// one line per zero-fee transfer would flood the console on ledgers with many internal transfers
+	private static final Log.Channel SKIPPED_LOG = Log.channel("non-taxable transaction skipped", Log.Level.INFO,
+			Log.DEFAULT_MESSAGES_PER_SECOND);
+	private static final Log.Channel DESIGNATION_LOG = Log.channel("designated lot not open", Log.Level.ERROR,
+			Log.DEFAULT_MESSAGES_PER_SECOND);
+	
+	private final CostBasisType costBasisType;
+	private final LedgerStorage ledgerStorage;
+	private final File tempFolder;
+	private final long heapBudgetBytes;
+	private final Set<String> usdStablecoins;
+	private final boolean stablecoinCash;
+	private final BigDecimal stablecoinDepegTolerance;
+	// optional; income and gains are also summed by these reporting periods (see PeriodIncome)
+	private final PeriodType reportingPeriod;
+	private final int fiscalYearStartMonth;
+	// optional; reuses the gain and mining results of accounts whose transactions did not change
+	private final AccountResultCache resultCache;
+	
+	
+	public TaxEngine() {
+		this(new ProcessOptions());
+	}
+	
+	
+	public TaxEngine(ProcessOptions options) {
+		this(options, null);
+	}
+	
+	
+	public TaxEngine(ProcessOptions options, AccountResultCache resultCache) {
+		this.resultCache = resultCache;
+		costBasisType = options.getCostBasisType();
+		ledgerStorage = options.getLedgerStorage();
+		tempFolder = options.getTempFolder();
+		heapBudgetBytes = options.getHeapBudgetBytes();
+		usdStablecoins = options.getUsdStablecoins();
+		stablecoinCash = options.isStablecoinCash();
+		stablecoinDepegTolerance = options.getStablecoinDepegTolerance();
+		reportingPeriod = options.getReportingPeriod();
+		fiscalYearStartMonth = options.getFiscalYearStartMonth();
+	}
+	
+	
+	public Set<String> getUsdStablecoins() {
+		return usdStablecoins;
+	}
+	
+	
+	// Computes the results of transactions given in any order; they are copied into a store of the configured kind
+	public TaxResult compute(Iterable<? extends TransactionView> transactions) throws ControllerException {
+		if (transactions == null) {
+			throw new ControllerException("Transactions are null");
+		}
+		
+		try (TransactionStore tStore = createTransactionStore()) {
+			for (TransactionView t : transactions) {
+				tStore.add(t);
+			}
+			return compute(tStore);
+		}
+		catch (UncheckedIOException exc) {
+			throw new ControllerException("Transaction storage failed: " + exc.getMessage());
+		}
+		catch (IOException exc) {
+			throw new ControllerException("Could not release transaction storage: " + exc.getMessage());
+		}
+	}
+	
+	
+	public TaxResult compute(TransactionSource tSource) throws ControllerException {
+		return compute(tSource, (RunMetrics) null);
+	}
+	
+	
+	public TaxResult compute(TransactionSource tSource, RunMetrics metrics) throws ControllerException {
+		return compute(tSource, metrics, null);
+	}
+	
+	
+	public TaxResult compute(TransactionSource tSource, RunMetrics metrics, LotDesignations designations) throws ControllerException {
+		TaxResult result = new TaxResult();
+		compute(tSource, result, metrics, designations);
+		return result;
+	}
+	
+	
+	public void compute(TransactionSource tSource, TaxResultSink sink) throws ControllerException {
+		compute(tSource, sink, null, null);
+	}
+	
+	
+	public void compute(TransactionSource tSource, TaxResultSink sink, RunMetrics metrics) throws ControllerException {
+		compute(tSource, sink, metrics, null);
+	}
+	
+	
+	// Streams each phase's results to the sink as soon as the phase completes; metrics, if given, records each phase.
+	// designations, if given, name the lots that disposals consume under SPECIFIC_ID cost basis.
+	public void compute(TransactionSource tSource, TaxResultSink sink, RunMetrics metrics, LotDesignations designations)
+			throws ControllerException {
+		if (tSource == null || tSource.size() == 0) {
+			throw new ControllerException("Input contained no transactions");
+		}
+		if (sink == null) {
+			throw new ControllerException("Result sink is null");
+		}
+		
+		String[] accts = getAccounts(tSource);
+		// if no accounts were defined we'll add a default account with name ""; every transaction will belong to this account
+		if (accts == null) {
+			accts = new String[1];
+			accts[0] = "";
+		}
+		
+		if (metrics != null) {
+			metrics.begin(Phase.GAINS);
+		}
+		Map<String, String> acctToFingerprint = null;
+		if (resultCache != null) {
+			acctToFingerprint = new HashMap<>();
+			for (String acct : tSource.getAccounts()) {
+				// the fingerprint does not cover designations, so designated accounts are never cached
+				if (designations == null || !designations.hasAccount(acct)) {
+					acctToFingerprint.put(acct, TransactionFingerprint.of(acct, tSource.getTransactions(acct)));
+				}
+			}
+		}
+		
+		Map<String, List<GainEntry>> geListMap = computeGains(costBasisType, tSource, acctToFingerprint, metrics, designations);
+		if (geListMap == null) {
+			throw new ControllerException("Gains computation failed (returned null)");
+		}
+		// count entries
+		int geCount = 0;
+		for (String acct : geListMap.keySet()) {
+			List<GainEntry> geList = geListMap.get(acct);
+			if (geList != null) {
+				geCount += geList.size();
+			}
+			sink.acceptGainEntries(acct, geList);
+		}
+		Log.info("Computed "+geCount+" gain entries");
+		if (metrics != null) {
+			metrics.end(Phase.GAINS, tSource.size());
+			metrics.begin(Phase.UNREALIZED);
+		}
+		
+		UnrealizedCostBasisEntry ucbe = computeUnrealizedCostBasis(geListMap);
+		if (ucbe == null) {
+			throw new ControllerException("Unrealized cost basis computation failed (returned null)");
+		}
+		sink.acceptUnrealizedCostBasis(ucbe);
+		if (metrics != null) {
+			metrics.end(Phase.UNREALIZED, geCount);
+			metrics.begin(Phase.INCOME);
+		}
+		
+		
+		PeriodIncome periodIncome = (reportingPeriod != null) ?
+				new PeriodIncome(new ReportingPeriods(reportingPeriod, fiscalYearStartMonth), accts) : null;
+		List<IncomeEntry> ieList = computeIncomeAndExpenses(tSource, accts, geListMap, periodIncome);
+		if (ieList == null) {
+			throw new ControllerException("Income computation failed (returned null)");
+		}
+		Log.info("Computed "+ieList.size()+" income entries");
+		sink.acceptIncomeEntries(ieList);
+		if (periodIncome != null) {
+			sink.acceptPeriodIncome(periodIncome);
+		}
+		if (metrics != null) {
+			metrics.end(Phase.INCOME, tSource.size());
+			metrics.begin(Phase.MINING);
+		}
+		
+		
+		Map<String, List<MiningEntry>> meListMap = computeMining(tSource, acctToFingerprint);
+		if (meListMap == null) {
+			throw new ControllerException("Mining computation failed (returned null)");
+		}
+		int meCount = 0;
+		for (String acct : meListMap.keySet()) {
+			List<MiningEntry> meList = meListMap.get(acct);
+			if (meList != null) {
+				meCount += meList.size();
+			}
+			sink.acceptMiningEntries(acct, meList);
+		}
+		Log.info("Computed "+meCount+" mining entries");
+		if (metrics != null) {
+			metrics.end(Phase.MINING, tSource.size());
+		}
+	}
+	
+	
+	// A new, empty store of the configured kind; the caller must close it
+	public TransactionStore createTransactionStore() throws ControllerException {
+		if (ledgerStorage == LedgerStorage.OBJECTS) {
+			return new TransactionListStore();
+		}
+		else if (ledgerStorage == LedgerStorage.COLUMNAR) {
+			return new TransactionTable();
+		}
+		else if (ledgerStorage == LedgerStorage.OFF_HEAP) {
+			return new OffHeapTransactionTable(tempFolder);
+		}
+		else if (ledgerStorage == LedgerStorage.EXTERNAL_SORT) {
+			if (tempFolder == null) {
+				throw new ControllerException("External sort storage requires a temp folder for spilled runs");
+			}
+			return new SpillingTransactionStore(tempFolder, heapBudgetBytes);
+		}
+		throw new ControllerException("Unsupported ledger storage " + ledgerStorage);
+	}
+	
+	
+	private LotQueue createLotQueue() {
+		if (ledgerStorage == LedgerStorage.OFF_HEAP || ledgerStorage == LedgerStorage.EXTERNAL_SORT) {
+			return new OffHeapLotQueue(tempFolder);
+		}
+		return new ArrayLotQueue();
+	}
+	
+	
+	private static String[] getAccounts(TransactionSource tSource) {
+		if (tSource == null || tSource.size() == 0) {
+			return null;
+		}
+		
+		return tSource.getAccounts();
+	}
+	
+	
+	// The ledger row ids of an account's transactions in processing order
+	private static long[] getRowIds(Iterable<? extends TransactionView> tList) {
+		long[] result = new long[64];
+		int size = 0;
+		for (TransactionView t : tList) {
+			if (size == result.length) {
+				result = Arrays.copyOf(result, size * 2);
+			}
+			result[size++] = t.getTxnRowId();
+		}
+		return Arrays.copyOf(result, size);
+	}
+	
+	
+	Map<String, List<GainEntry>> computeGains(CostBasisType cbType, TransactionSource tSource,
+			Map<String, String> acctToFingerprint, RunMetrics metrics, LotDesignations designations) throws ControllerException {
+		if (tSource == null || tSource.size() == 0) {
+			return null;
+		}
+		if (cbType == null) {
+			throw new ControllerException("Could not compute gains due to an unsupported cost basis type");
+		}
+		
+		Map<String, List<GainEntry>> result = new HashMap<>();
+		
+		for (String acct : tSource.getAccounts()) {
+			// Transactions are provided in chronological order
+			Iterable<? extends TransactionView> tList = tSource.getTransactions(acct);
+			
+			AccountPhaseEvent event = new AccountPhaseEvent();
+			event.begin();
+			List<GainEntry> geList = null;
+			if (stablecoinCash && usdStablecoins.contains(acct) && checkCashAccount(acct, tList, event)) {
+				geList = Collections.emptyList();
+			}
+			String fingerprint = (acctToFingerprint != null) ? acctToFingerprint.get(acct) : null;
+			long[] rowIds = (fingerprint != null) ? getRowIds(tList) : null;
+			if (geList == null && fingerprint != null) {
+				geList = resultCache.getGains(fingerprint, rowIds);
+				event.cached = (geList != null);
+			}
+			if (geList == null) {
+				if (cbType == CostBasisType.AVERAGE_COST) {
+					geList = computeAccountPooledGains(tList, event);
+				}
+				else if (cbType == CostBasisType.SHARE_MATCHING) {
+					geList = computeAccountMatchedGains(tList, event);
+				}
+				else {
+					geList = computeAccountGains(acct, tList, metrics, event, cbType, designations);
+				}
+				if (fingerprint != null) {
+					geList = Collections.unmodifiableList(geList);
+					resultCache.putGains(fingerprint, geList, rowIds);
+				}
+			}
+			event.end();
+			if (event.shouldCommit()) {
+				event.phase = Phase.GAINS.name();
+				event.account = acct;
+				event.entries = geList.size();
+				event.commit();
+			}
+			
+			result.put(acct, geList);
+		}
+		
+		return result;
+	}
+	
+	
+	// Cash pass over a stablecoin account: checks that the balance never goes negative and that every row is priced
+	// within the depeg tolerance of 1 USD. Returns false on a depeg, after which the account's lots are matched as usual.
+	// Otherwise the account gets no gain entries, dropping its gains and losses within the tolerance. The account is
+	// still stored, sorted and fingerprinted like any other; only its lot matching is saved.
+	private boolean checkCashAccount(String acct, Iterable<? extends TransactionView> tList, AccountPhaseEvent event)
+			throws ControllerException {
+		BigDecimal balance = BigDecimal.ZERO;
+		long rows = 0;
+		for (TransactionView t : tList) {
+			TransactionType tType = t.getTxnType();
+			rows++;
+			
+			BigDecimal coinAmnt = null;
+			if (tType == TransactionType.ACQUIRE || tType == TransactionType.INCOME || tType == TransactionType.MNG_INCOME) {
+				coinAmnt = t.getTxnCoinAmnt();
+				balance = balance.add(coinAmnt);
+			}
+			else if (tType == TransactionType.TRANSFER || tType == TransactionType.DISPOSE || tType == TransactionType.MNG_PURCHASE ||
+					tType == TransactionType.MNG_REINVEST) {
+				// as in the lot matching, a transfer only spends its fee
+				if (t.getTxnFeeCoin() != null) {
+					balance = balance.subtract(t.getTxnFeeCoin());
+				}
+				if (tType != TransactionType.TRANSFER && t.getTxnCoinAmnt() != null) {
+					coinAmnt = t.getTxnCoinAmnt();
+					balance = balance.subtract(coinAmnt);
+				}
+				if (balance.compareTo(THRESHOLD_DECIMAL_EQUALING_ZERO.negate()) < 0) {
+					throw new ControllerException("Encountered less acquired coins than disposed coins at Transaction dttm "
+							+ t.getTxnDttm());
+				}
+			}
+			
+			if (coinAmnt == null || coinAmnt.signum() == 0) {
+				continue;
+			}
+			BigDecimal usdPerUnit = (t.getTxnUsdAmnt() != null) ? t.getTxnUsdAmnt().divide(coinAmnt, PRECISION) : t.getTxnUsdPerUnit();
+			if (usdPerUnit != null && usdPerUnit.subtract(BigDecimal.ONE).abs().compareTo(stablecoinDepegTolerance) > 0) {
+				Log.info("Stablecoin account " + acct + " traded at " + usdPerUnit.round(new MathContext(6)).toPlainString() +
+						" USD at Transaction dttm " + t.getTxnDttm() + "; matching its lots instead of treating it as cash");
+				return false;
+			}
+		}
+		
+		event.rows = rows;
+		Log.info("Treated stablecoin account " + acct + " as cash: " + rows + " rows, closing balance " + balance.stripTrailingZeros().toPlainString());
+		return true;
+	}
+	
+	
+	// event accumulates the account's row, disposal and lot counts
+	private List<GainEntry> computeAccountGains(String acct, Iterable<? extends TransactionView> tList, RunMetrics metrics,
+			AccountPhaseEvent event, CostBasisType cbType, LotDesignations designations) throws ControllerException {
+		List<GainEntry> geList = new ArrayList<>();
+		long peakDepth = 0;
+		// checked once per account, so the match loop does not read the clock unless chain events are recorded
+		boolean chainEventsEnabled = new FifoChainEvent().isEnabled();
+		
+		// specific identification needs lots found by acquisition time and broker; without designations it matches like FIFO
+		LotBook lotBook = (cbType == CostBasisType.SPECIFIC_ID) ? new LotBook() : null;
+		boolean designated = (lotBook != null && designations != null && designations.hasAccount(acct));
+		
+		// Enqueue the acquisition and income amounts and their cost basis
+		// For each disposal consume the designated lots, then pop the oldest events, and compute capital gains
+		try (LotQueue tmQueue = (lotBook != null) ? lotBook : createLotQueue()) {
+			for (TransactionView t : tList) {
+				Transaction.TransactionType tType = t.getTxnType();
+				event.rows++;
+			
+				if (tType == TransactionType.ACQUIRE || tType == TransactionType.INCOME || tType == TransactionType.MNG_INCOME) {
+					TransactionMemento tm = toAcquisitionMemento(t);
+					tmQueue.add(tm);
+					peakDepth = Math.max(peakDepth, tmQueue.size());
+				}
+				else if (tType == TransactionType.TRANSFER || tType == TransactionType.DISPOSE || tType == TransactionType.MNG_PURCHASE ||
+						tType == TransactionType.MNG_REINVEST) {
+					TransactionMemento dispTM = toDisposalMemento(t, tType);
+					// if it's a non-dispose zero-fee transaction, skip it
+					if (dispTM == null) {
+						SKIPPED_LOG.log("Skipping non-taxable Transaction dttm ", t.getTxnDttm());
+						continue;
+					}
+				
+					BigDecimal dispCoinAmnt = dispTM.coinAmnt;
+					long matchStartNanos = chainEventsEnabled ? System.nanoTime() : 0;
+					long lotsConsumed = 0;
+					if (designated) {
+						for (Designation d : designations.get(acct, dispTM.dttm)) {
+							BigDecimal designatedAmnt = (d.getCoinAmnt() != null) ? d.getCoinAmnt().min(dispTM.coinAmnt) : dispTM.coinAmnt;
+							boolean found = false;
+							while (designatedAmnt.compareTo(THRESHOLD_DECIMAL_EQUALING_ZERO) > 0) {
+								TransactionMemento acqTM = lotBook.find(d.getLotDttm(), d.getBroker());
+								if (acqTM == null) {
+									// a lot without a designated amount may simply be used up
+									if (!found || d.getCoinAmnt() != null) {
+										DESIGNATION_LOG.log("Designated lot is not open, matching the oldest lots instead: ", d + " for Transaction dttm " + t.getTxnDttm());
+									}
+									break;
+								}
+								found = true;
+								lotsConsumed++;
+								BigDecimal minCoinAmnt = designatedAmnt.min(acqTM.coinAmnt);
+								addGainEntry(geList, dispTM, acqTM, minCoinAmnt);
+								
+								designatedAmnt = designatedAmnt.subtract(minCoinAmnt);
+								dispTM.coinAmnt = dispTM.coinAmnt.subtract(minCoinAmnt);
+								acqTM.coinAmnt = acqTM.coinAmnt.subtract(minCoinAmnt);
+								if (acqTM.coinAmnt.compareTo(THRESHOLD_DECIMAL_EQUALING_ZERO) <= 0) {
+									lotBook.remove(acqTM);
+								}
+							}
+						}
+					}
+					while (dispTM.coinAmnt.compareTo(THRESHOLD_DECIMAL_EQUALING_ZERO) > 0) {
+						lotsConsumed++;
+						if (tmQueue.isEmpty() || tmQueue.peek() == null) {
+							// this should not happen, since we should not dispose of more coins than we acquired
+							throw new ControllerException("Encountered less acquired coins than disposed coins at Transaction dttm "
+									+ t.getTxnDttm());
+						}
+					
+						TransactionMemento acqTM = tmQueue.peek();
+						BigDecimal minCoinAmnt = dispTM.coinAmnt.min(acqTM.coinAmnt);
+						addGainEntry(geList, dispTM, acqTM, minCoinAmnt);
+					
+						dispTM.coinAmnt = dispTM.coinAmnt.subtract(minCoinAmnt);
+						acqTM.coinAmnt = acqTM.coinAmnt.subtract(minCoinAmnt);
+					
+						if (acqTM.coinAmnt.compareTo(THRESHOLD_DECIMAL_EQUALING_ZERO) <= 0) {
+							tmQueue.remove();
+						}
+						else {
+							tmQueue.updateHead(acqTM);
+						}
+					}
+					
+					event.disposals++;
+					event.lotsConsumed += lotsConsumed;
+					event.maxChainLots = Math.max(event.maxChainLots, lotsConsumed);
+					if (lotsConsumed >= FifoChainEvent.LONG_CHAIN_LOTS) {
+						event.longChains++;
+						if (chainEventsEnabled && FifoChainEvent.isSampled(event.longChains)) {
+							FifoChainEvent chainEvent = new FifoChainEvent();
+							chainEvent.account = acct;
+							chainEvent.disposalTime = dispTM.dttm.toString();
+							chainEvent.coinAmount = dispCoinAmnt.toPlainString();
+							chainEvent.lotsConsumed = lotsConsumed;
+							chainEvent.matchNanos = System.nanoTime() - matchStartNanos;
+							chainEvent.openLots = tmQueue.size();
+							chainEvent.commit();
+						}
+					}
+				}
+			}
+		
+			// add any undisposed (unsold) assets as unrealized gain entries
+			for (TransactionMemento tm : tmQueue) {
+				BigDecimal costBasis = tm.coinAmnt.multiply(tm.effUsdPerUnit);
+				UnrealizedGainEntry uge = new UnrealizedGainEntry(tm.dttm.toLocalDate(), tm.src, tm.coinAmnt, costBasis);
+				geList.add(uge);
+			}
+		}
+		catch (IOException exc) {
+			throw new ControllerException("Could not release lot storage for account " + acct + ": " + exc.getMessage());
+		}
+		if (metrics != null) {
+			metrics.recordLotQueueDepth(peakDepth);
+		}
+		
+		return geList;
+	}
+	
+	
+	// Average cost basis: the account's holdings form a single pool of coins and their total cost, so a disposal costs
+	// O(1) and no lots are kept. Acquisition dates are pooled the same way (averaged by coin amount) to date the gain
+	// entries and the unrealized entry of what is left in the pool.
+	private static List<GainEntry> computeAccountPooledGains(Iterable<? extends TransactionView> tList, AccountPhaseEvent event)
+			throws ControllerException {
+		List<GainEntry> geList = new ArrayList<>();
+		CostPool pool = new CostPool();
+		
+		for (TransactionView t : tList) {
+			TransactionType tType = t.getTxnType();
+			event.rows++;
+			
+			if (tType == TransactionType.ACQUIRE || tType == TransactionType.INCOME || tType == TransactionType.MNG_INCOME) {
+				pool.add(t.getTxnDttm().toLocalDate(), t.getTxnCoinAmnt(), toAcquisitionCostUsd(t));
+			}
+			else if (tType == TransactionType.TRANSFER || tType == TransactionType.DISPOSE || tType == TransactionType.MNG_PURCHASE ||
+					tType == TransactionType.MNG_REINVEST) {
+				TransactionMemento dispTM = toDisposalMemento(t, tType);
+				// if it's a non-dispose zero-fee transaction, skip it
+				if (dispTM == null) {
+					SKIPPED_LOG.log("Skipping non-taxable Transaction dttm ", t.getTxnDttm());
+					continue;
+				}
+				event.disposals++;
+				addPoolGainEntry(geList, dispTM, pool, dispTM.coinAmnt);
+				event.lotsConsumed++;
+			}
+		}
+		
+		// what is left in the pool is unrealized
+		if (!pool.isEmpty()) {
+			geList.add(new UnrealizedGainEntry(pool.getDate(), null, pool.getCoinAmnt(), pool.getCostUsd()));
+		}
+		
+		return geList;
+	}
+	
+	
+	// Share matching (UK style): a disposal is matched first with the acquisitions of its own day, then with those of
+	// the 30 days after it (earliest first, earlier disposals first), and only the rest comes from the average-cost pool
+	// of the acquisitions no disposal matched. Matching looks ahead, so the account's acquisitions are first indexed by
+	// day in an AcquisitionWindow: each disposal finds its window by binary search and skips the days already matched.
+	// A disposal's entries are listed in the order it was matched: same day, next 30 days, pool.
+	private static List<GainEntry> computeAccountMatchedGains(Iterable<? extends TransactionView> tList, AccountPhaseEvent event)
+			throws ControllerException {
+		AcquisitionWindow window = new AcquisitionWindow();
+		List<TransactionMemento> dispTMList = new ArrayList<>();
+		for (TransactionView t : tList) {
+			TransactionType tType = t.getTxnType();
+			event.rows++;
+			
+			if (tType == TransactionType.ACQUIRE || tType == TransactionType.INCOME || tType == TransactionType.MNG_INCOME) {
+				window.add(t.getTxnDttm().toLocalDate(), t.getTxnCoinAmnt(), toAcquisitionCostUsd(t), t.getTxnRowId());
+			}
+			else if (tType == TransactionType.TRANSFER || tType == TransactionType.DISPOSE || tType == TransactionType.MNG_PURCHASE ||
+					tType == TransactionType.MNG_REINVEST) {
+				TransactionMemento dispTM = toDisposalMemento(t, tType);
+				// if it's a non-dispose zero-fee transaction, skip it
+				if (dispTM == null) {
+					SKIPPED_LOG.log("Skipping non-taxable Transaction dttm ", t.getTxnDttm());
+					continue;
+				}
+				dispTMList.add(dispTM);
+			}
+		}
+		
+		// the coins of each disposal not matched yet, and the entries of its matches
+		int dispCount = dispTMList.size();
+		BigDecimal[] unmatched = new BigDecimal[dispCount];
+		List<List<GainEntry>> matchedEntries = new ArrayList<>(Collections.nCopies(dispCount, (List<GainEntry>) null));
+		
+		// same day
+		for (int k = 0; k < dispCount; k++) {
+			TransactionMemento dispTM = dispTMList.get(k);
+			unmatched[k] = dispTM.coinAmnt;
+			int i = window.indexOf(dispTM.dttm.toLocalDate());
+			if (i >= 0) {
+				unmatched[k] = unmatched[k].subtract(matchAcquisitionDay(matchedEntries, k, dispTM, window, i, unmatched[k], event));
+			}
+		}
+		
+		// the next 30 days
+		for (int k = 0; k < dispCount; k++) {
+			TransactionMemento dispTM = dispTMList.get(k);
+			LocalDate dispDate = dispTM.dttm.toLocalDate();
+			LocalDate lastDate = dispDate.plusDays(MATCHING_WINDOW_DAYS);
+			for (int i = window.nextOpen(window.indexAfter(dispDate)); i < window.size() && !window.getDate(i).isAfter(lastDate) &&
+					unmatched[k].compareTo(THRESHOLD_DECIMAL_EQUALING_ZERO) > 0; i = window.nextOpen(i + 1)) {
+				unmatched[k] = unmatched[k].subtract(matchAcquisitionDay(matchedEntries, k, dispTM, window, i, unmatched[k], event));
+			}
+		}
+		
+		// the pool holds what is left of the days up to each disposal
+		List<GainEntry> geList = new ArrayList<>();
+		CostPool pool = new CostPool();
+		int nextDay = 0;
+		for (int k = 0; k < dispCount; k++) {
+			TransactionMemento dispTM = dispTMList.get(k);
+			for (; nextDay < window.size() && !window.getDate(nextDay).isAfter(dispTM.dttm.toLocalDate()); nextDay++) {
+				addToPool(pool, window, nextDay);
+			}
+			event.disposals++;
+			if (matchedEntries.get(k) != null) {
+				geList.addAll(matchedEntries.get(k));
+			}
+			if (unmatched[k].compareTo(THRESHOLD_DECIMAL_EQUALING_ZERO) > 0) {
+				addPoolGainEntry(geList, dispTM, pool, unmatched[k]);
+				event.lotsConsumed++;
+			}
+		}
+		for (; nextDay < window.size(); nextDay++) {
+			addToPool(pool, window, nextDay);
+		}
+		
+		// what is left in the pool is unrealized
+		if (!pool.isEmpty()) {
+			geList.add(new UnrealizedGainEntry(pool.getDate(), null, pool.getCoinAmnt(), pool.getCostUsd()));
+		}
+		
+		return geList;
+	}
+	
+	
+	// Matches up to coinAmnt of disposal k with what is left of day i of the window; returns the coin amount matched
+	private static BigDecimal matchAcquisitionDay(List<List<GainEntry>> matchedEntries, int k, TransactionMemento dispTM,
+			AcquisitionWindow window, int i, BigDecimal coinAmnt, AccountPhaseEvent event) {
+		BigDecimal matchedCoinAmnt = coinAmnt.min(window.getCoinAmnt(i));
+		if (matchedCoinAmnt.compareTo(THRESHOLD_DECIMAL_EQUALING_ZERO) <= 0) {
+			return BigDecimal.ZERO;
+		}
+		BigDecimal costBasisUsd = window.take(i, matchedCoinAmnt);
+		if (matchedEntries.get(k) == null) {
+			matchedEntries.set(k, new ArrayList<>(2));
+		}
+		addGainEntry(matchedEntries.get(k), dispTM, window.getDate(i), window.getRowId(i), matchedCoinAmnt, costBasisUsd);
+		event.lotsConsumed++;
+		return matchedCoinAmnt;
+	}
+	
+	
+	private static void addToPool(CostPool pool, AcquisitionWindow window, int i) {
+		if (window.getCoinAmnt(i).signum() > 0) {
+			pool.add(window.getDate(i), window.getCoinAmnt(i), window.getCostUsd(i));
+		}
+	}
+	
+	
+	// Takes coinAmnt of the disposal from the pool, at the pool's average cost and date
+	private static void addPoolGainEntry(List<GainEntry> geList, TransactionMemento dispTM, CostPool pool, BigDecimal coinAmnt)
+			throws ControllerException {
+		if (!pool.covers(coinAmnt)) {
+			// this should not happen, since we should not dispose of more coins than we acquired
+			throw new ControllerException("Encountered less acquired coins than disposed coins at Transaction dttm "
+					+ dispTM.dttm);
+		}
+		LocalDate poolDate = pool.getDate();
+		addGainEntry(geList, dispTM, poolDate, GainLineage.POOLED_ROW_ID, coinAmnt, pool.remove(coinAmnt));
+	}
+	
+	
+	// The exact cost of an acquisition or income transaction including broker fees, for pooling
+	private static BigDecimal toAcquisitionCostUsd(TransactionView t) throws ControllerException {
+		BigDecimal costUsd;
+		if (t.getTxnUsdAmnt() != null) {
+			costUsd = t.getTxnUsdAmnt();
+		}
+		else if (t.getTxnUsdPerUnit() != null) {
+			costUsd = t.getTxnCoinAmnt().multiply(t.getTxnUsdPerUnit());
+		}
+		else {
+			// this should not happen, since validation occurred at Transaction creation
+			throw new ControllerException("Encountered unexpected null data in txn USD or USD/unit in calculating gains acq/inc at Transaction dttm "
+					+ t.getTxnDttm());
+		}
+		if (t.getTxnBrkrFeeUsd() != null) {
+			costUsd = costUsd.add(t.getTxnBrkrFeeUsd());
+		}
+		return costUsd;
+	}
+	
+	
+	// The lot of an acquisition or income transaction, at its cost per unit including broker fees
+	private static TransactionMemento toAcquisitionMemento(TransactionView t) throws ControllerException {
+		TransactionMemento tm = new TransactionMemento();
+		tm.rowId = t.getTxnRowId();
+		tm.dttm = t.getTxnDttm();
+		tm.coinAmnt = t.getTxnCoinAmnt();
+		tm.src = t.getTxnSrc();
+		tm.dest = t.getTxnDest();
+	
+		if (t.getTxnUsdAmnt() != null) {
+			BigDecimal costBasis = t.getTxnUsdAmnt();
+			if (t.getTxnBrkrFeeUsd() != null) {
+				costBasis = costBasis.add(t.getTxnBrkrFeeUsd());
+			}
+			tm.effUsdPerUnit = costBasis.divide(tm.coinAmnt, PRECISION);
+		}
+		else if (t.getTxnUsdPerUnit() != null) {
+			BigDecimal txnUsdPerUnit = t.getTxnUsdPerUnit();
+			if (t.getTxnBrkrFeeUsd() != null) {
+				BigDecimal costBasis = tm.coinAmnt.multiply(txnUsdPerUnit);
+				costBasis = costBasis.add(t.getTxnBrkrFeeUsd());
+				tm.effUsdPerUnit = costBasis.divide(tm.coinAmnt, PRECISION);
+			}
+			else {
+				tm.effUsdPerUnit = txnUsdPerUnit;
+			}
+		}
+		else {
+			// this should not happen, since validation occurred at Transaction creation
+			throw new ControllerException("Encountered unexpected null data in txn USD or USD/unit in calculating gains acq/inc at Transaction dttm "
+					+ t.getTxnDttm());
+		}
+		
+		return tm;
+	}
+	
+	
+	// The coins a transfer (its fee only), disposal or mining purchase gives up, at its price per unit; null if none
+	private static TransactionMemento toDisposalMemento(TransactionView t, TransactionType tType) throws ControllerException {
+		TransactionMemento dispTM = new TransactionMemento();
+		dispTM.rowId = t.getTxnRowId();
+		dispTM.dttm = t.getTxnDttm();
+		dispTM.coinAmnt = BigDecimal.ZERO;
+		dispTM.src = t.getTxnSrc();
+		dispTM.dest = t.getTxnDest();
+	
+		if (t.getTxnFeeCoin() != null) {
+			dispTM.coinAmnt = dispTM.coinAmnt.add(t.getTxnFeeCoin());
+		}
+		if (tType == TransactionType.DISPOSE) {
+			dispTM.coinAmnt = dispTM.coinAmnt.add(t.getTxnCoinAmnt());
+		}
+		else if ((tType == TransactionType.MNG_PURCHASE || tType == TransactionType.MNG_REINVEST) && t.getTxnCoinAmnt() != null) {
+			dispTM.coinAmnt = dispTM.coinAmnt.add(t.getTxnCoinAmnt());
+		}
+	
+		// a non-dispose zero-fee transaction is not taxable
+		if (dispTM.coinAmnt.compareTo(THRESHOLD_DECIMAL_EQUALING_ZERO) <= 0) {
+			return null;
+		}
+	
+		if (t.getTxnUsdAmnt() != null) {
+			dispTM.effUsdPerUnit = t.getTxnUsdAmnt().divide(t.getTxnCoinAmnt(), PRECISION);
+		}
+		else if (t.getTxnUsdPerUnit() != null) {
+			dispTM.effUsdPerUnit = t.getTxnUsdPerUnit();
+		}
+		else {
+			// this should not happen, since validation occurred at Transaction creation
+			throw new ControllerException("Encountered unexpected null data in txn USD or USD/unit in calculating gains tran/disp"
+					+ t.getTxnDttm());
+		}
+		
+		return dispTM;
+	}
+	
+	
+	private static void addGainEntry(List<GainEntry> geList, TransactionMemento dispTM, TransactionMemento acqTM, BigDecimal minCoinAmnt) {
+		BigDecimal proceedsUsd = minCoinAmnt.multiply(dispTM.effUsdPerUnit);
+		BigDecimal costBasisUsd = minCoinAmnt.multiply(acqTM.effUsdPerUnit);
+		BigDecimal gainUsd = proceedsUsd.subtract(costBasisUsd);
+		
+		// if non-zero gain/loss, then add (some "pass-through" transactions may yield zero cap gain, ignore them)
+		if (gainUsd.abs().compareTo(THRESHOLD_DECIMAL_EQUALING_ZERO) > 0) {
+			GainEntry ge = new CapitalGainEntry(acqTM.dttm.toLocalDate(), dispTM.dttm.toLocalDate(), 
+					acqTM.dest, dispTM.src, minCoinAmnt, proceedsUsd, costBasisUsd, gainUsd, dispTM.rowId, acqTM.rowId);
+			geList.add(ge);
+		}
+	}
+	
+	
+	// An entry for coins acquired at a pooled or merged cost, which has no single broker (and, unless acqRowId is given,
+	// no single ledger row)
+	private static void addGainEntry(List<GainEntry> geList, TransactionMemento dispTM, LocalDate acqDate, long acqRowId,
+			BigDecimal coinAmnt, BigDecimal costBasisUsd) {
+		BigDecimal proceedsUsd = coinAmnt.multiply(dispTM.effUsdPerUnit);
+		BigDecimal gainUsd = proceedsUsd.subtract(costBasisUsd);
+		
+		// if non-zero gain/loss, then add (some "pass-through" transactions may yield zero cap gain, ignore them)
+		if (gainUsd.abs().compareTo(THRESHOLD_DECIMAL_EQUALING_ZERO) > 0) {
+			geList.add(new CapitalGainEntry(acqDate, dispTM.dttm.toLocalDate(), null, dispTM.src, coinAmnt, proceedsUsd,
+					costBasisUsd, gainUsd, dispTM.rowId, acqRowId));
+		}
+	}
+	
+
+	static UnrealizedCostBasisEntry computeUnrealizedCostBasis(Map<String, List<GainEntry>> geListMap) throws ControllerException {
+		if (geListMap == null) {
+			return null;
+		}
+		
+		Set<String> acctSet = geListMap.keySet();
+		String[] accts = new String[acctSet.size()];
+		Map<String, BigDecimal> shortTermCostBasis = new HashMap<>();
+		Map<String, BigDecimal> longTermCostBasis = new HashMap<>();
+		Map<String, BigDecimal> avgCostBasis = new HashMap<>();
+		
+		LocalDate now = LocalDate.now();
+		
+		int i = 0;
+		for (String acct : acctSet) {
+			List<GainEntry> geList = geListMap.get(acct);
+			if (geList == null || geList.isEmpty()) {
+				continue;
+			}
+			
+			BigDecimal shortTermCB = null;
+			BigDecimal longTermCB = null;
+			BigDecimal assetAmnt = null;
+			
+			for (GainEntry ge : geList) {
+				if (ge instanceof UnrealizedGainEntry) {
+					LocalDate dateAcq = ge.getDateAcquired();
+					GainTerm term = GainEntry.getTerm(dateAcq, now);
+					if (term == GainTerm.SHORTTERM) {
+						if (shortTermCB == null) {
+							shortTermCB = BigDecimal.ZERO;
+						}
+						shortTermCB = shortTermCB.add(ge.getCostBasis());
+					}
+					else if (term == GainTerm.LONGTERM) {
+						if (longTermCB == null) {
+							longTermCB = BigDecimal.ZERO;
+						}
+						longTermCB = longTermCB.add(ge.getCostBasis());
+					}
+					else {
+						throw new ControllerException("Controller::computeUnrealizedCostBasis encountered unrealized gain entry whose term was UNKNOWN");
+					}
+					
+					if (assetAmnt == null) {
+						assetAmnt = BigDecimal.ZERO;
+					}
+					assetAmnt = assetAmnt.add(ge.getAssetAmnt());
+				}
+			}
+			shortTermCostBasis.put(acct, shortTermCB);
+			longTermCostBasis.put(acct, longTermCB);
+			
+			// calculate overall average cost basis (avg cost per asset unit)
+			BigDecimal totalCostBasis = null;
+			BigDecimal avgCB = null;
+			if ((shortTermCB != null || longTermCB != null) && assetAmnt != null && assetAmnt.compareTo(BigDecimal.ZERO) != 0) {
+				totalCostBasis = BigDecimal.ZERO;
+				if (shortTermCB != null) {
+					totalCostBasis = totalCostBasis.add(shortTermCB);
+				}
+				if (longTermCB != null) {
+					totalCostBasis = totalCostBasis.add(longTermCB);
+				}
+				avgCB = totalCostBasis.divide(assetAmnt, PRECISION);
+			}
+			avgCostBasis.put(acct, avgCB);
+			
+			accts[i] = acct;
+			i++;
+		}
+		
+		// accounts without gain entries (e.g., stablecoins treated as cash) are left out
+		if (i < accts.length) {
+			accts = Arrays.copyOf(accts, i);
+		}
+		UnrealizedCostBasisEntry result = new UnrealizedCostBasisEntry(accts, shortTermCostBasis, longTermCostBasis, avgCostBasis);
+		
+		return result;
+	}
+	
+	
+	// periodIncome, if given, is also filled with the income and gains by reporting period in the same passes
+	static List<IncomeEntry> computeIncomeAndExpenses(TransactionSource tSource, String[] accts, 
+			Map<String, List<GainEntry>> geListMap, PeriodIncome periodIncome) throws ControllerException {
+		
+		if (tSource == null || accts == null || geListMap == null) {
+			return null;
+		}
+
+		List<IncomeEntry> result = new ArrayList<>();
+		
+		
+		// First take care of computing capital gain totals for each year (for each account)
+		Map<Integer, Map<String, BigDecimal>> yearToAcctToShortTermCapGain = new HashMap<>();
+		Map<Integer, Map<String, BigDecimal>> yearToAcctToLongTermCapGain = new HashMap<>();
+		Set<String> acctSet = geListMap.keySet();
+		int earliestCapGainYear = 0;
+		for (String acct : acctSet) {
+			List<GainEntry> geList = geListMap.get(acct);
+			
+			for (GainEntry ge : geList) {
+				// only process capital gain entries (ignore unrealized income cost basis items)
+				if (ge instanceof CapitalGainEntry) {
+					int year = ge.getTaxYearInt();
+					if (earliestCapGainYear == 0 || year < earliestCapGainYear) {
+						earliestCapGainYear = year;
+					}
+					
+					Map<String, BigDecimal> capGainMap = null;
+					GainTerm term = ge.getTerm();
+					if (term == GainTerm.SHORTTERM) {
+						capGainMap = yearToAcctToShortTermCapGain.get(year);
+						if (capGainMap == null) {
+							capGainMap = new HashMap<>();
+							yearToAcctToShortTermCapGain.put(year, capGainMap);
+						}
+					}
+					else if (term == GainTerm.LONGTERM) {
+						capGainMap = yearToAcctToLongTermCapGain.get(year);
+						if (capGainMap == null) {
+							capGainMap = new HashMap<>();
+							yearToAcctToLongTermCapGain.put(year, capGainMap);
+						}
+					}
+					// capGainMap should not be null, unless the term is not short-term or long-term
+					if (capGainMap != null) {
+						BigDecimal currCapGainInMap = capGainMap.get(acct);
+						if (currCapGainInMap == null) {
+							currCapGainInMap = BigDecimal.ZERO;
+						}
+						BigDecimal gain = ge.getGain();
+						if (gain != null) {
+							currCapGainInMap = currCapGainInMap.add(gain);
+							capGainMap.put(acct, currCapGainInMap);
+							if (periodIncome != null) {
+								periodIncome.add((term == GainTerm.SHORTTERM) ? PeriodIncome.Category.SHORTTERM_CAPGAIN :
+										PeriodIncome.Category.LONGTERM_CAPGAIN, ge.getDateDisposed(), acct, gain);
+							}
+						}
+					}
+				}
+			}
+		}
+		
+		
+		// All transactions combined in chronological order
+		Iterable<? extends TransactionView> tList = tSource.getAllTransactions();
+		
+		int year = 0;
+		Map<String, BigDecimal> acctToOrdIncomeUsdSum = null;
+		Map<String, BigDecimal> acctToMngIncomeUsdSum = null;
+		Map<String, BigDecimal> acctToMngExpenseUsdSum = null;
+		Map<Integer, Map<String, BigDecimal>> yearToAcctToMngAmortExpenseUsdMap = new HashMap<>();
+		
+		for (TransactionView t : tList) {
+			try {
+				Transaction.TransactionType tType = t.getTxnType();
+				String tAcct = t.getTxnAcct();
+				
+				int tYear = t.getTxnYearInt();
+				if (year == 0) {
+					// first income transaction
+					year = tYear;
+					
+					// if there were earlier years with capital gains, enter them first (this is not expected to happen!)
+					while (earliestCapGainYear != 0 && earliestCapGainYear < year) {
+						Map<String, BigDecimal> shortTermCapGain = yearToAcctToShortTermCapGain.remove(earliestCapGainYear);
+						Map<String, BigDecimal> longTermCapGain = yearToAcctToLongTermCapGain.remove(earliestCapGainYear);
+						IncomeEntry ie = new IncomeEntry(String.valueOf(earliestCapGainYear), accts, null, shortTermCapGain,
+								longTermCapGain, null, null, null);
+						result.add(ie);
+						earliestCapGainYear++;
+					}
+				}
+				
+				BigDecimal tUsdAmnt = t.getCalculatedTxnUsdAmnt();
+				if (periodIncome != null && (tType == TransactionType.INCOME || tType == TransactionType.MNG_INCOME)) {
+					periodIncome.add((tType == TransactionType.INCOME) ? PeriodIncome.Category.ORD_INCOME : PeriodIncome.Category.MNG_INCOME,
+							t.getTxnDttm().toLocalDate(), tAcct, tUsdAmnt);
+				}
+				
+				// same year
+				if (year == tYear) {
+					if (tType == TransactionType.INCOME) {
+						if (acctToOrdIncomeUsdSum == null) {
+							acctToOrdIncomeUsdSum = new HashMap<>();
+						}
+						BigDecimal ordIncome = acctToOrdIncomeUsdSum.get(tAcct);
+						if (ordIncome == null) {
+							ordIncome = BigDecimal.ZERO;
+						}
+						ordIncome = ordIncome.add(tUsdAmnt);
+						acctToOrdIncomeUsdSum.put(tAcct, ordIncome);
+					}
+					else if (tType == TransactionType.MNG_INCOME) {
+						if (acctToMngIncomeUsdSum == null) {
+							acctToMngIncomeUsdSum = new HashMap<>();
+						}
+						BigDecimal mngIncome = acctToMngIncomeUsdSum.get(tAcct);
+						if (mngIncome == null) {
+							mngIncome = BigDecimal.ZERO;
+						}
+						mngIncome = mngIncome.add(tUsdAmnt);
+						acctToMngIncomeUsdSum.put(tAcct, mngIncome);
+					}
+					else if (tType == TransactionType.MNG_PURCHASE || tType == TransactionType.MNG_REINVEST) {
+						if (acctToMngExpenseUsdSum == null) {
+							acctToMngExpenseUsdSum = new HashMap<>();
+						}
+						BigDecimal mngExpense = acctToMngExpenseUsdSum.get(tAcct);
+						if (mngExpense == null) {
+							mngExpense = BigDecimal.ZERO;
+						}
+						mngExpense = mngExpense.add(tUsdAmnt);
+						acctToMngExpenseUsdSum.put(tAcct, mngExpense);
+						
+						amortizeExpenses(yearToAcctToMngAmortExpenseUsdMap, tAcct, t.getTxnDttm().toLocalDate(), t.getTermMos(), tUsdAmnt);
+					}
+				}
+				// new year
+				else {
+					Map<String, BigDecimal> amortExpenses = yearToAcctToMngAmortExpenseUsdMap.remove(year);
+					Map<String, BigDecimal> shortTermCapGains = yearToAcctToShortTermCapGain.remove(year);
+					Map<String, BigDecimal> longTermCapGains = yearToAcctToLongTermCapGain.remove(year);
+					
+					IncomeEntry ie = new IncomeEntry(String.valueOf(year), accts, acctToOrdIncomeUsdSum, shortTermCapGains,
+							longTermCapGains, acctToMngIncomeUsdSum, acctToMngExpenseUsdSum, amortExpenses);
+					result.add(ie);
+
+					if (year > tYear) {
+						// should not happen since we sorted transactions by dttm, but a defensive step to avoid an infinite loop
+						throw new ControllerException("Encountered an out of order (earlier) Transaction dttm " + t.getTxnDttm());
+					}
+					
+					year++;
+					acctToOrdIncomeUsdSum = null;
+					acctToMngIncomeUsdSum = null;
+					acctToMngExpenseUsdSum = null;
+					
+					while (year < tYear) {
+						amortExpenses = yearToAcctToMngAmortExpenseUsdMap.remove(year);
+						shortTermCapGains = yearToAcctToShortTermCapGain.remove(year);
+						longTermCapGains = yearToAcctToLongTermCapGain.remove(year);
+						
+						ie = new IncomeEntry(String.valueOf(year), accts, acctToOrdIncomeUsdSum, shortTermCapGains, longTermCapGains,
+								acctToMngIncomeUsdSum, acctToMngExpenseUsdSum, amortExpenses);
+						result.add(ie);
+						year++;
+					}
+					
+					if (tType == TransactionType.INCOME) {
+						acctToOrdIncomeUsdSum = new HashMap<>();
+						acctToOrdIncomeUsdSum.put(tAcct, tUsdAmnt);
+					}
+					else if (tType == TransactionType.MNG_INCOME) {
+						acctToMngIncomeUsdSum = new HashMap<>();
+						acctToMngIncomeUsdSum.put(tAcct, tUsdAmnt);
+					}
+					else if (tType == TransactionType.MNG_PURCHASE || tType == TransactionType.MNG_REINVEST) {
+						acctToMngExpenseUsdSum = new HashMap<>();
+						acctToMngExpenseUsdSum.put(tAcct, tUsdAmnt);
+						amortizeExpenses(yearToAcctToMngAmortExpenseUsdMap, tAcct, t.getTxnDttm().toLocalDate(), t.getTermMos(), tUsdAmnt);
+					}
+				}
+			}
+			catch (TransactionException tExc) {
+				throw new ControllerException("Income and expenses compute failed due to Transaction error: " + tExc.getMessage());
+			}
+		}
+		while (acctToOrdIncomeUsdSum != null || acctToMngIncomeUsdSum != null || acctToMngExpenseUsdSum != null ||
+				! yearToAcctToMngAmortExpenseUsdMap.isEmpty() || ! yearToAcctToShortTermCapGain.isEmpty() ||
+				! yearToAcctToLongTermCapGain.isEmpty()) {
+			
+			Map<String, BigDecimal> amortExpenses = yearToAcctToMngAmortExpenseUsdMap.remove(year);
+			Map<String, BigDecimal> shortTermCapGain = yearToAcctToShortTermCapGain.remove(year);
+			Map<String, BigDecimal> longTermCapGain = yearToAcctToLongTermCapGain.remove(year);
+			
+			IncomeEntry ie = new IncomeEntry(String.valueOf(year), accts, acctToOrdIncomeUsdSum, shortTermCapGain, longTermCapGain,
+					acctToMngIncomeUsdSum, acctToMngExpenseUsdSum, amortExpenses);
+			result.add(ie);
+			
+			year++;
+			acctToOrdIncomeUsdSum = null;
+			acctToMngIncomeUsdSum = null;
+			acctToMngExpenseUsdSum = null;
+		}
+		
+		return result;
+	}
+	
+	
+	static void amortizeExpenses(Map<Integer, Map<String, BigDecimal>> yearToAcctToExpenseMap, String acct, LocalDate startDate,
+			Long lengthMos, BigDecimal totalExpense) {
+		
+		if (yearToAcctToExpenseMap == null || acct == null || startDate == null || lengthMos == null || totalExpense == null) {
+			Log.error("Could not amortize expenses because passed parameter(s) were null");
+			return;
+		}
+		
+		LocalDate endDate = startDate.plusMonths(lengthMos.longValue());
+		long totalAmortPeriod = ChronoUnit.DAYS.between(startDate, endDate);
+		BigDecimal totalAmortPeriodBD = new BigDecimal(totalAmortPeriod);
+		
+		LocalDate t1 = startDate;
+		long remAmortPeriod = totalAmortPeriod;
+		LocalDate t2 = t1.plusDays(1).with(TemporalAdjusters.lastDayOfYear());
+		if (endDate.isBefore(t2)) {
+			t2 = endDate;
+		}
+		
+		while (remAmortPeriod > 0 && t1.isBefore(t2)) {
+			int year = t2.getYear();
+			long amortSegment = ChronoUnit.DAYS.between(t1, t2);
+			BigDecimal expenseInYear = totalExpense.multiply(new BigDecimal(amortSegment)).divide(totalAmortPeriodBD, PRECISION);
+			
+			Map<String, BigDecimal> acctToExpenseMap = yearToAcctToExpenseMap.get(year);
+			if (acctToExpenseMap == null) {
+				acctToExpenseMap = new HashMap<>();
+				yearToAcctToExpenseMap.put(year, acctToExpenseMap);
+			}
+			
+			BigDecimal mapValue = acctToExpenseMap.get(acct);
+			if (mapValue != null) {
+				expenseInYear = expenseInYear.add(mapValue);
+			}
+			acctToExpenseMap.put(acct, expenseInYear);
+			
+			remAmortPeriod = remAmortPeriod - amortSegment;
+			t1 = t2;
+			t2 = t2.plusYears(1);
+			if (endDate.isBefore(t2)) {
+				t2 = endDate;
+			}
+		}
+	}
+	
+	
+	Map<String, List<MiningEntry>> computeMining(TransactionSource tSource, Map<String, String> acctToFingerprint)
+			throws ControllerException {
+		if (tSource == null) {
+			return null;
+		}
+
+		Map<String, List<MiningEntry>> result = new HashMap<>();
+		
+		for (String acct : tSource.getAccounts()) {
+			// Transactions are provided in chronological order
+			Iterable<? extends TransactionView> tList = tSource.getTransactions(acct);
+			
+			AccountPhaseEvent event = new AccountPhaseEvent();
+			event.begin();
+			List<MiningEntry> meList = null;
+			String fingerprint = (acctToFingerprint != null) ? acctToFingerprint.get(acct) : null;
+			if (fingerprint != null) {
+				meList = resultCache.getMining(fingerprint);
+				event.cached = (meList != null);
+			}
+			if (meList == null) {
+				meList = computeAccountMining(acct, tList);
+				if (fingerprint != null) {
+					meList = Collections.unmodifiableList(meList);
+					resultCache.putMining(fingerprint, meList);
+				}
+			}
+			event.end();
+			if (event.shouldCommit()) {
+				event.phase = Phase.MINING.name();
+				event.account = acct;
+				event.entries = meList.size();
+				event.commit();
+			}
+			
+			result.put(acct, meList);
+		}
+		
+		return result;
+	}
+	
+	
+	private static List<MiningEntry> computeAccountMining(String acct, Iterable<? extends TransactionView> tList) throws ControllerException {
+		List<MiningEntry> meList = new ArrayList<>();
+		
+		// Read in all the purchase and reinvestment contracts
+		List<MiningContract> mcList = new ArrayList<>();
+		LocalDate miningStartDate = null;
+		LocalDate miningEndDate = null;
+		Map<LocalDate, BigDecimal> dateToIncomeUsdMap = new HashMap<>();
+		Map<LocalDate, Long> dateToHashrateMap = new HashMap<>();
+		Map<LocalDate, BigDecimal> dateToIncomeCoinMap = new HashMap<>();
+		
+		for (TransactionView t : tList) {
+			try {
+				TransactionType tType = t.getTxnType();
+				if (tType == TransactionType.MNG_PURCHASE || tType == TransactionType.MNG_REINVEST) {
+					LocalDate tDate = t.getTxnDttm().toLocalDate();
+					LocalDate effectiveDate = tDate.plusDays(1);
+					LocalDate endDate = tDate.plusMonths(t.getTermMos());
+					
+					BigDecimal totalAmountUsd = t.getCalculatedTxnUsdAmnt();
+					long contractDays = ChronoUnit.DAYS.between(tDate, endDate);
+					BigDecimal perDayAmountUsd = totalAmountUsd.divide(new BigDecimal(contractDays), PRECISION);
+					
+					MiningContractType mcType = MiningContractType.PURCHASE;
+					if (tType == TransactionType.MNG_REINVEST) {
+						mcType = MiningContractType.REINVESTMENT;
+					}
+					MiningContract mc = new MiningContract(mcType, tDate, effectiveDate, endDate, totalAmountUsd, perDayAmountUsd);
+					mcList.add(mc);
+					
+					if (miningStartDate == null && tType == TransactionType.MNG_PURCHASE) {
+						miningStartDate = tDate;
+					}
+					if (miningEndDate == null || miningEndDate.isBefore(endDate)) {
+						miningEndDate = endDate;
+					}
+				}
+				else if (tType == TransactionType.MNG_INCOME) {
+					LocalDate tDate = t.getTxnDttm().toLocalDate();
+					BigDecimal tUsdAmount = t.getCalculatedTxnUsdAmnt();
+					Long tHashrate = t.getTxnHashrate();
+					BigDecimal tCoinAmount = t.getTxnCoinAmnt();
+					
+					BigDecimal amountUsdInMap = dateToIncomeUsdMap.get(tDate);
+					Long hashrateInMap = dateToHashrateMap.get(tDate);
+					BigDecimal amountCoinInMap = dateToIncomeCoinMap.get(tDate);
+					
+					if (amountUsdInMap == null || hashrateInMap == null || amountCoinInMap == null) {
+						dateToIncomeUsdMap.put(tDate, tUsdAmount);
+						dateToHashrateMap.put(tDate, tHashrate);
+						dateToIncomeCoinMap.put(tDate, tCoinAmount);
+					}
+					else {
+						dateToIncomeUsdMap.put(tDate, amountUsdInMap.add(tUsdAmount));
+						dateToHashrateMap.put(tDate, Long.sum(hashrateInMap, tHashrate));
+						dateToIncomeCoinMap.put(tDate, amountCoinInMap.add(tCoinAmount));
+					}
+				}
+			}
+			catch (TransactionException tExc) {
+				throw new ControllerException("Mining compute failed due to Transaction error: " + tExc.getMessage());
+			}
+		}
+		
+		
+		// Iterate through each day and calculate the day's statistics into MiningEntries
+		if (miningStartDate != null && miningEndDate != null && miningStartDate.isBefore(miningEndDate)) {
+			LocalDate thisDate = miningStartDate;
+			
+			// cumulative values
+			BigDecimal cumBasisPurchase = null;
+			BigDecimal cumIncome = null;
+			
+			// Day rate sum - used for calculating running average of day rates (note: day rate != ri below)
+			BigDecimal dayRatePurchaseAndReinvestWeightedSum = BigDecimal.ZERO;
+			BigDecimal dayRatePurchaseAndReinvestSumOfWeights = BigDecimal.ZERO;
+			
+			while (thisDate.isBefore(miningEndDate) || thisDate.isEqual(miningEndDate)) {
+				// purchase contracts only purchased this day (in USD)
+				BigDecimal purchase = null;
+				// reinvestment contracts done this day (in USD)
+				BigDecimal reinvestment = null;
+				// sum of contract total values for contracts that are active this day (both purchased and reinvested)
+				BigDecimal sumContractsPurchaseAndReinvest = null;
+				// for this day, allocation of all purchased contracts for this day (excl. reinvestment contracts)
+				BigDecimal basisPurchase = null;
+				// for this day, allocation of all purchased+reinvestment contracts for this day
+				BigDecimal basisPurchaseAndReinvest = null;
+				// mining income for this day from all contracts
+				BigDecimal income = null;
+				// combined earning hash rate (GH/s) for this day
+				Long hashrate = null;
+				// USD/Coin price
+				BigDecimal usdPerCoin = null;
+				// yield in COIN (e.g., BTC) per EH/s - shows mining profitability for the day
+				BigDecimal yield = null;
+				// day's simple rate of return on this day's return against this day's basisPurchaseAndReinvest
+				BigDecimal dayRatePurchaseAndReinvest = null;
+				// avg daily simple rate of return seen so far
+				BigDecimal avgDayRatePurchaseAndReinvest = null;
+				// day's simple rate of return on this day's return against this day's basisPurchase
+				// Note: this rate will grow over time with reinvestment, so the latest value is more useful than average
+				BigDecimal dayRatePurchase = null;
+
+				
+				// determine the purchase / reinvestment basis for this day
+				// determine the sum total of active contracts during this day
+				for (MiningContract mc : mcList) {
+					MiningContractType mcType = mc.getType();
+					LocalDate acqDate = mc.getAcquisitionDate();
+					if (acqDate.isEqual(thisDate)) {
+						if (mcType == MiningContractType.PURCHASE) {
+							if (purchase == null) {
+								purchase = BigDecimal.ZERO;
+							}
+							purchase = purchase.add(mc.getTotalAmountUsd());
+						}
+						else if (mcType == MiningContractType.REINVESTMENT) {
+							if (reinvestment == null) {
+								reinvestment = BigDecimal.ZERO;
+							}
+							reinvestment = reinvestment.add(mc.getTotalAmountUsd());
+						}
+					}
+					LocalDate mcStartBoundary = mc.getStartDate().minusDays(1);
+					LocalDate mcEndBoundary = mc.getEndDate().plusDays(1);
+					// if thisDate falls within the contract (inclusive), add to per-day statistics
+					if (thisDate.isAfter(mcStartBoundary) && thisDate.isBefore(mcEndBoundary)) {
+						if (basisPurchaseAndReinvest == null) {
+							basisPurchaseAndReinvest = BigDecimal.ZERO;
+						}
+						basisPurchaseAndReinvest = basisPurchaseAndReinvest.add(mc.getPerDayAmountUsd());
+						if (mcType == MiningContractType.PURCHASE) {
+							if (basisPurchase == null) {
+								basisPurchase = BigDecimal.ZERO;
+							}
+							basisPurchase = basisPurchase.add(mc.getPerDayAmountUsd());
+						}
+						
+						if (sumContractsPurchaseAndReinvest == null) {
+							sumContractsPurchaseAndReinvest = BigDecimal.ZERO;
+						}
+						sumContractsPurchaseAndReinvest = sumContractsPurchaseAndReinvest.add(mc.getTotalAmountUsd());
+					}
+				}
+				if (basisPurchase != null) {
+					if (cumBasisPurchase == null) {
+						cumBasisPurchase = BigDecimal.ZERO;
+					}
+					cumBasisPurchase = cumBasisPurchase.add(basisPurchase);
+				}
+				
+				// determine the income, hashrate, yield, and APR/APY statistics for this day
+				income = dateToIncomeUsdMap.get(thisDate);
+				if (income != null) {
+					if (cumIncome == null) {
+						cumIncome = BigDecimal.ZERO;
+					}
+					cumIncome = cumIncome.add(income);
+				}
+				hashrate = dateToHashrateMap.get(thisDate);
+				
+				BigDecimal incomeCoin = dateToIncomeCoinMap.get(thisDate);
+				if (incomeCoin != null && hashrate != null) {
+					// convert from GH/s to EH/s (a factor of 1000000000)
+					yield = incomeCoin.multiply(new BigDecimal(1000000000)).divide(new BigDecimal(hashrate), PRECISION);
+				}
+				if (income != null && incomeCoin != null) {
+					usdPerCoin = income.divide(incomeCoin, PRECISION);
+				}
+				
+				// rates of return
+				if (income != null && basisPurchaseAndReinvest != null && sumContractsPurchaseAndReinvest != null) {
+					// Day Rate (Purchase & Reinvestment based)
+					dayRatePurchaseAndReinvest = income.divide(basisPurchaseAndReinvest, PRECISION).subtract(BigDecimal.ONE);
+					
+					// Weighted Avg Day Rate (Purchase & Reinvestment based)
+					dayRatePurchaseAndReinvestWeightedSum = dayRatePurchaseAndReinvestWeightedSum.add(
+							dayRatePurchaseAndReinvest.multiply(income));
+					dayRatePurchaseAndReinvestSumOfWeights = dayRatePurchaseAndReinvestSumOfWeights.add(income);
+					avgDayRatePurchaseAndReinvest = dayRatePurchaseAndReinvestWeightedSum.divide(dayRatePurchaseAndReinvestSumOfWeights, PRECISION);
+					
+					// Day Rate (Purchase only based); none while only reinvestment contracts are active
+					if (basisPurchase != null) {
+						dayRatePurchase = income.divide(basisPurchase, PRECISION).subtract(BigDecimal.ONE);
+					}
+				}
+				
+				MiningEntry me = new MiningEntry(thisDate, purchase, reinvestment, basisPurchase, cumBasisPurchase, basisPurchaseAndReinvest,
+						income, cumIncome, hashrate, usdPerCoin, yield, dayRatePurchaseAndReinvest, avgDayRatePurchaseAndReinvest, 
+						dayRatePurchase);
+				meList.add(me);
+				
+				
+				thisDate = thisDate.plusDays(1);
+			}
+		}
+		else {
+			Log.info("Mining compute found no mining contracts");
+		}
+		
+		return meList;
+	}
+	
+	
+}
@@ -0,0 +1,108 @@
+package bdn.cryptax.controller;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import bdn.cryptax.model.GainEntry;
+import bdn.cryptax.model.IncomeEntry;
+import bdn.cryptax.model.MiningEntry;
+import bdn.cryptax.model.PeriodIncome;
+import bdn.cryptax.model.UnrealizedCostBasisEntry;
+
+// All results of one TaxEngine computation, held in memory
+public class TaxResult implements TaxResultSink {
+
+	private Map<String, List<GainEntry>> geListMap = new LinkedHashMap<>();
+	private UnrealizedCostBasisEntry ucbe = null;
+	private List<IncomeEntry> ieList = Collections.emptyList();
+	private PeriodIncome periodIncome = null;
+	private Map<String, List<MiningEntry>> meListMap = new LinkedHashMap<>();
+
+
+	@Override
+	public void acceptGainEntries(String acct, List<GainEntry> geList) {
+		geListMap.put(acct, geList);
+	}
+
+
+	@Override
+	public void acceptUnrealizedCostBasis(UnrealizedCostBasisEntry ucbe) {
+		this.ucbe = ucbe;
+	}
+
+
+	@Override
+	public void acceptIncomeEntries(List<IncomeEntry> ieList) {
+		this.ieList = ieList;
+	}
+
+
+	@Override
+	public void acceptPeriodIncome(PeriodIncome periodIncome) {
+		this.periodIncome = periodIncome;
+	}
+
+
+	@Override
+	public void acceptMiningEntries(String acct, List<MiningEntry> meList) {
+		meListMap.put(acct, meList);
+	}
+
+
+	public Map<String, List<GainEntry>> getGainEntries() {
+		return Collections.unmodifiableMap(geListMap);
+	}
+
+
+	public UnrealizedCostBasisEntry getUnrealizedCostBasis() {
+		return ucbe;
+	}
+
+
+	public List<IncomeEntry> getIncomeEntries() {
+		return Collections.unmodifiableList(ieList);
+	}
+
+
+	// null unless the engine had reporting periods configured
+	public PeriodIncome getPeriodIncome() {
+		return periodIncome;
+	}
+
+
+	public Map<String, List<MiningEntry>> getMiningEntries() {
+		return Collections.unmodifiableMap(meListMap);
+	}
+
+
+	// gain, income and mining entries
+	public long getEntryCount() {
+		long result = ieList.size();
+		for (List<GainEntry> geList : geListMap.values()) {
+			result += (geList != null) ? geList.size() : 0;
+		}
+		for (List<MiningEntry> meList : meListMap.values()) {
+			result += (meList != null) ? meList.size() : 0;
+		}
+		return result;
+	}
+
+
+	// Replays the results, in the order they were computed, into another sink (e.g., a CsvResultWriter)
+	public void writeTo(TaxResultSink sink) throws ControllerException {
+		for (Map.Entry<String, List<GainEntry>> e : geListMap.entrySet()) {
+			sink.acceptGainEntries(e.getKey(), e.getValue());
+		}
+		sink.acceptUnrealizedCostBasis(ucbe);
+		sink.acceptIncomeEntries(ieList);
+		if (periodIncome != null) {
+			sink.acceptPeriodIncome(periodIncome);
+		}
+		for (Map.Entry<String, List<MiningEntry>> e : meListMap.entrySet()) {
+			sink.acceptMiningEntries(e.getKey(), e.getValue());
+		}
+	}
+
+}
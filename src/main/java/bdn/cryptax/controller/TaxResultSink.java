@@ -0,0 +1,25 @@
+package bdn.cryptax.controller;
+
+import java.util.List;
+
+import bdn.cryptax.model.GainEntry;
+import bdn.cryptax.model.IncomeEntry;
+import bdn.cryptax.model.MiningEntry;
+import bdn.cryptax.model.PeriodIncome;
+import bdn.cryptax.model.UnrealizedCostBasisEntry;
+
+// Receives a TaxEngine's results as each phase completes: gains per account, the unrealized cost basis, income (and
+// income by reporting period, when the engine has them configured), then mining per account
+public interface TaxResultSink {
+
+	void acceptGainEntries(String acct, List<GainEntry> geList) throws ControllerException;
+
+	void acceptUnrealizedCostBasis(UnrealizedCostBasisEntry ucbe) throws ControllerException;
+
+	void acceptIncomeEntries(List<IncomeEntry> ieList) throws ControllerException;
+
+	void acceptPeriodIncome(PeriodIncome periodIncome) throws ControllerException;
+
+	void acceptMiningEntries(String acct, List<MiningEntry> meList) throws ControllerException;
+
+}
@@ -0,0 +1,275 @@
+package bdn.cryptax.controller;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.time.ZoneOffset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+
+import bdn.cryptax.model.Transaction.TransactionType;
+import bdn.cryptax.model.TransactionSource;
+import bdn.cryptax.model.TransactionView;
+
+// Pairs the one-sided legs of transfers between brokers, as exchange exports list them: a withdrawal (a transfer with
+// a Src but no Dest) with the deposit (a Dest but no Src) of the same account that follows it within the time window,
+// for the withdrawn amount gross or net of its fee, within a relative tolerance. Each account's legs are joined in one
+// time-ordered pass: pending withdrawals are hashed by a log-scale amount bucket as wide as -log(1 - tolerance), so a
+// deposit only probes its own bucket and the two next to it, and withdrawals that fell out of the window are dropped
+// from the head of their bucket. Transfers naming both Src and Dest are paired already and left alone.
+public class TransferMatcher {
+
+	public static enum Status {
+		MATCHED, UNMATCHED_WITHDRAWAL, UNMATCHED_DEPOSIT
+	}
+
+
+	private static final String COL_STATUS = "Status";
+	private static final String COL_ACCT = "Acct";
+	private static final String COL_WITHDRAWAL_ROW = "Withdrawal Record #";
+	private static final String COL_DEPOSIT_ROW = "Deposit Record #";
+	private static final String COL_SRC = "Src";
+	private static final String COL_DEST = "Dest";
+	private static final String COL_WITHDRAWAL_COIN_AMNT = "Withdrawal COIN";
+	private static final String COL_DEPOSIT_COIN_AMNT = "Deposit COIN";
+	private static final int INITIAL_CAPACITY = 1024;
+
+	private final long windowSeconds;
+	private final BigDecimal tolerance;
+	private final double bucketWidth;
+
+	// one result row per pair or unmatched leg, as primitive columns (row ids are 0 for a missing leg)
+	private final List<String> accts = new ArrayList<>();
+	private int size = 0;
+	private byte[] statuses = new byte[INITIAL_CAPACITY];
+	private int[] acctIdxs = new int[INITIAL_CAPACITY];
+	private long[] withdrawalRowIds = new long[INITIAL_CAPACITY];
+	private long[] depositRowIds = new long[INITIAL_CAPACITY];
+	private BigDecimal[] withdrawalCoinAmnts = new BigDecimal[INITIAL_CAPACITY];
+	private BigDecimal[] depositCoinAmnts = new BigDecimal[INITIAL_CAPACITY];
+	private String[] srcs = new String[INITIAL_CAPACITY];
+	private String[] dests = new String[INITIAL_CAPACITY];
+	private final long[] statusCounts = new long[Status.values().length];
+
+
+	private TransferMatcher(long windowSeconds, BigDecimal tolerance) {
+		this.windowSeconds = windowSeconds;
+		this.tolerance = tolerance;
+		// deposits down to (1 - tolerance) times the withdrawn amount match, and that is the farther side in log scale, so
+		// a matching deposit is at most one bucket away (with some slack for the rounding of the logarithms)
+		this.bucketWidth = -Math.log1p(-tolerance.doubleValue()) * (1 + 1e-9);
+	}
+
+
+	// tolerance: the largest relative difference between the withdrawn (gross or net) and the deposited amount
+	public static TransferMatcher run(TransactionSource tSource, long windowSeconds, BigDecimal tolerance) throws ControllerException {
+		if (windowSeconds < 0 || tolerance.signum() <= 0 || tolerance.compareTo(BigDecimal.ONE) >= 0) {
+			throw new ControllerException("Transfer matching needs a non-negative time window and an amount tolerance between 0 and 1");
+		}
+		TransferMatcher result = new TransferMatcher(windowSeconds, tolerance);
+		for (String acct : tSource.getAccounts()) {
+			result.matchAccount(acct, tSource.getTransactions(acct));
+		}
+		return result;
+	}
+
+
+	private void matchAccount(String acct, Iterable<? extends TransactionView> tList) {
+		int acctIdx = accts.size();
+		accts.add(acct);
+
+		// the account's withdrawals, and those still waiting for a deposit by amount bucket, oldest first
+		Withdrawals withdrawals = new Withdrawals();
+		Map<Long, ArrayDeque<Integer>> bucketToPending = new HashMap<>();
+		for (TransactionView t : tList) {
+			if (t.getTxnType() != TransactionType.TRANSFER) {
+				continue;
+			}
+			boolean hasSrc = !isEmpty(t.getTxnSrc());
+			boolean hasDest = !isEmpty(t.getTxnDest());
+			BigDecimal coinAmnt = t.getTxnCoinAmnt();
+			long epochSec = t.getTxnDttm().toEpochSecond(ZoneOffset.UTC);
+
+			if (hasSrc && !hasDest) {
+				int w = withdrawals.add(t, epochSec);
+				if (coinAmnt == null || coinAmnt.signum() <= 0) {
+					continue;
+				}
+				long grossBucket = getBucket(coinAmnt);
+				bucketToPending.computeIfAbsent(grossBucket, k -> new ArrayDeque<>()).addLast(w);
+				BigDecimal netCoinAmnt = withdrawals.getNetCoinAmnt(w);
+				if (netCoinAmnt.signum() > 0 && getBucket(netCoinAmnt) != grossBucket) {
+					bucketToPending.computeIfAbsent(getBucket(netCoinAmnt), k -> new ArrayDeque<>()).addLast(w);
+				}
+			}
+			else if (!hasSrc && hasDest) {
+				int match = -1;
+				if (coinAmnt != null && coinAmnt.signum() > 0) {
+					long bucket = getBucket(coinAmnt);
+					for (long b = bucket - 1; b <= bucket + 1; b++) {
+						int w = findPending(bucketToPending.get(b), withdrawals, coinAmnt, epochSec);
+						if (w >= 0 && (match < 0 || w < match)) {
+							match = w;
+						}
+					}
+				}
+				if (match >= 0) {
+					withdrawals.matched[match] = true;
+					add(Status.MATCHED, acctIdx, withdrawals.rowIds[match], t.getTxnRowId(), withdrawals.coinAmnts[match], coinAmnt,
+							withdrawals.srcs[match], t.getTxnDest());
+				}
+				else {
+					add(Status.UNMATCHED_DEPOSIT, acctIdx, 0, t.getTxnRowId(), null, coinAmnt, null, t.getTxnDest());
+				}
+			}
+		}
+
+		for (int w = 0; w < withdrawals.size; w++) {
+			if (!withdrawals.matched[w]) {
+				add(Status.UNMATCHED_WITHDRAWAL, acctIdx, withdrawals.rowIds[w], 0, withdrawals.coinAmnts[w], null, withdrawals.srcs[w], null);
+			}
+		}
+	}
+
+
+	// The oldest open withdrawal of the bucket that the deposit matches, or -1; drops those that fell out of the window
+	private int findPending(ArrayDeque<Integer> pending, Withdrawals withdrawals, BigDecimal coinAmnt, long epochSec) {
+		if (pending == null) {
+			return -1;
+		}
+		while (!pending.isEmpty()) {
+			int w = pending.peekFirst();
+			if (!withdrawals.matched[w] && epochSec - withdrawals.epochSecs[w] <= windowSeconds) {
+				break;
+			}
+			pending.pollFirst();
+		}
+		for (int w : pending) {
+			if (!withdrawals.matched[w] && (isWithinTolerance(withdrawals.coinAmnts[w], coinAmnt) ||
+					isWithinTolerance(withdrawals.getNetCoinAmnt(w), coinAmnt))) {
+				return w;
+			}
+		}
+		return -1;
+	}
+
+
+	private boolean isWithinTolerance(BigDecimal expected, BigDecimal actual) {
+		return expected.signum() > 0 && expected.subtract(actual).abs().compareTo(expected.multiply(tolerance)) <= 0;
+	}
+
+
+	private long getBucket(BigDecimal coinAmnt) {
+		return (long) Math.floor(Math.log(coinAmnt.doubleValue()) / bucketWidth);
+	}
+
+
+	private static boolean isEmpty(String broker) {
+		return broker == null || broker.trim().isEmpty();
+	}
+
+
+	private void add(Status status, int acctIdx, long withdrawalRowId, long depositRowId, BigDecimal withdrawalCoinAmnt,
+			BigDecimal depositCoinAmnt, String src, String dest) {
+		if (size == statuses.length) {
+			int capacity = size * 2;
+			statuses = Arrays.copyOf(statuses, capacity);
+			acctIdxs = Arrays.copyOf(acctIdxs, capacity);
+			withdrawalRowIds = Arrays.copyOf(withdrawalRowIds, capacity);
+			depositRowIds = Arrays.copyOf(depositRowIds, capacity);
+			withdrawalCoinAmnts = Arrays.copyOf(withdrawalCoinAmnts, capacity);
+			depositCoinAmnts = Arrays.copyOf(depositCoinAmnts, capacity);
+			srcs = Arrays.copyOf(srcs, capacity);
+			dests = Arrays.copyOf(dests, capacity);
+		}
+		statuses[size] = (byte) status.ordinal();
+		acctIdxs[size] = acctIdx;
+		withdrawalRowIds[size] = withdrawalRowId;
+		depositRowIds[size] = depositRowId;
+		withdrawalCoinAmnts[size] = withdrawalCoinAmnt;
+		depositCoinAmnts[size] = depositCoinAmnt;
+		srcs[size] = src;
+		dests[size] = dest;
+		size++;
+		statusCounts[status.ordinal()]++;
+	}
+
+
+	public long getCount(Status status) {
+		return statusCounts[status.ordinal()];
+	}
+
+
+	// Whether any one-sided transfer leg was found
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+
+	public void write(File outputFile) throws ControllerException {
+		try (Writer writer = LedgerStreams.openWriter(outputFile)) {
+			CSVPrinter printer = new CSVPrinter(writer, CSVFormat.EXCEL);
+			printer.printRecord(COL_STATUS, COL_ACCT, COL_WITHDRAWAL_ROW, COL_DEPOSIT_ROW, COL_SRC, COL_DEST, COL_WITHDRAWAL_COIN_AMNT,
+					COL_DEPOSIT_COIN_AMNT);
+			Status[] values = Status.values();
+			for (int i = 0; i < size; i++) {
+				printer.printRecord(values[statuses[i]], accts.get(acctIdxs[i]),
+						(withdrawalRowIds[i] != 0) ? withdrawalRowIds[i] : "",
+						(depositRowIds[i] != 0) ? depositRowIds[i] : "",
+						(srcs[i] != null) ? srcs[i] : "",
+						(dests[i] != null) ? dests[i] : "",
+						(withdrawalCoinAmnts[i] != null) ? withdrawalCoinAmnts[i].toPlainString() : "",
+						(depositCoinAmnts[i] != null) ? depositCoinAmnts[i].toPlainString() : "");
+			}
+			printer.flush();
+		}
+		catch (IOException exc) {
+			throw new ControllerException("Could not write transfer report " + outputFile.getAbsolutePath() + ": " + exc.getMessage());
+		}
+	}
+
+
+	// One account's withdrawal legs in time order
+	private static class Withdrawals {
+
+		private int size = 0;
+		private long[] epochSecs = new long[INITIAL_CAPACITY];
+		private long[] rowIds = new long[INITIAL_CAPACITY];
+		private BigDecimal[] coinAmnts = new BigDecimal[INITIAL_CAPACITY];
+		private BigDecimal[] feeCoins = new BigDecimal[INITIAL_CAPACITY];
+		private String[] srcs = new String[INITIAL_CAPACITY];
+		private boolean[] matched = new boolean[INITIAL_CAPACITY];
+
+		int add(TransactionView t, long epochSec) {
+			if (size == epochSecs.length) {
+				int capacity = size * 2;
+				epochSecs = Arrays.copyOf(epochSecs, capacity);
+				rowIds = Arrays.copyOf(rowIds, capacity);
+				coinAmnts = Arrays.copyOf(coinAmnts, capacity);
+				feeCoins = Arrays.copyOf(feeCoins, capacity);
+				srcs = Arrays.copyOf(srcs, capacity);
+				matched = Arrays.copyOf(matched, capacity);
+			}
+			epochSecs[size] = epochSec;
+			rowIds[size] = t.getTxnRowId();
+			coinAmnts[size] = (t.getTxnCoinAmnt() != null) ? t.getTxnCoinAmnt() : BigDecimal.ZERO;
+			feeCoins[size] = (t.getTxnFeeCoin() != null) ? t.getTxnFeeCoin() : BigDecimal.ZERO;
+			srcs[size] = t.getTxnSrc();
+			return size++;
+		}
+
+		// what arrives when the fee is taken out of the withdrawn amount
+		BigDecimal getNetCoinAmnt(int w) {
+			return coinAmnts[w].subtract(feeCoins[w]);
+		}
+	}
+
+}
@@ -0,0 +1,393 @@
+package bdn.cryptax.controller;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.commons.csv.CSVRecord;
+
+import bdn.cryptax.controller.LotOptimizer.Selection;
+import bdn.cryptax.model.GainEntry;
+import bdn.cryptax.model.GainEntry.GainTerm;
+import bdn.cryptax.model.UnrealizedGainEntry;
+
+// Answers what selling some coins of an account on a given day would realize, for many hypothetical sales at once and
+// without recomputing gains. The open lots are the unrealized entries of a computed TaxResult; for each account and lot
+// order (FIFO, HIFO or LIFO) they are sorted once, on first use, into prefix sums of coins and cost basis, overall and
+// of the long-term lots only. A sale then finds the lot it ends in by binary search over the coin sums, and its short
+// and long-term cost basis is two prefix differences plus a share of that last lot. TAX_OPTIMAL sales are instead
+// chosen by a LotOptimizer, which keeps prefix sums of its own per account. Its exact pick still walks every lot
+// boundary of the account on each sale, so it is only used for accounts of up to EXACT_MAX_LOTS lots; larger ones get
+// its greedy pick.
+public class WhatIfSimulator {
+
+	public static enum LotOrder {
+		// oldest lots first
+		FIFO,
+		// highest cost per coin first
+		HIFO,
+		// newest lots first
+		LIFO,
+		// the lots that realize the least tax (see LotOptimizer)
+		TAX_OPTIMAL
+	}
+
+
+	public static final String COL_ACCT = "Acct";
+	public static final String COL_LOT_ORDER = "Lot Order";
+	public static final String COL_COIN_AMNT = "COIN";
+	public static final String COL_USD_PER_COIN = "USD/COIN";
+
+	private static final String COL_ST_PROCEEDS = "Short-Term Proceeds";
+	private static final String COL_ST_COST_BASIS = "Short-Term Cost Basis";
+	private static final String COL_ST_GAIN = "Short-Term Gain";
+	private static final String COL_LT_PROCEEDS = "Long-Term Proceeds";
+	private static final String COL_LT_COST_BASIS = "Long-Term Cost Basis";
+	private static final String COL_LT_GAIN = "Long-Term Gain";
+	private static final String COL_TAX = "Est. Tax";
+	private static final String COL_SCENARIO = "Scenario #";
+	private static final String COL_DATE_ACQ = "Date Acquired";
+	private static final String COL_BRKR_ACQ = "Broker Acquired";
+	private static final String COL_COST_BASIS = "Cost Basis";
+	private static final int EXACT_MAX_LOTS = 100000;
+	private static final CSVFormat CSV_FORMAT = CSVFormat.EXCEL;
+	private static final BigDecimal THRESHOLD_DECIMAL_EQUALING_ZERO = new BigDecimal("0.000000000000000000000001");
+	private static final MathContext PRECISION = new MathContext(34, RoundingMode.HALF_UP);
+
+	private final LocalDate saleDate;
+	private final Map<String, List<UnrealizedGainEntry>> acctToLots = new HashMap<>();
+	private final Map<String, Map<LotOrder, LotSums>> acctToOrderToSums = new HashMap<>();
+	private final Map<String, LotOptimizer> acctToOptimizer = new HashMap<>();
+	private BigDecimal shortTermRate = new BigDecimal("0.37");
+	private BigDecimal longTermRate = new BigDecimal("0.20");
+	// short-term lots with a gain turning long-term within this many days of the sale are held back by TAX_OPTIMAL
+	private int longTermHorizonDays = 30;
+
+
+	private WhatIfSimulator(LocalDate saleDate) {
+		this.saleDate = saleDate;
+	}
+
+
+	// The open lots of every account in result, as of a sale on saleDate
+	public static WhatIfSimulator of(TaxResult result, LocalDate saleDate) {
+		WhatIfSimulator simulator = new WhatIfSimulator(saleDate);
+		for (Map.Entry<String, List<GainEntry>> e : result.getGainEntries().entrySet()) {
+			List<UnrealizedGainEntry> lots = new ArrayList<>();
+			for (GainEntry ge : e.getValue()) {
+				if (ge instanceof UnrealizedGainEntry && ge.getAssetAmnt().compareTo(THRESHOLD_DECIMAL_EQUALING_ZERO) > 0) {
+					lots.add((UnrealizedGainEntry) ge);
+				}
+			}
+			simulator.acctToLots.put(e.getKey(), lots);
+		}
+		return simulator;
+	}
+
+
+	// Fills in the realized gains of each scenario
+	public void simulate(List<Scenario> scenarios) throws ControllerException {
+		for (Scenario s : scenarios) {
+			simulate(s);
+		}
+	}
+
+
+	public void simulate(Scenario s) throws ControllerException {
+		LotSums sums = getLotSums(s.getAcct(), (s.getLotOrder() == LotOrder.TAX_OPTIMAL) ? LotOrder.FIFO : s.getLotOrder());
+		BigDecimal coinAmnt = s.getCoinAmnt();
+		int n = sums.size();
+		if (coinAmnt.signum() < 0 || coinAmnt.subtract(sums.cumCoinAmnts[n]).compareTo(THRESHOLD_DECIMAL_EQUALING_ZERO) > 0) {
+			throw new ControllerException("Cannot simulate selling " + coinAmnt.toPlainString() + " coins of account " + s.getAcct() +
+					", which holds " + sums.cumCoinAmnts[n].toPlainString());
+		}
+
+		LotOptimizer optimizer = getLotOptimizer(s.getAcct());
+		if (s.getLotOrder() == LotOrder.TAX_OPTIMAL) {
+			Selection selection = optimizer.optimize(coinAmnt, s.getUsdPerCoin(), optimizer.size() <= EXACT_MAX_LOTS);
+			s.stProceeds = selection.getShortTermCoinAmnt().multiply(s.getUsdPerCoin());
+			s.stCostBasis = selection.getShortTermCostBasis();
+			s.ltProceeds = selection.getLongTermCoinAmnt().multiply(s.getUsdPerCoin());
+			s.ltCostBasis = selection.getLongTermCostBasis();
+			s.tax = selection.getTax();
+			s.selection = selection;
+			return;
+		}
+
+		// k: the number of lots sold whole; the rest of the sale comes out of lot k
+		int k = Arrays.binarySearch(sums.cumCoinAmnts, 0, n + 1, coinAmnt);
+		k = (k >= 0) ? k : -(k + 1) - 1;
+		k = Math.min(k, n);
+		BigDecimal ltCoinAmnt = sums.cumLtCoinAmnts[k];
+		BigDecimal ltCostBasis = sums.cumLtCostBases[k];
+		BigDecimal stCoinAmnt = sums.cumCoinAmnts[k].subtract(ltCoinAmnt);
+		BigDecimal stCostBasis = sums.cumCostBases[k].subtract(ltCostBasis);
+		BigDecimal restCoinAmnt = coinAmnt.subtract(sums.cumCoinAmnts[k]);
+		if (k < n && restCoinAmnt.compareTo(THRESHOLD_DECIMAL_EQUALING_ZERO) > 0) {
+			BigDecimal lotCoinAmnt = sums.cumCoinAmnts[k + 1].subtract(sums.cumCoinAmnts[k]);
+			BigDecimal lotCostBasis = sums.cumCostBases[k + 1].subtract(sums.cumCostBases[k]);
+			BigDecimal restCostBasis = restCoinAmnt.multiply(lotCostBasis).divide(lotCoinAmnt, PRECISION);
+			if (sums.longTerm[k]) {
+				ltCoinAmnt = ltCoinAmnt.add(restCoinAmnt);
+				ltCostBasis = ltCostBasis.add(restCostBasis);
+			}
+			else {
+				stCoinAmnt = stCoinAmnt.add(restCoinAmnt);
+				stCostBasis = stCostBasis.add(restCostBasis);
+			}
+		}
+
+		s.stProceeds = stCoinAmnt.multiply(s.getUsdPerCoin());
+		s.stCostBasis = stCostBasis;
+		s.ltProceeds = ltCoinAmnt.multiply(s.getUsdPerCoin());
+		s.ltCostBasis = ltCostBasis;
+		s.tax = optimizer.estimateTax(s.getShortTermGain(), s.getLongTermGain());
+	}
+
+
+	private LotOptimizer getLotOptimizer(String acct) {
+		LotOptimizer result = acctToOptimizer.get(acct);
+		if (result == null) {
+			result = new LotOptimizer(acctToLots.get(acct), saleDate, longTermHorizonDays, shortTermRate, longTermRate);
+			acctToOptimizer.put(acct, result);
+		}
+		return result;
+	}
+
+
+	public void setTaxRates(BigDecimal shortTermRate, BigDecimal longTermRate) {
+		this.shortTermRate = shortTermRate;
+		this.longTermRate = longTermRate;
+		acctToOptimizer.clear();
+	}
+
+
+	public void setLongTermHorizonDays(int longTermHorizonDays) {
+		this.longTermHorizonDays = longTermHorizonDays;
+		acctToOptimizer.clear();
+	}
+
+
+	private LotSums getLotSums(String acct, LotOrder lotOrder) throws ControllerException {
+		List<UnrealizedGainEntry> lots = acctToLots.get(acct);
+		if (lots == null) {
+			throw new ControllerException("Cannot simulate a sale of account " + acct + ", which has no computed gains");
+		}
+		Map<LotOrder, LotSums> orderToSums = acctToOrderToSums.computeIfAbsent(acct, k -> new EnumMap<>(LotOrder.class));
+		LotSums result = orderToSums.get(lotOrder);
+		if (result == null) {
+			result = new LotSums(sort(lots, lotOrder), saleDate);
+			orderToSums.put(lotOrder, result);
+		}
+		return result;
+	}
+
+
+	private static List<UnrealizedGainEntry> sort(List<UnrealizedGainEntry> lots, LotOrder lotOrder) {
+		List<UnrealizedGainEntry> result = new ArrayList<>(lots);
+		// the sorts are stable, so lots of one day keep their queue order
+		Comparator<UnrealizedGainEntry> byDate = Comparator.comparing(UnrealizedGainEntry::getDateAcquired);
+		switch (lotOrder) {
+		case FIFO:
+			result.sort(byDate);
+			break;
+		case LIFO:
+			result.sort(byDate);
+			Collections.reverse(result);
+			break;
+		case HIFO:
+			// cost per coin is computed once per lot rather than on every comparison
+			Map<UnrealizedGainEntry, BigDecimal> lotToUnitCost = new IdentityHashMap<>();
+			for (UnrealizedGainEntry ge : result) {
+				lotToUnitCost.put(ge, ge.getCostBasis().divide(ge.getAssetAmnt(), PRECISION));
+			}
+			result.sort(Comparator.comparing((UnrealizedGainEntry ge) -> lotToUnitCost.get(ge)).reversed().thenComparing(byDate));
+			break;
+		}
+		return result;
+	}
+
+
+	public static List<Scenario> readScenarios(File inputFile) throws ControllerException {
+		List<Scenario> result = new ArrayList<>();
+		try (CSVParser parser = new CSVParser(LedgerStreams.openReader(inputFile), CSV_FORMAT.withHeader().withSkipHeaderRecord(true))) {
+			for (CSVRecord r : parser) {
+				String lotOrder = r.isMapped(COL_LOT_ORDER) ? r.get(COL_LOT_ORDER).trim() : "";
+				result.add(new Scenario(r.get(COL_ACCT).trim(), lotOrder.isEmpty() ? LotOrder.FIFO : LotOrder.valueOf(lotOrder.toUpperCase()),
+						new BigDecimal(r.get(COL_COIN_AMNT).trim()), new BigDecimal(r.get(COL_USD_PER_COIN).trim())));
+			}
+		}
+		catch (IllegalArgumentException | IllegalStateException exc) {
+			throw new ControllerException("Could not read what-if scenario file " + inputFile.getAbsolutePath() + ": " + exc.getMessage());
+		}
+		catch (IOException exc) {
+			throw new ControllerException("Could not read what-if scenario file " + inputFile.getAbsolutePath() + ": " + exc.getMessage());
+		}
+		return result;
+	}
+
+
+	public static void write(List<Scenario> scenarios, File outputFile) throws ControllerException {
+		try (Writer writer = LedgerStreams.openWriter(outputFile)) {
+			CSVPrinter printer = new CSVPrinter(writer, CSV_FORMAT);
+			printer.printRecord(COL_ACCT, COL_LOT_ORDER, COL_COIN_AMNT, COL_USD_PER_COIN, COL_ST_PROCEEDS, COL_ST_COST_BASIS, COL_ST_GAIN,
+					COL_LT_PROCEEDS, COL_LT_COST_BASIS, COL_LT_GAIN, COL_TAX);
+			for (Scenario s : scenarios) {
+				printer.printRecord(s.getAcct(), s.getLotOrder(), s.getCoinAmnt().toPlainString(), s.getUsdPerCoin().toPlainString(),
+						s.getShortTermProceeds().toPlainString(), s.getShortTermCostBasis().toPlainString(),
+						s.getShortTermGain().toPlainString(), s.getLongTermProceeds().toPlainString(),
+						s.getLongTermCostBasis().toPlainString(), s.getLongTermGain().toPlainString(), s.getTax().toPlainString());
+			}
+			printer.flush();
+		}
+		catch (IOException exc) {
+			throw new ControllerException("Could not write what-if report " + outputFile.getAbsolutePath() + ": " + exc.getMessage());
+		}
+	}
+
+
+	// The lots chosen for each TAX_OPTIMAL scenario, by scenario number (from 1)
+	public static void writeSelections(List<Scenario> scenarios, File outputFile) throws ControllerException {
+		try (Writer writer = LedgerStreams.openWriter(outputFile)) {
+			CSVPrinter printer = new CSVPrinter(writer, CSV_FORMAT);
+			printer.printRecord(COL_SCENARIO, COL_ACCT, COL_DATE_ACQ, COL_BRKR_ACQ, COL_COIN_AMNT, COL_COST_BASIS);
+			for (int i = 0; i < scenarios.size(); i++) {
+				Selection selection = scenarios.get(i).getSelection();
+				for (int k = 0; selection != null && k < selection.size(); k++) {
+					UnrealizedGainEntry lot = selection.getLot(k);
+					printer.printRecord(i + 1, scenarios.get(i).getAcct(), lot.getDateAcquiredStr(), lot.getBrokerAcquiredStr(),
+							selection.getCoinAmnt(k).toPlainString(), selection.getCostBasis(k).toPlainString());
+				}
+			}
+			printer.flush();
+		}
+		catch (IOException exc) {
+			throw new ControllerException("Could not write what-if lot report " + outputFile.getAbsolutePath() + ": " + exc.getMessage());
+		}
+	}
+
+
+	// Prefix sums over one account's lots in one order: entry i sums the first i lots
+	private static class LotSums {
+
+		private final BigDecimal[] cumCoinAmnts;
+		private final BigDecimal[] cumCostBases;
+		private final BigDecimal[] cumLtCoinAmnts;
+		private final BigDecimal[] cumLtCostBases;
+		private final boolean[] longTerm;
+
+		LotSums(List<UnrealizedGainEntry> lots, LocalDate saleDate) {
+			int n = lots.size();
+			cumCoinAmnts = new BigDecimal[n + 1];
+			cumCostBases = new BigDecimal[n + 1];
+			cumLtCoinAmnts = new BigDecimal[n + 1];
+			cumLtCostBases = new BigDecimal[n + 1];
+			longTerm = new boolean[n];
+			cumCoinAmnts[0] = BigDecimal.ZERO;
+			cumCostBases[0] = BigDecimal.ZERO;
+			cumLtCoinAmnts[0] = BigDecimal.ZERO;
+			cumLtCostBases[0] = BigDecimal.ZERO;
+			for (int i = 0; i < n; i++) {
+				UnrealizedGainEntry lot = lots.get(i);
+				longTerm[i] = (GainEntry.getTerm(lot.getDateAcquired(), saleDate) == GainTerm.LONGTERM);
+				cumCoinAmnts[i + 1] = cumCoinAmnts[i].add(lot.getAssetAmnt());
+				cumCostBases[i + 1] = cumCostBases[i].add(lot.getCostBasis());
+				cumLtCoinAmnts[i + 1] = longTerm[i] ? cumLtCoinAmnts[i].add(lot.getAssetAmnt()) : cumLtCoinAmnts[i];
+				cumLtCostBases[i + 1] = longTerm[i] ? cumLtCostBases[i].add(lot.getCostBasis()) : cumLtCostBases[i];
+			}
+		}
+
+		int size() {
+			return longTerm.length;
+		}
+	}
+
+
+	// A hypothetical sale; its realized proceeds, cost basis and tax by term are filled in by simulate()
+	public static class Scenario {
+
+		private final String acct;
+		private final LotOrder lotOrder;
+		private final BigDecimal coinAmnt;
+		private final BigDecimal usdPerCoin;
+		private BigDecimal stProceeds = null;
+		private BigDecimal stCostBasis = null;
+		private BigDecimal ltProceeds = null;
+		private BigDecimal ltCostBasis = null;
+		private BigDecimal tax = null;
+		// the lots sold, for TAX_OPTIMAL scenarios
+		private Selection selection = null;
+
+		public Scenario(String acct, LotOrder lotOrder, BigDecimal coinAmnt, BigDecimal usdPerCoin) {
+			this.acct = acct;
+			this.lotOrder = lotOrder;
+			this.coinAmnt = coinAmnt;
+			this.usdPerCoin = usdPerCoin;
+		}
+
+		public String getAcct() {
+			return acct;
+		}
+
+		public LotOrder getLotOrder() {
+			return lotOrder;
+		}
+
+		public BigDecimal getCoinAmnt() {
+			return coinAmnt;
+		}
+
+		public BigDecimal getUsdPerCoin() {
+			return usdPerCoin;
+		}
+
+		public BigDecimal getShortTermProceeds() {
+			return stProceeds;
+		}
+
+		public BigDecimal getShortTermCostBasis() {
+			return stCostBasis;
+		}
+
+		public BigDecimal getShortTermGain() {
+			return stProceeds.subtract(stCostBasis);
+		}
+
+		public BigDecimal getLongTermProceeds() {
+			return ltProceeds;
+		}
+
+		public BigDecimal getLongTermCostBasis() {
+			return ltCostBasis;
+		}
+
+		public BigDecimal getLongTermGain() {
+			return ltProceeds.subtract(ltCostBasis);
+		}
+
+		public BigDecimal getTax() {
+			return tax;
+		}
+
+		public Selection getSelection() {
+			return selection;
+		}
+	}
+
+}
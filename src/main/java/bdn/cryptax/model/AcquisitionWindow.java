@@ -0,0 +1,130 @@
+package bdn.cryptax.model;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+// One account's acquisitions merged by day, for matching disposals with acquisitions ahead of them. The days are kept
+// in order, so the first day of a window is found by binary search; days whose coins are all matched are closed and
+// skipped through a union-find of next open days, so no window is scanned twice over closed days.
+public class AcquisitionWindow {
+
+	private static final BigDecimal THRESHOLD_DECIMAL_EQUALING_ZERO = new BigDecimal("0.000000000000000000000001");
+	private static final MathContext PRECISION = new MathContext(34, RoundingMode.HALF_UP);
+	private static final int INITIAL_CAPACITY = 64;
+
+	private long[] days = new long[INITIAL_CAPACITY];
+	// the coins of each day not matched yet, and their cost
+	private BigDecimal[] coinAmnts = new BigDecimal[INITIAL_CAPACITY];
+	private BigDecimal[] costUsds = new BigDecimal[INITIAL_CAPACITY];
+	// the ledger row of a day's only acquisition, GainLineage.POOLED_ROW_ID for a day of several
+	private long[] rowIds = new long[INITIAL_CAPACITY];
+	// nextOpen[i] == i for an open day; a closed day points to a later day, open or not
+	private int[] nextOpen = new int[INITIAL_CAPACITY];
+	private int size = 0;
+
+
+	// Acquisitions are added in chronological order; those of one day are merged at their total cost
+	public void add(LocalDate date, BigDecimal coinAmnt, BigDecimal costUsd, long rowId) {
+		long day = date.toEpochDay();
+		if (size > 0 && days[size - 1] == day) {
+			coinAmnts[size - 1] = coinAmnts[size - 1].add(coinAmnt);
+			costUsds[size - 1] = costUsds[size - 1].add(costUsd);
+			rowIds[size - 1] = GainLineage.POOLED_ROW_ID;
+			return;
+		}
+		if (size > 0 && day < days[size - 1]) {
+			throw new IllegalArgumentException("Acquisition on " + date + " added after one on " + LocalDate.ofEpochDay(days[size - 1]));
+		}
+		if (size == days.length) {
+			int capacity = size * 2;
+			days = Arrays.copyOf(days, capacity);
+			coinAmnts = Arrays.copyOf(coinAmnts, capacity);
+			costUsds = Arrays.copyOf(costUsds, capacity);
+			rowIds = Arrays.copyOf(rowIds, capacity);
+			nextOpen = Arrays.copyOf(nextOpen, capacity);
+		}
+		days[size] = day;
+		coinAmnts[size] = coinAmnt;
+		costUsds[size] = costUsd;
+		rowIds[size] = rowId;
+		nextOpen[size] = size;
+		size++;
+	}
+
+
+	public int size() {
+		return size;
+	}
+
+
+	public LocalDate getDate(int i) {
+		return LocalDate.ofEpochDay(days[i]);
+	}
+
+
+	public BigDecimal getCoinAmnt(int i) {
+		return coinAmnts[i];
+	}
+
+
+	public BigDecimal getCostUsd(int i) {
+		return costUsds[i];
+	}
+
+
+	public long getRowId(int i) {
+		return rowIds[i];
+	}
+
+
+	// The index of date's acquisitions, or -1 if there were none that day
+	public int indexOf(LocalDate date) {
+		int i = Arrays.binarySearch(days, 0, size, date.toEpochDay());
+		return (i >= 0) ? i : -1;
+	}
+
+
+	// The index of the first day after date; size() if there is none
+	public int indexAfter(LocalDate date) {
+		int i = Arrays.binarySearch(days, 0, size, date.toEpochDay());
+		return (i >= 0) ? i + 1 : -(i + 1);
+	}
+
+
+	// The first open day at or after index i; size() if there is none
+	public int nextOpen(int i) {
+		int root = i;
+		while (root < size && nextOpen[root] != root) {
+			root = nextOpen[root];
+		}
+		// path compression: point every closed day passed on the way straight at the open one
+		while (i < size && nextOpen[i] != i) {
+			int next = nextOpen[i];
+			nextOpen[i] = root;
+			i = next;
+		}
+		return root;
+	}
+
+
+	// Matches coinAmnt (at most what day i has left) and returns its share of the day's cost
+	public BigDecimal take(int i, BigDecimal coinAmnt) {
+		BigDecimal result;
+		if (coinAmnts[i].subtract(coinAmnt).compareTo(THRESHOLD_DECIMAL_EQUALING_ZERO) <= 0) {
+			result = costUsds[i];
+			coinAmnts[i] = BigDecimal.ZERO;
+			costUsds[i] = BigDecimal.ZERO;
+			nextOpen[i] = i + 1;
+			return result;
+		}
+
+		result = coinAmnt.multiply(costUsds[i]).divide(coinAmnts[i], PRECISION);
+		coinAmnts[i] = coinAmnts[i].subtract(coinAmnt);
+		costUsds[i] = costUsds[i].subtract(result, PRECISION);
+		return result;
+	}
+
+}
@@ -0,0 +1,53 @@
+package bdn.cryptax.model;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+// In-heap lot queue; lots are held as TransactionMemento objects
+public class ArrayLotQueue implements LotQueue {
+
+	private ArrayDeque<TransactionMemento> tmQueue = new ArrayDeque<>();
+
+
+	@Override
+	public void add(TransactionMemento tm) {
+		tmQueue.addLast(tm);
+	}
+
+
+	@Override
+	public boolean isEmpty() {
+		return tmQueue.isEmpty();
+	}
+
+
+	@Override
+	public long size() {
+		return tmQueue.size();
+	}
+
+
+	@Override
+	public TransactionMemento peek() {
+		return tmQueue.peekFirst();
+	}
+
+
+	@Override
+	public void updateHead(TransactionMemento tm) {
+		// the head is the caller's object, already up to date
+	}
+
+
+	@Override
+	public void remove() {
+		tmQueue.removeFirst();
+	}
+
+
+	@Override
+	public Iterator<TransactionMemento> iterator() {
+		return tmQueue.iterator();
+	}
+
+}
@@ -5,10 +5,40 @@ import java.time.LocalDate;
 
 public class CapitalGainEntry extends GainEntry {
 
+	// ledger rows (CSV record numbers) of the disposal and of the acquired lot; see GainLineage
+	private final long dispRowId;
+	private final long acqRowId;
+
+
 	public CapitalGainEntry(LocalDate dateAcquired, LocalDate dateDisposed, String brokerAcquired, String brokerDisposed,
 			BigDecimal assetAmnt, BigDecimal proceeds, BigDecimal costBasis, BigDecimal gain) {
+		this(dateAcquired, dateDisposed, brokerAcquired, brokerDisposed, assetAmnt, proceeds, costBasis, gain, 0, 0);
+	}
+
+
+	public CapitalGainEntry(LocalDate dateAcquired, LocalDate dateDisposed, String brokerAcquired, String brokerDisposed,
+			BigDecimal assetAmnt, BigDecimal proceeds, BigDecimal costBasis, BigDecimal gain, long dispRowId, long acqRowId) {
 		super(dateAcquired, dateDisposed, brokerAcquired, brokerDisposed, assetAmnt, proceeds, costBasis, gain);
+		this.dispRowId = dispRowId;
+		this.acqRowId = acqRowId;
+	}
+
+
+	public long getDispRowId() {
+		return dispRowId;
 	}
 
 
+	// GainLineage.POOLED_ROW_ID if the coins came from a pool rather than from one acquisition
+	public long getAcqRowId() {
+		return acqRowId;
+	}
+
+
+	// The same entry for its ledger rows at other row ids
+	public CapitalGainEntry withRowIds(long dispRowId, long acqRowId) {
+		return new CapitalGainEntry(dateAcquired, dateDisposed, brokerAcquired, brokerDisposed, assetAmnt, proceeds, costBasis, gain,
+				dispRowId, acqRowId);
+	}
+
 }
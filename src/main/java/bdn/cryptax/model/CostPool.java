@@ -0,0 +1,82 @@
+package bdn.cryptax.model;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+
+// Coins held as a single pool at their average cost. Adding coins adds their exact cost, and removing coins takes their
+// share of the pool's cost (all of it when the pool is emptied), so no rounding residue is left behind. Acquisition
+// dates are averaged by coin amount the same way, to date what is taken from the pool.
+public class CostPool {
+
+	private static final BigDecimal THRESHOLD_DECIMAL_EQUALING_ZERO = new BigDecimal("0.000000000000000000000001");
+	private static final MathContext PRECISION = new MathContext(34, RoundingMode.HALF_UP);
+
+	private BigDecimal coinAmnt = BigDecimal.ZERO;
+	private BigDecimal costUsd = BigDecimal.ZERO;
+	// average cost per coin, recomputed on the first removal after an addition (removals do not change it)
+	private BigDecimal usdPerUnit = null;
+	// sum of coin amount times acquisition epoch day; a double is precise enough to date the pool to the day
+	private double coinDays = 0;
+
+
+	public void add(LocalDate date, BigDecimal coinAmnt, BigDecimal costUsd) {
+		this.coinAmnt = this.coinAmnt.add(coinAmnt);
+		this.costUsd = this.costUsd.add(costUsd);
+		this.coinDays += coinAmnt.doubleValue() * date.toEpochDay();
+		this.usdPerUnit = null;
+	}
+
+
+	public boolean isEmpty() {
+		return coinAmnt.compareTo(THRESHOLD_DECIMAL_EQUALING_ZERO) <= 0;
+	}
+
+
+	public boolean covers(BigDecimal coinAmnt) {
+		return coinAmnt.subtract(this.coinAmnt).compareTo(THRESHOLD_DECIMAL_EQUALING_ZERO) <= 0;
+	}
+
+
+	// The average acquisition date of the pooled coins; null if the pool is empty
+	public LocalDate getDate() {
+		return isEmpty() ? null : LocalDate.ofEpochDay(Math.round(coinDays / coinAmnt.doubleValue()));
+	}
+
+
+	// Removes coinAmnt (at most what the pool holds, see covers()) and returns its cost
+	public BigDecimal remove(BigDecimal coinAmnt) {
+		BigDecimal result;
+		if (this.coinAmnt.subtract(coinAmnt).compareTo(THRESHOLD_DECIMAL_EQUALING_ZERO) <= 0) {
+			// the pool is emptied
+			result = costUsd;
+			this.coinAmnt = BigDecimal.ZERO;
+			costUsd = BigDecimal.ZERO;
+			usdPerUnit = null;
+			coinDays = 0;
+			return result;
+		}
+
+		if (usdPerUnit == null) {
+			usdPerUnit = costUsd.divide(this.coinAmnt, PRECISION);
+		}
+		result = coinAmnt.multiply(usdPerUnit, PRECISION);
+		// a removal leaves the pool's average cost and date unchanged
+		coinDays -= coinDays * (coinAmnt.doubleValue() / this.coinAmnt.doubleValue());
+		this.coinAmnt = this.coinAmnt.subtract(coinAmnt);
+		costUsd = costUsd.subtract(result, PRECISION);
+		return result;
+	}
+
+
+	public BigDecimal getCoinAmnt() {
+		return coinAmnt;
+	}
+
+
+	public BigDecimal getCostUsd() {
+		return costUsd;
+	}
+
+}
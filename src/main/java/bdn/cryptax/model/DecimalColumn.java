@@ -0,0 +1,68 @@
+package bdn.cryptax.model;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+// Nullable BigDecimal column stored as a primitive unscaled long plus a byte scale. The rare values that do not fit
+// (more than 18 significant digits or an extreme scale) are kept in a sparse overflow map.
+class DecimalColumn {
+
+	static final byte NULL_SCALE = Byte.MIN_VALUE;
+	static final byte OVERFLOW_SCALE = Byte.MAX_VALUE;
+
+	private long[] unscaled;
+	private byte[] scales;
+	private Map<Integer, BigDecimal> overflow = new HashMap<>();
+
+
+	DecimalColumn(int capacity) {
+		unscaled = new long[capacity];
+		scales = new byte[capacity];
+	}
+
+
+	void ensureCapacity(int capacity) {
+		if (capacity > unscaled.length) {
+			unscaled = Arrays.copyOf(unscaled, capacity);
+			scales = Arrays.copyOf(scales, capacity);
+		}
+	}
+
+
+	void set(int row, BigDecimal value) {
+		if (value == null) {
+			unscaled[row] = 0;
+			scales[row] = NULL_SCALE;
+		}
+		else if (isCompact(value)) {
+			unscaled[row] = value.unscaledValue().longValue();
+			scales[row] = (byte) value.scale();
+		}
+		else {
+			unscaled[row] = 0;
+			scales[row] = OVERFLOW_SCALE;
+			overflow.put(row, value);
+		}
+	}
+
+
+	BigDecimal get(int row) {
+		byte scale = scales[row];
+		if (scale == NULL_SCALE) {
+			return null;
+		}
+		if (scale == OVERFLOW_SCALE) {
+			return overflow.get(row);
+		}
+		return BigDecimal.valueOf(unscaled[row], scale);
+	}
+
+
+	static boolean isCompact(BigDecimal value) {
+		int scale = value.scale();
+		return (scale > NULL_SCALE && scale < OVERFLOW_SCALE && value.unscaledValue().bitLength() < Long.SIZE);
+	}
+
+}
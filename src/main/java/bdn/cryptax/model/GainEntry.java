@@ -3,7 +3,9 @@ package bdn.cryptax.model;
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
 
 public abstract class GainEntry {
 
@@ -25,11 +27,13 @@ public abstract class GainEntry {
 	protected static final DateTimeFormatter DTF_DATE = DateTimeFormatter.ofPattern("yyyy-MM-dd");
 	protected static final DateTimeFormatter DTF_YEAR = DateTimeFormatter.ofPattern("yyyy");
 	
-	protected static HashMap<GainTerm, String> TERM_MAP = new HashMap<>();
+	protected static final Map<GainTerm, String> TERM_MAP;
 	static {
-		TERM_MAP.put(GainTerm.SHORTTERM, "Short-Term");
-		TERM_MAP.put(GainTerm.LONGTERM, "Long-Term");
-		TERM_MAP.put(GainTerm.UNKNOWN, "Unknown");
+		Map<GainTerm, String> map = new EnumMap<>(GainTerm.class);
+		map.put(GainTerm.SHORTTERM, "Short-Term");
+		map.put(GainTerm.LONGTERM, "Long-Term");
+		map.put(GainTerm.UNKNOWN, "Unknown");
+		TERM_MAP = Collections.unmodifiableMap(map);
 	}
 	
 	
@@ -0,0 +1,118 @@
+package bdn.cryptax.model;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+
+// Lineage of an account's capital gains as an edge list from each disposal row to the acquisition rows (CSV record
+// numbers) whose coins it disposed of, with the coin amount of each edge. Edges live in primitive columns rather than
+// as objects; the indexes by disposal and by acquisition row are edge numbers sorted by row, built on the first query,
+// so a query is a binary search.
+public class GainLineage {
+
+	public static final String COL_DISP_ROW = "Disposal Row";
+	public static final String COL_ACQ_ROW = "Acquisition Row";
+	public static final String COL_COIN_AMNT = "Coin Amount";
+	// acquisition row of coins that came from a pool (or from one day's merged acquisitions) rather than from one lot
+	public static final long POOLED_ROW_ID = 0;
+
+	private static final int INITIAL_CAPACITY = 1024;
+
+	private int size = 0;
+	private long[] dispRowIds = new long[INITIAL_CAPACITY];
+	private long[] acqRowIds = new long[INITIAL_CAPACITY];
+	private DecimalColumn coinAmnts = new DecimalColumn(INITIAL_CAPACITY);
+
+	// edge numbers ordered by disposal and by acquisition row, built on the first query
+	private int[] dispOrder = null;
+	private int[] acqOrder = null;
+
+
+	// The edges of the capital gain entries, in entry order
+	public static GainLineage of(List<GainEntry> geList) {
+		GainLineage result = new GainLineage();
+		for (GainEntry ge : geList) {
+			if (ge instanceof CapitalGainEntry) {
+				CapitalGainEntry cge = (CapitalGainEntry) ge;
+				result.add(cge.getDispRowId(), cge.getAcqRowId(), cge.getAssetAmnt());
+			}
+		}
+		return result;
+	}
+
+
+	public void add(long dispRowId, long acqRowId, BigDecimal coinAmnt) {
+		if (size == dispRowIds.length) {
+			int capacity = size + (size >> 1);
+			dispRowIds = Arrays.copyOf(dispRowIds, capacity);
+			acqRowIds = Arrays.copyOf(acqRowIds, capacity);
+			coinAmnts.ensureCapacity(capacity);
+		}
+		dispRowIds[size] = dispRowId;
+		acqRowIds[size] = acqRowId;
+		coinAmnts.set(size, coinAmnt);
+		size++;
+		dispOrder = null;
+		acqOrder = null;
+	}
+
+
+	public int size() {
+		return size;
+	}
+
+
+	public long getDispRowId(int edge) {
+		return dispRowIds[edge];
+	}
+
+
+	public long getAcqRowId(int edge) {
+		return acqRowIds[edge];
+	}
+
+
+	public BigDecimal getCoinAmnt(int edge) {
+		return coinAmnts.get(edge);
+	}
+
+
+	// The edges of the disposal at rowId, in edge order
+	public int[] findByDisposal(long rowId) {
+		if (dispOrder == null) {
+			dispOrder = TransactionTable.sortChronologically(dispRowIds, size);
+		}
+		return find(dispOrder, dispRowIds, rowId);
+	}
+
+
+	// The edges of the disposals that consumed the acquisition at rowId, in edge order
+	public int[] findByAcquisition(long rowId) {
+		if (acqOrder == null) {
+			acqOrder = TransactionTable.sortChronologically(acqRowIds, size);
+		}
+		return find(acqOrder, acqRowIds, rowId);
+	}
+
+
+	private static int[] find(int[] order, long[] rowIds, long rowId) {
+		// lower bound of rowId in the sorted order
+		int lo = 0;
+		int hi = order.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (rowIds[order[mid]] < rowId) {
+				lo = mid + 1;
+			}
+			else {
+				hi = mid;
+			}
+		}
+		int end = lo;
+		while (end < order.length && rowIds[order[end]] == rowId) {
+			end++;
+		}
+		return Arrays.copyOfRange(order, lo, end);
+	}
+
+}
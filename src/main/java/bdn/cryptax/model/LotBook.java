@@ -0,0 +1,144 @@
+package bdn.cryptax.model;
+
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.TreeSet;
+
+// In-heap lot queue that also finds a lot by its acquisition time and broker, for specific identification. Lots are
+// indexed by (acquisition time, broker, lot id), so a designated lot is found and removed in O(log n) (one designated
+// without a broker takes a scan of the lots of its time); the FIFO order skips lots that were removed out of order when
+// they reach the head.
+public class LotBook implements LotQueue {
+
+	private static final Comparator<TransactionMemento> LOT_ORDER = Comparator
+			.comparing((TransactionMemento tm) -> tm.dttm)
+			.thenComparing(tm -> tm.dest, Comparator.nullsFirst(Comparator.naturalOrder()))
+			.thenComparingLong(tm -> tm.lotId);
+
+	private final ArrayDeque<TransactionMemento> fifo = new ArrayDeque<>();
+	private final TreeSet<TransactionMemento> index = new TreeSet<>(LOT_ORDER);
+	// lot ids of the lots removed out of FIFO order
+	private final BitSet removed = new BitSet();
+	private long nextLotId = 0;
+
+
+	@Override
+	public void add(TransactionMemento tm) {
+		tm.lotId = nextLotId++;
+		fifo.addLast(tm);
+		index.add(tm);
+	}
+
+
+	@Override
+	public boolean isEmpty() {
+		return index.isEmpty();
+	}
+
+
+	@Override
+	public long size() {
+		return index.size();
+	}
+
+
+	@Override
+	public TransactionMemento peek() {
+		skipRemoved();
+		return fifo.peekFirst();
+	}
+
+
+	@Override
+	public void updateHead(TransactionMemento tm) {
+		// the head is the caller's object, already up to date
+	}
+
+
+	@Override
+	public void remove() {
+		skipRemoved();
+		index.remove(fifo.removeFirst());
+	}
+
+
+	// The oldest open lot acquired at dttm into broker (any broker if null), or null if there is none
+	public TransactionMemento find(LocalDateTime dttm, String broker) {
+		TransactionMemento probe = new TransactionMemento();
+		probe.dttm = dttm;
+		probe.dest = broker;
+		probe.lotId = -1;
+		if (broker == null) {
+			// the index orders the lots of one time by broker first, so the oldest of any broker takes a scan of that time
+			TransactionMemento result = null;
+			for (TransactionMemento tm : index.tailSet(probe, false)) {
+				if (!tm.dttm.equals(dttm)) {
+					break;
+				}
+				if (result == null || tm.lotId < result.lotId) {
+					result = tm;
+				}
+			}
+			return result;
+		}
+		TransactionMemento tm = index.ceiling(probe);
+		if (tm == null || !tm.dttm.equals(dttm) || !broker.equals(tm.dest)) {
+			return null;
+		}
+		return tm;
+	}
+
+
+	// Removes a lot returned by find()
+	public void remove(TransactionMemento tm) {
+		if (index.remove(tm)) {
+			removed.set((int) tm.lotId);
+		}
+	}
+
+
+	private void skipRemoved() {
+		while (!fifo.isEmpty() && removed.get((int) fifo.peekFirst().lotId)) {
+			fifo.removeFirst();
+		}
+	}
+
+
+	@Override
+	public Iterator<TransactionMemento> iterator() {
+		Iterator<TransactionMemento> it = fifo.iterator();
+		return new Iterator<TransactionMemento>() {
+			private TransactionMemento next = advance();
+
+			private TransactionMemento advance() {
+				while (it.hasNext()) {
+					TransactionMemento tm = it.next();
+					if (!removed.get((int) tm.lotId)) {
+						return tm;
+					}
+				}
+				return null;
+			}
+
+			@Override
+			public boolean hasNext() {
+				return next != null;
+			}
+
+			@Override
+			public TransactionMemento next() {
+				if (next == null) {
+					throw new NoSuchElementException();
+				}
+				TransactionMemento result = next;
+				next = advance();
+				return result;
+			}
+		};
+	}
+
+}
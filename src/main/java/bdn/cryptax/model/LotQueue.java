@@ -0,0 +1,27 @@
+package bdn.cryptax.model;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+// FIFO queue of open acquisition lots. The head lot returned by peek() may be a decoded copy, so a partially consumed
+// head must be written back with updateHead(). Iteration yields the remaining lots oldest first.
+public interface LotQueue extends Iterable<TransactionMemento>, Closeable {
+
+	void add(TransactionMemento tm);
+
+	boolean isEmpty();
+
+	long size();
+
+	TransactionMemento peek();
+
+	void updateHead(TransactionMemento tm);
+
+	void remove();
+
+
+	@Override
+	default void close() throws IOException {
+	}
+
+}
@@ -0,0 +1,145 @@
+package bdn.cryptax.model;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+// Lot queue held outside the Java heap (see OffHeapRecords). Lots are appended at the tail and consumed from the head;
+// the live range is shifted back to the start of the buffer once the consumed prefix outgrows it, so storage tracks
+// the number of open lots rather than the number of acquisitions ever made.
+public class OffHeapLotQueue implements LotQueue {
+
+	private static final int OFF_EPOCH_SEC = 0;
+	private static final int OFF_ROW_ID = OFF_EPOCH_SEC + OffHeapRecords.LONG_BYTES;
+	private static final int OFF_COIN_AMNT = OFF_ROW_ID + OffHeapRecords.LONG_BYTES;
+	private static final int OFF_EFF_USD_PER_UNIT = OFF_COIN_AMNT + OffHeapRecords.DECIMAL_BYTES;
+	private static final int OFF_SRC = OFF_EFF_USD_PER_UNIT + OffHeapRecords.DECIMAL_BYTES;
+	private static final int OFF_DEST = OFF_SRC + OffHeapRecords.INT_BYTES;
+	private static final int LOT_BYTES = OFF_DEST + OffHeapRecords.INT_BYTES;
+
+	private OffHeapRecords lots;
+	private StringDictionary dict = new StringDictionary();
+	private long head = 0;
+	private long tail = 0;
+
+
+	// tempFolder: folder for the memory-mapped backing file, or null to use direct (non-file-backed) buffers
+	public OffHeapLotQueue(File tempFolder) {
+		lots = new OffHeapRecords(LOT_BYTES, tempFolder);
+	}
+
+
+	@Override
+	public void add(TransactionMemento tm) {
+		try {
+			lots.ensureCapacity(tail + 1);
+		}
+		catch (IOException exc) {
+			throw new UncheckedIOException(exc);
+		}
+		write(tail, tm);
+		tail++;
+	}
+
+
+	@Override
+	public boolean isEmpty() {
+		return head == tail;
+	}
+
+
+	@Override
+	public long size() {
+		return tail - head;
+	}
+
+
+	@Override
+	public TransactionMemento peek() {
+		return isEmpty() ? null : read(head);
+	}
+
+
+	@Override
+	public void updateHead(TransactionMemento tm) {
+		if (isEmpty()) {
+			throw new NoSuchElementException();
+		}
+		write(head, tm);
+	}
+
+
+	@Override
+	public void remove() {
+		if (isEmpty()) {
+			throw new NoSuchElementException();
+		}
+		head++;
+		if (head == tail) {
+			head = 0;
+			tail = 0;
+		}
+		else if (head >= size() && head >= lots.capacity() / 2) {
+			// compact: move the live lots to the front (amortized O(1) per lot)
+			for (long i = head; i < tail; i++) {
+				lots.copyRecord(i, i - head);
+			}
+			tail -= head;
+			head = 0;
+		}
+	}
+
+
+	private void write(long record, TransactionMemento tm) {
+		lots.putLong(record, OFF_EPOCH_SEC, tm.dttm.toEpochSecond(ZoneOffset.UTC));
+		lots.putLong(record, OFF_ROW_ID, tm.rowId);
+		lots.putDecimal(record, OFF_COIN_AMNT, tm.coinAmnt);
+		lots.putDecimal(record, OFF_EFF_USD_PER_UNIT, tm.effUsdPerUnit);
+		lots.putInt(record, OFF_SRC, dict.encode(tm.src));
+		lots.putInt(record, OFF_DEST, dict.encode(tm.dest));
+	}
+
+
+	private TransactionMemento read(long record) {
+		TransactionMemento tm = new TransactionMemento();
+		tm.dttm = LocalDateTime.ofEpochSecond(lots.getLong(record, OFF_EPOCH_SEC), 0, ZoneOffset.UTC);
+		tm.rowId = lots.getLong(record, OFF_ROW_ID);
+		tm.coinAmnt = lots.getDecimal(record, OFF_COIN_AMNT);
+		tm.effUsdPerUnit = lots.getDecimal(record, OFF_EFF_USD_PER_UNIT);
+		tm.src = dict.decode(lots.getInt(record, OFF_SRC));
+		tm.dest = dict.decode(lots.getInt(record, OFF_DEST));
+		return tm;
+	}
+
+
+	@Override
+	public Iterator<TransactionMemento> iterator() {
+		return new Iterator<TransactionMemento>() {
+			private long pos = head;
+
+			@Override
+			public boolean hasNext() {
+				return pos < tail;
+			}
+
+			@Override
+			public TransactionMemento next() {
+				if (pos >= tail) {
+					throw new NoSuchElementException();
+				}
+				return read(pos++);
+			}
+		};
+	}
+
+
+	@Override
+	public void close() throws IOException {
+		lots.close();
+	}
+
+}
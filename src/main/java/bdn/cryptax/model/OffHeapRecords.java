@@ -0,0 +1,182 @@
+package bdn.cryptax.model;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+// Growable array of fixed-width records held outside the Java heap, either in direct buffers or (when a temp folder
+// is given) in segments of a memory-mapped temp file so that the OS pages them in and out as needed. Records never
+// straddle a segment boundary.
+class OffHeapRecords implements Closeable {
+
+	static final int LONG_BYTES = 8;
+	static final int INT_BYTES = 4;
+	static final int BYTE_BYTES = 1;
+	// two's complement unscaled value (16 bytes) followed by the scale (4 bytes)
+	static final int DECIMAL_BYTES = 20;
+
+	private static final int NULL_SCALE = Integer.MIN_VALUE;
+	// the widest decimal that fits in a 128-bit unscaled value
+	private static final MathContext DECIMAL_PRECISION = new MathContext(34, RoundingMode.HALF_UP);
+	private static final int SEGMENT_BYTES = 64 * 1024 * 1024;
+
+	private final int recordSize;
+	private final int recordsPerSegment;
+	private final File tempFolder;
+	private List<ByteBuffer> segments = new ArrayList<>();
+	private File file = null;
+	private RandomAccessFile raFile = null;
+	private FileChannel channel = null;
+
+
+	OffHeapRecords(int recordSize, File tempFolder) {
+		this.recordSize = recordSize;
+		this.recordsPerSegment = Math.max(1, SEGMENT_BYTES / recordSize);
+		this.tempFolder = tempFolder;
+	}
+
+
+	long capacity() {
+		return (long) segments.size() * recordsPerSegment;
+	}
+
+
+	void ensureCapacity(long records) throws IOException {
+		while (capacity() < records) {
+			int segmentBytes = recordsPerSegment * recordSize;
+			if (tempFolder == null) {
+				segments.add(ByteBuffer.allocateDirect(segmentBytes));
+			}
+			else {
+				if (channel == null) {
+					// deleted by close(); deleteOnExit() would keep every name until the JVM exits, which grows without
+					// bound in a long-running watcher or server
+					file = File.createTempFile("cryptax-", ".offheap", tempFolder);
+					raFile = new RandomAccessFile(file, "rw");
+					channel = raFile.getChannel();
+				}
+				long position = (long) segments.size() * segmentBytes;
+				segments.add(channel.map(FileChannel.MapMode.READ_WRITE, position, segmentBytes));
+			}
+		}
+	}
+
+
+	private ByteBuffer segment(long record) {
+		return segments.get((int) (record / recordsPerSegment));
+	}
+
+
+	private int position(long record, int fieldOffset) {
+		return (int) (record % recordsPerSegment) * recordSize + fieldOffset;
+	}
+
+
+	long getLong(long record, int fieldOffset) {
+		return segment(record).getLong(position(record, fieldOffset));
+	}
+
+
+	void putLong(long record, int fieldOffset, long value) {
+		segment(record).putLong(position(record, fieldOffset), value);
+	}
+
+
+	int getInt(long record, int fieldOffset) {
+		return segment(record).getInt(position(record, fieldOffset));
+	}
+
+
+	void putInt(long record, int fieldOffset, int value) {
+		segment(record).putInt(position(record, fieldOffset), value);
+	}
+
+
+	byte getByte(long record, int fieldOffset) {
+		return segment(record).get(position(record, fieldOffset));
+	}
+
+
+	void putByte(long record, int fieldOffset, byte value) {
+		segment(record).put(position(record, fieldOffset), value);
+	}
+
+
+	BigDecimal getDecimal(long record, int fieldOffset) {
+		ByteBuffer seg = segment(record);
+		int pos = position(record, fieldOffset);
+		int scale = seg.getInt(pos + 2 * LONG_BYTES);
+		if (scale == NULL_SCALE) {
+			return null;
+		}
+		long hi = seg.getLong(pos);
+		long lo = seg.getLong(pos + LONG_BYTES);
+		if (hi == (lo >> 63)) {
+			// the unscaled value fits in a long
+			return BigDecimal.valueOf(lo, scale);
+		}
+		BigInteger unscaled = BigInteger.valueOf(hi).shiftLeft(Long.SIZE).add(BigInteger.valueOf(lo >>> 1).shiftLeft(1))
+				.add(BigInteger.valueOf(lo & 1));
+		return new BigDecimal(unscaled, scale);
+	}
+
+
+	void putDecimal(long record, int fieldOffset, BigDecimal value) {
+		ByteBuffer seg = segment(record);
+		int pos = position(record, fieldOffset);
+		if (value == null) {
+			seg.putLong(pos, 0);
+			seg.putLong(pos + LONG_BYTES, 0);
+			seg.putInt(pos + 2 * LONG_BYTES, NULL_SCALE);
+			return;
+		}
+
+		BigInteger unscaled = value.unscaledValue();
+		if (unscaled.bitLength() >= 2 * Long.SIZE) {
+			// values wider than 34 significant digits are rounded to the precision used throughout the gains math
+			value = value.round(DECIMAL_PRECISION);
+			unscaled = value.unscaledValue();
+		}
+		seg.putLong(pos, unscaled.shiftRight(Long.SIZE).longValue());
+		seg.putLong(pos + LONG_BYTES, unscaled.longValue());
+		seg.putInt(pos + 2 * LONG_BYTES, value.scale());
+	}
+
+
+	void copyRecord(long fromRecord, long toRecord) {
+		ByteBuffer from = segment(fromRecord);
+		ByteBuffer to = segment(toRecord);
+		int fromPos = position(fromRecord, 0);
+		int toPos = position(toRecord, 0);
+		for (int i = 0; i < recordSize; i++) {
+			to.put(toPos + i, from.get(fromPos + i));
+		}
+	}
+
+
+	@Override
+	public void close() throws IOException {
+		// direct and mapped segments are only released once they are garbage collected, so no reference may be kept to
+		// them; the backing file can be removed right away
+		segments = null;
+		if (channel != null) {
+			channel.close();
+			raFile.close();
+			channel = null;
+		}
+		if (file != null) {
+			file.delete();
+			file = null;
+		}
+	}
+
+}
@@ -0,0 +1,359 @@
+package bdn.cryptax.model;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import bdn.cryptax.model.Transaction.TransactionType;
+
+// Columnar transaction storage kept entirely outside the Java heap (see OffHeapRecords). Only the account/broker
+// dictionary and a per-account row count live on the heap, so heap use does not grow with the number of rows.
+// The chronological orders are built with an off-heap LSD radix sort, and rows are read through a flyweight Cursor.
+public class OffHeapTransactionTable implements TransactionStore {
+
+	private static final long NULL_LONG = Long.MIN_VALUE;
+	private static final TransactionType[] TYPES = TransactionType.values();
+	private static final int SECONDS_PER_DAY = 24 * 60 * 60;
+	private static final int RADIX_BITS = 16;
+
+	// row layout
+	private static final int OFF_EPOCH_SEC = 0;
+	private static final int OFF_TERM_MOS = OFF_EPOCH_SEC + OffHeapRecords.LONG_BYTES;
+	private static final int OFF_HASHRATE = OFF_TERM_MOS + OffHeapRecords.LONG_BYTES;
+	private static final int OFF_ROW_ID = OFF_HASHRATE + OffHeapRecords.LONG_BYTES;
+	private static final int OFF_ACCT = OFF_ROW_ID + OffHeapRecords.LONG_BYTES;
+	private static final int OFF_SRC = OFF_ACCT + OffHeapRecords.INT_BYTES;
+	private static final int OFF_DEST = OFF_SRC + OffHeapRecords.INT_BYTES;
+	private static final int OFF_COIN_AMNT = OFF_DEST + OffHeapRecords.INT_BYTES;
+	private static final int OFF_USD_AMNT = OFF_COIN_AMNT + OffHeapRecords.DECIMAL_BYTES;
+	private static final int OFF_USD_PER_UNIT = OFF_USD_AMNT + OffHeapRecords.DECIMAL_BYTES;
+	private static final int OFF_FEE_COIN = OFF_USD_PER_UNIT + OffHeapRecords.DECIMAL_BYTES;
+	private static final int OFF_BRKR_FEE_USD = OFF_FEE_COIN + OffHeapRecords.DECIMAL_BYTES;
+	private static final int OFF_TYPE = OFF_BRKR_FEE_USD + OffHeapRecords.DECIMAL_BYTES;
+	private static final int ROW_BYTES = OFF_TYPE + OffHeapRecords.BYTE_BYTES;
+
+	// sort layout: (relative epoch second, row)
+	private static final int OFF_SORT_KEY = 0;
+	private static final int OFF_SORT_ROW = OffHeapRecords.LONG_BYTES;
+	private static final int SORT_BYTES = OFF_SORT_ROW + OffHeapRecords.INT_BYTES;
+
+	private final File tempFolder;
+	private OffHeapRecords rows;
+	private StringDictionary dict = new StringDictionary();
+	private long size = 0;
+	private long minEpochSec = Long.MAX_VALUE;
+	private long maxEpochSec = Long.MIN_VALUE;
+
+	// Row orders, built on first read: all rows chronologically (sort records), and each account's rows chronologically
+	private OffHeapRecords chronoOrder = null;
+	private OffHeapRecords acctChronoOrder = null;
+	private long[] acctStart = null;
+	private long[] acctCount = null;
+
+
+	// tempFolder: folder for the memory-mapped backing files, or null to use direct (non-file-backed) buffers
+	public OffHeapTransactionTable(File tempFolder) {
+		this.tempFolder = tempFolder;
+		this.rows = new OffHeapRecords(ROW_BYTES, tempFolder);
+	}
+
+
+	@Override
+	public void add(TransactionView t) {
+		if (chronoOrder != null) {
+			throw new IllegalStateException("Transaction added after the table was read");
+		}
+
+		try {
+			rows.ensureCapacity(size + 1);
+		}
+		catch (IOException exc) {
+			throw new UncheckedIOException(exc);
+		}
+
+		long row = size;
+		String acct = t.getTxnAcct();
+		long epochSec = t.getTxnDttm().toEpochSecond(ZoneOffset.UTC);
+		minEpochSec = Math.min(minEpochSec, epochSec);
+		maxEpochSec = Math.max(maxEpochSec, epochSec);
+
+		rows.putLong(row, OFF_EPOCH_SEC, epochSec);
+		rows.putLong(row, OFF_TERM_MOS, (t.getTermMos() == null) ? NULL_LONG : t.getTermMos());
+		rows.putLong(row, OFF_HASHRATE, (t.getTxnHashrate() == null) ? NULL_LONG : t.getTxnHashrate());
+		rows.putLong(row, OFF_ROW_ID, t.getTxnRowId());
+		rows.putInt(row, OFF_ACCT, dict.encode((acct == null) ? "" : acct.trim()));
+		rows.putInt(row, OFF_SRC, dict.encode(t.getTxnSrc()));
+		rows.putInt(row, OFF_DEST, dict.encode(t.getTxnDest()));
+		rows.putDecimal(row, OFF_COIN_AMNT, t.getTxnCoinAmnt());
+		rows.putDecimal(row, OFF_USD_AMNT, t.getTxnUsdAmnt());
+		rows.putDecimal(row, OFF_USD_PER_UNIT, t.getTxnUsdPerUnit());
+		rows.putDecimal(row, OFF_FEE_COIN, t.getTxnFeeCoin());
+		rows.putDecimal(row, OFF_BRKR_FEE_USD, t.getTxnBrkrFeeUsd());
+		rows.putByte(row, OFF_TYPE, (byte) t.getTxnType().ordinal());
+		size++;
+	}
+
+
+	private void buildOrders() {
+		if (chronoOrder != null) {
+			return;
+		}
+
+		try {
+			chronoOrder = sortChronologically();
+
+			// stable partition of the chronological order by account
+			acctCount = new long[dict.size()];
+			for (long i = 0; i < size; i++) {
+				acctCount[rows.getInt(i, OFF_ACCT)]++;
+			}
+			acctStart = new long[dict.size()];
+			long[] acctNext = new long[dict.size()];
+			long start = 0;
+			for (int id = 0; id < acctCount.length; id++) {
+				acctStart[id] = start;
+				acctNext[id] = start;
+				start += acctCount[id];
+			}
+
+			acctChronoOrder = new OffHeapRecords(OffHeapRecords.INT_BYTES, tempFolder);
+			acctChronoOrder.ensureCapacity(size);
+			for (long i = 0; i < size; i++) {
+				int row = chronoOrder.getInt(i, OFF_SORT_ROW);
+				int id = rows.getInt(row, OFF_ACCT);
+				acctChronoOrder.putInt(acctNext[id]++, 0, row);
+			}
+		}
+		catch (IOException exc) {
+			throw new UncheckedIOException(exc);
+		}
+	}
+
+
+	// LSD radix sort of (relative epoch second, row) pairs, RADIX_BITS per pass; being stable, ties keep row order
+	private OffHeapRecords sortChronologically() throws IOException {
+		OffHeapRecords src = new OffHeapRecords(SORT_BYTES, tempFolder);
+		src.ensureCapacity(size);
+		for (long i = 0; i < size; i++) {
+			src.putLong(i, OFF_SORT_KEY, rows.getLong(i, OFF_EPOCH_SEC) - minEpochSec);
+			src.putInt(i, OFF_SORT_ROW, (int) i);
+		}
+		if (size == 0) {
+			return src;
+		}
+
+		int keyBits = Long.SIZE - Long.numberOfLeadingZeros(maxEpochSec - minEpochSec);
+		if (keyBits == 0) {
+			return src;
+		}
+
+		OffHeapRecords dst = new OffHeapRecords(SORT_BYTES, tempFolder);
+		dst.ensureCapacity(size);
+		long[] counts = new long[1 << RADIX_BITS];
+		int mask = (1 << RADIX_BITS) - 1;
+		for (int shift = 0; shift < keyBits; shift += RADIX_BITS) {
+			Arrays.fill(counts, 0);
+			for (long i = 0; i < size; i++) {
+				counts[(int) (src.getLong(i, OFF_SORT_KEY) >>> shift) & mask]++;
+			}
+			long pos = 0;
+			for (int d = 0; d < counts.length; d++) {
+				long c = counts[d];
+				counts[d] = pos;
+				pos += c;
+			}
+			for (long i = 0; i < size; i++) {
+				long key = src.getLong(i, OFF_SORT_KEY);
+				long to = counts[(int) (key >>> shift) & mask]++;
+				dst.putLong(to, OFF_SORT_KEY, key);
+				dst.putInt(to, OFF_SORT_ROW, src.getInt(i, OFF_SORT_ROW));
+			}
+			OffHeapRecords tmp = src;
+			src = dst;
+			dst = tmp;
+		}
+		dst.close();
+		return src;
+	}
+
+
+	@Override
+	public String[] getAccounts() {
+		buildOrders();
+		List<String> acctList = new ArrayList<>();
+		for (int id = 0; id < acctCount.length; id++) {
+			if (acctCount[id] > 0) {
+				acctList.add(dict.decode(id));
+			}
+		}
+		acctList.sort(Comparator.naturalOrder());
+		return acctList.toArray(new String[acctList.size()]);
+	}
+
+
+	@Override
+	public Iterable<Cursor> getTransactions(String acct) {
+		buildOrders();
+		for (int id = 0; id < acctCount.length; id++) {
+			if (acctCount[id] > 0 && dict.decode(id).equals(acct)) {
+				long start = acctStart[id];
+				long end = start + acctCount[id];
+				return () -> new CursorIterator(acctChronoOrder, 0, start, end);
+			}
+		}
+		return () -> new CursorIterator(acctChronoOrder, 0, 0, 0);
+	}
+
+
+	@Override
+	public Iterable<Cursor> getAllTransactions() {
+		buildOrders();
+		return () -> new CursorIterator(chronoOrder, OFF_SORT_ROW, 0, size);
+	}
+
+
+	@Override
+	public long size() {
+		return size;
+	}
+
+
+	@Override
+	public void close() throws IOException {
+		rows.close();
+		if (chronoOrder != null) {
+			chronoOrder.close();
+			acctChronoOrder.close();
+		}
+	}
+
+
+	private class CursorIterator implements Iterator<Cursor> {
+
+		private final OffHeapRecords order;
+		private final int rowOffset;
+		private final long end;
+		private final Cursor cursor = new Cursor();
+		private long pos;
+
+		CursorIterator(OffHeapRecords order, int rowOffset, long start, long end) {
+			this.order = order;
+			this.rowOffset = rowOffset;
+			this.pos = start;
+			this.end = end;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return pos < end;
+		}
+
+		@Override
+		public Cursor next() {
+			if (pos >= end) {
+				throw new NoSuchElementException();
+			}
+			cursor.row = order.getInt(pos++, rowOffset);
+			return cursor;
+		}
+	}
+
+
+	// Flyweight view of the off-heap row it is currently positioned on
+	public class Cursor implements TransactionView {
+
+		private long row = 0;
+
+
+		private Long getNullableLong(int fieldOffset) {
+			long value = rows.getLong(row, fieldOffset);
+			return (value == NULL_LONG) ? null : Long.valueOf(value);
+		}
+
+		@Override
+		public String getTxnAcct() {
+			return dict.decode(rows.getInt(row, OFF_ACCT));
+		}
+
+		@Override
+		public LocalDateTime getTxnDttm() {
+			return LocalDateTime.ofEpochSecond(rows.getLong(row, OFF_EPOCH_SEC), 0, ZoneOffset.UTC);
+		}
+
+		@Override
+		public int getTxnYearInt() {
+			return LocalDate.ofEpochDay(Math.floorDiv(rows.getLong(row, OFF_EPOCH_SEC), SECONDS_PER_DAY)).getYear();
+		}
+
+		@Override
+		public TransactionType getTxnType() {
+			return TYPES[rows.getByte(row, OFF_TYPE)];
+		}
+
+		@Override
+		public String getTxnSrc() {
+			return dict.decode(rows.getInt(row, OFF_SRC));
+		}
+
+		@Override
+		public String getTxnDest() {
+			return dict.decode(rows.getInt(row, OFF_DEST));
+		}
+
+		@Override
+		public BigDecimal getTxnCoinAmnt() {
+			return rows.getDecimal(row, OFF_COIN_AMNT);
+		}
+
+		@Override
+		public BigDecimal getTxnUsdAmnt() {
+			return rows.getDecimal(row, OFF_USD_AMNT);
+		}
+
+		@Override
+		public BigDecimal getTxnUsdPerUnit() {
+			return rows.getDecimal(row, OFF_USD_PER_UNIT);
+		}
+
+		@Override
+		public BigDecimal getTxnFeeCoin() {
+			return rows.getDecimal(row, OFF_FEE_COIN);
+		}
+
+		@Override
+		public BigDecimal getTxnBrkrFeeUsd() {
+			return rows.getDecimal(row, OFF_BRKR_FEE_USD);
+		}
+
+		@Override
+		public Long getTermMos() {
+			return getNullableLong(OFF_TERM_MOS);
+		}
+
+		@Override
+		public Long getTxnHashrate() {
+			return getNullableLong(OFF_HASHRATE);
+		}
+
+		@Override
+		public long getTxnRowId() {
+			return rows.getLong(row, OFF_ROW_ID);
+		}
+
+		@Override
+		public String toString() {
+			return new Transaction(this).toString();
+		}
+	}
+
+}
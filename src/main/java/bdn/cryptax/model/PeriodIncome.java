@@ -0,0 +1,118 @@
+package bdn.cryptax.model;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+// Ordinary income, mining income and short and long-term capital gains of each account by reporting period (see
+// ReportingPeriods), for estimated tax payments. Each period holds one row of sums, category by account.
+public class PeriodIncome {
+
+	public static enum Category {
+		ORD_INCOME, MNG_INCOME, SHORTTERM_CAPGAIN, LONGTERM_CAPGAIN
+	}
+
+
+	public static final String COL_PERIOD = "Period";
+	public static final String COL_PERIOD_START = "Period Start";
+	public static final String COL_PERIOD_END = "Period End";
+	public static final String COL_ACCT = "Acct";
+	public static final String COL_YTD = "Fiscal YTD ";
+
+	private final ReportingPeriods periods;
+	private final String[] accts;
+	private final Map<String, Integer> acctToIdx = new HashMap<>();
+	private final Map<Integer, BigDecimal[]> periodToSums = new HashMap<>();
+	// transactions come in time order, so most additions go to the same period as the one before
+	private int lastPeriod = Integer.MIN_VALUE;
+	private BigDecimal[] lastSums = null;
+
+
+	public PeriodIncome(ReportingPeriods periods, String[] accts) {
+		this.periods = periods;
+		this.accts = accts;
+		for (int i = 0; i < accts.length; i++) {
+			acctToIdx.put(accts[i], i);
+		}
+	}
+
+
+	public void add(Category category, LocalDate date, String acct, BigDecimal usdAmnt) {
+		Integer acctIdx = acctToIdx.get(acct);
+		if (date == null || acctIdx == null || usdAmnt == null) {
+			return;
+		}
+		int period = periods.getPeriod(date);
+		if (period != lastPeriod) {
+			lastSums = periodToSums.computeIfAbsent(period, k -> new BigDecimal[Category.values().length * accts.length]);
+			lastPeriod = period;
+		}
+		int idx = category.ordinal() * accts.length + acctIdx;
+		lastSums[idx] = (lastSums[idx] != null) ? lastSums[idx].add(usdAmnt) : usdAmnt;
+	}
+
+
+	public ReportingPeriods getReportingPeriods() {
+		return periods;
+	}
+
+
+	public String[] getAccts() {
+		return accts;
+	}
+
+
+	// Every period from the first to the last one with any income or gains, including those in between without any
+	public int[] getPeriods() {
+		if (periodToSums.isEmpty()) {
+			return new int[0];
+		}
+		int[] keys = periodToSums.keySet().stream().mapToInt(Integer::intValue).toArray();
+		Arrays.sort(keys);
+		int first = keys[0];
+		int[] result = new int[keys[keys.length - 1] - first + 1];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = first + i;
+		}
+		return result;
+	}
+
+
+	// null if the account had none in the period
+	public BigDecimal get(int period, Category category, String acct) {
+		BigDecimal[] sums = periodToSums.get(period);
+		Integer acctIdx = acctToIdx.get(acct);
+		return (sums != null && acctIdx != null) ? sums[category.ordinal() * accts.length + acctIdx] : null;
+	}
+
+
+	// The sum from the start of the period's fiscal year through the end of the period; null if there was none
+	public BigDecimal getFiscalYearToDate(int period, Category category, String acct) {
+		BigDecimal result = null;
+		int fiscalYear = periods.getFiscalYearOfPeriod(period);
+		for (int p = period; periods.getFiscalYearOfPeriod(p) == fiscalYear; p--) {
+			BigDecimal amnt = get(p, category, acct);
+			if (amnt != null) {
+				result = (result != null) ? result.add(amnt) : amnt;
+			}
+		}
+		return result;
+	}
+
+
+	public static String getColumn(Category category) {
+		if (category == Category.ORD_INCOME) {
+			return IncomeEntry.COL_ORD_INC_USD;
+		}
+		else if (category == Category.MNG_INCOME) {
+			return IncomeEntry.COL_MNG_INC_USD;
+		}
+		else if (category == Category.SHORTTERM_CAPGAIN) {
+			return IncomeEntry.COL_CAPGAIN_SHORTTERM;
+		}
+		return IncomeEntry.COL_CAPGAIN_LONGTERM;
+	}
+
+}
@@ -0,0 +1,133 @@
+package bdn.cryptax.model;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+
+// Reporting periods (fiscal years, or their quarters or months) of a fiscal year starting on the first of a given
+// month; fiscal years are named after the calendar year they end in, so with a January start they are calendar years.
+// Periods are numbered fiscal year * periods per year + period within the year. Which period a day falls in is looked
+// up in a table from epoch day to period, built for whole fiscal years and grown when a day falls outside of them.
+public class ReportingPeriods {
+
+	public static enum PeriodType {
+		YEAR(12), QUARTER(3), MONTH(1);
+
+		private final int monthsPerPeriod;
+
+		private PeriodType(int monthsPerPeriod) {
+			this.monthsPerPeriod = monthsPerPeriod;
+		}
+
+		public int getMonthsPerPeriod() {
+			return monthsPerPeriod;
+		}
+	}
+
+
+	private final PeriodType periodType;
+	private final int fiscalYearStartMonth;
+	private final int periodsPerYear;
+	private int firstFiscalYear = 0;
+	private int lastFiscalYear = -1;
+	private long firstEpochDay = 0;
+	private int[] dayToPeriod = new int[0];
+
+
+	public ReportingPeriods(PeriodType periodType, int fiscalYearStartMonth) {
+		if (periodType == null || fiscalYearStartMonth < 1 || fiscalYearStartMonth > 12) {
+			throw new IllegalArgumentException("Reporting periods need a period type and a fiscal year start month from 1 to 12");
+		}
+		this.periodType = periodType;
+		this.fiscalYearStartMonth = fiscalYearStartMonth;
+		this.periodsPerYear = 12 / periodType.getMonthsPerPeriod();
+	}
+
+
+	public PeriodType getPeriodType() {
+		return periodType;
+	}
+
+
+	public int getFiscalYearStartMonth() {
+		return fiscalYearStartMonth;
+	}
+
+
+	public int getPeriod(LocalDate date) {
+		return getPeriod(date.toEpochDay());
+	}
+
+
+	public int getPeriod(long epochDay) {
+		long offset = epochDay - firstEpochDay;
+		if (offset < 0 || offset >= dayToPeriod.length) {
+			int fiscalYear = getFiscalYear(LocalDate.ofEpochDay(epochDay));
+			if (dayToPeriod.length == 0) {
+				build(fiscalYear, fiscalYear);
+			}
+			else {
+				build(Math.min(fiscalYear, firstFiscalYear), Math.max(fiscalYear, lastFiscalYear));
+			}
+			offset = epochDay - firstEpochDay;
+		}
+		return dayToPeriod[(int) offset];
+	}
+
+
+	private void build(int fromFiscalYear, int toFiscalYear) {
+		long fromEpochDay = getFiscalYearStart(fromFiscalYear).toEpochDay();
+		int[] table = new int[(int) (getFiscalYearStart(toFiscalYear + 1).toEpochDay() - fromEpochDay)];
+		int firstPeriod = fromFiscalYear * periodsPerYear;
+		int endPeriod = (toFiscalYear + 1) * periodsPerYear;
+		for (int period = firstPeriod; period < endPeriod; period++) {
+			int from = (int) (getStartDate(period).toEpochDay() - fromEpochDay);
+			int to = (int) (getStartDate(period + 1).toEpochDay() - fromEpochDay);
+			Arrays.fill(table, from, to, period);
+		}
+		firstFiscalYear = fromFiscalYear;
+		lastFiscalYear = toFiscalYear;
+		firstEpochDay = fromEpochDay;
+		dayToPeriod = table;
+	}
+
+
+	public int getFiscalYear(LocalDate date) {
+		return (fiscalYearStartMonth > 1 && date.getMonthValue() >= fiscalYearStartMonth) ? date.getYear() + 1 : date.getYear();
+	}
+
+
+	private LocalDate getFiscalYearStart(int fiscalYear) {
+		return LocalDate.of((fiscalYearStartMonth > 1) ? fiscalYear - 1 : fiscalYear, fiscalYearStartMonth, 1);
+	}
+
+
+	public int getFiscalYearOfPeriod(int period) {
+		return Math.floorDiv(period, periodsPerYear);
+	}
+
+
+	public LocalDate getStartDate(int period) {
+		return getFiscalYearStart(getFiscalYearOfPeriod(period))
+				.plusMonths((long) Math.floorMod(period, periodsPerYear) * periodType.getMonthsPerPeriod());
+	}
+
+
+	public LocalDate getEndDate(int period) {
+		return getStartDate(period + 1).minusDays(1);
+	}
+
+
+	// e.g., 2024 for a year, 2024-Q1 for a quarter and 2024-M01 for a month of fiscal year 2024
+	public String getLabel(int period) {
+		int fiscalYear = getFiscalYearOfPeriod(period);
+		int periodInYear = Math.floorMod(period, periodsPerYear) + 1;
+		if (periodType == PeriodType.QUARTER) {
+			return fiscalYear + "-Q" + periodInYear;
+		}
+		else if (periodType == PeriodType.MONTH) {
+			return fiscalYear + "-M" + ((periodInYear < 10) ? "0" : "") + periodInYear;
+		}
+		return String.valueOf(fiscalYear);
+	}
+
+}
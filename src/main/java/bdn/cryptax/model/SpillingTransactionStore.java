@@ -0,0 +1,372 @@
+package bdn.cryptax.model;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+import org.apache.commons.io.output.CountingOutputStream;
+
+// Bounded-memory transaction store for ledgers larger than the heap. Rows are buffered in a TransactionTable until the
+// heap budget is reached, then spilled to a temp file as a run sorted by (account, time). On first read the runs are
+// k-way merged into one file grouped by account, which the phases then stream through; the cross-account
+// chronological order is itself a k-way merge of the account segments. Ties keep their ledger order.
+public class SpillingTransactionStore implements TransactionStore {
+
+	// estimated heap cost of one buffered row, including array growth slack and the table's sort indexes
+	public static final long ESTIMATED_ROW_BYTES = 160;
+	private static final int IO_BUFFER_BYTES = 64 * 1024;
+	private static final int MAX_MERGE_FAN_IN = 64;
+
+	private final File tempFolder;
+	private final long maxBufferedRows;
+	private TransactionTable runBuffer = new TransactionTable();
+	private long bufferedRows = 0;
+	private List<File> runFiles = new ArrayList<>();
+	private long size = 0;
+
+	// built on first read: the merged file and each account's {byte offset, row count} segment in it
+	private File mergedFile = null;
+	private Map<String, long[]> acctToSegment = null;
+	private String[] accts = null;
+
+
+	public SpillingTransactionStore(File tempFolder, long heapBudgetBytes) {
+		this.tempFolder = tempFolder;
+		this.maxBufferedRows = Math.max(1, heapBudgetBytes / ESTIMATED_ROW_BYTES);
+	}
+
+
+	@Override
+	public void add(TransactionView t) {
+		if (mergedFile != null) {
+			throw new IllegalStateException("Transaction added after the store was read");
+		}
+
+		runBuffer.add(t);
+		bufferedRows++;
+		size++;
+		if (bufferedRows >= maxBufferedRows) {
+			try {
+				spill();
+			}
+			catch (IOException exc) {
+				throw new UncheckedIOException(exc);
+			}
+		}
+	}
+
+
+	private void spill() throws IOException {
+		if (bufferedRows == 0) {
+			return;
+		}
+
+		File runFile = createTempFile();
+		try (DataOutputStream out = openOutput(runFile)) {
+			for (String acct : runBuffer.getAccounts()) {
+				for (TransactionView t : runBuffer.getTransactions(acct)) {
+					TransactionCodec.write(out, t);
+				}
+			}
+		}
+		runFiles.add(runFile);
+		runBuffer = new TransactionTable();
+		bufferedRows = 0;
+	}
+
+
+	private void merge() {
+		if (mergedFile != null) {
+			return;
+		}
+
+		try {
+			spill();
+
+			// reduce the number of runs with intermediate passes; runs stay in ledger order so ties remain stable
+			while (runFiles.size() > MAX_MERGE_FAN_IN) {
+				List<File> mergedRuns = new ArrayList<>();
+				for (int i = 0; i < runFiles.size(); i += MAX_MERGE_FAN_IN) {
+					List<File> group = runFiles.subList(i, Math.min(i + MAX_MERGE_FAN_IN, runFiles.size()));
+					File mergedRun = createTempFile();
+					mergeRuns(group, mergedRun, null);
+					mergedRuns.add(mergedRun);
+				}
+				runFiles = mergedRuns;
+			}
+
+			File result = createTempFile();
+			acctToSegment = new HashMap<>();
+			mergeRuns(runFiles, result, acctToSegment);
+			runFiles = new ArrayList<>();
+			mergedFile = result;
+
+			List<String> acctList = new ArrayList<>(acctToSegment.keySet());
+			acctList.sort(Comparator.naturalOrder());
+			accts = acctList.toArray(new String[acctList.size()]);
+		}
+		catch (IOException exc) {
+			throw new UncheckedIOException(exc);
+		}
+	}
+
+
+	// k-way merge of runs sorted by (account, time); the input runs are deleted afterwards
+	private static void mergeRuns(List<File> runs, File outFile, Map<String, long[]> acctToSegment) throws IOException {
+		PriorityQueue<RunReader> readerQueue = new PriorityQueue<>(Math.max(1, runs.size()), RunReader.ORDER);
+		try {
+			for (int i = 0; i < runs.size(); i++) {
+				RunReader reader = new RunReader(runs.get(i), i);
+				if (reader.advance()) {
+					readerQueue.add(reader);
+				}
+				else {
+					reader.close();
+				}
+			}
+
+			try (CountingOutputStream counter = new CountingOutputStream(new FileOutputStream(outFile));
+					DataOutputStream out = new DataOutputStream(new BufferedOutputStream(counter, IO_BUFFER_BYTES))) {
+				long[] segment = null;
+				String segmentAcct = null;
+				while (!readerQueue.isEmpty()) {
+					RunReader reader = readerQueue.poll();
+					if (acctToSegment != null) {
+						if (!reader.row.txnAcct.equals(segmentAcct)) {
+							out.flush();
+							segmentAcct = reader.row.txnAcct;
+							segment = new long[] {counter.getByteCount(), 0};
+							acctToSegment.put(segmentAcct, segment);
+						}
+						segment[1]++;
+					}
+					TransactionCodec.write(out, reader.row);
+
+					if (reader.advance()) {
+						readerQueue.add(reader);
+					}
+					else {
+						reader.close();
+					}
+				}
+			}
+		}
+		finally {
+			for (RunReader reader : readerQueue) {
+				reader.close();
+			}
+			for (File run : runs) {
+				run.delete();
+			}
+		}
+	}
+
+
+	private File createTempFile() throws IOException {
+		File file = File.createTempFile("cryptax-", ".run", tempFolder);
+		file.deleteOnExit();
+		return file;
+	}
+
+
+	private static DataOutputStream openOutput(File file) throws IOException {
+		return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), IO_BUFFER_BYTES));
+	}
+
+
+	private static DataInputStream openInput(File file, long offset) throws IOException {
+		FileInputStream in = new FileInputStream(file);
+		in.getChannel().position(offset);
+		return new DataInputStream(new BufferedInputStream(in, IO_BUFFER_BYTES));
+	}
+
+
+	@Override
+	public String[] getAccounts() {
+		merge();
+		return accts.clone();
+	}
+
+
+	@Override
+	public Iterable<TransactionRow> getTransactions(String acct) {
+		merge();
+		long[] segment = acctToSegment.get(acct);
+		long offset = (segment != null) ? segment[0] : 0;
+		long count = (segment != null) ? segment[1] : 0;
+		return () -> new SegmentIterator(mergedFile, offset, count);
+	}
+
+
+	@Override
+	public Iterable<TransactionRow> getAllTransactions() {
+		merge();
+		return () -> new ChronologicalIterator();
+	}
+
+
+	@Override
+	public long size() {
+		return size;
+	}
+
+
+	@Override
+	public void close() throws IOException {
+		for (File run : runFiles) {
+			run.delete();
+		}
+		runFiles = new ArrayList<>();
+		if (mergedFile != null) {
+			mergedFile.delete();
+		}
+	}
+
+
+	private static class RunReader {
+
+		static final Comparator<RunReader> ORDER = Comparator.<RunReader, String>comparing(r -> r.row.txnAcct)
+				.thenComparing(r -> r.row.txnDttm)
+				.thenComparingInt(r -> r.runIndex);
+
+		final DataInputStream in;
+		final int runIndex;
+		final TransactionRow row = new TransactionRow();
+
+		RunReader(File run, int runIndex) throws IOException {
+			this.in = openInput(run, 0);
+			this.runIndex = runIndex;
+		}
+
+		boolean advance() throws IOException {
+			return TransactionCodec.read(in, row);
+		}
+
+		void close() throws IOException {
+			in.close();
+		}
+	}
+
+
+	// Streams one account's segment of the merged file through a reused TransactionRow
+	private static class SegmentIterator implements Iterator<TransactionRow> {
+
+		private final File file;
+		private final long offset;
+		private final TransactionRow row = new TransactionRow();
+		private DataInputStream in = null;
+		private long remaining;
+
+		SegmentIterator(File file, long offset, long count) {
+			this.file = file;
+			this.offset = offset;
+			this.remaining = count;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return remaining > 0;
+		}
+
+		@Override
+		public TransactionRow next() {
+			if (remaining <= 0) {
+				throw new NoSuchElementException();
+			}
+			try {
+				if (in == null) {
+					in = openInput(file, offset);
+				}
+				TransactionCodec.read(in, row);
+				remaining--;
+				if (remaining == 0) {
+					in.close();
+				}
+			}
+			catch (IOException exc) {
+				throw new UncheckedIOException(exc);
+			}
+			return row;
+		}
+	}
+
+
+	// k-way merge of all account segments by time (ties by account name)
+	private class ChronologicalIterator implements Iterator<TransactionRow> {
+
+		private final PriorityQueue<SegmentHead> headQueue = new PriorityQueue<>(Math.max(1, accts.length),
+				Comparator.<SegmentHead, LocalDateTime>comparing(h -> h.row.txnDttm).thenComparing(h -> h.row.txnAcct));
+		// the segment whose row was handed out last; it is advanced lazily so the caller can still read the row
+		private SegmentHead lastReturned = null;
+
+		ChronologicalIterator() {
+			for (String acct : accts) {
+				long[] segment = acctToSegment.get(acct);
+				SegmentHead head = new SegmentHead(new SegmentIterator(mergedFile, segment[0], segment[1]));
+				if (head.advance()) {
+					headQueue.add(head);
+				}
+			}
+		}
+
+		private void advanceLastReturned() {
+			if (lastReturned != null) {
+				if (lastReturned.advance()) {
+					headQueue.add(lastReturned);
+				}
+				lastReturned = null;
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			advanceLastReturned();
+			return !headQueue.isEmpty();
+		}
+
+		@Override
+		public TransactionRow next() {
+			advanceLastReturned();
+			lastReturned = headQueue.poll();
+			if (lastReturned == null) {
+				throw new NoSuchElementException();
+			}
+			return lastReturned.row;
+		}
+	}
+
+
+	private static class SegmentHead {
+
+		final SegmentIterator iter;
+		TransactionRow row = null;
+
+		SegmentHead(SegmentIterator iter) {
+			this.iter = iter;
+		}
+
+		boolean advance() {
+			if (!iter.hasNext()) {
+				return false;
+			}
+			row = iter.next();
+			return true;
+		}
+	}
+
+}
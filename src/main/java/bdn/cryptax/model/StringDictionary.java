@@ -0,0 +1,40 @@
+package bdn.cryptax.model;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Maps repeated strings (accounts, brokers) to dense int ids; null maps to NULL_ID
+class StringDictionary {
+
+	static final int NULL_ID = -1;
+
+	private Map<String, Integer> strToId = new HashMap<>();
+	private List<String> idToStr = new ArrayList<>();
+
+
+	int encode(String str) {
+		if (str == null) {
+			return NULL_ID;
+		}
+		Integer id = strToId.get(str);
+		if (id == null) {
+			id = idToStr.size();
+			strToId.put(str, id);
+			idToStr.add(str);
+		}
+		return id;
+	}
+
+
+	String decode(int id) {
+		return (id == NULL_ID) ? null : idToStr.get(id);
+	}
+
+
+	int size() {
+		return idToStr.size();
+	}
+
+}
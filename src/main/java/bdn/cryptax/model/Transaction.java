@@ -3,13 +3,15 @@ package bdn.cryptax.model;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Map;
 
 import org.apache.commons.csv.CSVRecord;
 
-import bdn.cryptax.model.TransactionException.TransactionExceptionType;
+import bdn.cryptax.model.TransactionValidator.ValidationCode;
 
-public class Transaction {
+public class Transaction implements TransactionView {
 
 	public static final String COL_TXN_ACCT = "Acct";
 	public static final String COL_TXN_DTTM = "UTC Dttm";
@@ -28,20 +30,21 @@ public class Transaction {
 		ACQUIRE, DISPOSE, TRANSFER, INCOME, MNG_INCOME, MNG_PURCHASE, MNG_REINVEST
 	}
 	
-	public static HashMap<String, TransactionType> typeStrToEnum = new HashMap<>();
+	// read-only, so it can be shared by concurrent computations
+	public static final Map<String, TransactionType> typeStrToEnum;
 	static {
-		typeStrToEnum.put("acq", TransactionType.ACQUIRE);
-		typeStrToEnum.put("disp", TransactionType.DISPOSE);
-		typeStrToEnum.put("tran", TransactionType.TRANSFER);
-		typeStrToEnum.put("inc", TransactionType.INCOME);
-		typeStrToEnum.put("minc", TransactionType.MNG_INCOME);
-		typeStrToEnum.put("mpur", TransactionType.MNG_PURCHASE);
-		typeStrToEnum.put("mre", TransactionType.MNG_REINVEST);
+		Map<String, TransactionType> map = new HashMap<>();
+		map.put("acq", TransactionType.ACQUIRE);
+		map.put("disp", TransactionType.DISPOSE);
+		map.put("tran", TransactionType.TRANSFER);
+		map.put("inc", TransactionType.INCOME);
+		map.put("minc", TransactionType.MNG_INCOME);
+		map.put("mpur", TransactionType.MNG_PURCHASE);
+		map.put("mre", TransactionType.MNG_REINVEST);
+		typeStrToEnum = Collections.unmodifiableMap(map);
 	}
 	
 
-	private static final DateTimeFormatter DTF_DASH = DateTimeFormatter.ofPattern("yyyy-M-d H:mm");
-	private static final DateTimeFormatter DTF_SLASH = DateTimeFormatter.ofPattern("M/d/yyyy H:mm");
 	private static final DateTimeFormatter DTF_YEAR = DateTimeFormatter.ofPattern("yyyy");
 	
 	private String txnAcct = null;
@@ -56,196 +59,40 @@ public class Transaction {
 	private BigDecimal txnBrkrFeeUsd = null;
 	private Long termMos = null;
 	private Long txnHashrate = null;
+	private long txnRowId = 0;
+	
+	
+	public Transaction(TransactionView t) {
+		txnAcct = t.getTxnAcct();
+		txnDttm = t.getTxnDttm();
+		txnType = t.getTxnType();
+		txnSrc = t.getTxnSrc();
+		txnDest = t.getTxnDest();
+		txnCoinAmnt = t.getTxnCoinAmnt();
+		txnUsdAmnt = t.getTxnUsdAmnt();
+		txnUsdPerUnit = t.getTxnUsdPerUnit();
+		txnFeeCoin = t.getTxnFeeCoin();
+		txnBrkrFeeUsd = t.getTxnBrkrFeeUsd();
+		termMos = t.getTermMos();
+		txnHashrate = t.getTxnHashrate();
+		txnRowId = t.getTxnRowId();
+	}
 	
 	
 	public Transaction(CSVRecord csvRecord) throws TransactionException {
-		if (csvRecord == null) {
-			throw new TransactionException(TransactionExceptionType.EMPTY_DATA, "Empty CSV Record");
-		}
-		if (!csvRecord.isConsistent()) {
-			throw new TransactionException(TransactionExceptionType.INVALID_DATA, "Inconsistent CSV Record #"+csvRecord.getRecordNumber());
-		}
-		
-		// Optional field (empty string if not specified)
-		try {
-			String csvTxnAcct = csvRecord.get(COL_TXN_ACCT);
-			if (csvTxnAcct != null) {
-				txnAcct = csvTxnAcct.trim();
-			}
-			else {
-				txnAcct = "";
-			}
-		}
-		catch (Exception exc) {
-			txnAcct = "";
-		}
-		
-		// Mandatory field
-		try {
-			String csvTxnDttm = csvRecord.get(COL_TXN_DTTM);
-			if (csvTxnDttm.contains("-")) {
-				txnDttm = LocalDateTime.parse(csvTxnDttm, DTF_DASH);
-			}
-			else {
-				txnDttm = LocalDateTime.parse(csvTxnDttm, DTF_SLASH);
-			}
-		}
-		catch (Exception exc) {
-			throw new TransactionException(TransactionExceptionType.INVALID_DATA, "Unparsable COL_TXN_DTTM in CSV Record #"+
-					csvRecord.getRecordNumber() +": "+exc.getMessage());
-		}
-		
-		// Mandatory field
-		try {
-			String csvTxnType = csvRecord.get(COL_TXN_TYPE);
-			if (csvTxnType != null && !csvTxnType.trim().equals("")) {
-				txnType = typeStrToEnum.get(csvTxnType);
-			}
-			if (txnType == null) {
-				throw new TransactionException(TransactionExceptionType.EMPTY_DATA, "CSV Record #"+csvRecord.getRecordNumber()+
-						" contained empty COL_TXN_TYPE");
-			}
-		}
-		catch (TransactionException tExc) {
-			throw tExc;
-		}
-		catch (Exception exc) {
-			throw new TransactionException(TransactionExceptionType.INVALID_DATA, "Unparsable COL_TXN_TYPE in CSV Record #"+
-					csvRecord.getRecordNumber() +": "+exc.getMessage());
-		}
-		
-		// Optional field (mandatory if not of MNG_PURCHASE type)
-		try {
-			String csvTxnCoinAmnt = csvRecord.get(COL_TXN_COIN_AMNT);
-			if (csvTxnCoinAmnt != null && !csvTxnCoinAmnt.trim().equals("")) {
-				txnCoinAmnt = new BigDecimal(csvTxnCoinAmnt);
-			}
-		}
-		catch (Exception exc) {
-			throw new TransactionException(TransactionExceptionType.INVALID_DATA, "Unparsable COL_TXN_COIN_AMNT in CSV Record #"+
-					csvRecord.getRecordNumber() +": "+exc.getMessage());
-		}
-		
-		// Optional field
-		try {
-			String csvTxnUsdAmnt = csvRecord.get(COL_TXN_USD_AMNT);
-			if (csvTxnUsdAmnt != null && !csvTxnUsdAmnt.trim().equals("")) {
-				txnUsdAmnt = new BigDecimal(csvTxnUsdAmnt);
-			}
-		}
-		catch (Exception exc) {
-			throw new TransactionException(TransactionExceptionType.INVALID_DATA, "Unparsable COL_TXN_USD_AMNT in CSV Record #"+
-					csvRecord.getRecordNumber() +": "+exc.getMessage());
-		}
-		
-		// Optional field
-		try {
-			String csvTxnUsdPerUnit = csvRecord.get(COL_TXN_USD_PER_UNIT);
-			if (csvTxnUsdPerUnit != null && !csvTxnUsdPerUnit.trim().equals("")) {
-				txnUsdPerUnit = new BigDecimal(csvTxnUsdPerUnit);
-			}
-		}
-		catch (Exception exc) {
-			throw new TransactionException(TransactionExceptionType.INVALID_DATA, "Unparsable COL_TXN_USD_PER_UNIT in CSV Record #"+
-					csvRecord.getRecordNumber() +": "+exc.getMessage());
-		}
-		
-		// Optional field
-		try {
-			String csvTxnFeeCoin = csvRecord.get(COL_TXN_FEE_COIN);
-			if (csvTxnFeeCoin != null && !csvTxnFeeCoin.trim().equals("")) {
-				txnFeeCoin = new BigDecimal(csvTxnFeeCoin);
-			}
-		}
-		catch (Exception exc) {
-			throw new TransactionException(TransactionExceptionType.INVALID_DATA, "Unparsable COL_TXN_FEE_COIN in CSV Record #"+
-					csvRecord.getRecordNumber() +": "+exc.getMessage());
-		}
-		
-		// Optional field
-		try {
-			String csvTxnBrkrFeeUsd = csvRecord.get(COL_TXN_BRKR_FEE_USD);
-			if (csvTxnBrkrFeeUsd != null && !csvTxnBrkrFeeUsd.trim().equals("")) {
-				txnBrkrFeeUsd = new BigDecimal(csvTxnBrkrFeeUsd);
-			}
-		}
-		catch (Exception exc) {
-			throw new TransactionException(TransactionExceptionType.INVALID_DATA, "Unparsable COL_TXN_BRKR_FEE_USD in CSV Record #"+
-					csvRecord.getRecordNumber() +": "+exc.getMessage());
-		}
-		
-		// Optional field (the presence of the column is also optional)
-		try {
-			String csvTermMos = csvRecord.get(COL_TERM_MOS);
-			if (csvTermMos != null && !csvTermMos.trim().equals("")) {
-				termMos = Long.parseLong(csvTermMos);
-			}
-		}
-		catch (Exception exc) {
-			termMos = null;
-		}
-		
-		// Optional field (the presence of the column is also optional)
-		try {
-			String csvTxnSrc = csvRecord.get(COL_TXN_SRC);
-			if (csvTxnSrc != null) {
-				txnSrc = csvTxnSrc.trim();
-			}
-		}
-		catch (Exception exc) {
-			txnSrc = null;
-		}
-		
-		// Optional field (the presence of the column is also optional)
-		try {
-			String csvTxnDest = csvRecord.get(COL_TXN_DEST);
-			if (csvTxnDest != null) {
-				txnDest = csvTxnDest.trim();
-			}
-		}
-		catch (Exception exc) {
-			txnDest = null;
-		}
-		
-		// Optional field (the presence of the column is also optional)
-		try {
-			String csvTxnHashrate = csvRecord.get(COL_TXN_HASHRATE);
-			if (csvTxnHashrate != null && !csvTxnHashrate.trim().equals("")) {
-				txnHashrate = Long.parseLong(csvTxnHashrate);
-			}
-		}
-		catch (Exception exc) {
-			txnHashrate = null;
-		}
-		
-		// Validate for required combinations of fields
-		if (txnType == TransactionType.ACQUIRE || txnType == TransactionType.INCOME || txnType == TransactionType.DISPOSE ||
-				txnType == TransactionType.MNG_INCOME) {
-			if ((txnCoinAmnt == null) || (txnUsdAmnt == null && txnUsdPerUnit == null)) {
-				throw new TransactionException(TransactionExceptionType.INVALID_DATA, "CSV Record #"+
-						csvRecord.getRecordNumber() +" has empty COL_TXN_COIN_AMNT or COL_TXN_USD_AMNT and COL_TXN_USD_PER_UNIT");
-			}
-		}
-		else if (txnType == TransactionType.TRANSFER) {
-			if ((txnCoinAmnt == null) || (txnFeeCoin != null && (txnUsdPerUnit == null && txnUsdAmnt == null))) {
-				throw new TransactionException(TransactionExceptionType.INVALID_DATA, "CSV Record #" + csvRecord.getRecordNumber() +
-						" has empty COL_TXN_COIN_AMNT or non-empty COL_TXN_FEE_COIN but empty COL_TXN_USD_AMNT and COL_TXN_USD_PER_UNIT");
-			}
-		}
-		else if (txnType == TransactionType.MNG_PURCHASE || txnType == TransactionType.MNG_REINVEST) {
-			if (termMos == null || txnHashrate == null) {
-				throw new TransactionException(TransactionExceptionType.INVALID_DATA, "CSV Record #"+csvRecord.getRecordNumber()+
-						" contained empty COL_TERM_MOS or COL_TXN_HASHRATE");
-			}
-			if (txnCoinAmnt == null && txnUsdAmnt == null) {
-				throw new TransactionException(TransactionExceptionType.INVALID_DATA, "CSV Record #"+csvRecord.getRecordNumber()+
-						" contained empty COL_TXN_COIN_AMNT and COL_TXN_USD_AMNT");
-			}
-			if ((txnCoinAmnt != null) && (txnUsdAmnt == null && txnUsdPerUnit == null)) {
-				throw new TransactionException(TransactionExceptionType.INVALID_DATA, "CSV Record #"+
-						csvRecord.getRecordNumber() +" has empty COL_TXN_USD_AMNT and COL_TXN_USD_PER_UNIT");
-			}
+		this(validate(csvRecord));
+	}
+	
+	
+	private static TransactionRow validate(CSVRecord csvRecord) throws TransactionException {
+		TransactionValidator validator = new TransactionValidator();
+		TransactionRow row = new TransactionRow();
+		ValidationCode code = validator.validate(csvRecord, row);
+		if (code != ValidationCode.OK) {
+			long recordNumber = (csvRecord != null) ? csvRecord.getRecordNumber() : 0;
+			throw new TransactionException(code.getType(), validator.getMessage(code, recordNumber));
 		}
+		return row;
 	}
 
 
@@ -265,7 +112,7 @@ public class Transaction {
 	
 	
 	public int getTxnYearInt() {
-		return Integer.parseInt(getTxnYearStr());
+		return txnDttm.getYear();
 	}
 
 
@@ -294,19 +141,6 @@ public class Transaction {
 	}
 
 
-	public BigDecimal getCalculatedTxnUsdAmnt() throws TransactionException {
-		BigDecimal result = txnUsdAmnt;
-		if (result == null) {
-			if (txnCoinAmnt == null || txnUsdPerUnit == null) {
-				throw new TransactionException(TransactionExceptionType.INVALID_DATA, "Transaction dated "+
-						getTxnDttm() +" could not calculate TXN_USD_AMNT because of insufficient data");
-			}
-			result = txnCoinAmnt.multiply(txnUsdPerUnit);
-		}
-		return result;
-	}
-
-
 	public BigDecimal getTxnUsdPerUnit() {
 		return txnUsdPerUnit;
 	}
@@ -332,6 +166,11 @@ public class Transaction {
 	}
 
 
+	public long getTxnRowId() {
+		return txnRowId;
+	}
+
+
 	@Override
 	public String toString() {
 		StringBuffer buf = new StringBuffer();
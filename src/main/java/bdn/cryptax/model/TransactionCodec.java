@@ -0,0 +1,118 @@
+package bdn.cryptax.model;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.EOFException;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+import bdn.cryptax.model.Transaction.TransactionType;
+
+// Compact binary encoding of transactions for temporary spill files
+class TransactionCodec {
+
+	private static final TransactionType[] TYPES = TransactionType.values();
+	private static final int NULL_LEN = -1;
+
+
+	static void write(DataOutput out, TransactionView t) throws IOException {
+		writeFields(out, t);
+		out.writeLong(t.getTxnRowId());
+	}
+
+
+	// Every field but the row id, which only says where in the ledger the transaction was read from
+	static void writeFields(DataOutput out, TransactionView t) throws IOException {
+		String acct = t.getTxnAcct();
+		out.writeUTF((acct == null) ? "" : acct.trim());
+		out.writeLong(t.getTxnDttm().toEpochSecond(ZoneOffset.UTC));
+		out.writeByte(t.getTxnType().ordinal());
+		writeString(out, t.getTxnSrc());
+		writeString(out, t.getTxnDest());
+		writeDecimal(out, t.getTxnCoinAmnt());
+		writeDecimal(out, t.getTxnUsdAmnt());
+		writeDecimal(out, t.getTxnUsdPerUnit());
+		writeDecimal(out, t.getTxnFeeCoin());
+		writeDecimal(out, t.getTxnBrkrFeeUsd());
+		writeLong(out, t.getTermMos());
+		writeLong(out, t.getTxnHashrate());
+	}
+
+
+	// Returns false at the end of the stream
+	static boolean read(DataInput in, TransactionRow row) throws IOException {
+		try {
+			row.txnAcct = in.readUTF();
+		}
+		catch (EOFException exc) {
+			return false;
+		}
+		row.txnDttm = LocalDateTime.ofEpochSecond(in.readLong(), 0, ZoneOffset.UTC);
+		row.txnType = TYPES[in.readByte()];
+		row.txnSrc = readString(in);
+		row.txnDest = readString(in);
+		row.txnCoinAmnt = readDecimal(in);
+		row.txnUsdAmnt = readDecimal(in);
+		row.txnUsdPerUnit = readDecimal(in);
+		row.txnFeeCoin = readDecimal(in);
+		row.txnBrkrFeeUsd = readDecimal(in);
+		row.termMos = readLong(in);
+		row.txnHashrate = readLong(in);
+		row.txnRowId = in.readLong();
+		return true;
+	}
+
+
+	private static void writeString(DataOutput out, String value) throws IOException {
+		out.writeBoolean(value != null);
+		if (value != null) {
+			out.writeUTF(value);
+		}
+	}
+
+
+	private static String readString(DataInput in) throws IOException {
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+
+
+	private static void writeLong(DataOutput out, Long value) throws IOException {
+		out.writeBoolean(value != null);
+		if (value != null) {
+			out.writeLong(value);
+		}
+	}
+
+
+	private static Long readLong(DataInput in) throws IOException {
+		return in.readBoolean() ? in.readLong() : null;
+	}
+
+
+	// unscaled byte length (or NULL_LEN), unscaled two's complement bytes, scale
+	private static void writeDecimal(DataOutput out, BigDecimal value) throws IOException {
+		if (value == null) {
+			out.writeShort(NULL_LEN);
+			return;
+		}
+		byte[] unscaled = value.unscaledValue().toByteArray();
+		out.writeShort(unscaled.length);
+		out.write(unscaled);
+		out.writeInt(value.scale());
+	}
+
+
+	private static BigDecimal readDecimal(DataInput in) throws IOException {
+		int len = in.readShort();
+		if (len == NULL_LEN) {
+			return null;
+		}
+		byte[] unscaled = new byte[len];
+		in.readFully(unscaled);
+		return new BigDecimal(new BigInteger(unscaled), in.readInt());
+	}
+
+}
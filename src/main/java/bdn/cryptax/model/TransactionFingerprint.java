@@ -0,0 +1,49 @@
+package bdn.cryptax.model;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+// Content hash (SHA-256) of an account's transactions in their processing order, used to recognize unchanged accounts
+// across computations. Every field but the row id takes part, in the binary encoding of TransactionCodec, so values that
+// only differ in scale (e.g., 1.0 and 1.00) still produce different fingerprints. Leaving the row id out keeps accounts
+// unchanged when rows are inserted or removed elsewhere in the ledger; see AccountResultCache for their cached row ids.
+public class TransactionFingerprint {
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+
+	public static String of(String acct, Iterable<? extends TransactionView> tList) {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		}
+		catch (NoSuchAlgorithmException exc) {
+			// every Java platform is required to support SHA-256
+			throw new IllegalStateException(exc);
+		}
+
+		try (DataOutputStream out = new DataOutputStream(new DigestOutputStream(OutputStream.nullOutputStream(), digest))) {
+			out.writeUTF(acct == null ? "" : acct);
+			for (TransactionView t : tList) {
+				TransactionCodec.writeFields(out, t);
+			}
+		}
+		catch (IOException exc) {
+			throw new UncheckedIOException(exc);
+		}
+
+		byte[] hash = digest.digest();
+		char[] result = new char[hash.length * 2];
+		for (int i = 0; i < hash.length; i++) {
+			result[2 * i] = HEX[(hash[i] >> 4) & 0xf];
+			result[2 * i + 1] = HEX[hash[i] & 0xf];
+		}
+		return new String(result);
+	}
+
+}
@@ -0,0 +1,91 @@
+package bdn.cryptax.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Keeps one Transaction object per ledger row, grouped by account
+public class TransactionListStore implements TransactionStore {
+
+	private Map<String, List<Transaction>> tListMap = new HashMap<>();
+	private long size = 0;
+	private boolean sorted = false;
+
+
+	@Override
+	public void add(TransactionView t) {
+		if (sorted) {
+			throw new IllegalStateException("Transaction added after the store was read");
+		}
+
+		String acct = t.getTxnAcct();
+		if (acct == null) {
+			// account "" is the default account, if one is not defined
+			acct = "";
+		}
+		acct = acct.trim();
+
+		List<Transaction> tList = tListMap.get(acct);
+		if (tList == null) {
+			tList = new ArrayList<>();
+			tListMap.put(acct, tList);
+		}
+
+		tList.add((t instanceof Transaction) ? (Transaction) t : new Transaction(t));
+		size++;
+	}
+
+
+	private void sort() {
+		if (sorted) {
+			return;
+		}
+		// Sort all transactions in chronological order (stable, so ties keep their ledger order)
+		TransactionComparator tc = new TransactionComparator();
+		for (List<Transaction> tList : tListMap.values()) {
+			tList.sort(tc);
+		}
+		sorted = true;
+	}
+
+
+	@Override
+	public String[] getAccounts() {
+		Set<String> acctSet = tListMap.keySet();
+		String[] result = acctSet.toArray(new String[acctSet.size()]);
+		Arrays.sort(result, Comparator.naturalOrder());
+		return result;
+	}
+
+
+	@Override
+	public List<Transaction> getTransactions(String acct) {
+		sort();
+		List<Transaction> result = tListMap.get(acct);
+		return (result != null) ? result : new ArrayList<>();
+	}
+
+
+	@Override
+	public List<Transaction> getAllTransactions() {
+		sort();
+		// Combine and sort all transactions in chronological order
+		List<Transaction> result = new ArrayList<>();
+		for (List<Transaction> tList : tListMap.values()) {
+			result.addAll(tList);
+		}
+		result.sort(new TransactionComparator());
+		return result;
+	}
+
+
+	@Override
+	public long size() {
+		return size;
+	}
+
+}
@@ -14,6 +14,10 @@ public class TransactionMemento {
 	public String src = null;
 	// Destination (broker)
 	public String dest = null;
+	// CSV record number of the transaction's ledger row (see TransactionView.getTxnRowId)
+	public long rowId = 0;
+	// Position of the lot among its account's acquisitions (used by LotBook)
+	public long lotId = 0;
 	
 	public TransactionMemento() {}
 	
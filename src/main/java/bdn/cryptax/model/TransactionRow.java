@@ -0,0 +1,118 @@
+package bdn.cryptax.model;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+import bdn.cryptax.model.Transaction.TransactionType;
+
+// Mutable, reusable holder of one transaction's fields (e.g., a row decoded from a spill file)
+public class TransactionRow implements TransactionView {
+
+	public String txnAcct = null;
+	public LocalDateTime txnDttm = null;
+	public TransactionType txnType = null;
+	public String txnSrc = null;
+	public String txnDest = null;
+	public BigDecimal txnCoinAmnt = null;
+	public BigDecimal txnUsdAmnt = null;
+	public BigDecimal txnUsdPerUnit = null;
+	public BigDecimal txnFeeCoin = null;
+	public BigDecimal txnBrkrFeeUsd = null;
+	public Long termMos = null;
+	public Long txnHashrate = null;
+	public long txnRowId = 0;
+
+
+	public void clear() {
+		txnAcct = null;
+		txnDttm = null;
+		txnType = null;
+		txnSrc = null;
+		txnDest = null;
+		txnCoinAmnt = null;
+		txnUsdAmnt = null;
+		txnUsdPerUnit = null;
+		txnFeeCoin = null;
+		txnBrkrFeeUsd = null;
+		termMos = null;
+		txnHashrate = null;
+		txnRowId = 0;
+	}
+
+
+	@Override
+	public String getTxnAcct() {
+		return txnAcct;
+	}
+
+	@Override
+	public LocalDateTime getTxnDttm() {
+		return txnDttm;
+	}
+
+	@Override
+	public int getTxnYearInt() {
+		return txnDttm.getYear();
+	}
+
+	@Override
+	public TransactionType getTxnType() {
+		return txnType;
+	}
+
+	@Override
+	public String getTxnSrc() {
+		return txnSrc;
+	}
+
+	@Override
+	public String getTxnDest() {
+		return txnDest;
+	}
+
+	@Override
+	public BigDecimal getTxnCoinAmnt() {
+		return txnCoinAmnt;
+	}
+
+	@Override
+	public BigDecimal getTxnUsdAmnt() {
+		return txnUsdAmnt;
+	}
+
+	@Override
+	public BigDecimal getTxnUsdPerUnit() {
+		return txnUsdPerUnit;
+	}
+
+	@Override
+	public BigDecimal getTxnFeeCoin() {
+		return txnFeeCoin;
+	}
+
+	@Override
+	public BigDecimal getTxnBrkrFeeUsd() {
+		return txnBrkrFeeUsd;
+	}
+
+	@Override
+	public Long getTermMos() {
+		return termMos;
+	}
+
+	@Override
+	public Long getTxnHashrate() {
+		return txnHashrate;
+	}
+
+	@Override
+	public long getTxnRowId() {
+		return txnRowId;
+	}
+
+	@Override
+	public String toString() {
+		return new Transaction(this).toString();
+	}
+
+}
@@ -0,0 +1,16 @@
+package bdn.cryptax.model;
+
+// A ledger's transactions, grouped by account and ordered chronologically (ties keep their ledger order)
+public interface TransactionSource {
+
+	// Sorted account names
+	String[] getAccounts();
+
+	Iterable<? extends TransactionView> getTransactions(String acct);
+
+	// Transactions of all accounts merged in chronological order
+	Iterable<? extends TransactionView> getAllTransactions();
+
+	long size();
+
+}
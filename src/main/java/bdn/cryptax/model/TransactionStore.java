@@ -0,0 +1,17 @@
+package bdn.cryptax.model;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+// A TransactionSource that is populated during ingest. Transactions must all be added before the store is first read.
+// Stores that hold resources outside the heap release them on close.
+public interface TransactionStore extends TransactionSource, Closeable {
+
+	void add(TransactionView t);
+
+
+	@Override
+	default void close() throws IOException {
+	}
+
+}
@@ -0,0 +1,318 @@
+package bdn.cryptax.model;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import bdn.cryptax.model.Transaction.TransactionType;
+
+// Columnar (struct-of-arrays) transaction storage. Each row costs roughly 80 bytes instead of one Transaction object
+// graph per row: timestamps are primitive epoch seconds, types are bytes, accounts and brokers are dictionary ids,
+// and amounts are compact decimals. Rows are read through a flyweight Cursor that is repositioned on every step of
+// an iteration, so the phases never materialize one object per row.
+public class TransactionTable implements TransactionStore {
+
+	private static final int INITIAL_CAPACITY = 1024;
+	private static final long NULL_LONG = Long.MIN_VALUE;
+	private static final TransactionType[] TYPES = TransactionType.values();
+	private static final int SECONDS_PER_DAY = 24 * 60 * 60;
+
+	private int size = 0;
+	private long[] epochSecs = new long[INITIAL_CAPACITY];
+	private byte[] types = new byte[INITIAL_CAPACITY];
+	private int[] acctIds = new int[INITIAL_CAPACITY];
+	private int[] srcIds = new int[INITIAL_CAPACITY];
+	private int[] destIds = new int[INITIAL_CAPACITY];
+	private long[] termMos = new long[INITIAL_CAPACITY];
+	private long[] hashrates = new long[INITIAL_CAPACITY];
+	private long[] rowIds = new long[INITIAL_CAPACITY];
+	private DecimalColumn coinAmnts = new DecimalColumn(INITIAL_CAPACITY);
+	private DecimalColumn usdAmnts = new DecimalColumn(INITIAL_CAPACITY);
+	private DecimalColumn usdPerUnits = new DecimalColumn(INITIAL_CAPACITY);
+	private DecimalColumn feeCoins = new DecimalColumn(INITIAL_CAPACITY);
+	private DecimalColumn brkrFeeUsds = new DecimalColumn(INITIAL_CAPACITY);
+	private StringDictionary dict = new StringDictionary();
+
+	// Row orders, built on first read: all rows chronologically, and each account's rows chronologically
+	private int[] chronoOrder = null;
+	private Map<String, int[]> acctToChronoOrder = null;
+
+
+	@Override
+	public void add(TransactionView t) {
+		if (chronoOrder != null) {
+			throw new IllegalStateException("Transaction added after the table was read");
+		}
+		ensureCapacity(size + 1);
+
+		int row = size;
+		String acct = t.getTxnAcct();
+		acctIds[row] = dict.encode((acct == null) ? "" : acct.trim());
+		epochSecs[row] = t.getTxnDttm().toEpochSecond(ZoneOffset.UTC);
+		types[row] = (byte) t.getTxnType().ordinal();
+		srcIds[row] = dict.encode(t.getTxnSrc());
+		destIds[row] = dict.encode(t.getTxnDest());
+		termMos[row] = toPrimitive(t.getTermMos());
+		hashrates[row] = toPrimitive(t.getTxnHashrate());
+		rowIds[row] = t.getTxnRowId();
+		coinAmnts.set(row, t.getTxnCoinAmnt());
+		usdAmnts.set(row, t.getTxnUsdAmnt());
+		usdPerUnits.set(row, t.getTxnUsdPerUnit());
+		feeCoins.set(row, t.getTxnFeeCoin());
+		brkrFeeUsds.set(row, t.getTxnBrkrFeeUsd());
+		size++;
+	}
+
+
+	private void ensureCapacity(int capacity) {
+		if (capacity <= epochSecs.length) {
+			return;
+		}
+		int newCapacity = Math.max(capacity, epochSecs.length + (epochSecs.length >> 1));
+		epochSecs = Arrays.copyOf(epochSecs, newCapacity);
+		types = Arrays.copyOf(types, newCapacity);
+		acctIds = Arrays.copyOf(acctIds, newCapacity);
+		srcIds = Arrays.copyOf(srcIds, newCapacity);
+		destIds = Arrays.copyOf(destIds, newCapacity);
+		termMos = Arrays.copyOf(termMos, newCapacity);
+		hashrates = Arrays.copyOf(hashrates, newCapacity);
+		rowIds = Arrays.copyOf(rowIds, newCapacity);
+		coinAmnts.ensureCapacity(newCapacity);
+		usdAmnts.ensureCapacity(newCapacity);
+		usdPerUnits.ensureCapacity(newCapacity);
+		feeCoins.ensureCapacity(newCapacity);
+		brkrFeeUsds.ensureCapacity(newCapacity);
+	}
+
+
+	private static long toPrimitive(Long value) {
+		return (value == null) ? NULL_LONG : value.longValue();
+	}
+
+
+	private static Long toBoxed(long value) {
+		return (value == NULL_LONG) ? null : Long.valueOf(value);
+	}
+
+
+	private void buildOrders() {
+		if (chronoOrder != null) {
+			return;
+		}
+		chronoOrder = sortChronologically(epochSecs, size);
+
+		// stable partition of the chronological order by account
+		int[] acctCounts = new int[dict.size()];
+		for (int i = 0; i < size; i++) {
+			acctCounts[acctIds[i]]++;
+		}
+		int[][] acctOrders = new int[dict.size()][];
+		for (int id = 0; id < acctCounts.length; id++) {
+			if (acctCounts[id] > 0) {
+				acctOrders[id] = new int[acctCounts[id]];
+				acctCounts[id] = 0;
+			}
+		}
+		for (int row : chronoOrder) {
+			int id = acctIds[row];
+			acctOrders[id][acctCounts[id]++] = row;
+		}
+
+		acctToChronoOrder = new HashMap<>();
+		for (int id = 0; id < acctOrders.length; id++) {
+			if (acctOrders[id] != null) {
+				acctToChronoOrder.put(dict.decode(id), acctOrders[id]);
+			}
+		}
+	}
+
+
+	// Row indexes sorted by timestamp (or any other long key), ties in row order
+	static int[] sortChronologically(long[] epochSecs, int size) {
+		int[] result = new int[size];
+		if (size == 0) {
+			return result;
+		}
+
+		long minSec = Long.MAX_VALUE;
+		long maxSec = Long.MIN_VALUE;
+		for (int i = 0; i < size; i++) {
+			minSec = Math.min(minSec, epochSecs[i]);
+			maxSec = Math.max(maxSec, epochSecs[i]);
+		}
+
+		if (maxSec - minSec < (1L << 32)) {
+			// pack (relative seconds, row) into one long so that a primitive sort yields a stable chronological order
+			long[] keys = new long[size];
+			for (int i = 0; i < size; i++) {
+				keys[i] = ((epochSecs[i] - minSec) << 31) | i;
+			}
+			Arrays.sort(keys);
+			for (int i = 0; i < size; i++) {
+				result[i] = (int) (keys[i] & Integer.MAX_VALUE);
+			}
+		}
+		else {
+			// ledgers spanning more than ~136 years fall back to a boxed (stable) sort
+			Integer[] rows = new Integer[size];
+			for (int i = 0; i < size; i++) {
+				rows[i] = i;
+			}
+			Arrays.sort(rows, Comparator.comparingLong(i -> epochSecs[i]));
+			for (int i = 0; i < size; i++) {
+				result[i] = rows[i];
+			}
+		}
+		return result;
+	}
+
+
+	@Override
+	public String[] getAccounts() {
+		buildOrders();
+		List<String> acctList = new ArrayList<>(acctToChronoOrder.keySet());
+		acctList.sort(Comparator.naturalOrder());
+		return acctList.toArray(new String[acctList.size()]);
+	}
+
+
+	@Override
+	public Iterable<Cursor> getTransactions(String acct) {
+		buildOrders();
+		int[] order = acctToChronoOrder.get(acct);
+		int[] rows = (order != null) ? order : new int[0];
+		return () -> new CursorIterator(rows);
+	}
+
+
+	@Override
+	public Iterable<Cursor> getAllTransactions() {
+		buildOrders();
+		return () -> new CursorIterator(chronoOrder);
+	}
+
+
+	@Override
+	public long size() {
+		return size;
+	}
+
+
+	private class CursorIterator implements Iterator<Cursor> {
+
+		private final int[] rows;
+		private final Cursor cursor = new Cursor();
+		private int pos = 0;
+
+		CursorIterator(int[] rows) {
+			this.rows = rows;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return pos < rows.length;
+		}
+
+		@Override
+		public Cursor next() {
+			if (pos >= rows.length) {
+				throw new NoSuchElementException();
+			}
+			cursor.row = rows[pos++];
+			return cursor;
+		}
+	}
+
+
+	// Flyweight view of the table row it is currently positioned on
+	public class Cursor implements TransactionView {
+
+		private int row = 0;
+
+
+		@Override
+		public String getTxnAcct() {
+			return dict.decode(acctIds[row]);
+		}
+
+		@Override
+		public LocalDateTime getTxnDttm() {
+			return LocalDateTime.ofEpochSecond(epochSecs[row], 0, ZoneOffset.UTC);
+		}
+
+		@Override
+		public int getTxnYearInt() {
+			return LocalDate.ofEpochDay(Math.floorDiv(epochSecs[row], SECONDS_PER_DAY)).getYear();
+		}
+
+		@Override
+		public TransactionType getTxnType() {
+			return TYPES[types[row]];
+		}
+
+		@Override
+		public String getTxnSrc() {
+			return dict.decode(srcIds[row]);
+		}
+
+		@Override
+		public String getTxnDest() {
+			return dict.decode(destIds[row]);
+		}
+
+		@Override
+		public BigDecimal getTxnCoinAmnt() {
+			return coinAmnts.get(row);
+		}
+
+		@Override
+		public BigDecimal getTxnUsdAmnt() {
+			return usdAmnts.get(row);
+		}
+
+		@Override
+		public BigDecimal getTxnUsdPerUnit() {
+			return usdPerUnits.get(row);
+		}
+
+		@Override
+		public BigDecimal getTxnFeeCoin() {
+			return feeCoins.get(row);
+		}
+
+		@Override
+		public BigDecimal getTxnBrkrFeeUsd() {
+			return brkrFeeUsds.get(row);
+		}
+
+		@Override
+		public Long getTermMos() {
+			return toBoxed(termMos[row]);
+		}
+
+		@Override
+		public Long getTxnHashrate() {
+			return toBoxed(hashrates[row]);
+		}
+
+		@Override
+		public long getTxnRowId() {
+			return rowIds[row];
+		}
+
+		@Override
+		public String toString() {
+			return new Transaction(this).toString();
+		}
+	}
+
+}
@@ -0,0 +1,410 @@
+package bdn.cryptax.model;
+
+import java.math.BigDecimal;
+import java.text.ParsePosition;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.Year;
+import java.time.format.DateTimeFormatter;
+
+import org.apache.commons.csv.CSVRecord;
+
+import bdn.cryptax.model.Transaction.TransactionType;
+import bdn.cryptax.model.TransactionException.TransactionExceptionType;
+
+// Parses and validates a CSV record into a TransactionRow, reporting problems as result codes instead of exceptions.
+// Well-formed values are parsed by hand; malformed ones are rejected by syntax checks before any JDK parser (which
+// would throw) is reached, so a ledger full of bad rows validates as fast as a clean one.
+public class TransactionValidator {
+
+	public static enum ValidationCode {
+		OK(null),
+		EMPTY_RECORD(TransactionExceptionType.EMPTY_DATA),
+		INCONSISTENT_RECORD(TransactionExceptionType.INVALID_DATA),
+		INVALID_DTTM(TransactionExceptionType.INVALID_DATA),
+		INVALID_TYPE(TransactionExceptionType.INVALID_DATA),
+		// an empty or unrecognized type marks a non-transaction (e.g., comment or subtotal) row
+		EMPTY_TYPE(TransactionExceptionType.EMPTY_DATA),
+		INVALID_COIN_AMNT(TransactionExceptionType.INVALID_DATA),
+		INVALID_USD_AMNT(TransactionExceptionType.INVALID_DATA),
+		INVALID_USD_PER_UNIT(TransactionExceptionType.INVALID_DATA),
+		INVALID_FEE_COIN(TransactionExceptionType.INVALID_DATA),
+		INVALID_BRKR_FEE_USD(TransactionExceptionType.INVALID_DATA),
+		MISSING_COIN_OR_USD(TransactionExceptionType.INVALID_DATA),
+		MISSING_TRANSFER_COIN_OR_FEE_USD(TransactionExceptionType.INVALID_DATA),
+		MISSING_MINING_TERM_OR_HASHRATE(TransactionExceptionType.INVALID_DATA),
+		MISSING_MINING_COIN_AND_USD(TransactionExceptionType.INVALID_DATA),
+		MISSING_MINING_USD(TransactionExceptionType.INVALID_DATA);
+
+		private final TransactionExceptionType type;
+
+		private ValidationCode(TransactionExceptionType type) {
+			this.type = type;
+		}
+
+		// INVALID_DATA or EMPTY_DATA, or null for OK
+		public TransactionExceptionType getType() {
+			return type;
+		}
+	}
+
+
+	private static final DateTimeFormatter DTF_DASH = DateTimeFormatter.ofPattern("yyyy-M-d H:mm");
+	private static final DateTimeFormatter DTF_SLASH = DateTimeFormatter.ofPattern("M/d/yyyy H:mm");
+
+	// the most recently parsed offending value, for diagnostics
+	private String rejectedValue = null;
+
+
+	public ValidationCode validate(CSVRecord csvRecord, TransactionRow row) {
+		row.clear();
+		rejectedValue = null;
+
+		if (csvRecord == null) {
+			return ValidationCode.EMPTY_RECORD;
+		}
+		if (!csvRecord.isConsistent()) {
+			return ValidationCode.INCONSISTENT_RECORD;
+		}
+		row.txnRowId = csvRecord.getRecordNumber();
+
+		// Optional field (empty string if not specified)
+		String csvTxnAcct = get(csvRecord, Transaction.COL_TXN_ACCT);
+		row.txnAcct = (csvTxnAcct != null) ? csvTxnAcct.trim() : "";
+
+		// Mandatory field
+		String csvTxnDttm = get(csvRecord, Transaction.COL_TXN_DTTM);
+		row.txnDttm = (csvTxnDttm != null) ? parseDttm(csvTxnDttm) : null;
+		if (row.txnDttm == null) {
+			rejectedValue = csvTxnDttm;
+			return ValidationCode.INVALID_DTTM;
+		}
+
+		// Mandatory field
+		if (!isSet(csvRecord, Transaction.COL_TXN_TYPE)) {
+			return ValidationCode.INVALID_TYPE;
+		}
+		String csvTxnType = csvRecord.get(Transaction.COL_TXN_TYPE);
+		if (!csvTxnType.trim().isEmpty()) {
+			row.txnType = Transaction.typeStrToEnum.get(csvTxnType);
+		}
+		if (row.txnType == null) {
+			rejectedValue = csvTxnType;
+			return ValidationCode.EMPTY_TYPE;
+		}
+
+		// Optional values, but their columns must be present
+		if (!isSet(csvRecord, Transaction.COL_TXN_COIN_AMNT) || !parseDecimal(csvRecord.get(Transaction.COL_TXN_COIN_AMNT))) {
+			return ValidationCode.INVALID_COIN_AMNT;
+		}
+		row.txnCoinAmnt = parsedDecimal;
+		if (!isSet(csvRecord, Transaction.COL_TXN_USD_AMNT) || !parseDecimal(csvRecord.get(Transaction.COL_TXN_USD_AMNT))) {
+			return ValidationCode.INVALID_USD_AMNT;
+		}
+		row.txnUsdAmnt = parsedDecimal;
+		if (!isSet(csvRecord, Transaction.COL_TXN_USD_PER_UNIT) || !parseDecimal(csvRecord.get(Transaction.COL_TXN_USD_PER_UNIT))) {
+			return ValidationCode.INVALID_USD_PER_UNIT;
+		}
+		row.txnUsdPerUnit = parsedDecimal;
+		if (!isSet(csvRecord, Transaction.COL_TXN_FEE_COIN) || !parseDecimal(csvRecord.get(Transaction.COL_TXN_FEE_COIN))) {
+			return ValidationCode.INVALID_FEE_COIN;
+		}
+		row.txnFeeCoin = parsedDecimal;
+		if (!isSet(csvRecord, Transaction.COL_TXN_BRKR_FEE_USD) || !parseDecimal(csvRecord.get(Transaction.COL_TXN_BRKR_FEE_USD))) {
+			return ValidationCode.INVALID_BRKR_FEE_USD;
+		}
+		row.txnBrkrFeeUsd = parsedDecimal;
+
+		// Optional fields (the presence of the column is also optional; unparsable values are ignored)
+		row.termMos = parseLong(get(csvRecord, Transaction.COL_TERM_MOS));
+		String csvTxnSrc = get(csvRecord, Transaction.COL_TXN_SRC);
+		row.txnSrc = (csvTxnSrc != null) ? csvTxnSrc.trim() : null;
+		String csvTxnDest = get(csvRecord, Transaction.COL_TXN_DEST);
+		row.txnDest = (csvTxnDest != null) ? csvTxnDest.trim() : null;
+		row.txnHashrate = parseLong(get(csvRecord, Transaction.COL_TXN_HASHRATE));
+
+		return validateCombinations(row);
+	}
+
+
+	// Validate for required combinations of fields
+	private static ValidationCode validateCombinations(TransactionRow row) {
+		TransactionType txnType = row.txnType;
+		if (txnType == TransactionType.ACQUIRE || txnType == TransactionType.INCOME || txnType == TransactionType.DISPOSE ||
+				txnType == TransactionType.MNG_INCOME) {
+			if ((row.txnCoinAmnt == null) || (row.txnUsdAmnt == null && row.txnUsdPerUnit == null)) {
+				return ValidationCode.MISSING_COIN_OR_USD;
+			}
+		}
+		else if (txnType == TransactionType.TRANSFER) {
+			if ((row.txnCoinAmnt == null) || (row.txnFeeCoin != null && (row.txnUsdPerUnit == null && row.txnUsdAmnt == null))) {
+				return ValidationCode.MISSING_TRANSFER_COIN_OR_FEE_USD;
+			}
+		}
+		else if (txnType == TransactionType.MNG_PURCHASE || txnType == TransactionType.MNG_REINVEST) {
+			if (row.termMos == null || row.txnHashrate == null) {
+				return ValidationCode.MISSING_MINING_TERM_OR_HASHRATE;
+			}
+			if (row.txnCoinAmnt == null && row.txnUsdAmnt == null) {
+				return ValidationCode.MISSING_MINING_COIN_AND_USD;
+			}
+			if ((row.txnCoinAmnt != null) && (row.txnUsdAmnt == null && row.txnUsdPerUnit == null)) {
+				return ValidationCode.MISSING_MINING_USD;
+			}
+		}
+		return ValidationCode.OK;
+	}
+
+
+	// The offending value of the last rejected record (null if not applicable)
+	public String getRejectedValue() {
+		return rejectedValue;
+	}
+
+
+	// Human readable description of a rejection, in the wording used by TransactionException
+	public String getMessage(ValidationCode code, long recordNumber) {
+		switch (code) {
+		case EMPTY_RECORD:
+			return "Empty CSV Record";
+		case INCONSISTENT_RECORD:
+			return "Inconsistent CSV Record #" + recordNumber;
+		case INVALID_DTTM:
+			return "Unparsable COL_TXN_DTTM in CSV Record #" + recordNumber + ": '" + rejectedValue + "'";
+		case INVALID_TYPE:
+			return "Unparsable COL_TXN_TYPE in CSV Record #" + recordNumber;
+		case EMPTY_TYPE:
+			return "CSV Record #" + recordNumber + " contained empty COL_TXN_TYPE";
+		case INVALID_COIN_AMNT:
+			return "Unparsable COL_TXN_COIN_AMNT in CSV Record #" + recordNumber + ": '" + rejectedValue + "'";
+		case INVALID_USD_AMNT:
+			return "Unparsable COL_TXN_USD_AMNT in CSV Record #" + recordNumber + ": '" + rejectedValue + "'";
+		case INVALID_USD_PER_UNIT:
+			return "Unparsable COL_TXN_USD_PER_UNIT in CSV Record #" + recordNumber + ": '" + rejectedValue + "'";
+		case INVALID_FEE_COIN:
+			return "Unparsable COL_TXN_FEE_COIN in CSV Record #" + recordNumber + ": '" + rejectedValue + "'";
+		case INVALID_BRKR_FEE_USD:
+			return "Unparsable COL_TXN_BRKR_FEE_USD in CSV Record #" + recordNumber + ": '" + rejectedValue + "'";
+		case MISSING_COIN_OR_USD:
+			return "CSV Record #" + recordNumber + " has empty COL_TXN_COIN_AMNT or COL_TXN_USD_AMNT and COL_TXN_USD_PER_UNIT";
+		case MISSING_TRANSFER_COIN_OR_FEE_USD:
+			return "CSV Record #" + recordNumber +
+					" has empty COL_TXN_COIN_AMNT or non-empty COL_TXN_FEE_COIN but empty COL_TXN_USD_AMNT and COL_TXN_USD_PER_UNIT";
+		case MISSING_MINING_TERM_OR_HASHRATE:
+			return "CSV Record #" + recordNumber + " contained empty COL_TERM_MOS or COL_TXN_HASHRATE";
+		case MISSING_MINING_COIN_AND_USD:
+			return "CSV Record #" + recordNumber + " contained empty COL_TXN_COIN_AMNT and COL_TXN_USD_AMNT";
+		case MISSING_MINING_USD:
+			return "CSV Record #" + recordNumber + " has empty COL_TXN_USD_AMNT and COL_TXN_USD_PER_UNIT";
+		default:
+			return "CSV Record #" + recordNumber + " is valid";
+		}
+	}
+
+
+	private static boolean isSet(CSVRecord csvRecord, String col) {
+		return csvRecord.isMapped(col) && csvRecord.isSet(col);
+	}
+
+
+	private static String get(CSVRecord csvRecord, String col) {
+		return isSet(csvRecord, col) ? csvRecord.get(col) : null;
+	}
+
+
+	// result of the last successful parseDecimal (null for an empty value)
+	private BigDecimal parsedDecimal = null;
+
+
+	private boolean parseDecimal(String str) {
+		parsedDecimal = null;
+		if (str.trim().isEmpty()) {
+			return true;
+		}
+		if (!isDecimalSyntax(str)) {
+			rejectedValue = str;
+			return false;
+		}
+		try {
+			parsedDecimal = new BigDecimal(str);
+			return true;
+		}
+		catch (NumberFormatException exc) {
+			// syntactically valid but out of range (e.g., an exponent overflowing an int); not expected in practice
+			rejectedValue = str;
+			return false;
+		}
+	}
+
+
+	// The BigDecimal(String) grammar: [sign] digits [. digits] [e|E [sign] digits], with at least one significand digit
+	static boolean isDecimalSyntax(String str) {
+		int len = str.length();
+		int i = 0;
+		if (i < len && (str.charAt(i) == '+' || str.charAt(i) == '-')) {
+			i++;
+		}
+		int digits = 0;
+		boolean dot = false;
+		for (; i < len; i++) {
+			char c = str.charAt(i);
+			if (Character.isDigit(c)) {
+				digits++;
+			}
+			else if (c == '.' && !dot) {
+				dot = true;
+			}
+			else {
+				break;
+			}
+		}
+		if (digits == 0) {
+			return false;
+		}
+		if (i == len) {
+			return true;
+		}
+		char e = str.charAt(i);
+		if (e != 'e' && e != 'E') {
+			return false;
+		}
+		i++;
+		if (i < len && (str.charAt(i) == '+' || str.charAt(i) == '-')) {
+			i++;
+		}
+		if (i == len) {
+			return false;
+		}
+		for (; i < len; i++) {
+			if (!Character.isDigit(str.charAt(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+
+	// Lenient: anything but a plain (optionally signed) long is treated as not specified
+	private static Long parseLong(String str) {
+		if (str == null) {
+			return null;
+		}
+		int len = str.length();
+		int start = (len > 0 && (str.charAt(0) == '+' || str.charAt(0) == '-')) ? 1 : 0;
+		if (len == start || len - start > 19) {
+			return null;
+		}
+		for (int i = start; i < len; i++) {
+			if (Character.digit(str.charAt(i), 10) < 0) {
+				return null;
+			}
+		}
+		try {
+			return Long.parseLong(str);
+		}
+		catch (NumberFormatException exc) {
+			// 19 digits beyond the long range
+			return null;
+		}
+	}
+
+
+	// "yyyy-M-d H:mm" if the value contains a dash, otherwise "M/d/yyyy H:mm"; returns null if unparsable
+	public static LocalDateTime parseDttm(String str) {
+		boolean dash = str.contains("-");
+		LocalDateTime result = parseDttmFast(str, dash);
+		if (result != null) {
+			return result;
+		}
+
+		// uncommon but possibly valid spellings: check with the formatter without letting it throw, then resolve
+		DateTimeFormatter dtf = dash ? DTF_DASH : DTF_SLASH;
+		ParsePosition pos = new ParsePosition(0);
+		if (dtf.parseUnresolved(str, pos) == null || pos.getErrorIndex() >= 0 || pos.getIndex() != str.length()) {
+			return null;
+		}
+		try {
+			return LocalDateTime.parse(str, dtf);
+		}
+		catch (DateTimeException exc) {
+			return null;
+		}
+	}
+
+
+	private static LocalDateTime parseDttmFast(String str, boolean dash) {
+		int[] pos = {0};
+		int year = 0;
+		int month = 0;
+		int day = 0;
+		if (dash) {
+			year = readNumber(str, pos, 4, 4);
+			if (year < 0 || !expect(str, pos, '-')) {
+				return null;
+			}
+			month = readNumber(str, pos, 1, 2);
+			if (month < 0 || !expect(str, pos, '-')) {
+				return null;
+			}
+			day = readNumber(str, pos, 1, 2);
+		}
+		else {
+			month = readNumber(str, pos, 1, 2);
+			if (month < 0 || !expect(str, pos, '/')) {
+				return null;
+			}
+			day = readNumber(str, pos, 1, 2);
+			if (day < 0 || !expect(str, pos, '/')) {
+				return null;
+			}
+			year = readNumber(str, pos, 4, 4);
+		}
+		if (year < 0 || day < 0 || !expect(str, pos, ' ')) {
+			return null;
+		}
+		int hour = readNumber(str, pos, 1, 2);
+		if (hour < 0 || !expect(str, pos, ':')) {
+			return null;
+		}
+		int minute = readNumber(str, pos, 2, 2);
+		if (minute < 0 || pos[0] != str.length()) {
+			return null;
+		}
+
+		if (month < 1 || month > 12 || day < 1 || hour > 23 || minute > 59 ||
+				day > java.time.Month.of(month).length(Year.isLeap(year))) {
+			return null;
+		}
+		return LocalDateTime.of(year, month, day, hour, minute);
+	}
+
+
+	// ASCII digits only; returns -1 if fewer than minDigits were found
+	private static int readNumber(String str, int[] pos, int minDigits, int maxDigits) {
+		int result = 0;
+		int i = pos[0];
+		int end = Math.min(str.length(), i + maxDigits);
+		for (; i < end; i++) {
+			char c = str.charAt(i);
+			if (c < '0' || c > '9') {
+				break;
+			}
+			result = result * 10 + (c - '0');
+		}
+		if (i - pos[0] < minDigits) {
+			return -1;
+		}
+		pos[0] = i;
+		return result;
+	}
+
+
+	private static boolean expect(String str, int[] pos, char c) {
+		if (pos[0] < str.length() && str.charAt(pos[0]) == c) {
+			pos[0]++;
+			return true;
+		}
+		return false;
+	}
+
+}
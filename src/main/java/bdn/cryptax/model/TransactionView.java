@@ -0,0 +1,58 @@
+package bdn.cryptax.model;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+import bdn.cryptax.model.Transaction.TransactionType;
+import bdn.cryptax.model.TransactionException.TransactionExceptionType;
+
+// Read-only access to a transaction's fields, implemented both by Transaction objects and by flyweight views over
+// columnar storage. Views handed out while iterating a TransactionSource may be reused for the next row, so callers
+// must copy any values they need to keep.
+public interface TransactionView {
+
+	String getTxnAcct();
+
+	LocalDateTime getTxnDttm();
+
+	int getTxnYearInt();
+
+	TransactionType getTxnType();
+
+	String getTxnSrc();
+
+	String getTxnDest();
+
+	BigDecimal getTxnCoinAmnt();
+
+	BigDecimal getTxnUsdAmnt();
+
+	BigDecimal getTxnUsdPerUnit();
+
+	BigDecimal getTxnFeeCoin();
+
+	BigDecimal getTxnBrkrFeeUsd();
+
+	Long getTermMos();
+
+	Long getTxnHashrate();
+
+	// CSV record number of the ledger row the transaction was read from; 0 if it was not read from a ledger
+	long getTxnRowId();
+
+
+	default BigDecimal getCalculatedTxnUsdAmnt() throws TransactionException {
+		BigDecimal result = getTxnUsdAmnt();
+		if (result == null) {
+			BigDecimal txnCoinAmnt = getTxnCoinAmnt();
+			BigDecimal txnUsdPerUnit = getTxnUsdPerUnit();
+			if (txnCoinAmnt == null || txnUsdPerUnit == null) {
+				throw new TransactionException(TransactionExceptionType.INVALID_DATA, "Transaction dated "+
+						getTxnDttm() +" could not calculate TXN_USD_AMNT because of insufficient data");
+			}
+			result = txnCoinAmnt.multiply(txnUsdPerUnit);
+		}
+		return result;
+	}
+
+}
@@ -0,0 +1,64 @@
+package bdn.cryptax.controller;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import bdn.cryptax.controller.BalanceReconciliation.Shortfall;
+
+class BalanceReconciliationTest {
+
+	@Test
+	void continuesFromZeroAfterADeficit() throws Exception {
+		BalanceReconciliation reconciliation = BalanceReconciliation.run(Ledgers.of(
+				"BTC,2024-01-01 09:00,acq,,Kraken,1,100",
+				"BTC,2024-02-01 09:00,disp,Kraken,,3,900",
+				"BTC,2024-03-01 09:00,acq,,Kraken,1,100",
+				"BTC,2024-04-01 09:00,disp,Kraken,,2,600"));
+
+		// the first sale is 2 coins short; the second finds a balance of 1, not -1, so it is short by 1 rather than 3
+		List<Shortfall> shortfalls = reconciliation.getShortfalls();
+		assertEquals(4, shortfalls.size());
+		assertShortfall(shortfalls.get(0), null, "2");
+		assertShortfall(shortfalls.get(1), "Kraken", "2");
+		assertShortfall(shortfalls.get(2), null, "1");
+		assertShortfall(shortfalls.get(3), "Kraken", "1");
+		assertEquals(2, shortfalls.get(0).getRowId());
+		assertEquals(4, shortfalls.get(2).getRowId());
+		assertEquals(2, reconciliation.getAccountShortfallCount());
+		assertEquals(2, reconciliation.getBrokerShortfallCount());
+	}
+
+
+	@Test
+	void missingTransferOnlyFallsShortAtTheBroker() throws Exception {
+		// the coins left Kraken for Coinbase without a transfer row, so only Coinbase runs short
+		BalanceReconciliation reconciliation = BalanceReconciliation.run(Ledgers.of(
+				"ETH,2024-01-01 09:00,acq,,Kraken,5,5000",
+				"ETH,2024-02-01 09:00,disp,Coinbase,,2,3000",
+				"ETH,2024-03-01 09:00,tran,Kraken,Coinbase,1,",
+				"ETH,2024-04-01 09:00,disp,Coinbase,,1,1500"));
+
+		List<Shortfall> shortfalls = reconciliation.getShortfalls();
+		assertEquals(1, shortfalls.size());
+		assertShortfall(shortfalls.get(0), "Coinbase", "2");
+		assertEquals(0, reconciliation.getAccountShortfallCount());
+		assertEquals(1, reconciliation.getBrokerShortfallCount());
+	}
+
+
+	private static void assertShortfall(Shortfall s, String broker, String deficit) {
+		if (broker == null) {
+			assertNull(s.getBroker(), s.toString());
+		}
+		else {
+			assertEquals(broker, s.getBroker(), s.toString());
+		}
+		assertEquals(0, new BigDecimal(deficit).compareTo(s.getDeficit()), s.toString());
+	}
+
+}
@@ -0,0 +1,75 @@
+package bdn.cryptax.controller;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class LedgerStreamsTest {
+
+	@TempDir
+	File folder;
+
+
+	@Test
+	void detectsGzipByMagicBytesNotExtension() throws Exception {
+		// several chunks, so the inflater thread hands over more than one
+		StringBuilder sb = new StringBuilder("Acct,UTC Dttm\n");
+		for (int i = 0; i < 20_000; i++) {
+			sb.append("BTC,2024-01-01 09:").append(i % 60).append('\n');
+		}
+		String text = sb.toString();
+
+		File gzipWithoutExt = new File(folder, "ledger.csv");
+		write(gzipWithoutExt, text, true);
+		assertTrue(LedgerStreams.isGzip(gzipWithoutExt));
+		assertEquals(text, read(gzipWithoutExt));
+
+		File plainWithExt = new File(folder, "plain.csv.gz");
+		write(plainWithExt, text, false);
+		assertFalse(LedgerStreams.isGzip(plainWithExt));
+		assertEquals(text, read(plainWithExt));
+	}
+
+
+	@Test
+	void shortFilesAreNotGzip() throws Exception {
+		File empty = new File(folder, "empty.csv.gz");
+		write(empty, "", false);
+		assertFalse(LedgerStreams.isGzip(empty));
+		assertEquals("", read(empty));
+
+		// the first magic byte alone
+		File oneByte = new File(folder, "one.csv.gz");
+		write(oneByte, "\u001f", false);
+		assertFalse(LedgerStreams.isGzip(oneByte));
+	}
+
+
+	private static void write(File file, String text, boolean gzip) throws IOException {
+		try (OutputStream out = gzip ? new GZIPOutputStream(new FileOutputStream(file)) : new FileOutputStream(file)) {
+			out.write(text.getBytes(StandardCharsets.UTF_8));
+		}
+	}
+
+
+	private static String read(File file) throws IOException {
+		StringWriter sw = new StringWriter();
+		try (Reader reader = LedgerStreams.openReader(file)) {
+			reader.transferTo(sw);
+		}
+		return sw.toString();
+	}
+
+}
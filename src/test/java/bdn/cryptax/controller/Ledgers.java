@@ -0,0 +1,48 @@
+package bdn.cryptax.controller;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+
+import bdn.cryptax.model.Transaction;
+import bdn.cryptax.model.TransactionException;
+import bdn.cryptax.model.TransactionListStore;
+
+// Small ledgers written out as CSV rows, read the way Controller reads a ledger file
+class Ledgers {
+
+	private static final String HEADER = String.join(",", Transaction.COL_TXN_ACCT, Transaction.COL_TXN_DTTM,
+			Transaction.COL_TXN_TYPE, Transaction.COL_TXN_SRC, Transaction.COL_TXN_DEST, Transaction.COL_TXN_COIN_AMNT,
+			Transaction.COL_TXN_USD_AMNT, Transaction.COL_TXN_USD_PER_UNIT, Transaction.COL_TXN_FEE_COIN,
+			Transaction.COL_TXN_BRKR_FEE_USD, Transaction.COL_TERM_MOS, Transaction.COL_TXN_HASHRATE);
+	private static final int COLUMN_COUNT = HEADER.split(",").length;
+
+
+	private Ledgers() {
+	}
+
+
+	// rows: Acct, UTC Dttm, Txn Type, Src, Dest, Txn COIN, Txn USD, then optionally Txn USD/COIN, Txn Fee COIN, ... (the
+	// columns left out are empty)
+	static TransactionListStore of(String... rows) throws IOException, TransactionException {
+		StringBuilder csv = new StringBuilder(HEADER).append('\n');
+		for (String row : rows) {
+			csv.append(row);
+			for (int i = row.split(",", -1).length; i < COLUMN_COUNT; i++) {
+				csv.append(',');
+			}
+			csv.append('\n');
+		}
+		TransactionListStore result = new TransactionListStore();
+		try (CSVParser parser = new CSVParser(new StringReader(csv.toString()), CSVFormat.EXCEL.withHeader().withSkipHeaderRecord(true))) {
+			for (CSVRecord r : parser) {
+				result.add(new Transaction(r));
+			}
+		}
+		return result;
+	}
+
+}
@@ -0,0 +1,111 @@
+package bdn.cryptax.controller;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import bdn.cryptax.controller.LotOptimizer.Selection;
+import bdn.cryptax.model.GainEntry;
+import bdn.cryptax.model.GainEntry.GainTerm;
+import bdn.cryptax.model.UnrealizedGainEntry;
+
+class LotOptimizerTest {
+
+	private static final LocalDate SALE_DATE = LocalDate.parse("2025-06-30");
+	private static final BigDecimal ST_RATE = new BigDecimal("0.37");
+	private static final BigDecimal LT_RATE = new BigDecimal("0.20");
+	private static final BigDecimal QUARTER = new BigDecimal("0.25");
+	private static final BigDecimal TOLERANCE = new BigDecimal("1e-9");
+	private static final int LOT_COUNT = 5;
+
+
+	@Test
+	void exactPickIsNoWorseThanAnyEnumeratedSale() {
+		Random random = new Random(7);
+		for (int trial = 0; trial < 200; trial++) {
+			List<UnrealizedGainEntry> lots = new ArrayList<>();
+			for (int i = 0; i < LOT_COUNT; i++) {
+				LocalDate dateAcquired = SALE_DATE.minusDays(random.nextBoolean() ? 400 + i : 100 + i);
+				lots.add(new UnrealizedGainEntry(dateAcquired, "Kraken", BigDecimal.ONE, BigDecimal.valueOf(100 * (1 + random.nextInt(10)))));
+			}
+			// no horizon, so no lot is held back and the exact pick is the least tax over every sale
+			LotOptimizer optimizer = new LotOptimizer(lots, SALE_DATE, 0, ST_RATE, LT_RATE);
+			BigDecimal usdPerCoin = BigDecimal.valueOf(50 * (2 + random.nextInt(19)));
+			BigDecimal coinAmnt = QUARTER.multiply(BigDecimal.valueOf(1 + random.nextInt(4 * LOT_COUNT)));
+
+			Selection exact = optimizer.optimize(coinAmnt, usdPerCoin, true);
+			Selection greedy = optimizer.optimize(coinAmnt, usdPerCoin, false);
+			assertSells(exact, coinAmnt, optimizer);
+			assertSells(greedy, coinAmnt, optimizer);
+
+			BigDecimal least = enumerate(optimizer, lots, new BigDecimal[LOT_COUNT], 0, coinAmnt, usdPerCoin);
+			String message = "trial " + trial + ": " + coinAmnt + " coins at " + usdPerCoin;
+			assertTrue(exact.getTax().subtract(least).compareTo(TOLERANCE) <= 0, message + ": exact " + exact.getTax() + " > " + least);
+			assertTrue(exact.getTax().subtract(greedy.getTax()).compareTo(TOLERANCE) <= 0, message + ": exact worse than greedy");
+		}
+	}
+
+
+	@Test
+	void taxIsExactDecimal() {
+		List<UnrealizedGainEntry> lots = new ArrayList<>();
+		lots.add(new UnrealizedGainEntry(SALE_DATE.minusDays(400), "Kraken", BigDecimal.ONE, new BigDecimal("30000")));
+		LotOptimizer optimizer = new LotOptimizer(lots, SALE_DATE, 0, new BigDecimal("0.35"), new BigDecimal("0.15"));
+
+		Selection selection = optimizer.optimize(new BigDecimal("0.1"), new BigDecimal("33333.33"), true);
+		assertEquals(0, new BigDecimal("49.99995").compareTo(selection.getTax()));
+	}
+
+
+	// The least tax of selling coinAmnt in quarters of the lots from lot i on, given what the lots before i sell
+	private static BigDecimal enumerate(LotOptimizer optimizer, List<UnrealizedGainEntry> lots, BigDecimal[] sold, int i,
+			BigDecimal coinAmnt, BigDecimal usdPerCoin) {
+		if (i == sold.length) {
+			if (coinAmnt.signum() != 0) {
+				return null;
+			}
+			BigDecimal stGain = BigDecimal.ZERO;
+			BigDecimal ltGain = BigDecimal.ZERO;
+			for (int k = 0; k < sold.length; k++) {
+				UnrealizedGainEntry lot = lots.get(k);
+				BigDecimal gain = sold[k].multiply(usdPerCoin.subtract(lot.getCostBasis()));
+				if (GainEntry.getTerm(lot.getDateAcquired(), SALE_DATE) == GainTerm.LONGTERM) {
+					ltGain = ltGain.add(gain);
+				}
+				else {
+					stGain = stGain.add(gain);
+				}
+			}
+			return optimizer.estimateTax(stGain, ltGain);
+		}
+		BigDecimal result = null;
+		for (BigDecimal q = BigDecimal.ZERO; q.compareTo(BigDecimal.ONE) <= 0 && q.compareTo(coinAmnt) <= 0; q = q.add(QUARTER)) {
+			sold[i] = q;
+			BigDecimal tax = enumerate(optimizer, lots, sold, i + 1, coinAmnt.subtract(q), usdPerCoin);
+			if (tax != null && (result == null || tax.compareTo(result) < 0)) {
+				result = tax;
+			}
+		}
+		return result;
+	}
+
+
+	private static void assertSells(Selection selection, BigDecimal coinAmnt, LotOptimizer optimizer) {
+		BigDecimal soldCoinAmnt = BigDecimal.ZERO;
+		for (int i = 0; i < selection.size(); i++) {
+			assertTrue(selection.getCoinAmnt(i).compareTo(selection.getLot(i).getAssetAmnt()) <= 0);
+			soldCoinAmnt = soldCoinAmnt.add(selection.getCoinAmnt(i));
+		}
+		assertEquals(0, coinAmnt.compareTo(soldCoinAmnt));
+		assertEquals(0, coinAmnt.compareTo(selection.getShortTermCoinAmnt().add(selection.getLongTermCoinAmnt())));
+		assertEquals(0, optimizer.estimateTax(selection.getShortTermGain(), selection.getLongTermGain()).compareTo(selection.getTax()));
+	}
+
+}
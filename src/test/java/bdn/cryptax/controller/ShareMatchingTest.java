@@ -0,0 +1,79 @@
+package bdn.cryptax.controller;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import bdn.cryptax.controller.Controller.CostBasisType;
+import bdn.cryptax.model.CapitalGainEntry;
+import bdn.cryptax.model.GainEntry;
+import bdn.cryptax.model.UnrealizedGainEntry;
+
+class ShareMatchingTest {
+
+	@Test
+	void matchesSameDayThenNextThirtyDaysThenPool() throws Exception {
+		ProcessOptions options = new ProcessOptions();
+		options.setCostBasisType(CostBasisType.SHARE_MATCHING);
+		TaxResult result = new TaxEngine(options).compute(Ledgers.of(
+				"BTC,2024-01-01 09:00,acq,,Kraken,10,1000",
+				"BTC,2024-03-01 10:00,disp,Kraken,,3,600",
+				"BTC,2024-03-01 15:00,acq,,Kraken,1,150",
+				"BTC,2024-03-05 10:00,disp,Kraken,,1,250",
+				"BTC,2024-03-10 09:00,acq,,Kraken,4,720",
+				"BTC,2024-03-10 12:00,disp,Kraken,,2,500",
+				"BTC,2024-05-01 09:00,acq,,Kraken,1,300"));
+
+		List<GainEntry> geList = result.getGainEntries().get("BTC");
+		assertEquals(5, geList.size());
+		// the first disposal: its own day's acquisition, then what the later disposal's same-day match left of 03-10
+		assertGain(geList.get(0), "2024-03-01", "2024-03-01", "1", "200", "150");
+		assertGain(geList.get(1), "2024-03-01", "2024-03-10", "2", "400", "360");
+		// nothing is left within 30 days of the second disposal, so it comes from the pool of 01-01
+		assertGain(geList.get(2), "2024-03-05", "2024-01-01", "1", "250", "100");
+		// a same-day match goes before an earlier disposal's 30-day match
+		assertGain(geList.get(3), "2024-03-10", "2024-03-10", "2", "500", "360");
+
+		assertInstanceOf(UnrealizedGainEntry.class, geList.get(4));
+		assertEquals(0, new BigDecimal("10").compareTo(geList.get(4).getAssetAmnt()));
+		assertEquals(0, new BigDecimal("1200").compareTo(geList.get(4).getCostBasis()));
+	}
+
+
+	@Test
+	void leavesNoPoolResidueAfterUnevenDisposals() throws Exception {
+		ProcessOptions options = new ProcessOptions();
+		options.setCostBasisType(CostBasisType.SHARE_MATCHING);
+		TaxResult result = new TaxEngine(options).compute(Ledgers.of(
+				"BTC,2024-01-01 09:00,acq,,Kraken,3,100",
+				"BTC,2024-06-01 09:00,disp,Kraken,,1,50",
+				"BTC,2024-07-01 09:00,disp,Kraken,,1,50",
+				"BTC,2024-08-01 09:00,disp,Kraken,,1,50"));
+
+		List<GainEntry> geList = result.getGainEntries().get("BTC");
+		assertEquals(3, geList.size());
+		BigDecimal costBasis = BigDecimal.ZERO;
+		for (GainEntry ge : geList) {
+			assertInstanceOf(CapitalGainEntry.class, ge);
+			costBasis = costBasis.add(ge.getCostBasis());
+		}
+		assertEquals(0, new BigDecimal("100").compareTo(costBasis));
+	}
+
+
+	private static void assertGain(GainEntry ge, String dateDisposed, String dateAcquired, String coinAmnt, String proceeds,
+			String costBasis) {
+		assertInstanceOf(CapitalGainEntry.class, ge);
+		assertEquals(LocalDate.parse(dateDisposed), ge.getDateDisposed());
+		assertEquals(LocalDate.parse(dateAcquired), ge.getDateAcquired());
+		assertEquals(0, new BigDecimal(coinAmnt).compareTo(ge.getAssetAmnt()), "coins " + ge);
+		assertEquals(0, new BigDecimal(proceeds).compareTo(ge.getProceeds()), "proceeds " + ge);
+		assertEquals(0, new BigDecimal(costBasis).compareTo(ge.getCostBasis()), "cost basis " + ge);
+	}
+
+}
@@ -0,0 +1,56 @@
+package bdn.cryptax.controller;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import bdn.cryptax.controller.Controller.CostBasisType;
+import bdn.cryptax.controller.LotDesignations.Designation;
+import bdn.cryptax.model.GainEntry;
+
+class SpecificIdTest {
+
+	private static final LocalDateTime JAN = LocalDateTime.parse("2024-01-01T09:00");
+	private static final LocalDateTime FEB = LocalDateTime.parse("2024-02-01T09:00");
+	private static final LocalDateTime JUN = LocalDateTime.parse("2024-06-01T09:00");
+
+
+	@Test
+	void consumesPartialDesignationsThenTheOldestLots() throws Exception {
+		ProcessOptions options = new ProcessOptions();
+		options.setCostBasisType(CostBasisType.SPECIFIC_ID);
+		LotDesignations designations = new LotDesignations();
+		// half of the Coinbase lot, then all of February's lot, whatever its broker
+		designations.add("BTC", JUN, new Designation(JAN, "Coinbase", new BigDecimal("0.5")));
+		designations.add("BTC", JUN, new Designation(FEB, null, null));
+		TaxResult result = new TaxEngine(options).compute(Ledgers.of(
+				"BTC,2024-01-01 09:00,acq,,Kraken,1,100",
+				"BTC,2024-01-01 09:00,acq,,Coinbase,1,200",
+				"BTC,2024-02-01 09:00,acq,,Kraken,1,300",
+				"BTC,2024-06-01 09:00,disp,Kraken,,2,1000",
+				"BTC,2024-07-01 09:00,disp,Kraken,,1,600"), null, designations);
+
+		List<GainEntry> geList = result.getGainEntries().get("BTC");
+		assertEquals(5, geList.size());
+		assertLot(geList.get(0), "Coinbase", "0.5", "100");
+		assertLot(geList.get(1), "Kraken", "1", "300");
+		// the undesignated rest of the sale comes from the oldest lot
+		assertLot(geList.get(2), "Kraken", "0.5", "50");
+		// the next sale finds the designated lots partly used up
+		assertLot(geList.get(3), "Kraken", "0.5", "50");
+		assertLot(geList.get(4), "Coinbase", "0.5", "100");
+		assertEquals(JAN.toLocalDate(), geList.get(4).getDateAcquired());
+	}
+
+
+	private static void assertLot(GainEntry ge, String brokerAcquired, String coinAmnt, String costBasis) {
+		assertEquals(brokerAcquired, ge.getBrokerAcquiredStr(), ge.toString());
+		assertEquals(0, new BigDecimal(coinAmnt).compareTo(ge.getAssetAmnt()), "coins " + ge);
+		assertEquals(0, new BigDecimal(costBasis).compareTo(ge.getCostBasis()), "cost basis " + ge);
+	}
+
+}
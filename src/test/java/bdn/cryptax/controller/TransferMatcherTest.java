@@ -0,0 +1,87 @@
+package bdn.cryptax.controller;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import bdn.cryptax.controller.TransferMatcher.Status;
+
+class TransferMatcherTest {
+
+	private static final BigDecimal TOLERANCE = new BigDecimal("0.01");
+	private static final long HOUR = 3600;
+
+
+	@Test
+	void matchesExactlyAtTheToleranceBounds() throws Exception {
+		// deposits of exactly (1 - tolerance) and (1 + tolerance) times the withdrawal, over amounts spread across the
+		// log-scale buckets, must find their withdrawal one bucket away at most
+		Random random = new Random(11);
+		List<String> rows = new ArrayList<>();
+		int pairs = 0;
+		for (int i = 0; i < 200; i++) {
+			BigDecimal coinAmnt = BigDecimal.valueOf(random.nextInt(1_000_000_000) + 1, random.nextInt(12));
+			for (BigDecimal factor : new BigDecimal[] { BigDecimal.ONE.subtract(TOLERANCE), BigDecimal.ONE.add(TOLERANCE) }) {
+				String acct = "C" + pairs++;
+				rows.add(acct + ",2024-01-01 09:00,tran,Kraken,," + coinAmnt.toPlainString() + ",");
+				rows.add(acct + ",2024-01-01 09:30,tran,,Coinbase," + coinAmnt.multiply(factor).toPlainString() + ",");
+			}
+		}
+		TransferMatcher transfers = TransferMatcher.run(Ledgers.of(rows.toArray(new String[rows.size()])), HOUR, TOLERANCE);
+		assertCounts(transfers, pairs, 0, 0);
+	}
+
+
+	@Test
+	void rejectsJustBeyondTheTolerance() throws Exception {
+		TransferMatcher transfers = TransferMatcher.run(Ledgers.of(
+				"BTC,2024-01-01 09:00,tran,Kraken,,100,",
+				"BTC,2024-01-01 09:10,tran,,Coinbase,98.99,",
+				"ETH,2024-01-01 09:00,tran,Kraken,,100,",
+				"ETH,2024-01-01 09:10,tran,,Coinbase,101.01,"), HOUR, TOLERANCE);
+		assertCounts(transfers, 0, 2, 2);
+	}
+
+
+	@Test
+	void dropsWithdrawalsOutOfTheWindow() throws Exception {
+		// a deposit exactly at the end of the window matches; one a minute later does not, and a withdrawal that fell out
+		// of the window does not keep a later one from matching
+		TransferMatcher transfers = TransferMatcher.run(Ledgers.of(
+				"BTC,2024-01-01 09:00,tran,Kraken,,1,",
+				"BTC,2024-01-01 10:00,tran,,Coinbase,1,",
+				"ETH,2024-01-01 09:00,tran,Kraken,,1,",
+				"ETH,2024-01-01 10:01,tran,,Coinbase,1,",
+				"SOL,2024-01-01 09:00,tran,Kraken,,1,",
+				"SOL,2024-01-01 10:30,tran,Kraken,,1,",
+				"SOL,2024-01-01 11:00,tran,,Coinbase,1,"), HOUR, TOLERANCE);
+		assertCounts(transfers, 2, 2, 1);
+	}
+
+
+	@Test
+	void matchesTheGrossOrTheNetOfFeeAmount() throws Exception {
+		// 1 withdrawn with a fee of 0.1: either 1 or 0.9 may arrive, but not an amount in between
+		TransferMatcher transfers = TransferMatcher.run(Ledgers.of(
+				"BTC,2024-01-01 09:00,tran,Kraken,,1,,40000,0.1",
+				"BTC,2024-01-01 09:10,tran,,Coinbase,0.9,",
+				"ETH,2024-01-01 09:00,tran,Kraken,,1,,40000,0.1",
+				"ETH,2024-01-01 09:10,tran,,Coinbase,1,",
+				"SOL,2024-01-01 09:00,tran,Kraken,,1,,40000,0.1",
+				"SOL,2024-01-01 09:10,tran,,Coinbase,0.95,"), HOUR, new BigDecimal("0.001"));
+		assertCounts(transfers, 2, 1, 1);
+	}
+
+
+	private static void assertCounts(TransferMatcher transfers, long matched, long unmatchedWithdrawals, long unmatchedDeposits) {
+		assertEquals(matched, transfers.getCount(Status.MATCHED));
+		assertEquals(unmatchedWithdrawals, transfers.getCount(Status.UNMATCHED_WITHDRAWAL));
+		assertEquals(unmatchedDeposits, transfers.getCount(Status.UNMATCHED_DEPOSIT));
+	}
+
+}
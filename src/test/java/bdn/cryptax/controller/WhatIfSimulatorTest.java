@@ -0,0 +1,131 @@
+package bdn.cryptax.controller;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import bdn.cryptax.controller.WhatIfSimulator.LotOrder;
+import bdn.cryptax.controller.WhatIfSimulator.Scenario;
+import bdn.cryptax.model.GainEntry;
+import bdn.cryptax.model.GainEntry.GainTerm;
+import bdn.cryptax.model.UnrealizedGainEntry;
+
+class WhatIfSimulatorTest {
+
+	private static final LocalDate SALE_DATE = LocalDate.parse("2025-06-30");
+	private static final MathContext PRECISION = new MathContext(34, RoundingMode.HALF_UP);
+	private static final BigDecimal TOLERANCE = new BigDecimal("1e-20");
+
+
+	@Test
+	void prefixSumsMatchAWalkOverTheLots() throws Exception {
+		Random random = new Random(42);
+		List<UnrealizedGainEntry> lots = new ArrayList<>();
+		BigDecimal totalCoinAmnt = BigDecimal.ZERO;
+		for (int i = 0; i < 200; i++) {
+			// one lot a week, so the lot orders have no ties
+			BigDecimal coinAmnt = BigDecimal.valueOf(random.nextInt(100_000_000) + 1, 8);
+			BigDecimal costBasis = BigDecimal.valueOf(random.nextInt(10_000_000) + 1, 2);
+			lots.add(new UnrealizedGainEntry(SALE_DATE.minusWeeks(200 - i), "Kraken", coinAmnt, costBasis));
+			totalCoinAmnt = totalCoinAmnt.add(coinAmnt);
+		}
+		List<GainEntry> geList = new ArrayList<>(lots);
+		TaxResult result = new TaxResult();
+		result.acceptGainEntries("BTC", geList);
+		WhatIfSimulator simulator = WhatIfSimulator.of(result, SALE_DATE);
+
+		List<Scenario> scenarios = new ArrayList<>();
+		for (LotOrder lotOrder : new LotOrder[] { LotOrder.FIFO, LotOrder.HIFO, LotOrder.LIFO }) {
+			scenarios.add(new Scenario("BTC", lotOrder, BigDecimal.ZERO, new BigDecimal("30000")));
+			scenarios.add(new Scenario("BTC", lotOrder, totalCoinAmnt, new BigDecimal("30000")));
+			// a sale ending exactly at a lot boundary
+			scenarios.add(new Scenario("BTC", lotOrder, lots.get(0).getAssetAmnt(), new BigDecimal("30000")));
+			for (int i = 0; i < 50; i++) {
+				BigDecimal coinAmnt = totalCoinAmnt.multiply(BigDecimal.valueOf(random.nextInt(1_000_000), 6)).setScale(8, RoundingMode.DOWN);
+				scenarios.add(new Scenario("BTC", lotOrder, coinAmnt, BigDecimal.valueOf(random.nextInt(10_000_000), 2)));
+			}
+		}
+		simulator.simulate(scenarios);
+
+		for (Scenario s : scenarios) {
+			BigDecimal[] expected = walk(sort(lots, s.getLotOrder()), s.getCoinAmnt());
+			String message = s.getLotOrder() + " " + s.getCoinAmnt();
+			assertClose(expected[0].multiply(s.getUsdPerCoin()), s.getShortTermProceeds(), message);
+			assertClose(expected[1], s.getShortTermCostBasis(), message);
+			assertClose(expected[2].multiply(s.getUsdPerCoin()), s.getLongTermProceeds(), message);
+			assertClose(expected[3], s.getLongTermCostBasis(), message);
+		}
+	}
+
+
+	@Test
+	void rejectsSalesOfMoreThanTheAccountHolds() {
+		TaxResult result = new TaxResult();
+		List<GainEntry> geList = new ArrayList<>();
+		geList.add(new UnrealizedGainEntry(SALE_DATE.minusDays(10), "Kraken", BigDecimal.ONE, new BigDecimal("100")));
+		result.acceptGainEntries("BTC", geList);
+		WhatIfSimulator simulator = WhatIfSimulator.of(result, SALE_DATE);
+
+		Scenario s = new Scenario("BTC", LotOrder.FIFO, new BigDecimal("1.00000001"), new BigDecimal("200"));
+		ControllerException exc = null;
+		try {
+			simulator.simulate(s);
+		}
+		catch (ControllerException e) {
+			exc = e;
+		}
+		assertTrue(exc != null && exc.getMessage().contains("which holds 1"));
+	}
+
+
+	private static List<UnrealizedGainEntry> sort(List<UnrealizedGainEntry> lots, LotOrder lotOrder) {
+		List<UnrealizedGainEntry> result = new ArrayList<>(lots);
+		Comparator<UnrealizedGainEntry> byDate = Comparator.comparing(UnrealizedGainEntry::getDateAcquired);
+		if (lotOrder == LotOrder.FIFO) {
+			result.sort(byDate);
+		}
+		else if (lotOrder == LotOrder.LIFO) {
+			result.sort(byDate.reversed());
+		}
+		else {
+			result.sort(Comparator.comparing((UnrealizedGainEntry ge) -> ge.getCostBasis().divide(ge.getAssetAmnt(), PRECISION))
+					.reversed());
+		}
+		return result;
+	}
+
+
+	// Sells coinAmnt lot by lot: the short-term coins and cost basis, then the long-term ones
+	private static BigDecimal[] walk(List<UnrealizedGainEntry> lots, BigDecimal coinAmnt) {
+		BigDecimal[] result = { BigDecimal.ZERO, BigDecimal.ZERO, BigDecimal.ZERO, BigDecimal.ZERO };
+		BigDecimal rest = coinAmnt;
+		for (UnrealizedGainEntry lot : lots) {
+			if (rest.signum() <= 0) {
+				break;
+			}
+			BigDecimal sold = rest.min(lot.getAssetAmnt());
+			BigDecimal costBasis = sold.multiply(lot.getCostBasis()).divide(lot.getAssetAmnt(), PRECISION);
+			int k = (GainEntry.getTerm(lot.getDateAcquired(), SALE_DATE) == GainTerm.LONGTERM) ? 2 : 0;
+			result[k] = result[k].add(sold);
+			result[k + 1] = result[k + 1].add(costBasis);
+			rest = rest.subtract(sold);
+		}
+		return result;
+	}
+
+
+	private static void assertClose(BigDecimal expected, BigDecimal actual, String message) {
+		assertEquals(-1, expected.subtract(actual).abs().compareTo(TOLERANCE), message + ": expected " + expected + " but was " + actual);
+	}
+
+}
@@ -0,0 +1,52 @@
+package bdn.cryptax.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+import org.junit.jupiter.api.Test;
+
+class CostPoolTest {
+
+	@Test
+	void emptyingThePoolReturnsExactlyWhatIsLeft() {
+		CostPool pool = new CostPool();
+		pool.add(LocalDate.parse("2024-01-01"), new BigDecimal("3"), new BigDecimal("100"));
+		pool.add(LocalDate.parse("2024-01-02"), new BigDecimal("0.7"), new BigDecimal("29.99"));
+
+		// shares of 129.99 / 3.7 per coin do not divide evenly
+		BigDecimal removed = BigDecimal.ZERO;
+		for (int i = 0; i < 5; i++) {
+			removed = removed.add(pool.remove(new BigDecimal("0.7")));
+		}
+		assertTrue(pool.covers(new BigDecimal("0.2")));
+		assertFalse(pool.covers(new BigDecimal("0.2000001")));
+		removed = removed.add(pool.remove(new BigDecimal("0.2")));
+
+		assertTrue(pool.isEmpty());
+		assertEquals(0, pool.getCostUsd().signum());
+		assertEquals(0, new BigDecimal("129.99").compareTo(removed));
+	}
+
+
+	@Test
+	void removalsKeepTheAverageCostAndDate() {
+		CostPool pool = new CostPool();
+		pool.add(LocalDate.parse("2024-01-01"), new BigDecimal("1"), new BigDecimal("100"));
+		pool.add(LocalDate.parse("2024-01-11"), new BigDecimal("1"), new BigDecimal("200"));
+		assertEquals(LocalDate.parse("2024-01-06"), pool.getDate());
+
+		assertEquals(0, new BigDecimal("75").compareTo(pool.remove(new BigDecimal("0.5"))));
+		assertEquals(LocalDate.parse("2024-01-06"), pool.getDate());
+		assertEquals(0, new BigDecimal("225").compareTo(pool.getCostUsd()));
+
+		// an addition moves the average
+		pool.add(LocalDate.parse("2024-01-21"), new BigDecimal("1.5"), new BigDecimal("75"));
+		assertEquals(0, new BigDecimal("300").compareTo(pool.getCostUsd()));
+		assertEquals(0, new BigDecimal("100").compareTo(pool.remove(BigDecimal.ONE)));
+	}
+
+}
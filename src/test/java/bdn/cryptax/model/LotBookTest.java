@@ -0,0 +1,81 @@
+package bdn.cryptax.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class LotBookTest {
+
+	private static final LocalDateTime JAN = LocalDateTime.parse("2024-01-01T09:00");
+	private static final LocalDateTime FEB = LocalDateTime.parse("2024-02-01T09:00");
+
+
+	@Test
+	void findsLotsByTimeAndBroker() {
+		LotBook book = new LotBook();
+		TransactionMemento janKraken = add(book, JAN, "Kraken");
+		TransactionMemento janCoinbase = add(book, JAN, "Coinbase");
+		TransactionMemento febKraken = add(book, FEB, "Kraken");
+
+		assertSame(janKraken, book.find(JAN, "Kraken"));
+		assertSame(janCoinbase, book.find(JAN, "Coinbase"));
+		assertSame(febKraken, book.find(FEB, "Kraken"));
+		assertNull(book.find(FEB, "Coinbase"));
+		assertNull(book.find(JAN.plusMinutes(1), null));
+	}
+
+
+	@Test
+	void findsTheOldestLotOfAnyBroker() {
+		LotBook book = new LotBook();
+		TransactionMemento janKraken = add(book, JAN, "Kraken");
+		TransactionMemento janCoinbase = add(book, JAN, "Coinbase");
+
+		assertSame(janKraken, book.find(JAN, null));
+		book.remove(janKraken);
+		assertSame(janCoinbase, book.find(JAN, null));
+	}
+
+
+	@Test
+	void skipsLotsRemovedOutOfOrder() {
+		LotBook book = new LotBook();
+		TransactionMemento first = add(book, JAN, "Kraken");
+		TransactionMemento second = add(book, JAN, "Kraken");
+		TransactionMemento third = add(book, FEB, "Kraken");
+
+		// lots of the same time and broker are found oldest first
+		assertSame(first, book.find(JAN, "Kraken"));
+		book.remove(first);
+		assertSame(second, book.find(JAN, "Kraken"));
+		book.remove(third);
+
+		assertEquals(1, book.size());
+		assertSame(second, book.peek());
+		List<TransactionMemento> open = new ArrayList<>();
+		book.forEach(open::add);
+		assertEquals(List.of(second), open);
+		book.remove();
+		assertEquals(0, book.size());
+		assertNull(book.peek());
+	}
+
+
+	private static TransactionMemento add(LotBook book, LocalDateTime dttm, String broker) {
+		TransactionMemento tm = new TransactionMemento();
+		tm.dttm = dttm;
+		tm.dest = broker;
+		tm.coinAmnt = BigDecimal.ONE;
+		tm.effUsdPerUnit = BigDecimal.TEN;
+		book.add(tm);
+		return tm;
+	}
+
+}
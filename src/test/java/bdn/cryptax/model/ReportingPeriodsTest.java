@@ -0,0 +1,60 @@
+package bdn.cryptax.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.LocalDate;
+
+import org.junit.jupiter.api.Test;
+
+import bdn.cryptax.model.ReportingPeriods.PeriodType;
+
+class ReportingPeriodsTest {
+
+	@Test
+	void fiscalYearStartingInJulyEndsInTheNamedYear() {
+		ReportingPeriods periods = new ReportingPeriods(PeriodType.QUARTER, 7);
+
+		assertLabel(periods, "2024-06-30", "2024-Q4");
+		assertLabel(periods, "2024-07-01", "2025-Q1");
+		assertLabel(periods, "2024-09-30", "2025-Q1");
+		assertLabel(periods, "2024-10-01", "2025-Q2");
+		assertLabel(periods, "2025-06-30", "2025-Q4");
+		assertLabel(periods, "2025-07-01", "2026-Q1");
+
+		int period = periods.getPeriod(LocalDate.parse("2024-12-31"));
+		assertEquals(2025, periods.getFiscalYearOfPeriod(period));
+		assertEquals(LocalDate.parse("2024-10-01"), periods.getStartDate(period));
+		assertEquals(LocalDate.parse("2024-12-31"), periods.getEndDate(period));
+	}
+
+
+	@Test
+	void tableGrowsBackwardsAndForwards() {
+		ReportingPeriods periods = new ReportingPeriods(PeriodType.MONTH, 4);
+		LocalDate first = LocalDate.parse("2016-01-01");
+		LocalDate last = LocalDate.parse("2026-12-31");
+
+		// a day in the middle builds the table, then days before and after it grow the table both ways
+		periods.getPeriod(LocalDate.parse("2021-05-15"));
+		periods.getPeriod(first);
+		periods.getPeriod(last);
+		for (LocalDate date = first; !date.isAfter(last); date = date.plusDays(1)) {
+			int period = periods.getPeriod(date);
+			assertEquals(getMonthPeriod(date, 4), period, date.toString());
+			assertEquals(date.withDayOfMonth(1), periods.getStartDate(period), date.toString());
+		}
+	}
+
+
+	// the month's period, counted directly as the months since fiscal year 0 began (in calendar year -1, for a start after
+	// January)
+	private static int getMonthPeriod(LocalDate date, int fiscalYearStartMonth) {
+		return (date.getYear() + 1) * 12 + date.getMonthValue() - fiscalYearStartMonth;
+	}
+
+
+	private static void assertLabel(ReportingPeriods periods, String date, String label) {
+		assertEquals(label, periods.getLabel(periods.getPeriod(LocalDate.parse(date))), date);
+	}
+
+}
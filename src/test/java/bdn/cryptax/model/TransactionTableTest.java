@@ -0,0 +1,40 @@
+package bdn.cryptax.model;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class TransactionTableTest {
+
+	@Test
+	void packedSortKeepsTiesInRowOrder() {
+		Random random = new Random(3);
+		// few distinct timestamps, so most rows tie; the spans straddle the limit of the packed key
+		for (long span : new long[] { 1, 1000, (1L << 32) - 1, 1L << 32 }) {
+			for (long base : new long[] { -86_400L * 365 * 50, 1_700_000_000L }) {
+				long[] epochSecs = new long[5000];
+				for (int i = 0; i < epochSecs.length; i++) {
+					epochSecs[i] = base + ((random.nextInt(4) == 0) ? span : span / (2 + random.nextInt(3)));
+				}
+				epochSecs[random.nextInt(epochSecs.length)] = base;
+				assertArrayEquals(stableSort(epochSecs), TransactionTable.sortChronologically(epochSecs, epochSecs.length),
+						"span " + span + " from " + base);
+			}
+		}
+	}
+
+
+	private static int[] stableSort(long[] epochSecs) {
+		Integer[] rows = new Integer[epochSecs.length];
+		for (int i = 0; i < rows.length; i++) {
+			rows[i] = i;
+		}
+		Arrays.sort(rows, Comparator.comparingLong(i -> epochSecs[i]));
+		return Arrays.stream(rows).mapToInt(Integer::intValue).toArray();
+	}
+
+}